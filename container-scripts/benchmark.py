@@ -46,6 +46,10 @@ class Benchmarks:
                 stripe_size = erasure_config['stripe']
                 parity_size = erasure_config['parity']
                 src = erasure_config['src']
+                local = erasure_config.get('local')
+                block_size = erasure_config.get('block_size')
+                pipeline_depth = erasure_config.get('pipeline_depth')
+                write_back_timeout = erasure_config.get('write_back_timeout')
 
                 for bench, bench_param in list(zip(self.benches, self.bench_params)) * self.execute_times:
                     nodes_trace = NodesTrace(**nodes_trace_config)
@@ -53,7 +57,8 @@ class Benchmarks:
 
                     with RedisCluster(initial_redis_size) as redis:
                         sb = 'Jedis' if initial_redis_size > 0 else 'Memory'
-                        config = [erasure_code, initial_redis_size, sb, stripe_size, parity_size, src]
+                        config = [erasure_code, initial_redis_size, sb, stripe_size, parity_size, src, local,
+                                  block_size, pipeline_depth, write_back_timeout]
                         print("Running with " + str(config))
                         (params, env) = self._get_java_params(redis, *config)
                         with JavaProgram(params, env) as java:
@@ -79,7 +84,8 @@ class Benchmarks:
             json.dump(self.results, out, indent=4)
 
     @staticmethod
-    def _get_java_params(redis, erasure, redis_size, storage, stripe=None, parity=None, src=None, quiet=True):
+    def _get_java_params(redis, erasure, redis_size, storage, stripe=None, parity=None, src=None, local=None,
+                         block_size=None, pipeline_depth=None, write_back_timeout=None, quiet=True):
         params = [
             '--erasure-code', erasure,
             '--storage', storage
@@ -92,6 +98,14 @@ class Benchmarks:
             params += ['--parity', str(parity)]
         if src is not None:
             params += ['--src', str(src)]
+        if local is not None:
+            params += ['--local', str(local)]
+        if block_size is not None:
+            params += ['--block-size', str(block_size)]
+        if pipeline_depth is not None:
+            params += ['--pipeline-depth', str(pipeline_depth)]
+        if write_back_timeout is not None:
+            params += ['--write-back-timeout', str(write_back_timeout)]
         if redis_size > 1:
             params += ['--redis-cluster']
 
@@ -2,7 +2,18 @@ package ch.unine.vauchers.erasuretester.erasure;
 
 import ch.unine.vauchers.erasuretester.utils.Utils;
 import ch.unine.vauchers.erasuretester.backend.MemoryStorageBackend;
+import ch.unine.vauchers.erasuretester.erasure.codes.CauchyReedSolomonCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.ErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.FountainCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.LocalReconstructionCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.MatrixReedSolomonCode;
 import ch.unine.vauchers.erasuretester.erasure.codes.NullErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.PiggybackedReedSolomonCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReedSolomonCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReplicationCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.RowDiagonalParityCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.TooManyErasedLocations;
+import ch.unine.vauchers.erasuretester.erasure.codes.XORCode;
 import org.openjdk.jmh.annotations.*;
 
 import java.math.BigInteger;
@@ -12,10 +23,19 @@ import java.util.Random;
 @State(Scope.Thread)
 @BenchmarkMode(Mode.AverageTime)
 public class FileEncoderDecoderBenchmark {
-    @Param({"1000", "2000", "10000"})
+    @Param({"1000", "2000", "10000", "131072"})
     public int fileSize;
 
+    @Param({"Null", "XOR", "ReedSolomon", "MatrixReedSolomon", "CauchyReedSolomon", "LocalReconstruction",
+            "PiggybackedReedSolomon", "Fountain", "RowDiagonalParity", "Replication"})
+    public String erasureCode;
+
+    // 0 holds one symbol per block, larger sizes hold chunks
+    @Param({"0", "4096"})
+    public int blockSize;
+
     private ByteBuffer testContents;
+    private ByteBuffer readBuffer;
     private String randomPath;
 
     protected FileEncoderDecoder sut;
@@ -30,7 +50,45 @@ public class FileEncoderDecoderBenchmark {
             testContents.put((byte) (Math.random() * 256));
         }
 
-        sut = new FileEncoderDecoder(new NullErasureCode(10), new MemoryStorageBackend());
+        final ErasureCode code;
+        switch (erasureCode) {
+            case "XOR":
+                code = new XORCode(10, 1);
+                break;
+            case "ReedSolomon":
+                code = new ReedSolomonCode(10, 4);
+                break;
+            case "MatrixReedSolomon":
+                code = new MatrixReedSolomonCode(10, 4);
+                break;
+            case "CauchyReedSolomon":
+                code = new CauchyReedSolomonCode(10, 4);
+                break;
+            case "LocalReconstruction":
+                code = new LocalReconstructionCode(10, 2, 2);
+                break;
+            case "PiggybackedReedSolomon":
+                code = new PiggybackedReedSolomonCode(10, 4);
+                break;
+            case "Fountain":
+                code = new FountainCode(10, 4);
+                break;
+            case "RowDiagonalParity":
+                code = new RowDiagonalParityCode(10);
+                break;
+            case "Replication":
+                code = new ReplicationCode(3);
+                break;
+            default:
+                code = new NullErasureCode(10);
+                break;
+        }
+        sut = new FileEncoderDecoder(code, new MemoryStorageBackend(), blockSize);
+
+        // The file read by readFile, and the buffer it is read to, reused across invocations
+        testContents.rewind();
+        sut.writeFile(randomPath, fileSize, 0, testContents);
+        readBuffer = ByteBuffer.allocateDirect(fileSize);
     }
 
     @Benchmark
@@ -38,4 +96,11 @@ public class FileEncoderDecoderBenchmark {
         testContents.rewind();
         sut.writeFile(randomPath, fileSize, 0, testContents);
     }
+
+    @Benchmark
+    public ByteBuffer readFile() throws TooManyErasedLocations {
+        readBuffer.clear();
+        sut.readFile(randomPath, fileSize, 0, readBuffer);
+        return readBuffer;
+    }
 }
@@ -0,0 +1,371 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import ch.unine.vauchers.erasuretester.utils.Utils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the GaloisField operations, symbol by symbol and by region, and of the codes built on them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GaloisFieldBenchmark {
+    @Param({"4096", "65536"})
+    public int regionSize;
+
+    private static final int COEFFICIENT = 0x8E;
+    private static final int[] ERASED_LOCATIONS = {1, 5};
+    private static final int[] LOCATIONS_TO_READ = {13, 12, 11, 10, 9, 8, 7, 6, 4, 3};
+    private static final int[] LOCATIONS_NOT_TO_READ = {0, 1, 2, 5};
+    // One lost message block of a stripe of 10 message and 6 parity blocks, repaired from its SRC group or by RS
+    private static final int[] SINGLE_ERASED_LOCATION = {7};
+    private static final int[] SRC_LOCATIONS_TO_READ = {1, 8};
+    private static final int[] SRC_LOCATIONS_NOT_TO_READ = {0, 2, 3, 4, 5, 6, 7, 9, 10, 11, 12, 13, 14, 15};
+    private static final int[] RS6_LOCATIONS_TO_READ = {5, 6, 8, 9, 10, 11, 12, 13, 14, 15};
+    private static final int[] RS6_LOCATIONS_NOT_TO_READ = {0, 1, 2, 3, 4, 7};
+    // Two lost message blocks of a stripe of 10 message and 2 parity blocks
+    private static final int[] DOUBLE_ERASED_LOCATIONS = {4, 8};
+    private static final int[] DOUBLE_LOCATIONS_TO_READ = {0, 1, 2, 3, 5, 6, 7, 9, 10, 11};
+
+    private GaloisField gf;
+    private byte[] src;
+    private byte[] dst;
+    private ByteBuffer directSrc;
+    private ByteBuffer directDst;
+    private ReedSolomonCode reedSolomon;
+    private MatrixReedSolomonCode matrixReedSolomon;
+    private ReedSolomonCode wideReedSolomon;
+    private CauchyReedSolomonCode cauchyReedSolomon;
+    private XORCode xor;
+    private SimpleRegeneratingCode simpleRegenerating;
+    private MatrixReedSolomonCode sameOverheadReedSolomon;
+    private FountainCode fountain;
+    private byte[][] fountainCodewordBufs;
+    // Repair of SINGLE_ERASED_LOCATION in a stripe of 10 message and 4 parity blocks
+    private int[] fountainLocationsToRead;
+    private int[] fountainLocationsNotToRead;
+    private int[] rs4LocationsToRead;
+    private int[] rs4LocationsNotToRead;
+    private RowDiagonalParityCode rowDiagonalParity;
+    private MatrixReedSolomonCode doubleParityReedSolomon;
+    private byte[][] rowDiagonalParityCodewordBufs;
+    private byte[][] doubleParityCodewordBufs;
+    private byte[][] twoParity;
+    private byte[][] sixParity;
+    private byte[][] simpleRegeneratingCodewordBufs;
+    private byte[][] sameOverheadCodewordBufs;
+    private byte[][] singleErasedBuf;
+    private byte[][] stripe;
+    private byte[][] parity;
+    private int[] message;
+    private int[] paritySymbols;
+    private int[] codeword;
+    private int[] erasedValues;
+    private ByteBuffer[] directStripe;
+    private ByteBuffer[] directParity;
+    private byte[][] matrixCodewordBufs;
+    private byte[][] cauchyCodewordBufs;
+    private byte[][] erasedBufs;
+
+    @Setup
+    public void setup() throws TooManyErasedLocations {
+        Utils.disableLogging();
+        final Random random = new Random();
+
+        gf = GaloisField.getInstance();
+        src = new byte[regionSize];
+        dst = new byte[regionSize];
+        random.nextBytes(src);
+        directSrc = ByteBuffer.allocateDirect(regionSize);
+        directSrc.put(src).flip();
+        directDst = ByteBuffer.allocateDirect(regionSize);
+
+        reedSolomon = new ReedSolomonCode(10, 4);
+        matrixReedSolomon = new MatrixReedSolomonCode(10, 4);
+        wideReedSolomon = new ReedSolomonCode(10, 4, GaloisField.forSymbolSize(16));
+        cauchyReedSolomon = new CauchyReedSolomonCode(10, 4);
+        xor = new XORCode(10, 1);
+        simpleRegenerating = new SimpleRegeneratingCode(10, 6, 5);
+        sameOverheadReedSolomon = new MatrixReedSolomonCode(10, 6);
+        stripe = new byte[10][regionSize];
+        parity = new byte[4][regionSize];
+        for (byte[] block : stripe) {
+            random.nextBytes(block);
+        }
+        directStripe = new ByteBuffer[stripe.length];
+        for (int i = 0; i < stripe.length; i++) {
+            directStripe[i] = ByteBuffer.allocateDirect(regionSize);
+            directStripe[i].put(stripe[i]).flip();
+        }
+        directParity = new ByteBuffer[]{ByteBuffer.allocateDirect(regionSize)};
+        matrixCodewordBufs = codewordBufs(matrixReedSolomon);
+        cauchyCodewordBufs = codewordBufs(cauchyReedSolomon);
+        erasedBufs = new byte[ERASED_LOCATIONS.length][regionSize];
+        sixParity = new byte[6][regionSize];
+        simpleRegeneratingCodewordBufs = codewordBufs(simpleRegenerating);
+        sameOverheadCodewordBufs = codewordBufs(sameOverheadReedSolomon);
+        singleErasedBuf = new byte[1][regionSize];
+        fountain = new FountainCode(10, 4);
+        fountainCodewordBufs = codewordBufs(fountain);
+        fountainLocationsToRead = fountain.locationsToReadForDecode(IntArrayList.wrap(SINGLE_ERASED_LOCATION))
+                .toIntArray();
+        fountainLocationsNotToRead = locationsNotToRead(fountainLocationsToRead, 14);
+        rs4LocationsToRead = matrixReedSolomon.locationsToReadForDecode(IntArrayList.wrap(SINGLE_ERASED_LOCATION))
+                .toIntArray();
+        rs4LocationsNotToRead = locationsNotToRead(rs4LocationsToRead, 14);
+        rowDiagonalParity = new RowDiagonalParityCode(10);
+        doubleParityReedSolomon = new MatrixReedSolomonCode(10, 2);
+        rowDiagonalParityCodewordBufs = codewordBufs(rowDiagonalParity);
+        doubleParityCodewordBufs = codewordBufs(doubleParityReedSolomon);
+        twoParity = new byte[2][regionSize];
+
+        message = new int[10];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = random.nextInt(gf.getFieldSize());
+        }
+        paritySymbols = new int[4];
+        codeword = new int[14];
+        reedSolomon.encode(message, paritySymbols);
+        System.arraycopy(paritySymbols, 0, codeword, 0, 4);
+        System.arraycopy(message, 0, codeword, 4, 10);
+        erasedValues = new int[ERASED_LOCATIONS.length];
+    }
+
+    @Benchmark
+    public byte[] multiplyAccumulateTable() {
+        for (int i = 0; i < regionSize; i++) {
+            dst[i] ^= gf.multiply(COEFFICIENT, src[i] & 0xFF);
+        }
+        return dst;
+    }
+
+    @Benchmark
+    public byte[] multiplyAccumulateRegion() {
+        gf.multiplyAccumulateRegion(COEFFICIENT, src, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public ByteBuffer multiplyAccumulateRegionDirect() {
+        gf.multiplyAccumulateRegion(COEFFICIENT, directSrc, directDst);
+        return directDst;
+    }
+
+    @Benchmark
+    public byte[][] reedSolomonEncodeBulk() {
+        reedSolomon.encodeBulk(stripe, parity);
+        return parity;
+    }
+
+    /**
+     * Same stripe on GF(2^16): half as many symbols, each one costing two table lookups.
+     */
+    @Benchmark
+    public byte[][] wideReedSolomonEncodeBulk() {
+        wideReedSolomon.encodeBulk(stripe, parity);
+        return parity;
+    }
+
+    @Benchmark
+    public byte[][] xorEncodeBulk() {
+        xor.encodeBulk(stripe, parity);
+        return parity;
+    }
+
+    @Benchmark
+    public ByteBuffer[] xorEncodeBulkDirect() {
+        xor.encodeBulk(directStripe, directParity);
+        return directParity;
+    }
+
+    @Benchmark
+    public byte[][] matrixReedSolomonEncodeBulk() {
+        matrixReedSolomon.encodeBulk(stripe, parity);
+        return parity;
+    }
+
+    @Benchmark
+    public byte[][] cauchyReedSolomonEncodeBulk() {
+        cauchyReedSolomon.encodeBulk(stripe, parity);
+        return parity;
+    }
+
+    /**
+     * Same encoding split in tiles across the cores.
+     */
+    @Benchmark
+    public byte[][] matrixReedSolomonEncodeBulkParallel() {
+        matrixReedSolomon.encodeBulk(stripe, parity, ForkJoinPool.commonPool());
+        return parity;
+    }
+
+    @Benchmark
+    public byte[][] matrixReedSolomonDecodeBulk() {
+        return decodeBulk(matrixReedSolomon);
+    }
+
+    @Benchmark
+    public byte[][] cauchyReedSolomonDecodeBulk() {
+        return decodeBulk(cauchyReedSolomon);
+    }
+
+    /**
+     * SRC(10, 6, 5), against RS with the same 6 parity blocks.
+     */
+    @Benchmark
+    public byte[][] simpleRegeneratingEncodeBulk() {
+        simpleRegenerating.encodeBulk(stripe, sixParity);
+        return sixParity;
+    }
+
+    @Benchmark
+    public byte[][] sameOverheadReedSolomonEncodeBulk() {
+        sameOverheadReedSolomon.encodeBulk(stripe, sixParity);
+        return sixParity;
+    }
+
+    /**
+     * Repair of a message block from the 2 other blocks of its SRC group, against 10 blocks for RS.
+     */
+    @Benchmark
+    public byte[][] simpleRegeneratingDecodeBulk() {
+        simpleRegenerating.decodeBulk(simpleRegeneratingCodewordBufs, singleErasedBuf, SINGLE_ERASED_LOCATION,
+                SRC_LOCATIONS_TO_READ, SRC_LOCATIONS_NOT_TO_READ);
+        return singleErasedBuf;
+    }
+
+    @Benchmark
+    public byte[][] sameOverheadReedSolomonDecodeBulk() {
+        sameOverheadReedSolomon.decodeBulk(sameOverheadCodewordBufs, singleErasedBuf, SINGLE_ERASED_LOCATION,
+                RS6_LOCATIONS_TO_READ, RS6_LOCATIONS_NOT_TO_READ);
+        return singleErasedBuf;
+    }
+
+    /**
+     * Fountain code with the parity of RS(10, 4): XOR only, against the multiplications of RS.
+     */
+    @Benchmark
+    public byte[][] fountainEncodeBulk() {
+        fountain.encodeBulk(stripe, parity);
+        return parity;
+    }
+
+    /**
+     * Repair of a message block by peeling, from the other neighbors of a repair block, against 10 blocks for RS.
+     */
+    @Benchmark
+    public byte[][] fountainDecodeBulk() {
+        fountain.decodeBulk(fountainCodewordBufs, singleErasedBuf, SINGLE_ERASED_LOCATION, fountainLocationsToRead,
+                fountainLocationsNotToRead);
+        return singleErasedBuf;
+    }
+
+    @Benchmark
+    public byte[][] matrixReedSolomonSingleDecodeBulk() {
+        matrixReedSolomon.decodeBulk(matrixCodewordBufs, singleErasedBuf, SINGLE_ERASED_LOCATION, rs4LocationsToRead,
+                rs4LocationsNotToRead);
+        return singleErasedBuf;
+    }
+
+    /**
+     * RDP(10): two parity blocks with XORs only, against XOR (one parity block) and RS(10, 2).
+     */
+    @Benchmark
+    public byte[][] rowDiagonalParityEncodeBulk() {
+        rowDiagonalParity.encodeBulk(stripe, twoParity);
+        return twoParity;
+    }
+
+    @Benchmark
+    public byte[][] doubleParityReedSolomonEncodeBulk() {
+        doubleParityReedSolomon.encodeBulk(stripe, twoParity);
+        return twoParity;
+    }
+
+    @Benchmark
+    public byte[][] rowDiagonalParityDecodeBulk() {
+        rowDiagonalParity.decodeBulk(rowDiagonalParityCodewordBufs, erasedBufs, DOUBLE_ERASED_LOCATIONS,
+                DOUBLE_LOCATIONS_TO_READ, DOUBLE_ERASED_LOCATIONS);
+        return erasedBufs;
+    }
+
+    @Benchmark
+    public byte[][] doubleParityReedSolomonDecodeBulk() {
+        doubleParityReedSolomon.decodeBulk(doubleParityCodewordBufs, erasedBufs, DOUBLE_ERASED_LOCATIONS,
+                DOUBLE_LOCATIONS_TO_READ, DOUBLE_ERASED_LOCATIONS);
+        return erasedBufs;
+    }
+
+    @Benchmark
+    public int[] reedSolomonEncode() {
+        reedSolomon.encode(message, paritySymbols);
+        return paritySymbols;
+    }
+
+    @Benchmark
+    public int[] matrixReedSolomonEncode() {
+        matrixReedSolomon.encode(message, paritySymbols);
+        return paritySymbols;
+    }
+
+    @Benchmark
+    public int[] reedSolomonDecode() {
+        reedSolomon.decode(codeword, ERASED_LOCATIONS, erasedValues, LOCATIONS_TO_READ, LOCATIONS_NOT_TO_READ);
+        return erasedValues;
+    }
+
+    private byte[][] decodeBulk(ErasureCode code) {
+        final byte[][] codewordBufs = code == cauchyReedSolomon ? cauchyCodewordBufs : matrixCodewordBufs;
+        code.decodeBulk(codewordBufs, erasedBufs, ERASED_LOCATIONS, LOCATIONS_TO_READ, LOCATIONS_NOT_TO_READ);
+        return erasedBufs;
+    }
+
+    // The blocks of the stripe encoded by a code, which the bulk decodings read
+    private byte[][] codewordBufs(ErasureCode code) {
+        final int paritySize = code.paritySize();
+        final byte[][] codewordBufs = new byte[paritySize + 10][];
+        for (int i = 0; i < paritySize; i++) {
+            codewordBufs[i] = new byte[regionSize];
+        }
+        code.encodeBulk(stripe, Arrays.copyOf(codewordBufs, paritySize));
+        System.arraycopy(stripe, 0, codewordBufs, paritySize, 10);
+        return codewordBufs;
+    }
+
+    private static int[] locationsNotToRead(int[] locationsToRead, int totalSize) {
+        final BitSet notToRead = new BitSet(totalSize);
+        notToRead.set(0, totalSize);
+        for (int location : locationsToRead) {
+            notToRead.clear(location);
+        }
+        return notToRead.stream().toArray();
+    }
+
+    @Benchmark
+    public GaloisField getInstance() {
+        return GaloisField.getInstance();
+    }
+
+    /**
+     * Startup cost of the codes, which all share the GaloisField instance.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ErasureCode[] buildCodes() {
+        return new ErasureCode[]{
+                new XORCode(10, 1),
+                new ReedSolomonCode(10, 4),
+                new MatrixReedSolomonCode(10, 4),
+                new SimpleRegeneratingCode(10, 6, 5)
+        };
+    }
+}
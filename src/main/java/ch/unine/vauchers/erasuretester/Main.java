@@ -6,10 +6,20 @@ import ch.unine.vauchers.erasuretester.backend.RedissonStorageBackend;
 import ch.unine.vauchers.erasuretester.backend.StorageBackend;
 import ch.unine.vauchers.erasuretester.erasure.FileEncoderDecoder;
 import ch.unine.vauchers.erasuretester.erasure.SimpleRegeneratingFileEncoderDecoder;
+import ch.unine.vauchers.erasuretester.erasure.codes.CauchyReedSolomonCode;
 import ch.unine.vauchers.erasuretester.erasure.codes.ErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.ErrorCorrectingCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.FountainCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.GaloisField;
+import ch.unine.vauchers.erasuretester.erasure.codes.LocalReconstructionCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.MatrixReedSolomonCode;
 import ch.unine.vauchers.erasuretester.erasure.codes.NullErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.PiggybackedReedSolomonCode;
 import ch.unine.vauchers.erasuretester.erasure.codes.ReedSolomonCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReplicationCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.RowDiagonalParityCode;
 import ch.unine.vauchers.erasuretester.erasure.codes.SimpleRegeneratingCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.XORCode;
 import ch.unine.vauchers.erasuretester.frontend.FuseMemoryFrontend;
 import ch.unine.vauchers.erasuretester.utils.Utils;
 import net.fusejna.FuseException;
@@ -22,6 +32,9 @@ import net.sourceforge.argparse4j.inf.Namespace;
 import java.io.File;
 import java.io.IOException;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,26 +48,52 @@ public class Main {
 
         ArgumentParser parser = ArgumentParsers.newArgumentParser("Erasure tester");
         parser.addArgument("-c", "--erasure-code")
-                .choices("Null", "ReedSolomon", "SimpleRegenerating")
+                .choices("Null", "XOR", "ReedSolomon", "MatrixReedSolomon", "CauchyReedSolomon", "SimpleRegenerating",
+                        "LocalReconstruction", "PiggybackedReedSolomon", "Fountain", "RowDiagonalParity",
+                        "Replication")
                 .setDefault("Null");
         parser.addArgument("-s", "--storage")
                 .choices("Memory", "Jedis", "Redisson")
                 .setDefault("Memory");
         parser.addArgument("-r", "--stripe")
-                .help("Stripe size")
+                .help("Stripe size, in nodes of two blocks for PiggybackedReedSolomon")
                 .type(Integer.TYPE)
                 .setDefault(10);
         parser.addArgument("-p", "--parity")
-                .help("Parity size")
+                .help("Parity size, XOR always uses 1 and RowDiagonalParity 2. Replication stores parity + 1 copies")
                 .type(Integer.TYPE)
                 .setDefault(4);
         parser.addArgument("--src")
                 .help("Parity size SRC, only used for Simple regenerating code")
                 .type(Integer.TYPE)
                 .setDefault(2);
+        parser.addArgument("--local")
+                .help("Number of local groups, only used for Local reconstruction code. The other parities are global")
+                .type(Integer.TYPE)
+                .setDefault(2);
+        parser.addArgument("--symbol-size")
+                .help("Symbol size in bits, 16 allows stripes wider than 256 blocks (ReedSolomon, MatrixReedSolomon, SimpleRegenerating and LocalReconstruction and PiggybackedReedSolomon only)")
+                .choices(8, 16)
+                .type(Integer.TYPE)
+                .setDefault(8);
+        parser.addArgument("--block-size")
+                .help("Bytes of the file held by each block, e.g. 4096. The blocks are then chunks coded in bulk, each one stored under its own key. The default holds one symbol per block")
+                .type(Integer.TYPE)
+                .setDefault(0);
+        parser.addArgument("--pipeline-depth")
+                .help("Number of stripes of a read or a write coded at once by a pool of as many threads, so that fetches and decoding overlap. The default codes the stripes one after another")
+                .type(Integer.TYPE)
+                .setDefault(0);
+        parser.addArgument("--write-back-timeout")
+                .help("Buffer the writes covering part of a stripe, and encode the stripe once it is full, on flush/fsync/close, or after this many milliseconds without writes. The default encodes every write")
+                .type(Integer.TYPE)
+                .setDefault(0);
         parser.addArgument("--redis-cluster")
                 .help("Flag the Redis server in use as part of a cluster")
                 .action(Arguments.storeTrue());
+        parser.addArgument("--verify-reads")
+                .help("Check every stripe read against its parity, and correct the blocks holding wrong values (ReedSolomon only)")
+                .action(Arguments.storeTrue());
         parser.addArgument("-q", "--quiet")
                 .help("Disable logging")
                 .action(Arguments.storeTrue());
@@ -83,17 +122,44 @@ public class Main {
         final int stripe = namespace.getInt("stripe");
         final int parity = namespace.getInt("parity");
         final int src = namespace.getInt("src");
+        final int local = namespace.getInt("local");
+        final GaloisField field = GaloisField.forSymbolSize(namespace.getInt("symbol_size"));
+        final int blockSize = namespace.getInt("block_size");
 
         switch (namespace.getString("erasure_code")) {
             case "Null":
             default:
                 erasureCode = new NullErasureCode(stripe);
                 break;
+            case "XOR":
+                erasureCode = new XORCode(stripe, 1);
+                break;
             case "ReedSolomon":
-                erasureCode = new ReedSolomonCode(stripe, parity);
+                erasureCode = new ReedSolomonCode(stripe, parity, field);
+                break;
+            case "MatrixReedSolomon":
+                erasureCode = new MatrixReedSolomonCode(stripe, parity, field);
+                break;
+            case "CauchyReedSolomon":
+                erasureCode = new CauchyReedSolomonCode(stripe, parity);
                 break;
             case "SimpleRegenerating":
-                erasureCode = new SimpleRegeneratingCode(stripe, parity, src);
+                erasureCode = new SimpleRegeneratingCode(stripe, parity, src, field);
+                break;
+            case "LocalReconstruction":
+                erasureCode = new LocalReconstructionCode(stripe, local, parity - local, field);
+                break;
+            case "PiggybackedReedSolomon":
+                erasureCode = new PiggybackedReedSolomonCode(stripe, parity, field);
+                break;
+            case "Fountain":
+                erasureCode = new FountainCode(stripe, parity);
+                break;
+            case "RowDiagonalParity":
+                erasureCode = new RowDiagonalParityCode(stripe);
+                break;
+            case "Replication":
+                erasureCode = new ReplicationCode(parity + 1);
                 break;
         }
 
@@ -114,21 +180,57 @@ public class Main {
         final FileEncoderDecoder encdec;
         switch (namespace.getString("erasure_code")) {
             case "SimpleRegenerating":
-                encdec = new SimpleRegeneratingFileEncoderDecoder((SimpleRegeneratingCode) erasureCode, storageBackend);
+                encdec = new SimpleRegeneratingFileEncoderDecoder((SimpleRegeneratingCode) erasureCode, storageBackend,
+                        blockSize);
                 break;
             default:
-                encdec = new FileEncoderDecoder(erasureCode, storageBackend);
+                encdec = new FileEncoderDecoder(erasureCode, storageBackend, blockSize);
                 break;
         }
 
+        if (namespace.getBoolean("verify_reads")) {
+            if (!(erasureCode instanceof ErrorCorrectingCode)) {
+                throw new IllegalArgumentException("--verify-reads needs an error-correcting code, not " +
+                        namespace.getString("erasure_code"));
+            }
+            encdec.setVerifyReads(true);
+        }
+        final int pipelineDepth = namespace.getInt("pipeline_depth");
+        if (pipelineDepth > 0) {
+            encdec.setPipeline(Executors.newFixedThreadPool(pipelineDepth, runnable -> {
+                final Thread thread = new Thread(runnable, "stripe-pipeline");
+                thread.setDaemon(true);
+                return thread;
+            }), pipelineDepth);
+        }
+        final int writeBackTimeout = namespace.getInt("write_back_timeout");
+        if (writeBackTimeout > 0) {
+            encdec.setWriteBack(true);
+            final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "write-back-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(() -> {
+                try {
+                    encdec.flushIdleWrites(writeBackTimeout);
+                } catch (RuntimeException e) {
+                    // A failure would cancel the next flushes
+                    e.printStackTrace();
+                }
+            }, writeBackTimeout, writeBackTimeout, TimeUnit.MILLISECONDS);
+        }
+
         final FuseMemoryFrontend fuse = new FuseMemoryFrontend(encdec, !namespace.getBoolean("quiet"));
         // Gracefully quit on Ctrl+C
         Runtime.getRuntime().addShutdownHook(new Thread() {
             public void run() {
                 System.err.println("Gracefully exiting Erasure tester");
                 try {
-                    storageBackend.disconnect();
+                    // No write can be buffered once unmounted
                     fuse.unmount();
+                    encdec.flushAllWrites();
+                    storageBackend.disconnect();
                 } catch (IOException | FuseException e) {
                     e.printStackTrace();
                 }
@@ -151,6 +253,10 @@ public class Main {
                     storageBackend.clearReadCache();
                 } catch (Exception e) {}
                 System.out.println("Done");
+            } else if ("decodeStats".equals(line)) {
+                // Hits and misses of the decode plans, null if the code does not cache them
+                System.out.println(erasureCode.getDecodePlanCache());
+                System.out.println("Done");
             } else {
                 final Matcher matcher = pattern.matcher(line);
                 if (matcher.matches()) {
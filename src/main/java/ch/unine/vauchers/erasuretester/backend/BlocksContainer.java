@@ -36,6 +36,14 @@ public class BlocksContainer implements Serializable {
         blocks.add(blockData);
     }
 
+    public int size() {
+        return blocks.size();
+    }
+
+    public boolean isEmpty() {
+        return blocks.isEmpty();
+    }
+
     public boolean isFull() {
         return blocks.size() == bufferSize;
     }
@@ -14,6 +14,7 @@ public class FileMetadata {
      * <pre>[stripe 1 parity blocks][stripe 1 data blocks][stripe 2 parity blocks][stripe 2 data blocks], etc.</pre>
      * <br/>
      * The last stripe can contain meaningless data blocks, to always have complete stripes with parity blocks.
+     * Each key is a block of the storage backend: a symbol, or a chunk of bytes when the blocks hold several symbols.
      */
     private IntList blockKeys;
     /**
@@ -8,6 +8,8 @@ import redis.clients.jedis.*;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -31,7 +33,10 @@ import java.util.stream.Stream;
 public class JedisStorageBackend extends StorageBackend {
     private static final String BLOCKS_PREFIX = "blocks/";
 
-    private final JedisCommands redis;
+    // The cluster client, or the pool of connections to a single server: blocks are fetched by concurrent threads,
+    // and a Jedis connection is not thread-safe
+    private final JedisCluster cluster;
+    private final JedisPool pool;
     private final Map<String, FileMetadata> metadataMap;
     private final HashFunction hashFunction;
     /**
@@ -48,7 +53,8 @@ public class JedisStorageBackend extends StorageBackend {
 
         final String redis_address = System.getenv("REDIS_ADDRESS");
         if (redis_address == null) {
-            redis = new Jedis();
+            cluster = null;
+            pool = new JedisPool(Protocol.DEFAULT_HOST, Protocol.DEFAULT_PORT);
         } else {
             System.out.println("Connecting to master at " + redis_address);
             final String[] split = redis_address.split(":");
@@ -56,13 +62,15 @@ public class JedisStorageBackend extends StorageBackend {
             final int port = Integer.parseInt(split[1]);
             if (is_cluster) {
                 Set<HostAndPort> node = Stream.of(new HostAndPort(host, port)).collect(Collectors.toSet());
-                redis = new JedisCluster(node);
+                cluster = new JedisCluster(node);
+                pool = null;
             } else {
-                redis = new Jedis(host, port);
+                cluster = null;
+                pool = new JedisPool(host, port);
             }
         }
         hashFunction = Hashing.murmur3_32();
-        metadataMap = new HashMap<>();
+        metadataMap = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -82,24 +90,40 @@ public class JedisStorageBackend extends StorageBackend {
 
     @Override
     public Optional<String> retrieveAggregatedBlocks(int key) {
-        final String value = redis.get(computeRedisKey(key));
+        final String value = command(redis -> redis.get(computeRedisKey(key)));
         return Optional.ofNullable(value);
     }
 
     @Override
     protected void storeAggregatedBlocks(int key, String blockData) {
-        redis.set(computeRedisKey(key), blockData);
+        command(redis -> redis.set(computeRedisKey(key), blockData));
     }
 
     @Override
     public boolean isAggregatedBlockAvailable(int key) {
-        return redis.exists(computeRedisKey(key));
+        return command(redis -> redis.exists(computeRedisKey(key)));
+    }
+
+    /**
+     * Run a command on the cluster, or on a connection borrowed from the pool
+     */
+    private <T> T command(Function<JedisCommands, T> command) {
+        if (cluster != null) {
+            return command.apply(cluster);
+        }
+        try (Jedis jedis = pool.getResource()) {
+            return command.apply(jedis);
+        }
     }
 
     @Override
     public void disconnect() {
+        if (cluster == null) {
+            pool.destroy();
+            return;
+        }
         try {
-            ((Closeable)redis).close();
+            ((Closeable) cluster).close();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -113,18 +137,18 @@ public class JedisStorageBackend extends StorageBackend {
     }
 
     @Override
-    public void clearReadCache() {
+    public synchronized void clearReadCache() {
         super.clearReadCache();
-        if (redis instanceof JedisCluster) {
-            final JedisClusterConnectionHandler connectionHandler = ((JedisCluster) redis).getConnectionHandler();
+        if (cluster != null) {
+            final JedisClusterConnectionHandler connectionHandler = cluster.getConnectionHandler();
             connectionHandler.renewSlotCache();
             connectionHandler.getNodes();
         }
     }
 
     @Override
-    public void defineTotalSize(int totalSize) {
-        super.defineTotalSize(totalSize);
+    public synchronized void defineTotalSize(int totalSize, int bufferSize) {
+        super.defineTotalSize(totalSize, bufferSize);
         redisSlotDelta = JedisTools.REDIS_KEYS_NUMBER / totalSize;
     }
 }
@@ -3,6 +3,7 @@ package ch.unine.vauchers.erasuretester.backend;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Storage backend implementation backed by a plain old Java Map object.
@@ -12,8 +13,9 @@ public class MemoryStorageBackend extends StorageBackend {
     protected Map<String, FileMetadata> metadataStorage;
 
     public MemoryStorageBackend() {
-        blocksStorage = new HashMap<>();
-        metadataStorage = new HashMap<>();
+        // Accessed by concurrent reads and writes, the blocks being fetched outside the lock of the backend
+        blocksStorage = new ConcurrentHashMap<>();
+        metadataStorage = new ConcurrentHashMap<>();
     }
 
     @Override
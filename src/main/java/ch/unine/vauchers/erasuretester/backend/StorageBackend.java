@@ -4,7 +4,10 @@ import ch.unine.vauchers.erasuretester.utils.IntCacheSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -12,7 +15,16 @@ import java.util.Optional;
 /**
  * Class that can store and retrieve file metadata and individual data blocks.
  * <br/>
+ * Blocks are either single symbols, aggregated by bufferSize under one key of the key-value store, or chunks of many
+ * bytes, each one stored under its own key.
+ * <br/>
  * Call defineTotalSize() before usage and disconnect() after usage.
+ * <br/>
+ * The blocks stored but not flushed yet are read from the write buffers. The caches, write buffers and counters are
+ * accessed under the lock of the backend, so that several threads can share it. Blocks are fetched from and stored to
+ * the key-value store outside this lock, so that a thread waiting for the store does not block the others:
+ * retrieveAggregatedBlocks(), storeAggregatedBlocks() and isAggregatedBlockAvailable() must be thread-safe. A write
+ * buffer being stored stays readable until the store returns.
  */
 public abstract class StorageBackend {
     protected int bufferSize;
@@ -20,7 +32,13 @@ public abstract class StorageBackend {
     public static final int READ_CACHE_SIZE = 50;
     public static final int STATUS_CACHE_SIZE = 50;
     private BlocksContainer[] writeBuffers;
+    // The write buffers detached to be stored outside the lock, by key, until they are stored
+    private final Map<Integer, BlocksContainer> flushingBuffers = new HashMap<>();
     private LinkedHashMap<Integer, BlocksContainer> readCache;
+    private LinkedHashMap<Integer, byte[]> chunksCache;
+    // The container of the last block retrieved at each position, and its key, looked up before readCache
+    private BlocksContainer[] lastContainers;
+    private int[] lastRedisKeys;
     private int[] counters;
     protected int totalSize;
     private final IntCacheSet positiveCache;
@@ -36,6 +54,12 @@ public abstract class StorageBackend {
                 return size() > READ_CACHE_SIZE;
             }
         };
+        chunksCache = new LinkedHashMap<Integer, byte[]>(READ_CACHE_SIZE + 1, .75f, true) {
+            @Override
+            public boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > READ_CACHE_SIZE;
+            }
+        };
         positiveCache = new IntCacheSet(STATUS_CACHE_SIZE);
         negativeCache = new IntCacheSet(STATUS_CACHE_SIZE);
     }
@@ -67,33 +91,98 @@ public abstract class StorageBackend {
      * @return The block wrapped in an Optional (not present if not found)
      */
     public Optional<Integer> retrieveBlock(int key) {
-        int redisKey = key / bufferSize;
-        BlocksContainer container = readCache.get(redisKey);
+        final int[] block = new int[1];
+        if (retrieveBlock(key, block, 0)) {
+            return Optional.of(block[0]);
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Retrieve a data block from storage, without allocating when its aggregated block is cached
+     * @param key The unique identifier of the block, given by storeBlock
+     * @param blocks (out) The array receiving the block
+     * @param index The index of the block in blocks
+     * @return false if the block was not found, blocks is then left untouched
+     */
+    public boolean retrieveBlock(int key, int[] blocks, int index) {
+        final int redisKey = key / bufferSize;
+        BlocksContainer container = cachedContainer(key, redisKey);
         if (container == null) {
             container = fetchAndCache(redisKey);
+            if (container == null) {
+                return false;
+            }
         }
-        if (container != null) {
-            return Optional.of(container.get(key % bufferSize));
-        } else {
-            return Optional.empty();
+        blocks[index] = container.get(key % bufferSize);
+        return true;
+    }
+
+    /**
+     * @return The write buffer holding the block if it is not flushed yet, else the aggregated block from the memo of
+     * its position or from readCache, or null if it is not cached
+     */
+    @Nullable
+    private synchronized BlocksContainer cachedContainer(int key, int redisKey) {
+        final BlocksContainer unflushed = unflushedContainer(key);
+        if (unflushed != null) {
+            return unflushed;
+        }
+        final int position = computePositionWithRedisKey(redisKey);
+        BlocksContainer container = lastContainers[position];
+        if (container == null || lastRedisKeys[position] != redisKey) {
+            container = readCache.get(redisKey);
+            if (container != null) {
+                rememberContainer(redisKey, container);
+            }
         }
+        return container;
     }
 
     /**
-     * Fetch the aggregated block from the backend and cache it in readCache
+     * Must be called under the lock. The blocks of a write buffer are never modified once put, so they can be read
+     * after the lock is released.
+     * @return The write buffer holding a block which is stored but not flushed yet, or null
+     */
+    @Nullable
+    private BlocksContainer unflushedContainer(int key) {
+        if (key < 0 || writeBuffers == null) {
+            return null;
+        }
+        final int redisKey = key / bufferSize;
+        final int position = computePositionWithRedisKey(redisKey);
+        BlocksContainer container = writeBuffers[position];
+        if (counters[position] / bufferSize != redisKey) {
+            container = flushingBuffers.get(redisKey);
+        }
+        return container != null && key % bufferSize < container.size() ? container : null;
+    }
+
+    private void rememberContainer(int redisKey, BlocksContainer container) {
+        final int position = computePositionWithRedisKey(redisKey);
+        lastContainers[position] = container;
+        lastRedisKeys[position] = redisKey;
+    }
+
+    /**
+     * Fetch the aggregated block from the backend, outside the lock, and cache it in readCache
      * @param redisKey
      * @return The corresponding block, or null
      */
     @Nullable
     private BlocksContainer fetchAndCache(int redisKey) {
         final Optional<String> optionalContainer = retrieveAggregatedBlocks(redisKey);
-        if (!optionalContainer.isPresent()) {
-            negativeCache.add(redisKey);
-            return null;
-        } else {
-            BlocksContainer container = BlocksContainer.fromString(optionalContainer.get());
-            readCache.put(redisKey, container);
-            return container;
+        synchronized (this) {
+            if (!optionalContainer.isPresent()) {
+                negativeCache.add(redisKey);
+                return null;
+            } else {
+                BlocksContainer container = BlocksContainer.fromString(optionalContainer.get());
+                readCache.put(redisKey, container);
+                rememberContainer(redisKey, container);
+                return container;
+            }
         }
     }
 
@@ -118,31 +207,128 @@ public abstract class StorageBackend {
      * @return The unique identifier of the block
      */
     public int storeBlock(int blockData, int position) {
-        int key = counters[position];
+        final int key;
+        final int redisKey;
+        final BlocksContainer full;
+        synchronized (this) {
+            key = counters[position];
 
-        writeBuffers[position].put(blockData);
+            writeBuffers[position].put(blockData);
 
-        if (writeBuffers[position].isFull()) {
-            flush(position);
-        } else {
-            counters[position]++;
+            if (writeBuffers[position].isFull()) {
+                redisKey = counters[position] / bufferSize;
+                full = detach(position);
+            } else {
+                counters[position]++;
+                return key;
+            }
         }
+        store(redisKey, full);
 
         return key;
     }
 
     /**
-     * Write the buffer at a specific location to the key-value store
+     * Store a chunk: a block of many bytes. Unlike the blocks of storeBlock, chunks are not aggregated, each one is
+     * written right away under its own key. This requires a buffer size of 1, see defineTotalSize(int, int).
+     * @param chunk The data to store. It can be modified as soon as this method returns.
+     * @param position Position in [0; (stripeSize + paritySize)]. Used to effectively distribute the load on nodes.
+     * @return The unique identifier of the chunk
+     */
+    public int storeChunk(byte[] chunk, int position) {
+        assert bufferSize == 1;
+        final int key;
+        synchronized (this) {
+            key = counters[position];
+            counters[position] += totalSize;
+        }
+        // The key is only returned once stored, so no reader can ask for it before
+        storeAggregatedBlocks(key, Base64.getEncoder().encodeToString(chunk));
+        return key;
+    }
+
+    /**
+     * Retrieve a chunk from storage
+     * @param key The unique identifier of the chunk, given by storeChunk
+     * @return The chunk wrapped in an Optional (not present if not found). The chunk is shared with the read cache,
+     * and must not be modified.
+     */
+    public Optional<byte[]> retrieveChunk(int key) {
+        return Optional.ofNullable(cachedChunk(key));
+    }
+
+    /**
+     * Retrieve a chunk from storage, and copy it to a buffer
+     * @param key The unique identifier of the chunk, given by storeChunk
+     * @param chunk (out) The buffer receiving the chunk, at least as long as it
+     * @return false if the chunk was not found, chunk is then left untouched
+     */
+    public boolean retrieveChunk(int key, byte[] chunk) {
+        final byte[] cachedChunk = cachedChunk(key);
+        if (cachedChunk == null) {
+            return false;
+        }
+        System.arraycopy(cachedChunk, 0, chunk, 0, cachedChunk.length);
+        return true;
+    }
+
+    /**
+     * @return The chunk from chunksCache, fetched from the backend outside the lock if needed, or null
+     */
+    @Nullable
+    private byte[] cachedChunk(int key) {
+        synchronized (this) {
+            final byte[] chunk = chunksCache.get(key);
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        final Optional<String> storedChunk = retrieveAggregatedBlocks(key);
+        final byte[] chunk = storedChunk.isPresent() ? Base64.getDecoder().decode(storedChunk.get()) : null;
+        synchronized (this) {
+            if (chunk == null) {
+                negativeCache.add(key);
+            } else {
+                chunksCache.put(key, chunk);
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Replace the write buffer of a position by an empty one, and move the counter to the next key of the position.
+     * Must be called under the lock. The buffer stays readable in flushingBuffers until store() is called.
      * @param position Position in [0; (stripeSize + paritySize)].
+     * @return The buffer detached, to store outside the lock under the key it had, or null if it was empty
      */
-    private void flush(int position) {
-        String aggregatedBlocks = BlocksContainer.toString(writeBuffers[position]);
+    @Nullable
+    private BlocksContainer detach(int position) {
+        final BlocksContainer container = writeBuffers[position];
+        if (container.isEmpty()) {
+            // No key was given for the current container yet
+            return null;
+        }
         writeBuffers[position] = new BlocksContainer(bufferSize);
-        final int counter = counters[position];
-        final int redisKey = counter / bufferSize;
-        storeAggregatedBlocks(redisKey, aggregatedBlocks);
+        final int redisKey = counters[position] / bufferSize;
+        flushingBuffers.put(redisKey, container);
 
         counters[position] = redisKey * bufferSize + totalSize * bufferSize;
+        return container;
+    }
+
+    /**
+     * Write a buffer detached by detach() to the key-value store, outside the lock
+     */
+    private void store(int redisKey, BlocksContainer container) {
+        try {
+            storeAggregatedBlocks(redisKey, BlocksContainer.toString(container));
+        } finally {
+            synchronized (this) {
+                flushingBuffers.remove(redisKey);
+                // Wakes up the flushAll() waiting for this buffer
+                notifyAll();
+            }
+        }
     }
 
     /**
@@ -154,19 +340,24 @@ public abstract class StorageBackend {
      */
     public boolean isBlockAvailable(int key) {
         int redisKey = key / bufferSize;
-        if (positiveCache.contains(redisKey)) {
-            return true;
-        } else if (negativeCache.contains(redisKey)) {
-            return false;
-        } else {
-            if (isAggregatedBlockAvailable(redisKey)) {
-                positiveCache.add(redisKey);
+        synchronized (this) {
+            // Not in the key-value store yet, which must not cache it as unavailable
+            if (unflushedContainer(key) != null || positiveCache.contains(redisKey)) {
                 return true;
+            } else if (negativeCache.contains(redisKey)) {
+                return false;
+            }
+        }
+        // Asked outside the lock, like the fetches
+        final boolean available = isAggregatedBlockAvailable(redisKey);
+        synchronized (this) {
+            if (available) {
+                positiveCache.add(redisKey);
             } else {
                 negativeCache.add(redisKey);
-                return false;
             }
         }
+        return available;
     }
 
     /**
@@ -203,10 +394,22 @@ public abstract class StorageBackend {
      * @param totalSize The total size (stripe size + parity size)
      */
     public void defineTotalSize(int totalSize) {
+        defineTotalSize(totalSize, (int) Math.ceil(FUSE_READ_SIZE / (double) totalSize));
+    }
+
+    /**
+     * Set the total size (stripe size + parity size) to use, and the number of blocks aggregated under each key.
+     * This method, or defineTotalSize(int), MUST be called before any usage of the object.
+     * @param totalSize The total size (stripe size + parity size)
+     * @param bufferSize The number of blocks aggregated under each key, 1 to store chunks
+     */
+    public synchronized void defineTotalSize(int totalSize, int bufferSize) {
         this.totalSize = totalSize;
+        this.bufferSize = bufferSize;
         writeBuffers = new BlocksContainer[totalSize];
         counters = new int[totalSize];
-        bufferSize = (int) Math.ceil(FUSE_READ_SIZE / (double) totalSize);
+        lastContainers = new BlocksContainer[totalSize];
+        lastRedisKeys = new int[totalSize];
 
         for (int i = 0; i < totalSize; i++) {
             writeBuffers[i] = new BlocksContainer(bufferSize);
@@ -215,19 +418,48 @@ public abstract class StorageBackend {
     }
 
     /**
-     * Force write all temporary blocks to the storage backend.
+     * Force write all temporary blocks to the storage backend. The buffers are stored outside the lock, and the call
+     * returns once the buffers which other threads were storing are stored too.
      */
     public void flushAll() {
+        final int[] redisKeys = new int[totalSize];
+        final BlocksContainer[] containers = new BlocksContainer[totalSize];
+        final int[] othersKeys;
+        synchronized (this) {
+            othersKeys = flushingBuffers.keySet().stream().mapToInt(Integer::intValue).toArray();
+            for (int i = 0; i < totalSize; i++) {
+                redisKeys[i] = counters[i] / bufferSize;
+                containers[i] = detach(i);
+            }
+        }
         for (int i = 0; i < totalSize; i++) {
-            flush(i);
+            if (containers[i] != null) {
+                store(redisKeys[i], containers[i]);
+            }
+        }
+        synchronized (this) {
+            for (int redisKey : othersKeys) {
+                while (flushingBuffers.containsKey(redisKey)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
         }
     }
 
     /**
      * Clear all caches. Useful between two runs of a benchmark.
      */
-    public void clearReadCache() {
+    public synchronized void clearReadCache() {
         readCache.clear();
+        chunksCache.clear();
+        if (lastContainers != null) {
+            Arrays.fill(lastContainers, null);
+        }
         positiveCache.clear();
         negativeCache.clear();
     }
@@ -3,23 +3,42 @@ package ch.unine.vauchers.erasuretester.erasure;
 import ch.unine.vauchers.erasuretester.backend.FileMetadata;
 import ch.unine.vauchers.erasuretester.backend.StorageBackend;
 import ch.unine.vauchers.erasuretester.erasure.codes.ErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.ErrorCorrectingCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReplicationCode;
 import ch.unine.vauchers.erasuretester.erasure.codes.SimpleRegeneratingCode;
 import ch.unine.vauchers.erasuretester.erasure.codes.TooManyErasedLocations;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.Optional;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Stream;
+import java.util.stream.IntStream;
 
 /**
  * Intermediate layer between the frontend, the storage backend and erasure coding.
+ * By default, each block holds one symbol of the code: one byte of the file for 8-bit symbols, two consecutive bytes
+ * (most significant first) for 16-bit symbols.
+ * <br/>
+ * With a larger block size, each block is a chunk of blockSize consecutive bytes of the file, and a stripe holds
+ * stripeSize chunks. The chunks of a stripe are coded at once with the bulk methods of the code, and each one is
+ * stored under a single key, so that the cost per byte of the code, the metadata and the backend is divided by the
+ * block size.
  */
 public class FileEncoderDecoder {
     @NotNull
@@ -29,24 +48,53 @@ public class FileEncoderDecoder {
     protected final Logger log = Logger.getLogger(FileEncoderDecoder.class.getName());
     protected final int totalSize;
 
-    // Field used in decode/encode methods, declared globally for better performance
-    protected final IntList erasedBlocksIndices;
-    protected final int[] stripeBuffer;
-    protected final int[] parityBuffer;
-    protected final int[] dataBuffer;
+    // The buffers used in decode/encode methods, allocated once per thread for better performance
+    private final ThreadLocal<StripeBuffers> threadBuffers;
+    // Striped locks of the files: the reads of a file share its lock, writes and repairs take it exclusively
+    private static final int FILE_LOCK_STRIPES = 64;
+    private final ReadWriteLock[] fileLocks;
     protected final int stripeSize;
     protected final int paritySize;
+    protected final int bytesPerSymbol;
+    // Number of file bytes held by each block, and whether blocks are chunks of several symbols
+    protected final int blockSize;
+    protected final boolean chunked;
+    // Number of file bytes held by the data blocks of a stripe
+    protected final int stripeBytes;
+    // Verify mode, see setVerifyReads, and the code correcting the reads, null if the code cannot
+    private volatile boolean verifyReads;
+    @Nullable
+    private final ErrorCorrectingCode errorCorrectingCode;
+    // Pipelined mode, see setPipeline: the pool coding the stripes, or null, and the max number of stripes in flight
+    private volatile ExecutorService pipelinePool;
+    private volatile int pipelineDepth;
+    // Write-back mode, see setWriteBack, and the stripe of each file whose writes are not encoded yet
+    private volatile boolean writeBack;
+    private final ConcurrentHashMap<String, PendingStripe> pendingStripes = new ConcurrentHashMap<>();
+    // The stripes of a ReplicationCode are read and repaired by copying a replica, without decoding
+    private final boolean replicated;
 
     private enum Modes {
         READ_FILE, WRITE_FILE
     }
 
     /**
-     * Constructor
+     * Constructor, with one symbol per block
      * @param erasureCode The erasure coding implementation to use
      * @param storageBackend The storage backend implementation to use
      */
     public FileEncoderDecoder(@NotNull ErasureCode erasureCode, @NotNull StorageBackend storageBackend) {
+        this(erasureCode, storageBackend, 0);
+    }
+
+    /**
+     * Constructor
+     * @param erasureCode The erasure coding implementation to use
+     * @param storageBackend The storage backend implementation to use
+     * @param blockSize The number of bytes of the file held by each block, a multiple of the bytes of a symbol.
+     *                  Blocks of several symbols are chunks, see the class description. 0 for one symbol per block.
+     */
+    public FileEncoderDecoder(@NotNull ErasureCode erasureCode, @NotNull StorageBackend storageBackend, int blockSize) {
         if (erasureCode instanceof SimpleRegeneratingCode && !(this instanceof SimpleRegeneratingFileEncoderDecoder)) {
             throw new IllegalArgumentException("SimpleRegeneratingCode needs a special FileEncoderDecoder");
         }
@@ -54,21 +102,141 @@ public class FileEncoderDecoder {
         this.erasureCode = erasureCode;
         this.storageBackend = storageBackend;
 
-        // Only works with bytes
-        assert(erasureCode.symbolSize() == 8);
+        // Symbols are made of whole bytes
+        if (erasureCode.symbolSize() % 8 != 0) {
+            throw new IllegalArgumentException("Unsupported symbol size " + erasureCode.symbolSize());
+        }
+        bytesPerSymbol = erasureCode.symbolSize() / 8;
+        if (blockSize < 0 || blockSize % bytesPerSymbol != 0) {
+            throw new IllegalArgumentException("Block size " + blockSize + " is not a multiple of the symbol size");
+        }
+        this.blockSize = blockSize == 0 ? bytesPerSymbol : blockSize;
+        chunked = this.blockSize > bytesPerSymbol;
         stripeSize = erasureCode.stripeSize();
+        stripeBytes = stripeSize * this.blockSize;
         paritySize = erasureCode.paritySize();
         totalSize = stripeSize + paritySize;
-        storageBackend.defineTotalSize(totalSize);
+        if (chunked) {
+            storageBackend.defineTotalSize(totalSize, 1);
+        } else {
+            storageBackend.defineTotalSize(totalSize);
+        }
+
+        threadBuffers = ThreadLocal.withInitial(() -> new StripeBuffers(stripeSize, paritySize, chunked ? this.blockSize : 0));
+        fileLocks = new ReadWriteLock[FILE_LOCK_STRIPES];
+        for (int i = 0; i < FILE_LOCK_STRIPES; i++) {
+            fileLocks[i] = new ReentrantReadWriteLock();
+        }
+        replicated = erasureCode instanceof ReplicationCode;
+        errorCorrectingCode = erasureCode instanceof ErrorCorrectingCode ? (ErrorCorrectingCode) erasureCode : null;
+    }
+
+    /**
+     * In verify mode, reads check every stripe against its parity, to find the blocks which are available but hold a
+     * wrong value, e.g. stale values returned after a failover. The corrupted blocks are corrected in the result, and
+     * written back to storage. All the available blocks of a stripe are then read, instead of only the data blocks.
+     * @param verifyReads Whether reads are verified
+     * @throws IllegalArgumentException If the erasure code is not an {@link ErrorCorrectingCode}
+     */
+    public void setVerifyReads(boolean verifyReads) {
+        if (verifyReads && errorCorrectingCode == null) {
+            throw new IllegalArgumentException(erasureCode.getClass().getSimpleName() + " cannot verify reads");
+        }
+        this.verifyReads = verifyReads;
+    }
+
+    /**
+     * In pipelined mode, the stripes of a read or a write are coded by the tasks of a pool, up to depth stripes at
+     * once: the blocks of the next stripes are fetched while a stripe is decoded, and consecutive stripes are encoded
+     * in parallel. Each stripe is copied from or to its own range of the buffer, so that the bytes stay in order.
+     * The operations on a single stripe are coded by the calling thread.
+     * @param pool The pool running the stripes, with at least depth threads to reach the depth. null to code the
+     *             stripes one after another, which is the default.
+     * @param depth The max number of stripes in flight, at least 1
+     */
+    public void setPipeline(@Nullable ExecutorService pool, int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Invalid pipeline depth " + depth);
+        }
+        pipelineDepth = depth;
+        pipelinePool = pool;
+    }
+
+    /**
+     * In write-back mode, the writes which cover part of a stripe are buffered instead of being encoded: the dirty
+     * bytes of the last stripe written are kept for each file, and the stripe is only encoded once it is entirely
+     * dirty, a write goes to another stripe or a range that is not contiguous with the dirty one, or on flushWrites.
+     * Small sequential writes then encode each stripe once, instead of once per write. Reads see the buffered bytes,
+     * but the blocks in storage miss them until the stripe is encoded. The metadata of a write which is only buffered
+     * is not stored either, until a stripe of the file is encoded.
+     * Turning the mode off encodes the stripes buffered so far.
+     * @param writeBack Whether partial stripes are buffered
+     * @see #flushWrites(String)
+     * @see #flushIdleWrites(long)
+     */
+    public void setWriteBack(boolean writeBack) {
+        this.writeBack = writeBack;
+        if (!writeBack) {
+            flushAllWrites();
+        }
+    }
+
+    /**
+     * Encode the stripe of a file whose writes are buffered in write-back mode, if any, e.g. when the file is flushed
+     * or closed.
+     * @param path String uniquely identifying a file
+     */
+    public void flushWrites(String path) {
+        flushWrites(path, 0);
+    }
+
+    /**
+     * Encode the buffered stripes of all files.
+     */
+    public void flushAllWrites() {
+        flushIdleWrites(0);
+    }
+
+    /**
+     * Encode the buffered stripes which were not written for some time, so that they do not stay out of storage while
+     * their file is open.
+     * @param idleMillis The time since the last write of a stripe, in milliseconds
+     */
+    public void flushIdleWrites(long idleMillis) {
+        for (String path : pendingStripes.keySet()) {
+            flushWrites(path, idleMillis);
+        }
+    }
 
-        erasedBlocksIndices = new IntArrayList();
-        stripeBuffer = new int[stripeSize];
-        parityBuffer = new int[paritySize];
-        dataBuffer = new int[totalSize];
+    private void flushWrites(String path, long idleMillis) {
+        final Lock lock = fileLock(path).writeLock();
+        lock.lock();
+        try {
+            final PendingStripe pending = pendingStripes.get(path);
+            if (pending == null || System.nanoTime() - pending.lastWrite < TimeUnit.MILLISECONDS.toNanos(idleMillis)) {
+                return;
+            }
+            pendingStripes.remove(path);
+            if (pending.isEmpty() && !pending.metadataDirty) {
+                return;
+            }
+            final Optional<FileMetadata> metadata = pending.metadata != null ? Optional.of(pending.metadata) :
+                    storageBackend.getFileMetadata(path);
+            metadata.ifPresent(m -> {
+                if (!pending.isEmpty()) {
+                    encodePending(threadBuffers.get(), m.getBlockKeys().get(), pending);
+                }
+                storageBackend.setFileMetadata(path, m);
+                storageBackend.flushAll();
+            });
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Read a previously stored file from storage, and decode it
+     * Read a previously stored file from storage, and decode it.
+     * Reads of the same file run concurrently, except in verify mode, and so do the reads and writes of different files.
      * @param path String uniquely identifying a file
      * @param size How much bytes of contents to read
      * @param offset At which byte index the reading has to start
@@ -78,17 +246,33 @@ public class FileEncoderDecoder {
      * @throws TooManyErasedLocations Due to too many unavailable blocks, the contents can not be retrieved.
      */
     public void readFile(final String path, final int size, final int offset, @NotNull final ByteBuffer outBuffer) throws TooManyErasedLocations {
-        log.info("Reading the file at " + path);
-
-        final FileMetadata metadata = storageBackend.getFileMetadata(path)
-                .orElseGet(() -> new FileMetadata().setContentsSize(0));
-        final int contentsSize = Math.min(metadata.getContentsSize() - offset, size);
-        if (contentsSize <= 0) {
-            return;
+        if (log.isLoggable(Level.INFO)) {
+            log.info("Reading the file at " + path);
         }
-        final IntList allBlockKeys = metadata.getBlockKeys().get();
 
-        iterate(contentsSize, offset, outBuffer, allBlockKeys, Modes.READ_FILE);
+        // Verified reads write the corrected blocks back
+        final Lock lock = verifyReads ? fileLock(path).writeLock() : fileLock(path).readLock();
+        lock.lock();
+        try {
+            final FileMetadata metadata = currentMetadata(path)
+                    .orElseGet(() -> new FileMetadata().setContentsSize(0));
+            final int contentsSize = Math.min(metadata.getContentsSize() - offset, size);
+            if (contentsSize <= 0) {
+                return;
+            }
+            final IntList allBlockKeys = metadata.getBlockKeys().get();
+            final StripeBuffers buffers = threadBuffers.get();
+            buffers.blocksCorrected = false;
+
+            iterate(buffers, contentsSize, offset, outBuffer, allBlockKeys, Modes.READ_FILE, pendingStripes.get(path));
+
+            if (buffers.blocksCorrected) {
+                storageBackend.setFileMetadata(path, metadata);
+                storageBackend.flushAll();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -99,30 +283,62 @@ public class FileEncoderDecoder {
      * @param contents The data to write into the file. The buffer will be read starting at its current position.
      */
     public void writeFile(String path, int size, int offset, @NotNull ByteBuffer contents) {
-        log.info("Writing the file at " + path);
+        if (log.isLoggable(Level.INFO)) {
+            log.info("Writing the file at " + path);
+        }
 
-        final FileMetadata metadata = storageBackend.getFileMetadata(path).orElseGet(FileMetadata::new);
-        final int iterationSize = Math.min(contents.limit(), size);
-        final int oldContentSize = metadata.getContentsSize();
-        final int contentsSize = Math.max(iterationSize + offset, oldContentSize);
-        metadata.setContentsSize(contentsSize);
-        IntArrayList blockKeys = (IntArrayList) metadata.getBlockKeys().orElseGet(IntArrayList::new);
+        final Lock lock = fileLock(path).writeLock();
+        lock.lock();
+        try {
+            final FileMetadata metadata = currentMetadata(path).orElseGet(FileMetadata::new);
+            final int iterationSize = Math.min(contents.limit(), size);
+            final int oldContentSize = metadata.getContentsSize();
+            final int contentsSize = Math.max(iterationSize + offset, oldContentSize);
+            metadata.setContentsSize(contentsSize);
+            IntArrayList blockKeys = (IntArrayList) metadata.getBlockKeys().orElseGet(IntArrayList::new);
 
-        final int nextBoundary = nextBoundary(contentsSize);
-        blockKeys.ensureCapacity(nextBoundary);
+            final int nextBoundary = nextBoundary(contentsSize);
+            blockKeys.ensureCapacity(nextBoundary);
 
-        for (int i = blockKeys.size(); i < nextBoundary; i++) {
-            // Grow the blockKeys list to fit the size/offset given in parameter
-            blockKeys.add(-1);
-        }
+            for (int i = blockKeys.size(); i < nextBoundary; i++) {
+                // Grow the blockKeys list to fit the size/offset given in parameter
+                blockKeys.add(-1);
+            }
 
-        try {
-            iterate(iterationSize, offset, contents, blockKeys, Modes.WRITE_FILE);
-        } catch (TooManyErasedLocations ignored) {} // Will never happen
+            final StripeBuffers buffers = threadBuffers.get();
+            buffers.stripesWritten = false;
+            final PendingStripe pending;
+            if (writeBack) {
+                pending = pendingStripes.computeIfAbsent(path, p -> new PendingStripe(stripeBytes));
+            } else {
+                // A stripe buffered while write-back was being turned off is encoded before the write
+                final PendingStripe leftover = pendingStripes.remove(path);
+                if (leftover != null && !leftover.isEmpty()) {
+                    encodePending(buffers, blockKeys, leftover);
+                }
+                pending = null;
+            }
+            try {
+                iterate(buffers, iterationSize, offset, contents, blockKeys, Modes.WRITE_FILE, pending);
+            } catch (TooManyErasedLocations ignored) {} // Will never happen
 
-        metadata.setBlockKeys(blockKeys);
-        storageBackend.setFileMetadata(path, metadata);
-        storageBackend.flushAll();
+            metadata.setBlockKeys(blockKeys);
+            if (pending != null) {
+                pending.metadata = metadata;
+            }
+            if (pending == null || buffers.stripesWritten) {
+                storageBackend.setFileMetadata(path, metadata);
+                storageBackend.flushAll();
+                if (pending != null) {
+                    pending.metadataDirty = false;
+                }
+            } else {
+                // Only buffered: stored with the next stripe encoded
+                pending.metadataDirty = true;
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -131,7 +347,23 @@ public class FileEncoderDecoder {
      * @return The size of the contents of the file, in bytes
      */
     public int sizeOfFile(String path) {
-        return storageBackend.getFileMetadata(path).orElse(FileMetadata.EMPTY_METADATA).getContentsSize();
+        final Lock lock = fileLock(path).readLock();
+        lock.lock();
+        try {
+            return currentMetadata(path).orElse(FileMetadata.EMPTY_METADATA).getContentsSize();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The metadata of a file, which is ahead of the stored one while its writes are only buffered in
+     * write-back mode. Called under the lock of the file.
+     */
+    private Optional<FileMetadata> currentMetadata(String path) {
+        final PendingStripe pending = pendingStripes.get(path);
+        return pending != null && pending.metadata != null ? Optional.of(pending.metadata) :
+                storageBackend.getFileMetadata(path);
     }
 
     /**
@@ -140,11 +372,20 @@ public class FileEncoderDecoder {
      * @param size The new size of the file
      */
     public void truncate(final String filepath, final int size) {
-        storageBackend.getFileMetadata(filepath).ifPresent(metadata -> {
-            final int newSize = Math.min(metadata.getContentsSize(), size);
-            metadata.setContentsSize(newSize);
-            metadata.getBlockKeys().ifPresent(integers -> integers.size(newSize));
-        });
+        final Lock lock = fileLock(filepath).writeLock();
+        lock.lock();
+        try {
+            // The lock is reentrant
+            flushWrites(filepath);
+            storageBackend.getFileMetadata(filepath).ifPresent(metadata -> {
+                final int newSize = Math.min(metadata.getContentsSize(), size);
+                metadata.setContentsSize(newSize);
+                // The keys of the stripes holding the remaining bytes
+                metadata.getBlockKeys().ifPresent(integers -> integers.size(nextBoundary(newSize)));
+            });
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -154,10 +395,26 @@ public class FileEncoderDecoder {
      * @param path The path of the file to repair
      */
     public void repairFile(String path) {
-        storageBackend.getFileMetadata(path).ifPresent(this::repairFile);
+        final Lock lock = fileLock(path).writeLock();
+        lock.lock();
+        try {
+            flushWrites(path);
+            storageBackend.getFileMetadata(path).ifPresent(this::repairFile);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The lock of a file, shared with the files whose path falls in the same stripe of locks
+     */
+    private ReadWriteLock fileLock(String path) {
+        return fileLocks[Math.floorMod(path.hashCode(), FILE_LOCK_STRIPES)];
     }
 
     protected void repairFile(FileMetadata metadata) {
+        final StripeBuffers buffers = threadBuffers.get();
+        final BitSet erasedBlocks = buffers.erasedBlocks;
         metadata.getBlockKeys().ifPresent(blockKeys -> {
             final int nbKeys = blockKeys.size();
             assert nbKeys % totalSize == 0;
@@ -166,27 +423,29 @@ public class FileEncoderDecoder {
             for (int i = 0; i < nbStripes; i++) {
                 final int offset = i * totalSize;
                 final IntList subKeys = blockKeys.subList(offset, offset + totalSize);
-                final IntList availableBlocks = new IntArrayList(totalSize);
+                erasedBlocks.clear();
                 for (int j = 0; j < totalSize; j++) {
-                    if (storageBackend.isBlockAvailable(subKeys.getInt(j))) {
-                        availableBlocks.add(j);
+                    if (!storageBackend.isBlockAvailable(subKeys.getInt(j))) {
+                        erasedBlocks.set(j);
                     }
                 }
-                if (availableBlocks.size() < totalSize) {
-                    final IntList erasedBlocks = IntArrayList.wrap(fillNotToRead(availableBlocks));
+                if (replicated && !erasedBlocks.isEmpty()) {
+                    repairReplicas(buffers, subKeys, erasedBlocks);
+                } else if (chunked && !erasedBlocks.isEmpty()) {
+                    repairChunks(buffers, subKeys, erasedBlocks);
+                } else if (!erasedBlocks.isEmpty()) {
                     try {
-                        final IntList toReadForDecode = erasureCode.locationsToReadForDecode(erasedBlocks);
-                        toReadForDecode.sort(null);
+                        final DecodeSetup setup = decodeSetup(buffers, erasedBlocks);
+                        final int[] dataBuffer = buffers.dataBuffer;
                         Arrays.fill(dataBuffer, 0);
-                        for (Integer position : toReadForDecode) {
-                            dataBuffer[position] = storageBackend.retrieveBlock(subKeys.getInt(position)).orElse(0);
+                        for (int position : setup.locationsToRead) {
+                            storageBackend.retrieveBlock(subKeys.getInt(position), dataBuffer, position);
                         }
-                        final int[] erasedValues = new int[erasedBlocks.size()];
-                        erasureCode.decode(dataBuffer, erasedBlocks.toIntArray(), erasedValues, toReadForDecode.toIntArray(), fillNotToRead(toReadForDecode));
-                        for (int j = 0; j < erasedValues.length; j++) {
-                            final int position = erasedBlocks.get(j);
-                            final int restoredValue = erasedValues[j];
-                            final int blockKey = storageBackend.storeBlock(restoredValue, position);
+                        erasureCode.decode(dataBuffer, setup.erasedLocations, setup.erasedValues,
+                                setup.locationsToRead, setup.locationsNotToRead);
+                        for (int j = 0; j < setup.erasedValues.length; j++) {
+                            final int position = setup.erasedLocations[j];
+                            final int blockKey = storageBackend.storeBlock(setup.erasedValues[j], position);
                             subKeys.set(position, blockKey);
                         }
                     } catch (TooManyErasedLocations e) {
@@ -199,180 +458,776 @@ public class FileEncoderDecoder {
         });
     }
 
+    /**
+     * repairFile() for the chunks of a stripe.
+     */
+    private void repairChunks(StripeBuffers buffers, IntList blockKeys, BitSet erased) {
+        try {
+            final DecodeSetup setup = decodeSetup(buffers, erased);
+            for (int position : setup.locationsToRead) {
+                if (!storageBackend.retrieveChunk(blockKeys.getInt(position), buffers.chunks[position])) {
+                    Arrays.fill(buffers.chunks[position], (byte) 0);
+                }
+            }
+            erasureCode.decodeBulk(buffers.chunks, setup.erasedChunks, setup.erasedLocations, setup.locationsToRead,
+                    setup.locationsNotToRead);
+            for (int j = 0; j < setup.erasedChunks.length; j++) {
+                final int position = setup.erasedLocations[j];
+                blockKeys.set(position, storageBackend.storeChunk(setup.erasedChunks[j], position));
+            }
+        } catch (TooManyErasedLocations e) {
+            // log.warning("The file cannot be repaired");
+        }
+    }
+
+    /**
+     * Fast path of repairFile() for a ReplicationCode: the erased blocks are copies of any available one.
+     */
+    private void repairReplicas(StripeBuffers buffers, IntList blockKeys, BitSet erased) {
+        for (int i = totalSize - 1; i >= 0; i--) {
+            if (erased.get(i)) {
+                continue;
+            }
+            if (chunked) {
+                if (storageBackend.retrieveChunk(blockKeys.getInt(i), buffers.chunks[i])) {
+                    for (int position = erased.nextSetBit(0); position >= 0;
+                         position = erased.nextSetBit(position + 1)) {
+                        blockKeys.set(position, storageBackend.storeChunk(buffers.chunks[i], position));
+                    }
+                    return;
+                }
+                continue;
+            }
+            if (storageBackend.retrieveBlock(blockKeys.getInt(i), buffers.dataBuffer, i)) {
+                for (int position = erased.nextSetBit(0); position >= 0; position = erased.nextSetBit(position + 1)) {
+                    blockKeys.set(position, storageBackend.storeBlock(buffers.dataBuffer[i], position));
+                }
+                return;
+            }
+        }
+    }
+
     /**
      * Perform a repair operation on all files stored in the system.
      */
     public void repairAllFiles() {
         final Collection<String> filePaths = storageBackend.getAllFilePaths();
-        filePaths.stream()
-                .map(storageBackend::getFileMetadata)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .forEach(this::repairFile);
+        filePaths.forEach(this::repairFile);
     }
 
     /**
      * Internal operation. Correctly chunk the file.
+     * The stripes are read from or written to fileBuffer in place, from its position, with no intermediate buffer.
      * @param size The size of the read/write operation
      * @param offset The offset in the fileBuffer
+     * @param buffers The buffers of the current thread
      * @param fileBuffer The buffer to read from/write to
      * @param blockKeys The list of all block keys related to the file
      * @param mode Read or Write
+     * @param pending The stripe of the file buffered in write-back mode, null if there is none. Writes covering part of
+     *                a stripe are then buffered, and reads see the buffered bytes.
      * @throws TooManyErasedLocations
      */
-    private void iterate(int size, int offset, ByteBuffer fileBuffer, IntList blockKeys, Modes mode) throws TooManyErasedLocations {
+    private void iterate(StripeBuffers buffers, int size, int offset, ByteBuffer fileBuffer, IntList blockKeys, Modes mode,
+                         @Nullable PendingStripe pending) throws TooManyErasedLocations {
         final int firstLowerBoundary = previousBoundary(offset);
         final int lastLowerBoundary = previousBoundary(offset + size);
         final int blocksToDiscardBeginning = lowerBytesToDrop(offset);
         final int blocksToDiscardEnd = higherBytesToDrop(offset + size);
+        final ExecutorService pool = pipelinePool;
+        final Pipeline pipeline = pool != null && lastLowerBoundary > firstLowerBoundary ?
+                new Pipeline(pool, pipelineDepth, buffers) : null;
 
-        for (int i = firstLowerBoundary; i <= lastLowerBoundary; i += totalSize) {
-            int offsetPart = 0;
-            int sizePart = stripeSize;
-            if (i == firstLowerBoundary) {
-                offsetPart += blocksToDiscardBeginning;
-                sizePart -= blocksToDiscardBeginning;
-            } else if (i == lastLowerBoundary) {
-                if (blocksToDiscardEnd == 0) {
-                    break;
+        try {
+            for (int i = firstLowerBoundary; i <= lastLowerBoundary; i += totalSize) {
+                int offsetPart = 0;
+                int sizePart = stripeBytes;
+                if (i == firstLowerBoundary) {
+                    offsetPart += blocksToDiscardBeginning;
+                    sizePart -= blocksToDiscardBeginning;
+                }
+                if (i == lastLowerBoundary) {
+                    // The first stripe can also be the last one, when the operation does not reach the next boundary
+                    if (blocksToDiscardEnd == 0 && i != firstLowerBoundary) {
+                        break;
+                    } else {
+                        sizePart -= blocksToDiscardEnd;
+                    }
+                }
+
+                if (pending != null && mode == Modes.WRITE_FILE && sizePart < stripeBytes) {
+                    bufferPart(buffers, blockKeys, i, fileBuffer, sizePart, offsetPart, pending);
+                    continue;
+                } else if (pending != null && pending.holds(i)) {
+                    if (mode == Modes.READ_FILE) {
+                        readPending(buffers, blockKeys, i, fileBuffer, sizePart, offsetPart, pending);
+                        continue;
+                    }
+                    // The stripe is entirely overwritten
+                    pending.clear();
+                }
+                if (mode == Modes.WRITE_FILE) {
+                    buffers.stripesWritten = true;
+                }
+
+                if (pipeline != null) {
+                    pipeline.submit(blockKeys, i, fileBuffer, sizePart, offsetPart, mode);
+                } else if (mode == Modes.READ_FILE) {
+                    readPart(buffers, blockKeys, i, fileBuffer, sizePart, offsetPart);
+                } else if (mode == Modes.WRITE_FILE) {
+                    writePart(buffers, blockKeys, i, fileBuffer, sizePart, offsetPart);
+                }
+            }
+        } finally {
+            if (pipeline != null) {
+                pipeline.awaitAll();
+            }
+        }
+        if (pipeline != null) {
+            pipeline.throwFailure();
+        }
+    }
+
+    /**
+     * The stripes of an operation in pipelined mode, see setPipeline. Each stripe is a task coding it with the buffers
+     * of its worker thread, from or to a duplicate of the file buffer positioned at the range of the stripe.
+     */
+    private final class Pipeline {
+        private final ExecutorService pool;
+        private final int depth;
+        private final StripeBuffers callerBuffers;
+        // The stripes in flight, oldest first
+        private final ArrayDeque<Future<?>> stripes;
+        private Throwable failure;
+
+        private Pipeline(ExecutorService pool, int depth, StripeBuffers callerBuffers) {
+            this.pool = pool;
+            this.depth = depth;
+            this.callerBuffers = callerBuffers;
+            stripes = new ArrayDeque<>(depth);
+        }
+
+        /**
+         * Submit the task of a stripe, after waiting for the oldest stripe when depth stripes are in flight. The file
+         * buffer is moved past the range of the stripe.
+         */
+        void submit(IntList blockKeys, int first, ByteBuffer fileBuffer, int size, int offset, Modes mode) {
+            if (stripes.size() >= depth) {
+                await(stripes.poll());
+            }
+            if (failure != null) {
+                return;
+            }
+            final ByteBuffer stripeBuffer = fileBuffer.duplicate();
+            fileBuffer.position(Math.min(fileBuffer.position() + size, fileBuffer.limit()));
+            stripes.add(pool.submit(() -> {
+                final StripeBuffers buffers = threadBuffers.get();
+                if (mode == Modes.READ_FILE) {
+                    buffers.blocksCorrected = false;
+                    readPart(buffers, blockKeys, first, stripeBuffer, size, offset);
+                    if (buffers.blocksCorrected) {
+                        // Seen by the caller once the stripe is awaited
+                        callerBuffers.blocksCorrected = true;
+                    }
                 } else {
-                    sizePart -= blocksToDiscardEnd;
+                    writePart(buffers, blockKeys, first, stripeBuffer, size, offset);
                 }
+                return null;
+            }));
+        }
+
+        /**
+         * Wait for the stripes in flight, even after a failure, as they still use the buffers of the operation.
+         */
+        void awaitAll() {
+            while (!stripes.isEmpty()) {
+                await(stripes.poll());
             }
+        }
 
-            ByteBuffer buffer = fileBuffer.slice();
-            if (i < lastLowerBoundary) {
-                fileBuffer.position(fileBuffer.position() + sizePart);
+        private void await(Future<?> stripe) {
+            try {
+                stripe.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = e;
+                }
             }
-            final IntList keysSublist = blockKeys.subList(i, i + totalSize);
-            if (mode == Modes.READ_FILE) {
-                readPart(keysSublist, buffer, sizePart, offsetPart);
-            } else if (mode == Modes.WRITE_FILE) {
-                writePart(keysSublist, buffer, sizePart, offsetPart);
+        }
+
+        /**
+         * Throw the first failure of the stripes, if any.
+         */
+        void throwFailure() throws TooManyErasedLocations {
+            if (failure instanceof TooManyErasedLocations) {
+                throw (TooManyErasedLocations) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new RuntimeException(failure);
             }
         }
     }
 
-    private synchronized void readPart(IntList blockKeys, ByteBuffer outBuffer, int size, int offset) throws TooManyErasedLocations {
-        erasedBlocksIndices.clear();
+    /**
+     * Buffer size bytes of fileBuffer to the stripe whose keys start at first, from its byte offset, in write-back mode.
+     * The stripe buffered so far is encoded first if the bytes cannot be merged with its dirty range, and the stripe is
+     * encoded as soon as it is entirely dirty.
+     */
+    private void bufferPart(StripeBuffers buffers, IntList blockKeys, int first, ByteBuffer fileBuffer, int size, int offset,
+                            PendingStripe pending) {
+        // Only the bytes left in the buffer are written
+        final int length = Math.min(size, fileBuffer.remaining());
+        if (length <= 0) {
+            return;
+        }
+        if (!pending.isEmpty() && (pending.first != first || offset > pending.dirtyTo || offset + length < pending.dirtyFrom)) {
+            encodePending(buffers, blockKeys, pending);
+        }
+        fileBuffer.get(pending.bytes, offset, length);
+        if (pending.isEmpty()) {
+            pending.first = first;
+            pending.dirtyFrom = offset;
+            pending.dirtyTo = offset + length;
+        } else {
+            pending.dirtyFrom = Math.min(pending.dirtyFrom, offset);
+            pending.dirtyTo = Math.max(pending.dirtyTo, offset + length);
+        }
+        pending.lastWrite = System.nanoTime();
+        if (pending.dirtyFrom == 0 && pending.dirtyTo == stripeBytes) {
+            encodePending(buffers, blockKeys, pending);
+        }
+    }
 
-        final Iterator<Boolean> blocksAvailableIterator = blockKeys.stream().map(storageBackend::isBlockAvailable).iterator();
-        for (int i = 0; i < totalSize; i++) {
-            if (!blocksAvailableIterator.next()) {
-                erasedBlocksIndices.add(i);
+    /**
+     * Encode the dirty range of a buffered stripe, which is then empty.
+     */
+    private void encodePending(StripeBuffers buffers, IntList blockKeys, PendingStripe pending) {
+        final int length = pending.dirtyTo - pending.dirtyFrom;
+        writePart(buffers, blockKeys, pending.first,
+                ByteBuffer.wrap(pending.bytes, pending.dirtyFrom, length), length, pending.dirtyFrom);
+        pending.clear();
+        buffers.stripesWritten = true;
+    }
+
+    /**
+     * readPart() for the stripe buffered in write-back mode: the stored stripe is read, or zeros if none of its blocks
+     * is stored yet, then the buffered bytes of the range replace the stored ones.
+     */
+    private void readPending(StripeBuffers buffers, IntList blockKeys, int first, ByteBuffer outBuffer, int size, int offset,
+                             PendingStripe pending) throws TooManyErasedLocations {
+        final int start = outBuffer.position();
+        boolean stored = false;
+        for (int i = first; i < first + totalSize && !stored; i++) {
+            stored = blockKeys.getInt(i) != -1;
+        }
+        if (!stored) {
+            for (int b = 0; b < size; b++) {
+                outBuffer.put((byte) 0);
+            }
+        } else {
+            readPart(buffers, blockKeys, first, outBuffer, size, offset);
+        }
+        for (int b = Math.max(offset, pending.dirtyFrom); b < Math.min(offset + size, pending.dirtyTo); b++) {
+            outBuffer.put(start + b - offset, pending.bytes[b]);
+        }
+    }
+
+    /**
+     * Read the bytes [ offset, offset + size ) of the stripe whose keys start at first, to outBuffer.
+     */
+    private void readPart(StripeBuffers buffers, IntList blockKeys, int first, ByteBuffer outBuffer, int size, int offset) throws TooManyErasedLocations {
+        if (chunked) {
+            readChunks(buffers, blockKeys, first, outBuffer, size, offset);
+            return;
+        }
+        if (replicated) {
+            readReplica(buffers, blockKeys, first);
+        } else {
+            buffers.erasedBlocks.clear();
+            for (int i = 0; i < totalSize; i++) {
+                if (!storageBackend.isBlockAvailable(blockKeys.getInt(first + i))) {
+                    buffers.erasedBlocks.set(i);
+                }
             }
+
+            decodeFileData(buffers, blockKeys, first, buffers.erasedBlocks);
+        }
+
+        // Split the data symbols into the bytes of the file they hold, most significant byte first
+        for (int b = offset; b < offset + size; b++) {
+            final int symbol = buffers.dataBuffer[paritySize + b / bytesPerSymbol];
+            outBuffer.put((byte) (symbol >>> 8 * (bytesPerSymbol - 1 - b % bytesPerSymbol)));
         }
+    }
 
-        final Stream<Byte> partData = decodeFileData(blockKeys, erasedBlocksIndices);
+    /**
+     * Write size bytes of fileBuffer to the stripe whose keys start at first, from its byte offset.
+     */
+    private void writePart(StripeBuffers buffers, IntList blockKeys, int first, ByteBuffer fileBuffer, int size, int offset) {
+        if (chunked) {
+            writeChunks(buffers, blockKeys, first, fileBuffer, size, offset);
+            return;
+        }
+        if (updatePart(buffers, blockKeys, first, fileBuffer, size, offset)) {
+            return;
+        }
+        for (int i = 0; i < stripeSize; i++) {
+            final int firstByte = i * bytesPerSymbol;
+            final int endByte = firstByte + bytesPerSymbol;
+            buffers.stripeBuffer[i] = 0;
+            if (firstByte < offset || endByte > offset + size) { // Restore existing data
+                retrieveStoredBlock(blockKeys.getInt(first + i + paritySize), buffers.stripeBuffer, i);
+            }
+            buffers.stripeBuffer[i] = overwriteSymbol(buffers.stripeBuffer[i], i, fileBuffer, size, offset);
+        }
 
-        partData.skip(offset).limit(size).forEachOrdered(outBuffer::put);
+        erasureCode.encode(buffers.stripeBuffer, buffers.parityBuffer);
+
+        for (int i = 0; i < paritySize; i++) {
+            int key = storageBackend.storeBlock(buffers.parityBuffer[i], i);
+            blockKeys.set(first + i, key);
+        }
+        for (int i = 0; i < stripeSize; i++) {
+            int key = storageBackend.storeBlock(buffers.stripeBuffer[i], i + paritySize);
+            blockKeys.set(first + i + paritySize, key);
+        }
     }
 
-    private synchronized void writePart(IntList blockKeys, ByteBuffer fileBuffer, int size, int offset) {
+    /**
+     * readPart() for a stripe of chunks: the data chunks are read or decoded, then the bytes of the range are copied.
+     */
+    private void readChunks(StripeBuffers buffers, IntList blockKeys, int first, ByteBuffer outBuffer, int size, int offset) throws TooManyErasedLocations {
+        if (replicated) {
+            readReplicaChunk(buffers, blockKeys, first);
+        } else {
+            buffers.erasedBlocks.clear();
+            for (int i = 0; i < totalSize; i++) {
+                if (!storageBackend.isBlockAvailable(blockKeys.getInt(first + i))) {
+                    buffers.erasedBlocks.set(i);
+                }
+            }
+            decodeChunks(buffers, blockKeys, first, buffers.erasedBlocks);
+        }
+
+        for (int b = offset; b < offset + size; ) {
+            final int from = b % blockSize;
+            final int length = Math.min(blockSize - from, offset + size - b);
+            outBuffer.put(buffers.dataChunks[b / blockSize], from, length);
+            b += length;
+        }
+    }
+
+    /**
+     * writePart() for a stripe of chunks: the chunks which are not entirely overwritten are read, then the whole
+     * stripe is encoded in bulk.
+     */
+    private void writeChunks(StripeBuffers buffers, IntList blockKeys, int first, ByteBuffer fileBuffer, int size, int offset) {
         for (int i = 0; i < stripeSize; i++) {
-            if (i < offset || i >= offset + size) { // Restore existing data
-                final int key = blockKeys.getInt(i + paritySize);
-                if (key != -1) {
-                    stripeBuffer[i] = storageBackend.retrieveBlock(key).orElse(0);
-                } else {
-                    stripeBuffer[i] = 0;
+            final int firstByte = i * blockSize;
+            final int endByte = firstByte + blockSize;
+            if (firstByte < offset || endByte > offset + size) { // Restore existing data
+                if (!retrieveStoredChunk(blockKeys.getInt(first + i + paritySize), buffers.dataChunks[i])) {
+                    Arrays.fill(buffers.dataChunks[i], (byte) 0);
                 }
-            } else if (fileBuffer.hasRemaining()) {
-                stripeBuffer[i] = Byte.toUnsignedInt(fileBuffer.get());
             }
+            final int from = Math.max(firstByte, offset);
+            final int length = Math.min(Math.min(endByte, offset + size) - from, fileBuffer.remaining());
+            if (length > 0) {
+                fileBuffer.get(buffers.dataChunks[i], from - firstByte, length);
+            }
+        }
+
+        // The data chunks are stored first, as encodeBulk may modify its inputs
+        for (int i = 0; i < stripeSize; i++) {
+            blockKeys.set(first + i + paritySize, storageBackend.storeChunk(buffers.dataChunks[i], i + paritySize));
         }
+        erasureCode.encodeBulk(buffers.dataChunks, buffers.parityChunks);
+        for (int i = 0; i < paritySize; i++) {
+            blockKeys.set(first + i, storageBackend.storeChunk(buffers.parityChunks[i], i));
+        }
+    }
 
-        erasureCode.encode(stripeBuffer, parityBuffer);
+    /**
+     * Overwrite part of a stored stripe by updating its parity with the changes of the overwritten symbols, so that
+     * only these symbols and the parity are read and written.
+     * @return false if the full stripe has to be encoded instead: the stripe is new, some of the blocks needed are
+     * unavailable, or the write covers most of the stripe
+     */
+    private boolean updatePart(StripeBuffers buffers, IntList blockKeys, int first, ByteBuffer fileBuffer, int size, int offset) {
+        final int firstSymbol = offset / bytesPerSymbol;
+        final int endSymbol = (offset + size + bytesPerSymbol - 1) / bytesPerSymbol;
+        final int coveredSymbols = (offset + size) / bytesPerSymbol - (offset + bytesPerSymbol - 1) / bytesPerSymbol;
+        // The full encoding reads the symbols which are not entirely overwritten
+        if (endSymbol - firstSymbol + paritySize >= stripeSize - coveredSymbols) {
+            return false;
+        }
+        for (int i = 0; i < paritySize; i++) {
+            if (!retrieveStoredBlock(blockKeys.getInt(first + i), buffers.parityBuffer, i)) {
+                return false;
+            }
+        }
+        for (int i = firstSymbol; i < endSymbol; i++) {
+            if (!retrieveStoredBlock(blockKeys.getInt(first + i + paritySize), buffers.stripeBuffer, i)) {
+                return false;
+            }
+        }
 
+        for (int i = firstSymbol; i < endSymbol; i++) {
+            final int symbol = overwriteSymbol(buffers.stripeBuffer[i], i, fileBuffer, size, offset);
+            erasureCode.updateParity(i, buffers.stripeBuffer[i], symbol, buffers.parityBuffer);
+            blockKeys.set(first + i + paritySize, storageBackend.storeBlock(symbol, i + paritySize));
+        }
         for (int i = 0; i < paritySize; i++) {
-            int key = storageBackend.storeBlock(parityBuffer[i], i);
-            blockKeys.set(i, key);
+            blockKeys.set(first + i, storageBackend.storeBlock(buffers.parityBuffer[i], i));
         }
-        for (int i = 0; i < stripeSize; i++) {
-            int key = storageBackend.storeBlock(stripeBuffer[i], i + paritySize);
-            blockKeys.set(i + paritySize, key);
+        return true;
+    }
+
+    /**
+     * Replace the bytes of a symbol which are in the written range of the stripe by the next bytes of the file.
+     */
+    private int overwriteSymbol(int symbol, int position, ByteBuffer fileBuffer, int size, int offset) {
+        final int firstByte = position * bytesPerSymbol;
+        final int endByte = firstByte + bytesPerSymbol;
+        for (int b = Math.max(firstByte, offset); b < Math.min(endByte, offset + size) && fileBuffer.hasRemaining(); b++) {
+            final int shift = 8 * (endByte - 1 - b);
+            symbol = symbol & ~(0xFF << shift) | Byte.toUnsignedInt(fileBuffer.get()) << shift;
+        }
+        return symbol;
+    }
+
+    /**
+     * Retrieve a block which may not be stored yet (key -1) to blocks[index].
+     * @return false if the block is unavailable
+     */
+    private boolean retrieveStoredBlock(int key, int[] blocks, int index) {
+        return key != -1 && storageBackend.retrieveBlock(key, blocks, index);
+    }
+
+    /**
+     * Copy a chunk which may not be stored yet (key -1) to a buffer.
+     * @return false if the chunk is unavailable
+     */
+    private boolean retrieveStoredChunk(int key, byte[] chunk) {
+        return key != -1 && storageBackend.retrieveChunk(key, chunk);
+    }
+
+    /**
+     * Fast path of the reads of a ReplicationCode: the stripe is the first replica retrieved, the original first, to
+     * the data location of dataBuffer. The availability of the blocks is not checked beforehand, and nothing is
+     * decoded.
+     */
+    private void readReplica(StripeBuffers buffers, IntList blockKeys, int first) throws TooManyErasedLocations {
+        for (int i = totalSize - 1; i >= 0; i--) {
+            if (retrieveStoredBlock(blockKeys.getInt(first + i), buffers.dataBuffer, paritySize)) {
+                return;
+            }
+        }
+        throw new TooManyErasedLocations("All the " + totalSize + " replicas are unavailable");
+    }
+
+    /**
+     * readReplica() for chunks: the first replica retrieved is copied to the data chunk.
+     */
+    private void readReplicaChunk(StripeBuffers buffers, IntList blockKeys, int first) throws TooManyErasedLocations {
+        for (int i = totalSize - 1; i >= 0; i--) {
+            if (retrieveStoredChunk(blockKeys.getInt(first + i), buffers.dataChunks[0])) {
+                return;
+            }
         }
+        throw new TooManyErasedLocations("All the " + totalSize + " replicas are unavailable");
     }
 
-    protected Stream<Byte> decodeFileData(IntList blockKeys, IntList erasedIndices) throws TooManyErasedLocations {
-        IntList toReadForDecode;
+    /**
+     * Read the chunks of a stripe and decode its data chunks in bulk, to dataChunks.
+     * @param erased (in/out) The unavailable chunks, completed with the chunks which fail to be retrieved
+     */
+    private void decodeChunks(StripeBuffers buffers, IntList blockKeys, int first, BitSet erased) throws TooManyErasedLocations {
+        if (verifyReads) {
+            verifyChunks(buffers, blockKeys, first, erased);
+            return;
+        }
+        DecodeSetup setup;
         boolean retry;
         do {
             retry = false;
-            toReadForDecode = erasureCode.locationsToReadForDecode(erasedIndices);
-            toReadForDecode.sort(null);
-
-            for (int index : toReadForDecode) {
-                final int key = blockKeys.getInt(index);
-                Optional<Integer> block = storageBackend.retrieveBlock(key);
-                if (block.isPresent()) {
-                    dataBuffer[index] = block.get();
-                } else {
-                    erasedIndices.add(index);
+            setup = decodeSetup(buffers, erased);
+
+            for (int index : setup.blocksToRead) {
+                if (!retrieveStoredChunk(blockKeys.getInt(first + index), buffers.chunks[index])) {
+                    erased.set(index);
                     retry = true;
                     break;
                 }
             }
         } while (retry);
 
-        int[] indicesToRecover = erasedIndices.parallelStream().filter(index -> index >= paritySize).mapToInt(Integer::intValue).toArray();
+        final int[] decodedLocations = decodesAllErasedLocations() ? setup.erasedLocations : setup.erasedDataLocations;
+        final byte[][] decodedChunks = decodesAllErasedLocations() ? setup.erasedChunks : setup.erasedDataChunks;
+        erasureCode.decodeBulk(buffers.chunks, decodedChunks, decodedLocations, setup.locationsToRead,
+                setup.locationsNotToRead);
 
-        final int[] recoveredValues = new int[indicesToRecover.length];
-        erasureCode.decode(dataBuffer, indicesToRecover, recoveredValues, convertToIntArray(toReadForDecode), fillNotToRead(toReadForDecode));
+        // Restore erased chunks
+        for (int i = 0; i < decodedLocations.length; i++) {
+            System.arraycopy(decodedChunks[i], 0, buffers.chunks[decodedLocations[i]], 0, blockSize);
+        }
+    }
 
-        // Restore erased values
-        for (int i = 0; i < recoveredValues.length; i++) {
-            dataBuffer[indicesToRecover[i]] = recoveredValues[i];
+    /**
+     * Whether the chunks read are decoded for all the erased locations, rather than for the erased data locations
+     * only: the decoding of some codes depends on the whole erasure pattern.
+     */
+    protected boolean decodesAllErasedLocations() {
+        return false;
+    }
+
+    /**
+     * verifyFileData() for chunks, see {@link ErrorCorrectingCode#correctErrorsBulk(byte[][], BitSet, BitSet)}.
+     * @param erased (in/out) The unavailable chunks, completed with the chunks which fail to be retrieved
+     */
+    private void verifyChunks(StripeBuffers buffers, IntList blockKeys, int first, BitSet erased) throws TooManyErasedLocations {
+        for (int i = 0; i < totalSize; i++) {
+            if (!erased.get(i) && !retrieveStoredChunk(blockKeys.getInt(first + i), buffers.chunks[i])) {
+                erased.set(i);
+            }
         }
 
-        return Arrays.stream(dataBuffer).skip(paritySize).boxed().map(Integer::byteValue);
+        if (!errorCorrectingCode.correctErrorsBulk(buffers.chunks, erased, buffers.corruptedChunks)) {
+            throw new TooManyErasedLocations("Locations " + erased + ", and too many corrupted ones");
+        }
+        for (int position = buffers.corruptedChunks.nextSetBit(0); position >= 0;
+             position = buffers.corruptedChunks.nextSetBit(position + 1)) {
+            log.warning("Corrupted chunk " + blockKeys.getInt(first + position) + " at location " + position + " corrected");
+            blockKeys.set(first + position, storageBackend.storeChunk(buffers.chunks[position], position));
+            buffers.blocksCorrected = true;
+        }
     }
 
-    protected int[] fillNotToRead(IntList toReadForDecode) {
-        final int trSize = toReadForDecode.size();
-        int[] notToRead = new int[totalSize - trSize];
+    /**
+     * Read the blocks of a stripe and decode its message, to the data locations of dataBuffer.
+     * @param first The index of the first key of the stripe in blockKeys
+     * @param erased (in/out) The unavailable blocks, completed with the blocks which fail to be retrieved
+     */
+    protected void decodeFileData(StripeBuffers buffers, IntList blockKeys, int first, BitSet erased) throws TooManyErasedLocations {
+        if (verifyReads) {
+            verifyFileData(buffers, blockKeys, first, erased);
+            return;
+        }
+        DecodeSetup setup;
+        boolean retry;
+        do {
+            retry = false;
+            setup = decodeSetup(buffers, erased);
 
-        int ntrIndex = 0;
-        int trIndex = 0;
-        for (int globIndex = 0; globIndex < totalSize; globIndex++) {
-            if (trIndex < trSize && toReadForDecode.getInt(trIndex) == globIndex) {
-                trIndex++;
-            } else {
-                notToRead[ntrIndex++] = globIndex;
+            for (int index : setup.blocksToRead) {
+                if (!storageBackend.retrieveBlock(blockKeys.getInt(first + index), buffers.dataBuffer, index)) {
+                    erased.set(index);
+                    retry = true;
+                    break;
+                }
             }
+        } while (retry);
+
+        erasureCode.decode(buffers.dataBuffer, setup.erasedDataLocations, setup.erasedDataValues, setup.locationsToRead,
+                setup.locationsNotToRead);
+
+        // Restore erased values
+        for (int i = 0; i < setup.erasedDataValues.length; i++) {
+            buffers.dataBuffer[setup.erasedDataLocations[i]] = setup.erasedDataValues[i];
         }
+    }
 
-        return notToRead;
+    /**
+     * Read all the available blocks of a stripe, decode its erased blocks and correct its corrupted blocks. The
+     * corrected blocks are stored again, under new keys.
+     * @param erased (in/out) The unavailable blocks, completed with the blocks which fail to be retrieved
+     */
+    private void verifyFileData(StripeBuffers buffers, IntList blockKeys, int first, BitSet erased) throws TooManyErasedLocations {
+        for (int i = 0; i < totalSize; i++) {
+            if (erased.get(i) || !storageBackend.retrieveBlock(blockKeys.getInt(first + i), buffers.dataBuffer, i)) {
+                erased.set(i);
+                buffers.dataBuffer[i] = 0;
+            }
+        }
+
+        final int errors = errorCorrectingCode.correctErrors(buffers.dataBuffer, erased, buffers.errorLocations);
+        if (errors < 0) {
+            throw new TooManyErasedLocations("Locations " + erased + ", and too many corrupted ones");
+        }
+        for (int i = 0; i < errors; i++) {
+            final int position = buffers.errorLocations[i];
+            log.warning("Corrupted block " + blockKeys.getInt(first + position) + " at location " + position + " corrected");
+            blockKeys.set(first + position, storageBackend.storeBlock(buffers.dataBuffer[position], position));
+            buffers.blocksCorrected = true;
+        }
     }
 
-    private static int[] convertToIntArray(IntList integerCollection) {
-        return integerCollection.toIntArray();
+    /**
+     * Return the setup decoding an erasure pattern. During an outage all the stripes share the same pattern, so the
+     * setup of the last pattern is reused without allocating.
+     */
+    protected DecodeSetup decodeSetup(StripeBuffers buffers, BitSet erased) throws TooManyErasedLocations {
+        final DecodeSetup last = buffers.decodeSetup;
+        if (last != null && last.erased.equals(erased)) {
+            return last;
+        }
+        final int count = erasureCode.locationsToReadForDecode(erased, buffers.locationsBuffer);
+        buffers.decodeSetup = new DecodeSetup(erased, Arrays.copyOf(buffers.locationsBuffer, count), paritySize,
+                totalSize, chunked ? blockSize : 0);
+        return buffers.decodeSetup;
     }
 
-    int nextBoundary(int index) {
-        return computeBoundary(Math::ceil, index);
+    /**
+     * The stripe of a file buffered in write-back mode: its bytes, of which [ dirtyFrom, dirtyTo ) are written and not
+     * encoded yet. Guarded by the lock of the file.
+     */
+    private static final class PendingStripe {
+        // The index of the first key of the stripe
+        private int first;
+        private final byte[] bytes;
+        private int dirtyFrom;
+        private int dirtyTo;
+        // System.nanoTime() of the last buffered write
+        private long lastWrite;
+        // The metadata of the file after the last write, and whether it is ahead of the stored one
+        private FileMetadata metadata;
+        private boolean metadataDirty;
+
+        private PendingStripe(int stripeBytes) {
+            bytes = new byte[stripeBytes];
+            lastWrite = System.nanoTime();
+        }
+
+        private boolean isEmpty() {
+            return dirtyTo == dirtyFrom;
+        }
+
+        private boolean holds(int stripe) {
+            return !isEmpty() && first == stripe;
+        }
+
+        private void clear() {
+            dirtyFrom = 0;
+            dirtyTo = 0;
+        }
     }
 
-    int previousBoundary(int index) {
-        return computeBoundary(Math::floor, index);
+    /**
+     * The buffers used to encode and decode a stripe. Each thread has its own, so that stripes are coded concurrently.
+     */
+    protected static final class StripeBuffers {
+        final BitSet erasedBlocks;
+        final int[] stripeBuffer;
+        final int[] parityBuffer;
+        final int[] dataBuffer;
+        // The chunks of a stripe, parity first, and views of its parity and data chunks
+        final byte[][] chunks;
+        final byte[][] parityChunks;
+        final byte[][] dataChunks;
+        // Output of locationsToReadForDecode, and the setup of the last erasure pattern decoded by the thread
+        final int[] locationsBuffer;
+        DecodeSetup decodeSetup;
+        // Verify mode: output of correctErrors, and whether corrected blocks were written back by the current read
+        final int[] errorLocations;
+        final BitSet corruptedChunks;
+        boolean blocksCorrected;
+        // Write-back mode: whether the current write encoded stripes, rather than only buffering bytes
+        boolean stripesWritten;
+
+        private StripeBuffers(int stripeSize, int paritySize, int chunkSize) {
+            final int totalSize = stripeSize + paritySize;
+            erasedBlocks = new BitSet(totalSize);
+            stripeBuffer = new int[stripeSize];
+            parityBuffer = new int[paritySize];
+            dataBuffer = new int[totalSize];
+            chunks = new byte[chunkSize > 0 ? totalSize : 0][chunkSize];
+            parityChunks = Arrays.copyOfRange(chunks, 0, chunkSize > 0 ? paritySize : 0);
+            dataChunks = Arrays.copyOfRange(chunks, chunkSize > 0 ? paritySize : 0, chunks.length);
+            locationsBuffer = new int[totalSize];
+            errorLocations = new int[paritySize];
+            corruptedChunks = new BitSet(totalSize);
+        }
     }
 
-    private int computeBoundary(Function<Double, Double> mathFunction, int index) {
-        return (int) Math.round(mathFunction.apply(index / (double) stripeSize) * totalSize);
+    /**
+     * The arguments of the decoding of an erasure pattern, computed once per pattern.
+     */
+    protected static final class DecodeSetup {
+        final BitSet erased;
+        // The locations read for decoding, in increasing order, and the other ones
+        final int[] locationsToRead;
+        final int[] locationsNotToRead;
+        // The erased locations, and the values decoded for them
+        final int[] erasedLocations;
+        final int[] erasedValues;
+        // The erased data locations, and the values decoded for them
+        final int[] erasedDataLocations;
+        final int[] erasedDataValues;
+        // The locations read for decoding, and the available data blocks which they do not include: codes with
+        // locality only read the locations recovering the erased ones
+        final int[] blocksToRead;
+        // The chunks decoded for the erased locations, and for the erased data locations
+        final byte[][] erasedChunks;
+        final byte[][] erasedDataChunks;
+
+        private DecodeSetup(BitSet erased, int[] locationsToRead, int paritySize, int totalSize, int chunkSize) {
+            this.erased = (BitSet) erased.clone();
+            this.locationsToRead = locationsToRead;
+            final BitSet read = new BitSet(totalSize);
+            for (int location : locationsToRead) {
+                read.set(location);
+            }
+            final BitSet notRead = (BitSet) read.clone();
+            notRead.flip(0, totalSize);
+            locationsNotToRead = notRead.stream().toArray();
+            erasedLocations = erased.stream().toArray();
+            erasedValues = new int[erasedLocations.length];
+            erasedDataLocations = erased.stream().filter(location -> location >= paritySize).toArray();
+            erasedDataValues = new int[erasedDataLocations.length];
+            erasedChunks = new byte[erasedLocations.length][chunkSize];
+            erasedDataChunks = new byte[erasedDataLocations.length][chunkSize];
+            final BitSet otherData = (BitSet) read.clone();
+            otherData.or(erased);
+            otherData.flip(paritySize, totalSize);
+            blocksToRead = IntStream.concat(Arrays.stream(locationsToRead),
+                    otherData.stream().filter(location -> location >= paritySize)).toArray();
+        }
+    }
+
+    /**
+     * @return The index of the first key of the stripe following the byte index, or of the stripe starting at it
+     */
+    int nextBoundary(int index) {
+        return (index + stripeBytes - 1) / stripeBytes * totalSize;
+    }
+
+    /**
+     * @return The index of the first key of the stripe holding the byte index
+     */
+    int previousBoundary(int index) {
+        return index / stripeBytes * totalSize;
     }
 
     int lowerBytesToDrop(int index) {
-        return index % stripeSize;
+        return index % stripeBytes;
     }
 
     int higherBytesToDrop(int index) {
         final int lowerBytesToDrop = lowerBytesToDrop(index);
         if (index == 0) {
-            return stripeSize;
+            return stripeBytes;
         } else if (lowerBytesToDrop == 0) {
             return 0;
         }
-        return stripeSize - lowerBytesToDrop;
+        return stripeBytes - lowerBytesToDrop;
     }
 
     @Override
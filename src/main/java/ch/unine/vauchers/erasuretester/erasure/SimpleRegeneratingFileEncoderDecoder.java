@@ -7,7 +7,7 @@ import it.unimi.dsi.fastutil.ints.IntList;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
-import java.util.stream.Stream;
+import java.util.BitSet;
 
 /**
  * Intermediate layer between the frontend, the storage backend and erasure coding.
@@ -24,36 +24,49 @@ public class SimpleRegeneratingFileEncoderDecoder extends FileEncoderDecoder {
         super(erasureCode, storageBackend);
     }
 
+    /**
+     * Constructor
+     *
+     * @param erasureCode    The erasure coding implementation to use
+     * @param storageBackend The storage backend implementation to use
+     * @param blockSize      The number of bytes of the file held by each block, 0 for one symbol per block
+     */
+    public SimpleRegeneratingFileEncoderDecoder(@NotNull SimpleRegeneratingCode erasureCode, @NotNull StorageBackend storageBackend, int blockSize) {
+        super(erasureCode, storageBackend, blockSize);
+    }
+
     @Override
-    protected Stream<Byte> decodeFileData(IntList blockKeys, IntList erasedIndices) throws TooManyErasedLocations {
+    protected void decodeFileData(StripeBuffers buffers, IntList blockKeys, int first, BitSet erased) throws TooManyErasedLocations {
+        final int[] dataBuffer = buffers.dataBuffer;
+        final int[] stripeBuffer = buffers.stripeBuffer;
         Arrays.fill(dataBuffer, 0, totalSize, 0);
         Arrays.fill(stripeBuffer, 0, stripeSize, 0);
 
-        final IntList locationsToReadForDecode;
-
-        //erasureCode.locationsToReadForDecode(erasedIndices);
-        locationsToReadForDecode = erasureCode.locationsToReadForDecode(erasedIndices);
-        locationsToReadForDecode.sort(null);
+        final DecodeSetup setup = decodeSetup(buffers, erased);
 
-        for (int locationToRead : locationsToReadForDecode) {
-            final Integer value = storageBackend.retrieveBlock(blockKeys.getInt(locationToRead)).orElseThrow(RuntimeException::new);
-            dataBuffer[locationToRead] = value;
+        for (int locationToRead : setup.locationsToRead) {
+            if (!storageBackend.retrieveBlock(blockKeys.getInt(first + locationToRead), dataBuffer, locationToRead)) {
+                throw new RuntimeException();
+            }
             if (locationToRead >= paritySize) {
-                stripeBuffer[locationToRead - paritySize] = value;
+                stripeBuffer[locationToRead - paritySize] = dataBuffer[locationToRead];
             }
         }
 
-        int[] recoveredValues = new int[erasedIndices.size()];
-        final int[] locationsNotToRead = fillNotToRead(locationsToReadForDecode);
-        erasureCode.decode(dataBuffer, erasedIndices.toIntArray(), recoveredValues, locationsToReadForDecode.toIntArray(), locationsNotToRead);
-        restoreValues(stripeBuffer, erasedIndices.toIntArray(), recoveredValues);
+        erasureCode.decode(dataBuffer, setup.erasedLocations, setup.erasedValues, setup.locationsToRead, setup.locationsNotToRead);
+        restoreValues(stripeBuffer, setup.erasedLocations, setup.erasedValues);
 
         for (int i = 0; i < stripeSize; i++) {
-            if (stripeBuffer[i] == 0) { // Not present, or 1/256 chance that the value is 0
-                stripeBuffer[i] = storageBackend.retrieveBlock(blockKeys.getInt(i + paritySize)).orElse(0);
+            if (stripeBuffer[i] == 0) { // Not present, or small chance that the value is 0
+                storageBackend.retrieveBlock(blockKeys.getInt(first + i + paritySize), stripeBuffer, i);
             }
         }
-        return Arrays.stream(stripeBuffer).boxed().map(Integer::byteValue);
+        System.arraycopy(stripeBuffer, 0, dataBuffer, paritySize, stripeSize);
+    }
+
+    @Override
+    protected boolean decodesAllErasedLocations() {
+        return true;
     }
 
     private void restoreValues(int[] data, int[] recoveredIndices, int[] recoveredValues) {
@@ -0,0 +1,42 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Split a range of bulk columns in halves until they fit in a tile, and code the tiles in parallel.
+ */
+final class BulkTiles extends RecursiveAction {
+    // Bytes of all the blocks of a tile, to be kept in the L2 cache of a core
+    static final int WORKING_SET = 256 * 1024;
+    // Tiles are multiples of a cache line, which also keeps multi-byte symbols whole
+    static final int MIN_TILE = 64;
+
+    interface ColumnRange {
+        void code(int from, int to);
+    }
+
+    private final int from;
+    private final int to;
+    private final int tile;
+    private final ColumnRange range;
+
+    BulkTiles(int from, int to, int tile, ColumnRange range) {
+        assert (tile % MIN_TILE == 0);
+        this.from = from;
+        this.to = to;
+        this.tile = tile;
+        this.range = range;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= tile) {
+            range.code(from, to);
+            return;
+        }
+        // Split on a tile boundary, the halves differ by at most one tile
+        final int tiles = (to - from + tile - 1) / tile;
+        final int middle = from + tiles / 2 * tile;
+        invokeAll(new BulkTiles(from, middle, tile, range), new BulkTiles(middle, to, tile, range));
+    }
+}
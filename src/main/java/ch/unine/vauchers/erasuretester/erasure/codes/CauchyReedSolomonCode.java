@@ -0,0 +1,237 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Function;
+
+/**
+ * Systematic Reed-Solomon code on a Cauchy generator matrix, whose bulk operations only use XORs.
+ * <br/>
+ * Multiplying by a constant of GF(2^8) is a linear map of the 8 bits of a symbol, i.e. an 8x8 matrix over GF(2).
+ * The bulk operations expand the generator matrix into such bit matrices, and split every block into 8 packets:
+ * each output packet is the XOR of the input packets selected by its row of the bit matrix. The XORs of an encoding,
+ * or of the decoding of an erasure pattern, are scheduled once with their common sums shared, see
+ * {@link XorSchedule}. No table lookup is made on the data.
+ * <br/>
+ * The Cauchy matrix is normalized to have as few ones as possible in its bit matrices (Plank and Xu, Optimizing
+ * Cauchy Reed-Solomon codes for fault-tolerant network storage applications, 2006).
+ * <br/>
+ * The bulk operations use their own layout: a byte of a bulk buffer is not a symbol, but holds one bit of 8 different
+ * symbols. Buffers lengths not multiple of 8 have their last length % 8 bytes coded symbol by symbol. The symbol
+ * operations are the ones of {@link MatrixReedSolomonCode} with the Cauchy matrix.
+ * <br/>
+ * A column of the bulk buffers is a byte offset within the packets, or one of the trailing bytes.
+ */
+public class CauchyReedSolomonCode extends MatrixReedSolomonCode {
+    private static final int W = 8;
+
+    private final int stripeSize;
+    private final int paritySize;
+    private final GaloisField GF;
+    private final int[][] parityMatrix;
+    private final XorSchedule encodeSchedule;
+    // XOR schedules of the decodings, keyed by the locations read and the erased locations
+    private final DecodePlanCache<XorSchedule> decodeSchedules = new DecodePlanCache<>(DecodePlanCache.DEFAULT_CAPACITY);
+    private final Function<int[], XorSchedule> decodeScheduler = this::computeDecodeSchedule;
+    // The key and blocks of the decoding tiles of a thread
+    private final ThreadLocal<Scratch> scratches;
+
+    public CauchyReedSolomonCode(int stripeSize, int paritySize) {
+        this(stripeSize, paritySize, cauchyParityMatrix(stripeSize, paritySize, GaloisField.getInstance()));
+    }
+
+    private CauchyReedSolomonCode(int stripeSize, int paritySize, int[][] parityMatrix) {
+        super(stripeSize, paritySize, GaloisField.getInstance(), parityMatrix);
+        this.stripeSize = stripeSize;
+        this.paritySize = paritySize;
+        this.GF = GaloisField.getInstance();
+        this.parityMatrix = parityMatrix;
+        this.encodeSchedule = XorSchedule.fromBitMatrix(bitMatrix(parityMatrix), stripeSize * W);
+        this.scratches = ThreadLocal.withInitial(() -> new Scratch(stripeSize, paritySize));
+    }
+
+    /**
+     * Cauchy matrix C[j][i] = 1 / (j + (paritySize + i)), normalized so that the first row only has ones and the
+     * other rows have as few ones as possible in their bit matrices. Scaling rows and columns keeps every square
+     * submatrix invertible.
+     */
+    private static int[][] cauchyParityMatrix(int stripeSize, int paritySize, GaloisField GF) {
+        if (stripeSize + paritySize > GF.getFieldSize()) {
+            throw new IllegalArgumentException("A stripe of " + (stripeSize + paritySize) +
+                    " locations needs a field larger than GF(" + GF.getFieldSize() + ")");
+        }
+        final int[][] matrix = new int[paritySize][stripeSize];
+        for (int j = 0; j < paritySize; j++) {
+            for (int i = 0; i < stripeSize; i++) {
+                matrix[j][i] = GF.divide(1, j ^ (paritySize + i));
+            }
+        }
+        if (paritySize == 0) {
+            return matrix;
+        }
+        for (int i = 0; i < stripeSize; i++) {
+            final int divisor = matrix[0][i];
+            for (int j = 0; j < paritySize; j++) {
+                matrix[j][i] = GF.divide(matrix[j][i], divisor);
+            }
+        }
+        for (int j = 1; j < paritySize; j++) {
+            int bestDivisor = 1;
+            int bestOnes = Integer.MAX_VALUE;
+            for (int candidate : matrix[j]) {
+                int ones = 0;
+                for (int value : matrix[j]) {
+                    ones += bitMatrixOnes(GF, GF.divide(value, candidate));
+                }
+                if (ones < bestOnes) {
+                    bestOnes = ones;
+                    bestDivisor = candidate;
+                }
+            }
+            for (int i = 0; i < stripeSize; i++) {
+                matrix[j][i] = GF.divide(matrix[j][i], bestDivisor);
+            }
+        }
+        return matrix;
+    }
+
+    private static int bitMatrixOnes(GaloisField GF, int value) {
+        int ones = 0;
+        for (int c = 0; c < W; c++) {
+            ones += Integer.bitCount(GF.multiply(value, 1 << c));
+        }
+        return ones;
+    }
+
+    /**
+     * Expand a matrix of GF(2^8) into its bit matrix: the bit r of the symbol j is the sum of the bits c of the
+     * symbols i where the bit r of coefficients[j][i] * 2^c is set.
+     */
+    private boolean[][] bitMatrix(int[][] coefficients) {
+        final int columns = coefficients.length == 0 ? 0 : coefficients[0].length;
+        final boolean[][] bits = new boolean[coefficients.length * W][columns * W];
+        for (int j = 0; j < coefficients.length; j++) {
+            for (int i = 0; i < columns; i++) {
+                for (int c = 0; c < W; c++) {
+                    final int column = GF.multiply(coefficients[j][i], 1 << c);
+                    for (int r = 0; r < W; r++) {
+                        bits[j * W + r][i * W + c] = (column >>> r & 1) != 0;
+                    }
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @return The number of packet XORs of the bulk encoding
+     */
+    public int encodeXorCount() {
+        return encodeSchedule.xorCount();
+    }
+
+    @Override
+    protected int bulkColumns(int length) {
+        return length / W + length % W;
+    }
+
+    @Override
+    protected void encodeBulkColumns(byte[][] inputs, byte[][] outputs, int from, int to) {
+        assert (stripeSize == inputs.length);
+        assert (paritySize == outputs.length);
+        if (paritySize == 0) {
+            return;
+        }
+        final int length = outputs[0].length;
+        final int packetSize = length / W;
+        if (from < packetSize) {
+            encodeSchedule.execute(GF, inputs, outputs, W, packetSize, from, Math.min(to, packetSize));
+        }
+
+        final int tailFrom = Math.max(from, packetSize) - packetSize + W * packetSize;
+        final int tailTo = to - packetSize + W * packetSize;
+        for (int j = 0; j < paritySize && tailFrom < tailTo; j++) {
+            Arrays.fill(outputs[j], tailFrom, tailTo, (byte) 0);
+            for (int i = 0; i < stripeSize; i++) {
+                GF.multiplyAccumulateRegion(parityMatrix[j][i], inputs[i], tailFrom, outputs[j], tailFrom,
+                        tailTo - tailFrom);
+            }
+        }
+    }
+
+    @Override
+    protected void decodeBulkColumns(byte[][] readBufs, byte[][] writeBufs, int[] erasedLocations,
+                                     int[] locationsToRead, int[] locationsNotToRead, int from, int to) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        final DecodePlan plan = decodePlan(locationsToRead);
+        final int totalSize = stripeSize + paritySize;
+        final Scratch scratch = scratches.get();
+        // Locations read, then erased locations shifted by totalSize
+        final BitSet pattern = scratch.pattern;
+        pattern.clear();
+        for (int source : plan.sources) {
+            pattern.set(source);
+        }
+        for (int erasedLocation : erasedLocations) {
+            pattern.set(totalSize + erasedLocation);
+        }
+        final XorSchedule schedule = decodeSchedules.get(pattern, decodeScheduler);
+
+        // The schedule outputs the erased locations in increasing order
+        final byte[][] outputs = scratch.outputs;
+        for (int e = 0; e < erasedLocations.length; e++) {
+            int rank = 0;
+            for (int erasedLocation : erasedLocations) {
+                if (erasedLocation < erasedLocations[e]) {
+                    rank++;
+                }
+            }
+            outputs[rank] = writeBufs[e];
+        }
+        final byte[][] inputs = scratch.inputs;
+        for (int s = 0; s < stripeSize; s++) {
+            inputs[s] = readBufs[plan.sources[s]];
+        }
+        final int length = writeBufs[0].length;
+        final int packetSize = length / W;
+        if (from < packetSize) {
+            schedule.execute(GF, inputs, outputs, W, packetSize, from, Math.min(to, packetSize));
+        }
+
+        final int tailFrom = Math.max(from, packetSize) - packetSize + W * packetSize;
+        final int tailTo = to - packetSize + W * packetSize;
+        for (int e = 0; e < erasedLocations.length && tailFrom < tailTo; e++) {
+            final int[] row = plan.rows[erasedLocations[e]];
+            Arrays.fill(writeBufs[e], tailFrom, tailTo, (byte) 0);
+            for (int s = 0; s < stripeSize; s++) {
+                GF.multiplyAccumulateRegion(row[s], inputs[s], tailFrom, writeBufs[e], tailFrom, tailTo - tailFrom);
+            }
+        }
+    }
+
+    /**
+     * @param pattern The locations read, then the erased locations shifted by stripeSize + paritySize, in increasing
+     *                order
+     */
+    private XorSchedule computeDecodeSchedule(int[] pattern) {
+        final DecodePlan plan = decodePlan(pattern);
+        final int[][] rows = new int[pattern.length - stripeSize][];
+        for (int e = 0; e < rows.length; e++) {
+            rows[e] = plan.rows[pattern[stripeSize + e] - stripeSize - paritySize];
+        }
+        return XorSchedule.fromBitMatrix(bitMatrix(rows), stripeSize * W);
+    }
+
+    private static final class Scratch {
+        final BitSet pattern = new BitSet();
+        final byte[][] inputs;
+        final byte[][] outputs;
+
+        Scratch(int stripeSize, int paritySize) {
+            inputs = new byte[stripeSize][];
+            outputs = new byte[stripeSize + paritySize][];
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.Arrays;
+
+/**
+ * Decoding of one erasure pattern of a linear code, precomputed as linear combinations of the symbols read.
+ * Built once per pattern and stored in a {@link DecodePlanCache}.
+ */
+final class DecodePlan {
+    // The locations read, null when the erasure pattern cannot be decoded
+    final int[] sources;
+    // rows[location][s]: coefficient of the symbol at sources[s] in the symbol at location, null if not recoverable
+    final int[][] rows;
+
+    DecodePlan(int[] sources, int[][] rows) {
+        this.sources = sources;
+        this.rows = rows;
+    }
+
+    /**
+     * @return A plan marking an erasure pattern that cannot be decoded
+     */
+    static DecodePlan undecodable() {
+        return new DecodePlan(null, null);
+    }
+
+    boolean isDecodable() {
+        return sources != null;
+    }
+
+    boolean canRecover(int location) {
+        return rows[location] != null;
+    }
+
+    int decode(GaloisField gf, int[] data, int location) {
+        final int[] row = rows[location];
+        int value = 0;
+        for (int s = 0; s < sources.length; s++) {
+            value ^= gf.multiply(row[s], data[sources[s]]);
+        }
+        return value;
+    }
+
+    void decodeBulk(GaloisField gf, byte[][] readBufs, int location, byte[] output) {
+        decodeBulk(gf, readBufs, location, output, 0, output.length);
+    }
+
+    /**
+     * Decode the region [ from, to ) of the output.
+     */
+    void decodeBulk(GaloisField gf, byte[][] readBufs, int location, byte[] output, int from, int to) {
+        final int[] row = rows[location];
+        gf.multiplyRegion(row[0], readBufs[sources[0]], from, output, from, to - from);
+        for (int s = 1; s < sources.length; s++) {
+            gf.multiplyAccumulateRegion(row[s], readBufs[sources[s]], from, output, from, to - from);
+        }
+    }
+
+    /**
+     * A decoder whose erased values are linear combinations of the symbols of data.
+     */
+    interface LinearDecoder {
+        void decode(int[] data, int[] erasedValues);
+    }
+
+    /**
+     * Compute the plan of a linear decoder by running it on unit vectors: the values decoded when the symbol at
+     * sources[s] is 1 and all other symbols are 0 are the coefficients of sources[s].
+     *
+     * @param totalSize       The number of locations of the code
+     * @param sources         The locations the decoder reads
+     * @param erasedLocations The locations the decoder recovers, in the order of its erased values
+     * @param decoder         The decoder, which may modify its data parameter
+     */
+    static DecodePlan fromLinearDecoder(int totalSize, int[] sources, int[] erasedLocations, LinearDecoder decoder) {
+        final int[][] rows = new int[totalSize][];
+        for (int erasedLocation : erasedLocations) {
+            rows[erasedLocation] = new int[sources.length];
+        }
+        final int[] data = new int[totalSize];
+        final int[] erasedValues = new int[erasedLocations.length];
+        for (int s = 0; s < sources.length; s++) {
+            Arrays.fill(data, 0);
+            data[sources[s]] = 1;
+            decoder.decode(data, erasedValues);
+            for (int e = 0; e < erasedLocations.length; e++) {
+                rows[erasedLocations[e]][s] = erasedValues[e];
+            }
+        }
+        return new DecodePlan(sources, rows);
+    }
+}
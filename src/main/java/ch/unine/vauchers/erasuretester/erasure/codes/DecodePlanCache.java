@@ -0,0 +1,287 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * Bounded, thread-safe LRU cache of decode plans, keyed by the bitmask of an erasure pattern.
+ * <br/>
+ * During an outage, all the stripes of all the files share the same erased locations. The work depending only on the
+ * erasure pattern (solving the decoding equations, choosing the locations to read) is done once by the planner and
+ * reused for every stripe. Patterns within the first {@link #MAX_LOCATIONS} locations are keyed by a long mask, in a
+ * primitive map so that their lookups allocate nothing, wider patterns (e.g. the wide stripes of 16-bit symbols) by a
+ * {@link BitSet}. Each kind of pattern holds up to capacity plans.
+ *
+ * @param <P> The type of the plans
+ */
+public class DecodePlanCache<P> {
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final int MAX_LOCATIONS = Long.SIZE;
+
+    private final int capacity;
+    // Also the lock of both maps
+    private final Long2ObjectLinkedOpenHashMap<P> plans;
+    private final LinkedHashMap<BitSet, P> widePlans;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public DecodePlanCache(int capacity) {
+        this.capacity = capacity;
+        plans = new Long2ObjectLinkedOpenHashMap<>(capacity + 1);
+        widePlans = new LinkedHashMap<BitSet, P>(capacity + 1, .75f, true) {
+            @Override
+            public boolean removeEldestEntry(Map.Entry<BitSet, P> eldest) {
+                return size() > DecodePlanCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Return the plan of an erasure pattern, calling the planner if it is not cached.
+     * The planner runs outside of the lock, so concurrent misses on the same pattern may both compute the plan. The
+     * first plan stored is then returned to both, and only its store counts as a miss.
+     *
+     * @param pattern The erasure pattern, as returned by {@link #mask(int[])}
+     * @param planner Compute the plan of a pattern
+     * @return The cached or newly computed plan
+     */
+    public P get(long pattern, LongFunction<P> planner) {
+        final P plan = lookup(pattern);
+        if (plan != null) {
+            return plan;
+        }
+        return store(pattern, planner.apply(pattern));
+    }
+
+    /**
+     * Return the plan of a set of locations of any width, calling the planner if it is not cached.
+     *
+     * @param locations The locations of the pattern, in any order
+     * @param planner   Compute the plan of the locations, given in increasing order
+     * @return The cached or newly computed plan
+     */
+    public P get(int[] locations, Function<int[], P> planner) {
+        return get(locations, locations.length, planner);
+    }
+
+    /**
+     * Version of {@link #get(int[], Function)} on the first locations of an array, which spares copying them.
+     *
+     * @param locations The locations of the pattern from index 0, in any order
+     * @param count     The number of locations of the pattern
+     * @param planner   Compute the plan of the locations, given in increasing order
+     * @return The cached or newly computed plan
+     */
+    public P get(int[] locations, int count, Function<int[], P> planner) {
+        if (fitMask(locations, count)) {
+            final long pattern = mask(locations, count);
+            final P plan = lookup(pattern);
+            if (plan != null) {
+                return plan;
+            }
+            return store(pattern, planner.apply(locations(pattern)));
+        }
+        final BitSet pattern = bitSet(locations, count);
+        final P plan = lookup(pattern);
+        if (plan != null) {
+            return plan;
+        }
+        return store(pattern, planner.apply(pattern.stream().toArray()));
+    }
+
+    /**
+     * Return the plan of an erasure pattern of any width, calling the planner if it is not cached.
+     *
+     * @param pattern The locations of the pattern, which the cache does not keep
+     * @param planner Compute the plan of the locations, given in increasing order
+     * @return The cached or newly computed plan
+     */
+    public P get(BitSet pattern, Function<int[], P> planner) {
+        if (pattern.length() <= MAX_LOCATIONS) {
+            final long mask = mask(pattern);
+            final P plan = lookup(mask);
+            if (plan != null) {
+                return plan;
+            }
+            return store(mask, planner.apply(locations(mask)));
+        }
+        final P plan = lookup(pattern);
+        if (plan != null) {
+            return plan;
+        }
+        return store((BitSet) pattern.clone(), planner.apply(pattern.stream().toArray()));
+    }
+
+    private P lookup(long pattern) {
+        synchronized (plans) {
+            return counted(plans.getAndMoveToLast(pattern));
+        }
+    }
+
+    private P lookup(BitSet pattern) {
+        synchronized (plans) {
+            return counted(widePlans.get(pattern));
+        }
+    }
+
+    private P counted(P plan) {
+        if (plan != null) {
+            hits.incrementAndGet();
+        }
+        return plan;
+    }
+
+    private P store(long pattern, P plan) {
+        synchronized (plans) {
+            // Stored by a concurrent miss while the plan was computed
+            final P stored = plans.getAndMoveToLast(pattern);
+            if (stored != null) {
+                hits.incrementAndGet();
+                return stored;
+            }
+            plans.putAndMoveToLast(pattern, plan);
+            if (plans.size() > capacity) {
+                plans.removeFirst();
+            }
+        }
+        misses.incrementAndGet();
+        return plan;
+    }
+
+    private P store(BitSet pattern, P plan) {
+        synchronized (plans) {
+            // Stored by a concurrent miss while the plan was computed
+            final P stored = widePlans.get(pattern);
+            if (stored != null) {
+                hits.incrementAndGet();
+                return stored;
+            }
+            widePlans.put(pattern, plan);
+        }
+        misses.incrementAndGet();
+        return plan;
+    }
+
+    /**
+     * Drop all cached plans. The counters are kept.
+     */
+    public void clear() {
+        synchronized (plans) {
+            plans.clear();
+            widePlans.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (plans) {
+            return plans.size() + widePlans.size();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @param totalSize The number of locations of a code
+     * @return Whether the erasure patterns of the code fit in a mask
+     */
+    public static boolean canMask(int totalSize) {
+        return totalSize <= MAX_LOCATIONS;
+    }
+
+    /**
+     * @param locations Locations in the range [ 0, {@link #MAX_LOCATIONS} )
+     * @return The mask with the bits of the locations set
+     */
+    public static long mask(int[] locations) {
+        return mask(locations, locations.length);
+    }
+
+    private static long mask(int[] locations, int count) {
+        long mask = 0;
+        for (int i = 0; i < count; i++) {
+            mask |= 1L << locations[i];
+        }
+        return mask;
+    }
+
+    /**
+     * @param pattern Locations in the range [ 0, {@link #MAX_LOCATIONS} )
+     * @return The mask with the bits of the locations set
+     */
+    public static long mask(BitSet pattern) {
+        long mask = 0;
+        for (int location = pattern.nextSetBit(0); location >= 0; location = pattern.nextSetBit(location + 1)) {
+            mask |= 1L << location;
+        }
+        return mask;
+    }
+
+    /**
+     * @return Whether both arrays hold the same set of locations, of any width
+     */
+    public static boolean sameLocations(int[] a, int[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        if (fitMask(a, a.length) && fitMask(b, b.length)) {
+            return mask(a) == mask(b);
+        }
+        return bitSet(a, a.length).equals(bitSet(b, b.length));
+    }
+
+    private static boolean fitMask(int[] locations, int count) {
+        for (int i = 0; i < count; i++) {
+            if (locations[i] >= MAX_LOCATIONS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BitSet bitSet(int[] locations, int count) {
+        final BitSet set = new BitSet();
+        for (int i = 0; i < count; i++) {
+            set.set(locations[i]);
+        }
+        return set;
+    }
+
+    /**
+     * @param mask A mask returned by {@link #mask(int[])}
+     * @return The locations set in the mask, in increasing order
+     */
+    public static int[] locations(long mask) {
+        final int[] locations = new int[Long.bitCount(mask)];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+        }
+        return locations;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodePlanCache{" +
+                "size=" + size() +
+                ", capacity=" + capacity +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                '}';
+    }
+}
@@ -0,0 +1,247 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Generate the Java source of the encoders of fixed configurations of the codes, found then by
+ * {@link SpecializedEncoders}.
+ * <br/>
+ * A generated encoder computes each parity symbol as a sum of products of the message symbols by constant
+ * coefficients, with the loops over the message and parity symbols unrolled: a coefficient 0 is skipped, 1 is a plain
+ * XOR, and any other one is a lookup in the product row of the coefficient. The bulk encoder is the same sum on
+ * regions, unrolled into calls of the region operations of {@link GaloisField} with constant coefficients, so that it
+ * keeps the kernels chosen by the field.
+ * <br/>
+ * A parity symbol whose coefficients differ from those of another one in fewer places than it has non-zero
+ * coefficients is computed from that other one: e.g. an SRC parity over the whole message but one symbol.
+ * <br/>
+ * Usage: EncoderGenerator source-directory family:stripeSize:paritySize[:parameter]...
+ * e.g. EncoderGenerator src/main/java ReedSolomon:10:4 SimpleRegenerating:10:6:5
+ */
+public final class EncoderGenerator {
+    private static final String INDENT = "    ";
+
+    private EncoderGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: EncoderGenerator source-directory family:stripeSize:paritySize[:parameter]...");
+            System.exit(1);
+        }
+        final Path directory = Paths.get(args[0], EncoderGenerator.class.getPackage().getName().split("\\."));
+        for (int a = 1; a < args.length; a++) {
+            final String[] fields = args[a].split(":");
+            final String family = fields[0];
+            final int[] parameters = new int[fields.length - 1];
+            for (int p = 0; p < parameters.length; p++) {
+                parameters[p] = Integer.parseInt(fields[p + 1]);
+            }
+            final String className = SpecializedEncoders.className(family, parameters);
+            final Path file = directory.resolve(className + ".java");
+            Files.write(file, generate(family, parameters).getBytes(StandardCharsets.UTF_8));
+            System.out.println("Generated " + file);
+        }
+    }
+
+    /**
+     * Build the code of a configuration, over the default field.
+     */
+    static ErasureCode code(String family, int... parameters) {
+        switch (family + "/" + parameters.length) {
+            case "ReedSolomon/2":
+                return new ReedSolomonCode(parameters[0], parameters[1]);
+            case "SimpleRegenerating/3":
+                return new SimpleRegeneratingCode(parameters[0], parameters[1], parameters[2]);
+            default:
+                throw new IllegalArgumentException("No encoder can be generated for " + family + " with " +
+                        parameters.length + " parameters");
+        }
+    }
+
+    /**
+     * @return The source of the encoder of a configuration
+     */
+    static String generate(String family, int... parameters) {
+        final ErasureCode code = code(family, parameters);
+        if (code.symbolSize() != 8) {
+            throw new IllegalArgumentException("The generated encoders only support symbols of 8 bits");
+        }
+        final int[][] parityColumns = code.parityColumns();
+        final int stripeSize = code.stripeSize();
+        final int paritySize = code.paritySize();
+        final int[] order = new int[paritySize];
+        final int[] bases = new int[paritySize];
+        final int[][] terms = plan(parityColumns, order, bases);
+        final String className = SpecializedEncoders.className(family, parameters);
+        final boolean[] usedCoefficients = new boolean[GaloisField.getInstance().getFieldSize()];
+        for (int[] row : terms) {
+            for (int coef : row) {
+                usedCoefficients[coef] = true;
+            }
+        }
+
+        final StringBuilder out = new StringBuilder();
+        line(out, 0, "// Generated by EncoderGenerator for " + family + "Code" +
+                Arrays.toString(parameters).replace('[', '(').replace(']', ')') + ", do not edit.");
+        line(out, 0, "// Regenerate it with ./gradlew generateEncoders.");
+        line(out, 0, "package " + EncoderGenerator.class.getPackage().getName() + ";");
+        line(out, 0, "");
+        line(out, 0, "final class " + className + " implements SpecializedEncoders.Encoder {");
+        line(out, 1, "private static final int[][] PARITY_COLUMNS = {");
+        for (int[] column : parityColumns) {
+            line(out, 3, Arrays.toString(column).replace('[', '{').replace(']', '}') + ",");
+        }
+        line(out, 1, "};");
+        line(out, 1, "private static final GaloisField GF = GaloisField.getInstance();");
+        for (int coef = 2; coef < usedCoefficients.length; coef++) {
+            if (usedCoefficients[coef]) {
+                line(out, 1, "private static final byte[] M" + coef + " = GF.productRow(" + coef + ");");
+            }
+        }
+        line(out, 0, "");
+
+        line(out, 1, "@Override");
+        line(out, 1, "public int[][] parityColumns() {");
+        line(out, 2, "final int[][] columns = new int[PARITY_COLUMNS.length][];");
+        line(out, 2, "for (int i = 0; i < columns.length; i++) {");
+        line(out, 3, "columns[i] = PARITY_COLUMNS[i].clone();");
+        line(out, 2, "}");
+        line(out, 2, "return columns;");
+        line(out, 1, "}");
+        line(out, 0, "");
+
+        line(out, 1, "@Override");
+        line(out, 1, "public void encode(int[] message, int[] parity) {");
+        for (int i = 0; i < stripeSize; i++) {
+            line(out, 2, "final int x" + i + " = message[" + i + "];");
+        }
+        for (int j : order) {
+            final String base = bases[j] < 0 ? "" : "parity[" + bases[j] + "]";
+            final String sum = sum(terms[j]);
+            if (sum.isEmpty()) {
+                line(out, 2, "parity[" + j + "] = " + (base.isEmpty() ? "0" : base) + ";");
+            } else {
+                line(out, 2, "parity[" + j + "] = (" + (base.isEmpty() ? "" : base + " ^ ") + sum + ") & 0xFF;");
+            }
+        }
+        line(out, 1, "}");
+        line(out, 0, "");
+
+        line(out, 1, "@Override");
+        line(out, 1, "public void encodeBulk(byte[][] inputs, byte[][] outputs, int from, int to) {");
+        for (int i = 0; i < stripeSize; i++) {
+            line(out, 2, "final byte[] in" + i + " = inputs[" + i + "];");
+        }
+        line(out, 2, "final int length = to - from;");
+        for (int j = 0; j < paritySize; j++) {
+            line(out, 2, "final byte[] out" + j + " = outputs[" + j + "];");
+        }
+        for (int j : order) {
+            boolean first = bases[j] < 0;
+            if (!first) {
+                line(out, 2, "System.arraycopy(out" + bases[j] + ", from, out" + j + ", from, length);");
+            }
+            for (int i = 0; i < stripeSize; i++) {
+                final int coef = terms[j][i];
+                if (coef == 0) {
+                    continue;
+                }
+                final String region = "in" + i + ", from, out" + j + ", from, length);";
+                if (first && coef == 1) {
+                    line(out, 2, "System.arraycopy(" + region);
+                } else if (first) {
+                    line(out, 2, "GF.multiplyRegion(" + coef + ", " + region);
+                } else if (coef == 1) {
+                    line(out, 2, "GF.addRegion(" + region);
+                } else {
+                    line(out, 2, "GF.multiplyAccumulateRegion(" + coef + ", " + region);
+                }
+                first = false;
+            }
+            if (first) {
+                line(out, 2, "java.util.Arrays.fill(out" + j + ", from, to, (byte) 0);");
+            }
+        }
+        line(out, 1, "}");
+        line(out, 0, "}");
+        return out.toString();
+    }
+
+    /**
+     * Choose the parity symbol each one is computed from, heaviest first.
+     *
+     * @param order Filled with the parity symbols in the order they are computed
+     * @param bases Filled with the parity symbol each one starts from, or -1 to start from zero
+     * @return terms[j][i]: the coefficient of the message symbol i added to the base of the parity symbol j
+     */
+    static int[][] plan(int[][] parityColumns, int[] order, int[] bases) {
+        final int stripeSize = parityColumns.length;
+        final int paritySize = order.length;
+        final int[][] rows = new int[paritySize][stripeSize];
+        for (int i = 0; i < stripeSize; i++) {
+            for (int j = 0; j < paritySize; j++) {
+                rows[j][i] = parityColumns[i][j];
+            }
+        }
+        final Integer[] byWeight = new Integer[paritySize];
+        for (int j = 0; j < paritySize; j++) {
+            byWeight[j] = j;
+        }
+        Arrays.sort(byWeight, (a, b) -> Integer.compare(weight(rows[b]), weight(rows[a])));
+        final int[][] terms = new int[paritySize][];
+        for (int n = 0; n < paritySize; n++) {
+            final int j = byWeight[n];
+            order[n] = j;
+            bases[j] = -1;
+            terms[j] = rows[j];
+            for (int m = 0; m < n; m++) {
+                final int[] difference = new int[stripeSize];
+                for (int i = 0; i < stripeSize; i++) {
+                    difference[i] = rows[j][i] ^ rows[order[m]][i];
+                }
+                // Starting from another parity costs one copy
+                if (weight(difference) + 1 < weight(terms[j]) + (bases[j] < 0 ? 0 : 1)) {
+                    bases[j] = order[m];
+                    terms[j] = difference;
+                }
+            }
+        }
+        return terms;
+    }
+
+    private static int weight(int[] row) {
+        int weight = 0;
+        for (int coef : row) {
+            if (coef != 0) {
+                weight++;
+            }
+        }
+        return weight;
+    }
+
+    // The sum of the products of the message symbols x0, x1... by the coefficients
+    private static String sum(int[] coefficients) {
+        final StringBuilder sum = new StringBuilder();
+        for (int i = 0; i < coefficients.length; i++) {
+            final int coef = coefficients[i];
+            if (coef == 0) {
+                continue;
+            }
+            sum.append(sum.length() == 0 ? "" : " ^ ").append(coef == 1 ? "x" + i : "M" + coef + "[x" + i + "]");
+        }
+        return sum.toString();
+    }
+
+    private static void line(StringBuilder out, int indent, String line) {
+        for (int i = 0; i < indent && !line.isEmpty(); i++) {
+            out.append(INDENT);
+        }
+        out.append(line).append('\n');
+    }
+}
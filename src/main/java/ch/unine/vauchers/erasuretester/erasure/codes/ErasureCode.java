@@ -21,7 +21,9 @@ package ch.unine.vauchers.erasuretester.erasure.codes;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public abstract class ErasureCode {
     /**
@@ -78,28 +80,40 @@ public abstract class ErasureCode {
      */
     public IntList locationsToReadForDecode(List<Integer> erasedLocations)
             throws TooManyErasedLocations {
-        IntList locationsToRead = new IntArrayList(stripeSize());
-        int limit = stripeSize() + paritySize();
-        // Loop through all possible locations in the stripe.
-        for (int loc = limit - 1; loc >= 0; loc--) {
-            // Is the location good.
-            if (erasedLocations.indexOf(loc) == -1) {
-                locationsToRead.add(loc);
-                if (stripeSize() == locationsToRead.size()) {
-                    break;
-                }
+        final BitSet erased = new BitSet(stripeSize() + paritySize());
+        for (int location : erasedLocations) {
+            erased.set(location);
+        }
+        final int[] locationsToRead = new int[stripeSize() + paritySize()];
+        final int count = locationsToReadForDecode(erased, locationsToRead);
+        return new IntArrayList(locationsToRead, 0, count);
+    }
+
+    /**
+     * Version of {@link #locationsToReadForDecode(List)} which neither boxes nor allocates in the common case: the
+     * erasure pattern is a mask, and the locations are written to an array of the caller.
+     * This default implementation reads the stripeSize() highest locations which are not erased, codes with other
+     * repair strategies override it.
+     *
+     * @param erased          The erased locations, in the range [ 0, stripeSize() + paritySize() )
+     * @param locationsToRead (out) The locations to read, in increasing order from index 0. Its length must be at
+     *                        least stripeSize() + paritySize().
+     * @return The number of locations to read
+     */
+    public int locationsToReadForDecode(BitSet erased, int[] locationsToRead) throws TooManyErasedLocations {
+        int remaining = stripeSize();
+        // Loop through all possible locations in the stripe, filling locationsToRead from its end
+        for (int loc = stripeSize() + paritySize() - 1; loc >= 0 && remaining > 0; loc--) {
+            if (!erased.get(loc)) {
+                locationsToRead[--remaining] = loc;
             }
         }
-        // If we are are not able to fill up the locationsToRead list,
+        // If we are are not able to fill up locationsToRead,
         // we did not find enough good locations. Throw TooManyErasedLocations.
-        if (locationsToRead.size() != stripeSize()) {
-            String locationsStr = "";
-            for (Integer erasedLocation : erasedLocations) {
-                locationsStr += " " + erasedLocation;
-            }
-            throw new TooManyErasedLocations("Locations " + locationsStr);
+        if (remaining > 0) {
+            throw new TooManyErasedLocations("Locations " + erased);
         }
-        return locationsToRead;
+        return stripeSize();
     }
 
     /**
@@ -114,54 +128,196 @@ public abstract class ErasureCode {
 
     public abstract int symbolSize();
 
+    /**
+     * Update the parity of a stripe after one of its message symbols changed, without reading the other message
+     * symbols. The parity of a linear code is the sum of the contributions of each message symbol, so it changes by
+     * the contribution of the difference between the old and the new symbol.
+     * This default implementation encodes the difference alone, codes override it with their coefficients.
+     *
+     * @param position The index of the changed symbol in the message, in the range [ 0, stripeSize() )
+     * @param oldValue The symbol previously stored at this position
+     * @param newValue The symbol replacing it
+     * @param parity   (in/out) The parity of the stripe, updated in place
+     */
+    public void updateParity(int position, int oldValue, int newValue, int[] parity) {
+        assert (parity.length == paritySize());
+        final int[] message = new int[stripeSize()];
+        message[position] = oldValue ^ newValue;
+        final int[] parityDelta = new int[paritySize()];
+        encode(message, parityDelta);
+        for (int j = 0; j < parity.length; j++) {
+            parity[j] ^= parityDelta[j];
+        }
+    }
+
+    /**
+     * Encode every unit message, for codes whose parity is linear in the message.
+     *
+     * @return columns[i][j]: the coefficient of the message symbol i in the parity symbol j
+     */
+    protected int[][] parityColumns() {
+        final int[][] columns = new int[stripeSize()][paritySize()];
+        final int[] message = new int[stripeSize()];
+        for (int i = 0; i < columns.length; i++) {
+            message[i] = 1;
+            encode(message, columns[i]);
+            message[i] = 0;
+        }
+        return columns;
+    }
+
+    /**
+     * The cache of the decode plans, when the code precomputes the decoding of erasure patterns.
+     *
+     * @return The cache, or null if the code does not use one
+     */
+    public DecodePlanCache<?> getDecodePlanCache() {
+        return null;
+    }
+
     /**
      * This method would be overridden in the subclass,
      * so that the subclass will have its own encodeBulk behavior.
+     * Symbols wider than 8 bits span several bytes of the buffers, most significant byte first.
      */
     public void encodeBulk(byte[][] inputs, byte[][] outputs) {
+        if (outputs.length > 0) {
+            encodeBulkColumns(inputs, outputs, 0, bulkColumns(outputs[0].length));
+        }
+    }
+
+    /**
+     * Parallel version of {@link #encodeBulk(byte[][], byte[][])}: the columns of the buffers are split into tiles,
+     * encoded by the tasks of a pool.
+     *
+     * @param pool The pool running the tiles, e.g. {@link ForkJoinPool#commonPool()}
+     */
+    public void encodeBulk(byte[][] inputs, byte[][] outputs, ForkJoinPool pool) {
+        if (outputs.length > 0) {
+            final int length = outputs[0].length;
+            pool.invoke(new BulkTiles(0, bulkColumns(length), tileColumns(length),
+                    (from, to) -> encodeBulkColumns(inputs, outputs, from, to)));
+        }
+    }
+
+    /**
+     * This method would be overridden in the subclass,
+     * so that the subclass will have its own decodeBulk behavior.
+     */
+    public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
+                           int[] erasedLocations, int[] locationsToRead, int[] locationsNotToRead) {
+        if (writeBufs.length > 0) {
+            decodeBulkColumns(readBufs, writeBufs, erasedLocations, locationsToRead, locationsNotToRead,
+                    0, bulkColumns(writeBufs[0].length));
+        }
+    }
+
+    /**
+     * Parallel version of {@link #decodeBulk(byte[][], byte[][], int[], int[], int[])}: the columns of the buffers
+     * are split into tiles, decoded by the tasks of a pool.
+     *
+     * @param pool The pool running the tiles, e.g. {@link ForkJoinPool#commonPool()}
+     */
+    public void decodeBulk(byte[][] readBufs, byte[][] writeBufs, int[] erasedLocations, int[] locationsToRead,
+                           int[] locationsNotToRead, ForkJoinPool pool) {
+        if (writeBufs.length > 0) {
+            final int length = writeBufs[0].length;
+            pool.invoke(new BulkTiles(0, bulkColumns(length), tileColumns(length),
+                    (from, to) -> decodeBulkColumns(readBufs, writeBufs, erasedLocations, locationsToRead,
+                            locationsNotToRead, from, to)));
+        }
+    }
+
+    /**
+     * The number of independent columns of bulk buffers of a given length. Each column is coded without reading
+     * the other ones, so that columns can be coded concurrently.
+     *
+     * @param length The length of the bulk buffers
+     * @return By default one column per byte
+     */
+    protected int bulkColumns(int length) {
+        return length;
+    }
+
+    /**
+     * Encode the columns [ from, to ) of the bulk buffers, see {@link #bulkColumns(int)}.
+     * Scratch state must be local to the call, as tiles are encoded concurrently.
+     */
+    protected void encodeBulkColumns(byte[][] inputs, byte[][] outputs, int from, int to) {
         final int stripeSize = stripeSize();
         final int paritySize = paritySize();
+        final int bytesPerSymbol = bytesPerSymbol();
         assert (stripeSize == inputs.length);
         assert (paritySize == outputs.length);
         int[] data = new int[stripeSize];
         int[] code = new int[paritySize];
 
-        for (int j = 0; j < outputs[0].length; j++) {
+        for (int j = from; j < to; j += bytesPerSymbol) {
             for (int i = 0; i < paritySize; i++) {
                 code[i] = 0;
             }
             for (int i = 0; i < stripeSize; i++) {
-                data[i] = inputs[i][j] & 0x000000FF;
+                data[i] = readSymbol(inputs[i], j, bytesPerSymbol);
             }
             encode(data, code);
             for (int i = 0; i < paritySize; i++) {
-                outputs[i][j] = (byte) code[i];
+                writeSymbol(outputs[i], j, bytesPerSymbol, code[i]);
             }
         }
     }
 
     /**
-     * This method would be overridden in the subclass,
-     * so that the subclass will have its own decodeBulk behavior.
+     * Decode the columns [ from, to ) of the bulk buffers, see {@link #bulkColumns(int)}.
+     * Scratch state must be local to the call, as tiles are decoded concurrently.
      */
-    public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
-                           int[] erasedLocations, int[] locationsToRead, int[] locationsNotToRead) {
+    protected void decodeBulkColumns(byte[][] readBufs, byte[][] writeBufs, int[] erasedLocations,
+                                     int[] locationsToRead, int[] locationsNotToRead, int from, int to) {
         int[] tmpInput = new int[readBufs.length];
         int[] tmpOutput = new int[erasedLocations.length];
 
-        int numBytes = readBufs[0].length;
-        for (int idx = 0; idx < numBytes; idx++) {
+        final int bytesPerSymbol = bytesPerSymbol();
+        for (int idx = from; idx < to; idx += bytesPerSymbol) {
             for (int i = 0; i < tmpOutput.length; i++) {
                 tmpOutput[i] = 0;
             }
             for (int i = 0; i < tmpInput.length; i++) {
-                tmpInput[i] = readBufs[i][idx] & 0x000000FF;
+                tmpInput[i] = readBufs[i] == null ? 0 : readSymbol(readBufs[i], idx, bytesPerSymbol);
             }
             decode(tmpInput, erasedLocations, tmpOutput, locationsToRead,
                     locationsNotToRead);
             for (int i = 0; i < tmpOutput.length; i++) {
-                writeBufs[i][idx] = (byte) tmpOutput[i];
+                writeSymbol(writeBufs[i], idx, bytesPerSymbol, tmpOutput[i]);
             }
         }
     }
+
+    // Tiles whose blocks fit in the cache of a core, in whole cache lines and symbols
+    private int tileColumns(int length) {
+        final int columns = bulkColumns(length);
+        final int bytesPerColumn = columns == 0 ? 1 : Math.max(1, length / columns);
+        final int tile = BulkTiles.WORKING_SET / ((stripeSize() + paritySize()) * bytesPerColumn);
+        return Math.max(BulkTiles.MIN_TILE, tile - tile % BulkTiles.MIN_TILE);
+    }
+
+    /**
+     * The number of bytes holding one symbol in the bulk buffers.
+     */
+    protected int bytesPerSymbol() {
+        return (symbolSize() + 7) / 8;
+    }
+
+    private static int readSymbol(byte[] buffer, int offset, int bytesPerSymbol) {
+        int symbol = 0;
+        for (int b = 0; b < bytesPerSymbol; b++) {
+            symbol = symbol << 8 | buffer[offset + b] & 0x000000FF;
+        }
+        return symbol;
+    }
+
+    private static void writeSymbol(byte[] buffer, int offset, int bytesPerSymbol, int symbol) {
+        for (int b = bytesPerSymbol - 1; b >= 0; b--) {
+            buffer[offset + b] = (byte) symbol;
+            symbol >>>= 8;
+        }
+    }
 }
@@ -0,0 +1,180 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Errors-and-erasures decoder of {@link ReedSolomonCode}: the Berlekamp-Massey algorithm finds the errata locator
+ * polynomial from the syndromes, a Chien search its roots, and the Forney algorithm the errata values.
+ * <br/>
+ * The code has the roots 2^0 ... 2^(paritySize - 1), so the syndrome j is the codeword evaluated at 2^j. The
+ * Berlekamp-Massey iterations start from the erasure locator, so that a stripe with e errors and f erasures is
+ * corrected when 2e + f <= paritySize, in O(paritySize * (paritySize + length)) operations instead of the
+ * O(paritySize^3) of a Gaussian elimination.
+ * <br/>
+ * An instance holds the buffers of one decoding at a time.
+ */
+final class ErrataDecoder {
+    private final GaloisField GF;
+    private final int paritySize;
+    private final int length;
+    // 2^l and 2^-l for each location l
+    private final int[] locators;
+    private final int[] inverseLocators;
+
+    // Syndromes of the stripe being decoded, set by the caller or by computeSyndromes()
+    final int[] syndromes;
+    // Errata locator, its previous version shifted, and the next version, by increasing powers
+    private int[] locator;
+    private int[] previous;
+    private int[] next;
+    private final int[] evaluator;
+    // Output of decode(): the errata locations in increasing order, and the values to add to their symbols
+    final int[] errataLocations;
+    final int[] errataValues;
+
+    ErrataDecoder(GaloisField GF, int[] locators, int paritySize) {
+        this.GF = GF;
+        this.paritySize = paritySize;
+        this.length = locators.length;
+        this.locators = locators;
+        inverseLocators = new int[length];
+        for (int l = 0; l < length; l++) {
+            inverseLocators[l] = GF.divide(1, locators[l]);
+        }
+        syndromes = new int[paritySize];
+        locator = new int[paritySize + 2];
+        previous = new int[paritySize + 2];
+        next = new int[paritySize + 2];
+        evaluator = new int[paritySize];
+        errataLocations = new int[paritySize];
+        errataValues = new int[paritySize];
+    }
+
+    /**
+     * @param data The symbols of all the locations, parity first
+     * @return true if the syndromes are all zero: no error is detected
+     */
+    boolean computeSyndromes(int[] data) {
+        boolean zero = true;
+        for (int j = 0; j < paritySize; j++) {
+            final int root = GF.power(2, j);
+            int syndrome = 0;
+            for (int l = length - 1; l >= 0; l--) {
+                syndrome = GF.multiply(syndrome, root) ^ data[l];
+            }
+            syndromes[j] = syndrome;
+            zero &= syndrome == 0;
+        }
+        return zero;
+    }
+
+    /**
+     * Locate the errata of the stripe whose syndromes are set, and compute their values.
+     *
+     * @param erased The erased locations
+     * @return The number of errata, erased and corrupted locations, written to errataLocations and errataValues, or
+     * -1 if the stripe has more errors than the code can correct
+     */
+    int decode(BitSet erased) {
+        final int erasedCount = erased.cardinality();
+        if (erasedCount > paritySize) {
+            return -1;
+        }
+        Arrays.fill(locator, 0);
+        locator[0] = 1;
+        int degree = 0;
+        for (int loc = erased.nextSetBit(0); loc >= 0; loc = erased.nextSetBit(loc + 1)) {
+            // locator *= 1 + 2^loc x
+            degree++;
+            for (int i = degree; i > 0; i--) {
+                locator[i] ^= GF.multiply(locators[loc], locator[i - 1]);
+            }
+        }
+        System.arraycopy(locator, 0, previous, 0, locator.length);
+
+        int order = erasedCount;
+        for (int r = erasedCount + 1; r <= paritySize; r++) {
+            int discrepancy = 0;
+            for (int i = 0; i <= order && i < r; i++) {
+                discrepancy ^= GF.multiply(locator[i], syndromes[r - 1 - i]);
+            }
+            // previous *= x
+            System.arraycopy(previous, 0, previous, 1, previous.length - 1);
+            previous[0] = 0;
+            if (discrepancy == 0) {
+                continue;
+            }
+            for (int i = 0; i < next.length; i++) {
+                next[i] = locator[i] ^ GF.multiply(discrepancy, previous[i]);
+            }
+            if (2 * order <= r + erasedCount - 1) {
+                final int inverse = GF.divide(1, discrepancy);
+                for (int i = 0; i < previous.length; i++) {
+                    previous[i] = GF.multiply(inverse, locator[i]);
+                }
+                order = r + erasedCount - order;
+            }
+            final int[] swap = locator;
+            locator = next;
+            next = swap;
+        }
+        // 2 errors + erasures must fit in the parity
+        if (2 * order - erasedCount > paritySize || order > paritySize) {
+            return -1;
+        }
+        for (int i = order + 1; i < locator.length; i++) {
+            if (locator[i] != 0) {
+                return -1;
+            }
+        }
+
+        // Chien search: the errata locations are the inverses of the roots of the locator
+        int count = 0;
+        for (int l = 0; l < length && count <= order; l++) {
+            if (evaluate(locator, order, inverseLocators[l]) == 0) {
+                if (count == order) {
+                    return -1;
+                }
+                errataLocations[count++] = l;
+            }
+        }
+        if (count != order) {
+            return -1;
+        }
+
+        // Forney: the value of the errata at 2^l is 2^l * evaluator(2^-l) / locator'(2^-l)
+        for (int k = 0; k < paritySize; k++) {
+            int value = 0;
+            for (int i = 0; i <= Math.min(k, order); i++) {
+                value ^= GF.multiply(locator[i], syndromes[k - i]);
+            }
+            evaluator[k] = value;
+        }
+        for (int e = 0; e < count; e++) {
+            final int l = errataLocations[e];
+            final int x = inverseLocators[l];
+            // The formal derivative keeps the odd powers
+            int derivative = 0;
+            int power = 1;
+            final int square = GF.multiply(x, x);
+            for (int i = 1; i <= order; i += 2) {
+                derivative ^= GF.multiply(locator[i], power);
+                power = GF.multiply(power, square);
+            }
+            if (derivative == 0) {
+                return -1;
+            }
+            errataValues[e] = GF.divide(GF.multiply(locators[l], evaluate(evaluator, paritySize - 1, x)), derivative);
+        }
+        return count;
+    }
+
+    private int evaluate(int[] polynomial, int degree, int x) {
+        int value = 0;
+        for (int i = degree; i >= 0; i--) {
+            value = GF.multiply(value, x) ^ polynomial[i];
+        }
+        return value;
+    }
+}
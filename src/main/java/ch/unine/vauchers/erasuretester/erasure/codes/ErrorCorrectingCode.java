@@ -0,0 +1,34 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.BitSet;
+
+/**
+ * An erasure code which also locates and corrects corrupted symbols: the symbols that were read, but hold a wrong
+ * value. Unlike an erasure, the location of an error is unknown, so each one costs two parity symbols.
+ */
+public interface ErrorCorrectingCode {
+    /**
+     * Decode the erased locations of a stripe, and locate and correct its corrupted symbols.
+     *
+     * @param data           (in/out) The symbols of all the locations, parity first. The values at the erased
+     *                       locations are ignored. The erased and corrupted symbols are corrected in place.
+     * @param erased         The erased locations
+     * @param errorLocations (out) The locations of the corrupted symbols found, in increasing order. Its length must
+     *                       be at least paritySize() / 2.
+     * @return The number of corrupted symbols, or -1 if the stripe has more errors than the code can correct. data
+     * is then left with unspecified values.
+     */
+    int correctErrors(int[] data, BitSet erased, int[] errorLocations);
+
+    /**
+     * A "bulk" version of {@link #correctErrors(int[], BitSet, int[])}, on whole blocks.
+     *
+     * @param blocks    (in/out) The blocks of all the locations, parity first. The blocks at the erased locations
+     *                  are written, not read. The erased and corrupted blocks are corrected in place.
+     * @param erased    The erased locations
+     * @param corrupted (out) The locations of the blocks found corrupted
+     * @return false if some column has more errors than the code can correct. blocks is then left with unspecified
+     * values.
+     */
+    boolean correctErrorsBulk(byte[][] blocks, BitSet erased, BitSet corrupted);
+}
@@ -0,0 +1,528 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Systematic fountain code in the style of LT codes (Luby, LT Codes, 2002).
+ * <br/>
+ * Each repair symbol is the XOR of a pseudo-random set of message symbols, its neighbors, whose size follows the
+ * robust soliton distribution. The neighbors are drawn from the index of the repair symbol and a seed, so that any
+ * number of repair symbols can be generated on demand, see {@link #repairSymbol(int[], int)}. The code stores the
+ * first paritySize() ones. The locations are the repair symbols, then the message.
+ * <br/>
+ * Erasures are decoded by peeling: a repair symbol with a single erased neighbor gives it by XOR, which may leave
+ * another repair symbol with a single erased neighbor. When peeling stops, the equations left are solved by
+ * elimination over GF(2). An erased message symbol is repaired from the other neighbors of one repair symbol, i.e.
+ * the degree of the repair symbol instead of k reads. Unlike RS, the code is not MDS: some patterns of two or more
+ * erasures cannot be decoded.
+ */
+public class FountainCode extends ErasureCode {
+    public static final Logger LOG = Logger.getLogger(FountainCode.class.getName());
+    // Parameters of the robust soliton distribution
+    private static final double SPIKE_CONSTANT = 0.1;
+    private static final double FAILURE_PROBABILITY = 0.5;
+    // Seeds tried by the default constructor, and the best one of each configuration
+    static final int SEED_CANDIDATES = 64;
+    private static final Map<Long, Long> bestSeeds = new ConcurrentHashMap<>();
+
+    private final int stripeSize;
+    private final int paritySize;
+    private final long seed;
+    // Cumulative robust soliton distribution: degreeCdf[d - 1] = P(degree <= d)
+    private final double[] degreeCdf;
+    // neighbors[j]: the message symbols of the repair symbol j, in increasing order
+    private final int[][] neighbors;
+    private final int[][] parityColumns;
+    // XOR is the addition of GF(2^8), the region kernels are shared
+    private final GaloisField GF = GaloisField.getInstance();
+    private final DecodePlanCache<DecodePlan> decodePlans = new DecodePlanCache<>(DecodePlanCache.DEFAULT_CAPACITY);
+    private final Function<int[], DecodePlan> decodePlanner = this::computeDecodePlan;
+
+    /**
+     * Use the first seed of {@link #SEED_CANDIDATES} whose repair symbols decode the most single erasures, then the
+     * most double erasures, then read the fewest blocks. The seed is deterministic for a configuration.
+     */
+    public FountainCode(int stripeSize, int paritySize) {
+        this(stripeSize, paritySize, bestSeed(stripeSize, paritySize));
+    }
+
+    /**
+     * @param seed The seed drawing the neighbors of the repair symbols, see {@link #getSeed()}
+     */
+    public FountainCode(int stripeSize, int paritySize, long seed) {
+        this(stripeSize, paritySize, seed, false);
+        LOG.info("Initialized " + FountainCode.class +
+                " stripeSize:" + stripeSize +
+                " paritySize:" + paritySize +
+                " seed:" + seed);
+    }
+
+    private FountainCode(int stripeSize, int paritySize, long seed, boolean candidate) {
+        if (stripeSize < 1 || paritySize < 0) {
+            throw new IllegalArgumentException("Invalid fountain code (" + stripeSize + ", " + paritySize + ")");
+        }
+        this.stripeSize = stripeSize;
+        this.paritySize = paritySize;
+        this.seed = seed;
+        degreeCdf = robustSoliton(stripeSize);
+        neighbors = new int[paritySize][];
+        for (int j = 0; j < paritySize; j++) {
+            neighbors[j] = drawNeighbors(j);
+        }
+        // Candidates of bestSeed() are only scored
+        parityColumns = candidate ? null : parityColumns();
+    }
+
+    private static long bestSeed(int stripeSize, int paritySize) {
+        return bestSeeds.computeIfAbsent((long) stripeSize << 32 | paritySize,
+                configuration -> searchSeed(stripeSize, paritySize));
+    }
+
+    private static long searchSeed(int stripeSize, int paritySize) {
+        long best = 0;
+        long[] bestScore = null;
+        for (long candidate = 0; candidate < SEED_CANDIDATES; candidate++) {
+            final long[] score = new FountainCode(stripeSize, paritySize, candidate, true).score();
+            if (bestScore == null || compare(score, bestScore) < 0) {
+                best = candidate;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The single erasures and the double erasures which cannot be decoded, and the blocks read to repair
+     * the single erasures
+     */
+    private long[] score() {
+        final int totalSize = stripeSize + paritySize;
+        final long[] score = new long[3];
+        for (int a = 0; a < totalSize; a++) {
+            final DecodePlan plan = computeDecodePlan(new int[]{a});
+            if (plan.isDecodable()) {
+                score[2] += plan.sources.length;
+            } else {
+                score[0]++;
+            }
+            for (int b = a + 1; b < totalSize; b++) {
+                if (!computeDecodePlan(new int[]{a, b}).isDecodable()) {
+                    score[1]++;
+                }
+            }
+        }
+        return score;
+    }
+
+    private static int compare(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return Long.compare(a[i], b[i]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Robust soliton distribution of the degrees 1 ... k: the ideal soliton 1 / k, 1 / (d (d - 1)), plus more low
+     * degrees and a spike at k / R so that peeling rarely stops.
+     */
+    private static double[] robustSoliton(int k) {
+        final double r = SPIKE_CONSTANT * Math.log(k / FAILURE_PROBABILITY) * Math.sqrt(k);
+        final int spike = Math.max(1, Math.min(k, (int) (k / r)));
+        final double[] weights = new double[k];
+        for (int d = 1; d <= k; d++) {
+            weights[d - 1] = d == 1 ? 1.0 / k : 1.0 / (d * (d - 1.0));
+            if (d < spike) {
+                weights[d - 1] += r / (d * (double) k);
+            } else if (d == spike) {
+                weights[d - 1] += r * Math.log(r / FAILURE_PROBABILITY) / k;
+            }
+        }
+        double sum = 0;
+        for (double weight : weights) {
+            sum += Math.max(0, weight);
+        }
+        final double[] cdf = new double[k];
+        double cumulated = 0;
+        for (int d = 0; d < k; d++) {
+            cumulated += Math.max(0, weights[d]) / sum;
+            cdf[d] = cumulated;
+        }
+        cdf[k - 1] = 1;
+        return cdf;
+    }
+
+    /**
+     * The message symbols whose XOR is the repair symbol of an index. The indexes [ 0, paritySize() ) are the ones
+     * stored with the stripe, the next ones can be generated on demand.
+     *
+     * @return The positions in the message, in increasing order
+     */
+    public int[] neighbors(int index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Invalid repair symbol " + index);
+        }
+        return index < paritySize ? neighbors[index].clone() : drawNeighbors(index);
+    }
+
+    private int[] drawNeighbors(int index) {
+        final Random random = new Random(seed * 0x9E3779B97F4A7C15L + index);
+        final double u = random.nextDouble();
+        int degree = 1;
+        while (degree < stripeSize && degreeCdf[degree - 1] < u) {
+            degree++;
+        }
+        // The first degree positions of a partial shuffle
+        final int[] positions = new int[stripeSize];
+        for (int i = 0; i < stripeSize; i++) {
+            positions[i] = i;
+        }
+        for (int i = 0; i < degree; i++) {
+            final int j = i + random.nextInt(stripeSize - i);
+            final int swap = positions[i];
+            positions[i] = positions[j];
+            positions[j] = swap;
+        }
+        final int[] result = Arrays.copyOf(positions, degree);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Generate a repair symbol of any index, e.g. beyond the ones stored with the stripe to replace lost blocks.
+     */
+    public int repairSymbol(int[] message, int index) {
+        assert (message.length == stripeSize);
+        int symbol = 0;
+        for (int position : neighbors(index)) {
+            symbol ^= message[position];
+        }
+        return symbol;
+    }
+
+    /**
+     * A "bulk" version of {@link #repairSymbol(int[], int)}.
+     */
+    public void repairSymbolBulk(byte[][] inputs, int index, byte[] output) {
+        assert (inputs.length == stripeSize);
+        Arrays.fill(output, (byte) 0);
+        for (int position : neighbors(index)) {
+            GF.addRegion(inputs[position], 0, output, 0, output.length);
+        }
+    }
+
+    /**
+     * The seed drawing the neighbors of the repair symbols, with which another instance generates the same ones.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public void encode(int[] message, int[] parity) {
+        assert (message.length == stripeSize && parity.length == paritySize);
+        for (int j = 0; j < paritySize; j++) {
+            int symbol = 0;
+            for (int position : neighbors[j]) {
+                symbol ^= message[position];
+            }
+            parity[j] = symbol;
+        }
+    }
+
+    @Override
+    public void updateParity(int position, int oldValue, int newValue, int[] parity) {
+        assert (parity.length == paritySize);
+        final int delta = oldValue ^ newValue;
+        for (int j = 0; j < paritySize; j++) {
+            if (parityColumns[position][j] != 0) {
+                parity[j] ^= delta;
+            }
+        }
+    }
+
+    @Override
+    protected void encodeBulkColumns(byte[][] inputs, byte[][] outputs, int from, int to) {
+        assert (inputs.length == stripeSize && outputs.length == paritySize);
+        for (int j = 0; j < paritySize; j++) {
+            Arrays.fill(outputs[j], from, to, (byte) 0);
+            for (int position : neighbors[j]) {
+                GF.addRegion(inputs[position], from, outputs[j], from, to - from);
+            }
+        }
+    }
+
+    /**
+     * Reads the locations of the plan of the erasure pattern: the neighbors of the repair symbols peeled, and of the
+     * erased repair symbols.
+     */
+    @Override
+    public int locationsToReadForDecode(BitSet erased, int[] locationsToRead) throws TooManyErasedLocations {
+        if (erased.isEmpty()) {
+            for (int i = 0; i < stripeSize; i++) {
+                locationsToRead[i] = paritySize + i;
+            }
+            return stripeSize;
+        }
+        final DecodePlan plan = decodePlans.get(erased, decodePlanner);
+        if (!plan.isDecodable()) {
+            throw new TooManyErasedLocations("Locations " + erased);
+        }
+        System.arraycopy(plan.sources, 0, locationsToRead, 0, plan.sources.length);
+        return plan.sources.length;
+    }
+
+    private DecodePlan decodePlan(int[] erasedLocations) {
+        return decodePlans.get(erasedLocations, decodePlanner);
+    }
+
+    @Override
+    public DecodePlanCache<?> getDecodePlanCache() {
+        return decodePlans;
+    }
+
+    private DecodePlan computeDecodePlan(int[] erased) {
+        final DecodePlan plan = computePartialPlan(erased);
+        for (int location : erased) {
+            if (!plan.canRecover(location)) {
+                return DecodePlan.undecodable();
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Peel and eliminate the equations of the available repair symbols.
+     *
+     * @param unavailable The locations which are not read, in increasing order
+     * @return The plan of the unavailable locations which can be recovered, the other rows are null
+     */
+    private DecodePlan computePartialPlan(int[] unavailable) {
+        final int totalSize = stripeSize + paritySize;
+        final BitSet missing = new BitSet(totalSize);
+        for (int location : unavailable) {
+            missing.set(location);
+        }
+        // The symbol at each location, as the sum of the locations read. Null while unknown.
+        final BitSet[] expressions = new BitSet[totalSize];
+        for (int location = missing.nextClearBit(0); location < totalSize; location = missing.nextClearBit(location + 1)) {
+            expressions[location] = new BitSet(totalSize);
+            expressions[location].set(location);
+        }
+        // Equation of each available repair symbol: sum of its unknown neighbors = residual
+        final BitSet[] unknowns = new BitSet[paritySize];
+        final BitSet[] residuals = new BitSet[paritySize];
+        for (int j = 0; j < paritySize; j++) {
+            if (missing.get(j)) {
+                continue;
+            }
+            unknowns[j] = new BitSet(totalSize);
+            residuals[j] = new BitSet(totalSize);
+            residuals[j].set(j);
+            for (int position : neighbors[j]) {
+                if (missing.get(paritySize + position)) {
+                    unknowns[j].set(paritySize + position);
+                } else {
+                    residuals[j].set(paritySize + position);
+                }
+            }
+        }
+
+        // Peeling, the equation reading the fewest locations first
+        while (true) {
+            int best = -1;
+            for (int j = 0; j < paritySize; j++) {
+                if (unknowns[j] != null && unknowns[j].cardinality() == 1 &&
+                        (best < 0 || residuals[j].cardinality() < residuals[best].cardinality())) {
+                    best = j;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            solve(unknowns[best].nextSetBit(0), residuals[best], expressions, unknowns, residuals);
+        }
+
+        // Elimination over GF(2) of the equations left
+        int rank = 0;
+        final int[] pivots = new int[paritySize];
+        for (int location = missing.nextSetBit(paritySize); location >= 0; location = missing.nextSetBit(location + 1)) {
+            if (expressions[location] != null) {
+                continue;
+            }
+            int pivot = -1;
+            for (int j = 0; j < paritySize && pivot < 0; j++) {
+                if (unknowns[j] != null && unknowns[j].get(location) && !isPivot(pivots, rank, j)) {
+                    pivot = j;
+                }
+            }
+            if (pivot < 0) {
+                continue;
+            }
+            for (int j = 0; j < paritySize; j++) {
+                if (j != pivot && unknowns[j] != null && unknowns[j].get(location)) {
+                    unknowns[j].xor(unknowns[pivot]);
+                    residuals[j].xor(residuals[pivot]);
+                }
+            }
+            pivots[rank++] = pivot;
+        }
+        for (int r = 0; r < rank; r++) {
+            final BitSet unknown = unknowns[pivots[r]];
+            if (unknown.cardinality() == 1) {
+                expressions[unknown.nextSetBit(0)] = residuals[pivots[r]];
+            }
+        }
+
+        // Erased repair symbols are encoded again from their neighbors
+        for (int j = missing.nextSetBit(0); j >= 0 && j < paritySize; j = missing.nextSetBit(j + 1)) {
+            BitSet expression = new BitSet(totalSize);
+            for (int position : neighbors[j]) {
+                final BitSet neighbor = expressions[paritySize + position];
+                if (neighbor == null) {
+                    expression = null;
+                    break;
+                }
+                expression.xor(neighbor);
+            }
+            expressions[j] = expression;
+        }
+
+        final BitSet read = new BitSet(totalSize);
+        for (int location : unavailable) {
+            if (expressions[location] != null) {
+                read.or(expressions[location]);
+            }
+        }
+        final int[] sources = read.stream().toArray();
+        final int[][] rows = new int[totalSize][];
+        for (int location : unavailable) {
+            if (expressions[location] != null) {
+                rows[location] = new int[sources.length];
+                for (int s = 0; s < sources.length; s++) {
+                    rows[location][s] = expressions[location].get(sources[s]) ? 1 : 0;
+                }
+            }
+        }
+        return new DecodePlan(sources, rows);
+    }
+
+    private static boolean isPivot(int[] pivots, int rank, int j) {
+        for (int r = 0; r < rank; r++) {
+            if (pivots[r] == j) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The unknown location is the residual: substitute it in the other equations
+    private void solve(int location, BitSet residual, BitSet[] expressions, BitSet[] unknowns, BitSet[] residuals) {
+        expressions[location] = residual;
+        for (int j = 0; j < paritySize; j++) {
+            if (unknowns[j] != null && unknowns[j].get(location)) {
+                unknowns[j].clear(location);
+                if (residuals[j] != residual) {
+                    residuals[j].xor(residual);
+                }
+                if (unknowns[j].isEmpty()) {
+                    unknowns[j] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the erased locations which the pattern can recover, assuming that all the other locations are
+     * available. The values of the other erased locations are left untouched.
+     */
+    @Override
+    public void decode(int[] data, int[] erasedLocations, int[] erasedValues) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        decode(data, erasedLocations, erasedValues, decodePlan(erasedLocations));
+    }
+
+    /**
+     * Uses the cached plan of the erasure pattern when locationsToRead are the ones returned by
+     * locationsToReadForDecode(), and plans the decoding without the locations not to read otherwise.
+     */
+    @Override
+    public void decode(int[] data, int[] erasedLocations, int[] erasedValues, int[] locationsToRead,
+                       int[] locationsNotToRead) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        final DecodePlan plan = decodePlan(erasedLocations);
+        if (plan.isDecodable() && DecodePlanCache.sameLocations(plan.sources, locationsToRead)) {
+            decode(data, erasedLocations, erasedValues, plan);
+        } else {
+            decode(data, erasedLocations, erasedValues, computePartialPlan(unavailable(erasedLocations, locationsNotToRead)));
+        }
+    }
+
+    private void decode(int[] data, int[] erasedLocations, int[] erasedValues, DecodePlan plan) {
+        if (!plan.isDecodable()) {
+            return;
+        }
+        for (int i = 0; i < erasedLocations.length; i++) {
+            if (plan.canRecover(erasedLocations[i])) {
+                erasedValues[i] = plan.decode(GF, data, erasedLocations[i]);
+            }
+        }
+    }
+
+    private static int[] unavailable(int[] erasedLocations, int[] locationsNotToRead) {
+        final BitSet unavailable = new BitSet();
+        for (int location : erasedLocations) {
+            unavailable.set(location);
+        }
+        for (int location : locationsNotToRead) {
+            unavailable.set(location);
+        }
+        return unavailable.stream().toArray();
+    }
+
+    /**
+     * Region version of decode(): the plan of the pattern is a list of XORs of whole blocks.
+     */
+    @Override
+    protected void decodeBulkColumns(byte[][] readBufs, byte[][] writeBufs, int[] erasedLocations,
+                                     int[] locationsToRead, int[] locationsNotToRead, int from, int to) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        DecodePlan plan = decodePlan(erasedLocations);
+        if (!plan.isDecodable() || !DecodePlanCache.sameLocations(plan.sources, locationsToRead)) {
+            plan = computePartialPlan(unavailable(erasedLocations, locationsNotToRead));
+        }
+        for (int i = 0; i < erasedLocations.length; i++) {
+            if (plan.canRecover(erasedLocations[i])) {
+                plan.decodeBulk(GF, readBufs, erasedLocations[i], writeBufs[i], from, to);
+            }
+        }
+    }
+
+    @Override
+    public int stripeSize() {
+        return stripeSize;
+    }
+
+    @Override
+    public int paritySize() {
+        return paritySize;
+    }
+
+    @Override
+    public int symbolSize() {
+        return 8;
+    }
+}
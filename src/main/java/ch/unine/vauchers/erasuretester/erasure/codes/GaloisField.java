@@ -18,30 +18,69 @@
 
 package ch.unine.vauchers.erasuretester.erasure.codes;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Implementation of Galois field arithmetics with 2^p elements.
  * The input must be unsigned integers.
+ * <br/>
+ * The region operations work on byte arrays and buffers. For GF(2^16), each symbol is made of two bytes, most
+ * significant byte first, and the regions must hold whole symbols.
+ * <br/>
+ * The region operations on byte arrays use the kernels of {@link RegionKernels} that were the fastest in a
+ * calibration run in the background once the field was created, unless the system properties
+ * {@link #MULTIPLY_KERNEL_PROPERTY} and {@link #ADD_KERNEL_PROPERTY} name the kernels to use.
  */
 public class GaloisField {
 
     private final int[] logTable;
+    // Holds two periods, so that sums and differences of logarithms need no modulo
     private final int[] powTable;
-    private final int[][] mulTable;
-    private final int[][] divTable;
+    // Flattened multiplication table: x * y is at (x << symbolBits) | y.
+    // Only built for fields whose symbols fit in a byte, larger fields use the log/pow tables.
+    private final byte[] mulTable;
+    // Products used by the region operations: row c holds c * x for all x.
+    // Only built for fields whose symbols fit in a byte.
+    private final byte[][] productRows;
+    // Products used by the region operations of GF(2^16), see wideProductRow(). The rows of all the coefficients
+    // would take 64 MiB: each one is built on its first use. Null for fields whose symbols fit in a byte.
+    private final AtomicReferenceArray<char[]> wideProductRows;
     private final int fieldSize;
+    private final int symbolBits;
     private final int primitivePeriod;
     private final int primitivePolynomial;
+    // Kernels of the region operations on byte arrays, replaced by the fastest ones once they are calibrated
+    private volatile String multiplyKernelName;
+    private volatile RegionKernels.MultiplyKernel multiplyKernel;
+    private volatile String addKernelName;
+    private volatile RegionKernels.AddKernel addKernel;
 
     // Field size 256 is good for byte based system
     private static final int DEFAULT_FIELD_SIZE = 256;
     // primitive polynomial 1 + X^2 + X^3 + X^4 + X^8
     private static final int DEFAULT_PRIMITIVE_POLYNOMIAL = 285;
+    // Field size 65536 allows stripes wider than 255 locations, with 16-bit symbols
+    public static final int WIDE_FIELD_SIZE = 65536;
+    // primitive polynomial 1 + X + X^3 + X^12 + X^16
+    public static final int WIDE_PRIMITIVE_POLYNOMIAL = 69643;
+    // System properties naming the kernels of the region operations, "auto" or unset to pick the fastest ones
+    public static final String MULTIPLY_KERNEL_PROPERTY = "erasuretester.gf.multiplyKernel";
+    public static final String ADD_KERNEL_PROPERTY = "erasuretester.gf.addKernel";
 
-    static private final Map<Integer, GaloisField> instances =
-            new HashMap<Integer, GaloisField>();
+    static private final ConcurrentMap<Long, GaloisField> instances =
+            new ConcurrentHashMap<Long, GaloisField>();
+
+    // Built on the first call to getInstance()
+    private static final class DefaultInstance {
+        static final GaloisField INSTANCE = getInstance(DEFAULT_FIELD_SIZE, DEFAULT_PRIMITIVE_POLYNOMIAL);
+    }
 
     /**
      * Get the object performs Galois field arithmetics
@@ -51,14 +90,10 @@ public class GaloisField {
      */
     public static GaloisField getInstance(int fieldSize,
                                           int primitivePolynomial) {
-        int key = ((fieldSize << 16) & 0xFFFF0000) + (primitivePolynomial & 0x0000FFFF);
-        GaloisField gf;
-        synchronized (instances) {
-            gf = instances.get(key);
-            if (gf == null) {
-                gf = new GaloisField(fieldSize, primitivePolynomial);
-                instances.put(key, gf);
-            }
+        long key = ((long) fieldSize << 32) | primitivePolynomial;
+        GaloisField gf = instances.get(key);
+        if (gf == null) {
+            gf = instances.computeIfAbsent(key, k -> create(fieldSize, primitivePolynomial));
         }
         return gf;
     }
@@ -67,52 +102,148 @@ public class GaloisField {
      * Get the object performs Galois field arithmetics with default setting
      */
     public static GaloisField getInstance() {
-        return getInstance(DEFAULT_FIELD_SIZE, DEFAULT_PRIMITIVE_POLYNOMIAL);
+        return DefaultInstance.INSTANCE;
+    }
+
+    /**
+     * Get the object performs Galois field arithmetics on symbols of a given size
+     *
+     * @param symbolSize number of bits of the symbols, 8 or 16
+     */
+    public static GaloisField forSymbolSize(int symbolSize) {
+        switch (symbolSize) {
+            case 8:
+                return getInstance();
+            case 16:
+                return getInstance(WIDE_FIELD_SIZE, WIDE_PRIMITIVE_POLYNOMIAL);
+            default:
+                throw new IllegalArgumentException("Unsupported symbol size " + symbolSize);
+        }
+    }
+
+    /**
+     * Build a field, then select its kernels: the calibration runs on another thread, which must only see the field
+     * once it is fully built.
+     */
+    private static GaloisField create(int fieldSize, int primitivePolynomial) {
+        final GaloisField gf = new GaloisField(fieldSize, primitivePolynomial);
+        gf.selectKernels();
+        return gf;
     }
 
     private GaloisField(int fieldSize, int primitivePolynomial) {
+        assert (Integer.bitCount(fieldSize) == 1 && (fieldSize <= 256 || fieldSize == WIDE_FIELD_SIZE));
         this.fieldSize = fieldSize;
         this.primitivePeriod = fieldSize - 1;
         this.primitivePolynomial = primitivePolynomial;
+        this.symbolBits = Integer.numberOfTrailingZeros(fieldSize);
         logTable = new int[fieldSize];
-        powTable = new int[fieldSize];
-        mulTable = new int[fieldSize][fieldSize];
-        divTable = new int[fieldSize][fieldSize];
+        powTable = new int[2 * primitivePeriod];
         int value = 1;
         for (int pow = 0; pow < fieldSize - 1; pow++) {
             powTable[pow] = value;
+            powTable[pow + primitivePeriod] = value;
             logTable[value] = pow;
             value = value * 2;
             if (value >= fieldSize) {
                 value = value ^ primitivePolynomial;
             }
         }
-        // building multiplication table
-        for (int i = 0; i < fieldSize; i++) {
-            for (int j = 0; j < fieldSize; j++) {
-                if (i == 0 || j == 0) {
-                    mulTable[i][j] = 0;
-                    continue;
+        if (fieldSize <= 256) {
+            // building multiplication table
+            mulTable = new byte[fieldSize * fieldSize];
+            for (int i = 1; i < fieldSize; i++) {
+                for (int j = 1; j < fieldSize; j++) {
+                    mulTable[(i << symbolBits) | j] = (byte) powTable[logTable[i] + logTable[j]];
                 }
-                int z = logTable[i] + logTable[j];
-                z = z >= primitivePeriod ? z - primitivePeriod : z;
-                z = powTable[z];
-                mulTable[i][j] = z;
             }
+            // building product rows for the region operations
+            productRows = new byte[fieldSize][256];
+            for (int i = 0; i < fieldSize; i++) {
+                System.arraycopy(mulTable, i << symbolBits, productRows[i], 0, fieldSize);
+            }
+            wideProductRows = null;
+        } else {
+            mulTable = null;
+            productRows = null;
+            wideProductRows = new AtomicReferenceArray<>(fieldSize);
         }
-        // building division table
-        for (int i = 0; i < fieldSize; i++) {
-            for (int j = 1; j < fieldSize; j++) {
-                if (i == 0) {
-                    divTable[i][j] = 0;
-                    continue;
-                }
-                int z = logTable[i] - logTable[j];
-                z = z < 0 ? z + primitivePeriod : z;
-                z = powTable[z];
-                divTable[i][j] = z;
+    }
+
+    /**
+     * Set the kernels of the region operations on byte arrays, and start their calibration in the background.
+     */
+    private void selectKernels() {
+        final Map<String, RegionKernels.MultiplyKernel> multiplyKernels =
+                RegionKernels.multiplyKernels(this, productRows);
+        final Map<String, RegionKernels.AddKernel> addKernels = RegionKernels.addKernels();
+        if (fieldSize <= 2) {
+            // The coefficients are all 0 or 1: the multiply kernels are never used
+            multiplyKernelName = multiplyKernels.keySet().iterator().next();
+            multiplyKernel = multiplyKernels.get(multiplyKernelName);
+            addKernelName = addKernels.keySet().iterator().next();
+            addKernel = addKernels.get(addKernelName);
+        } else {
+            // The calibration runs the multiply kernels, then the add kernels, on the same regions
+            final byte[][] regions = RegionKernels.calibrationRegions();
+            final byte[] src = regions[0];
+            final byte[] dst = regions[1];
+            final int coef = fieldSize - 1;
+            RegionKernels.select(this, "multiply", MULTIPLY_KERNEL_PROPERTY, multiplyKernels,
+                    kernel -> length -> kernel.multiply(coef, src, 0, dst, 0, length, true),
+                    (name, kernel) -> {
+                        multiplyKernel = kernel;
+                        multiplyKernelName = name;
+                    });
+            RegionKernels.select(this, "add", ADD_KERNEL_PROPERTY, addKernels,
+                    kernel -> length -> kernel.add(src, 0, dst, 0, length),
+                    (name, kernel) -> {
+                        addKernel = kernel;
+                        addKernelName = name;
+                    });
+        }
+    }
+
+    /**
+     * Return the products coef * x for all the symbols x, indexed by x. The row is shared and must not be modified.
+     * Only for fields whose symbols fit in a byte.
+     */
+    byte[] productRow(int coef) {
+        assert (productRows != null);
+        return productRows[coef];
+    }
+
+    /**
+     * Return the products of coef with the bytes of a 16-bit symbol: coef * x = row[x >>> 8] + row[256 + (x & 0xFF)].
+     * The row is built on its first use, is shared and must not be modified. Only for GF(2^16).
+     */
+    char[] wideProductRow(int coef) {
+        assert (wideProductRows != null);
+        char[] row = wideProductRows.get(coef);
+        if (row == null) {
+            // Threads racing here build the same products
+            row = new char[512];
+            for (int b = 0; b < 256; b++) {
+                row[b] = (char) multiply(coef, b << 8);
+                row[256 + b] = (char) multiply(coef, b);
             }
+            wideProductRows.set(coef, row);
         }
+        return row;
+    }
+
+    /**
+     * Return the name of the kernel of the multiply region operations on byte arrays
+     */
+    String getMultiplyKernelName() {
+        return multiplyKernelName;
+    }
+
+    /**
+     * Return the name of the kernel of the add region operation on byte arrays
+     */
+    String getAddKernelName() {
+        return addKernelName;
     }
 
     /**
@@ -124,6 +255,15 @@ public class GaloisField {
         return fieldSize;
     }
 
+    /**
+     * Return number of bits of a symbol
+     *
+     * @return number of bits of a symbol
+     */
+    public int getSymbolSize() {
+        return symbolBits;
+    }
+
     /**
      * Return the primitive polynomial in GF(2)
      *
@@ -154,7 +294,13 @@ public class GaloisField {
      */
     public int multiply(int x, int y) {
         assert (x >= 0 && x < getFieldSize() && y >= 0 && y < getFieldSize());
-        return mulTable[x][y];
+        if (mulTable != null) {
+            return mulTable[(x << symbolBits) | y] & 0xFF;
+        }
+        if (x == 0 || y == 0) {
+            return 0;
+        }
+        return powTable[logTable[x] + logTable[y]];
     }
 
     /**
@@ -166,7 +312,10 @@ public class GaloisField {
      */
     public int divide(int x, int y) {
         assert (x >= 0 && x < getFieldSize() && y > 0 && y < getFieldSize());
-        return divTable[x][y];
+        if (x == 0) {
+            return 0;
+        }
+        return powTable[logTable[x] - logTable[y] + primitivePeriod];
     }
 
     /**
@@ -192,6 +341,171 @@ public class GaloisField {
         return powTable[x];
     }
 
+    /**
+     * Multiply a region of symbols by a constant: dst = coef * src.
+     *
+     * @param coef input field
+     * @param src  input region
+     * @param dst  output region, may be the same array as src
+     */
+    public void multiplyRegion(int coef, byte[] src, byte[] dst) {
+        multiplyRegion(coef, src, 0, dst, 0, src.length);
+    }
+
+    /**
+     * Multiply a region of symbols by a constant: dst[dstOffset..] = coef * src[srcOffset..].
+     */
+    public void multiplyRegion(int coef, byte[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        assert (coef >= 0 && coef < getFieldSize());
+        if (coef == 0) {
+            Arrays.fill(dst, dstOffset, dstOffset + length, (byte) 0);
+        } else if (coef == 1) {
+            if (src != dst || srcOffset != dstOffset) {
+                System.arraycopy(src, srcOffset, dst, dstOffset, length);
+            }
+        } else {
+            multiplyKernel.multiply(coef, src, srcOffset, dst, dstOffset, length, false);
+        }
+    }
+
+    /**
+     * Multiply a region of symbols by a constant and add it to another region: dst = dst + coef * src.
+     *
+     * @param coef input field
+     * @param src  input region
+     * @param dst  region the product is added to
+     */
+    public void multiplyAccumulateRegion(int coef, byte[] src, byte[] dst) {
+        multiplyAccumulateRegion(coef, src, 0, dst, 0, src.length);
+    }
+
+    /**
+     * Multiply a region of symbols by a constant and add it to another region:
+     * dst[dstOffset..] = dst[dstOffset..] + coef * src[srcOffset..].
+     */
+    public void multiplyAccumulateRegion(int coef, byte[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        assert (coef >= 0 && coef < getFieldSize());
+        if (coef == 0) {
+            return;
+        }
+        if (coef == 1) {
+            addRegion(src, srcOffset, dst, dstOffset, length);
+            return;
+        }
+        multiplyKernel.multiply(coef, src, srcOffset, dst, dstOffset, length, true);
+    }
+
+    /**
+     * Add a region of symbols to another region: dst[dstOffset..] = dst[dstOffset..] + src[srcOffset..].
+     */
+    public void addRegion(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        addKernel.add(src, srcOffset, dst, dstOffset, length);
+    }
+
+    /**
+     * Add a region of symbols to another region: dst = dst + src.
+     * The symbols between the position and the limit of src are read, and added to dst
+     * starting at its position. The positions of both buffers are left untouched.
+     */
+    public void addRegion(ByteBuffer src, ByteBuffer dst) {
+        assert (dst.remaining() >= src.remaining());
+        final int length = src.remaining();
+        final int srcOffset = src.position();
+        final int dstOffset = dst.position();
+        if (src.hasArray() && dst.hasArray()) {
+            addRegion(src.array(), src.arrayOffset() + srcOffset, dst.array(), dst.arrayOffset() + dstOffset, length);
+            return;
+        }
+        // Direct buffers: process a long-word at a time. XOR does not depend on the byte order, so the native one is
+        // used to avoid swapping the bytes of each word.
+        final LongBuffer srcWords = src.duplicate().order(ByteOrder.nativeOrder()).asLongBuffer();
+        final LongBuffer dstWords = dst.duplicate().order(ByteOrder.nativeOrder()).asLongBuffer();
+        final int words = length >>> 3;
+        for (int i = 0; i < words; i++) {
+            dstWords.put(i, dstWords.get(i) ^ srcWords.get(i));
+        }
+        for (int i = words << 3; i < length; i++) {
+            dst.put(dstOffset + i, (byte) (dst.get(dstOffset + i) ^ src.get(srcOffset + i)));
+        }
+    }
+
+    /**
+     * Multiply a region of symbols by a constant: dst = coef * src.
+     * The symbols between the position and the limit of src are read, and written to dst
+     * starting at its position. The positions of both buffers are left untouched.
+     */
+    public void multiplyRegion(int coef, ByteBuffer src, ByteBuffer dst) {
+        regionOperation(coef, src, dst, false);
+    }
+
+    /**
+     * Multiply a region of symbols by a constant and add it to another region: dst = dst + coef * src.
+     * The symbols between the position and the limit of src are read, and added to dst
+     * starting at its position. The positions of both buffers are left untouched.
+     */
+    public void multiplyAccumulateRegion(int coef, ByteBuffer src, ByteBuffer dst) {
+        regionOperation(coef, src, dst, true);
+    }
+
+    private void regionOperation(int coef, ByteBuffer src, ByteBuffer dst, boolean accumulate) {
+        assert (coef >= 0 && coef < getFieldSize());
+        assert (dst.remaining() >= src.remaining());
+        final int length = src.remaining();
+        if (src.hasArray() && dst.hasArray()) {
+            final int srcOffset = src.arrayOffset() + src.position();
+            final int dstOffset = dst.arrayOffset() + dst.position();
+            if (accumulate) {
+                multiplyAccumulateRegion(coef, src.array(), srcOffset, dst.array(), dstOffset, length);
+            } else {
+                multiplyRegion(coef, src.array(), srcOffset, dst.array(), dstOffset, length);
+            }
+            return;
+        }
+        if (coef == 0 && accumulate) {
+            return;
+        }
+        if (coef == 1 && accumulate) {
+            addRegion(src, dst);
+            return;
+        }
+        final int srcOffset = src.position();
+        final int dstOffset = dst.position();
+        if (productRows == null) {
+            final char[] row = wideProductRow(coef);
+            for (int i = 0; i < length; i += 2) {
+                int product = row[src.get(srcOffset + i) & 0xFF] ^ row[256 + (src.get(srcOffset + i + 1) & 0xFF)];
+                if (accumulate) {
+                    product ^= ((dst.get(dstOffset + i) & 0xFF) << 8) | (dst.get(dstOffset + i + 1) & 0xFF);
+                }
+                dst.put(dstOffset + i, (byte) (product >>> 8));
+                dst.put(dstOffset + i + 1, (byte) product);
+            }
+            return;
+        }
+        // Direct buffers: process a long-word at a time
+        final byte[] row = productRows[coef];
+        // Words are only valid when both buffers share a byte order
+        final int words = src.order() == dst.order() ? length & ~7 : 0;
+        for (int i = 0; i < words; i += 8) {
+            final long s = src.getLong(srcOffset + i);
+            long product = 0;
+            for (int shift = 0; shift < 64; shift += 8) {
+                product |= (row[(int) (s >>> shift) & 0xFF] & 0xFFL) << shift;
+            }
+            if (accumulate) {
+                product ^= dst.getLong(dstOffset + i);
+            }
+            dst.putLong(dstOffset + i, product);
+        }
+        for (int i = words; i < length; i++) {
+            byte product = row[src.get(srcOffset + i) & 0xFF];
+            if (accumulate) {
+                product ^= dst.get(dstOffset + i);
+            }
+            dst.put(dstOffset + i, product);
+        }
+    }
+
     /**
      * Given a Vandermonde matrix V[i][j]=x[j]^i and vector y, solve for z such
      * that Vz=y. The output z will be placed in y.
@@ -217,12 +531,12 @@ public class GaloisField {
         //assert(x.length <= len && y.length <= len);
         for (int i = 0; i < len - 1; i++) {
             for (int j = len - 1; j > i; j--) {
-                y[j] = y[j] ^ mulTable[x[i]][y[j - 1]];
+                y[j] = y[j] ^ multiply(x[i], y[j - 1]);
             }
         }
         for (int i = len - 1; i >= 0; i--) {
             for (int j = i + 1; j < len; j++) {
-                y[j] = divTable[y[j]][x[j] ^ x[j - i - 1]];
+                y[j] = divide(y[j], x[j] ^ x[j - i - 1]);
             }
             for (int j = i; j < len - 1; j++) {
                 y[j] = y[j] ^ y[j + 1];
@@ -238,21 +552,15 @@ public class GaloisField {
         assert (x.length <= len && y.length <= len);
         for (int i = 0; i < len - 1; i++) {
             for (int j = len - 1; j > i; j--) {
-                for (int k = 0; k < dataLen; k++) {
-                    y[j][k] = (byte) (y[j][k] ^ mulTable[x[i]][y[j - 1][k] & 0x000000FF]);
-                }
+                multiplyAccumulateRegion(x[i], y[j - 1], 0, y[j], 0, dataLen);
             }
         }
         for (int i = len - 1; i >= 0; i--) {
             for (int j = i + 1; j < len; j++) {
-                for (int k = 0; k < dataLen; k++) {
-                    y[j][k] = (byte) (divTable[y[j][k] & 0x000000FF][x[j] ^ x[j - i - 1]]);
-                }
+                multiplyRegion(divide(1, x[j] ^ x[j - i - 1]), y[j], 0, y[j], 0, dataLen);
             }
             for (int j = i; j < len - 1; j++) {
-                for (int k = 0; k < dataLen; k++) {
-                    y[j][k] = (byte) (y[j][k] ^ y[j + 1][k]);
-                }
+                addRegion(y[j + 1], 0, y[j], 0, dataLen);
             }
         }
     }
@@ -291,10 +599,10 @@ public class GaloisField {
     public void remainder(int[] dividend, int[] divisor) {
         for (int i = dividend.length - divisor.length; i >= 0; i--) {
             int ratio =
-                    divTable[dividend[i + divisor.length - 1]][divisor[divisor.length - 1]];
+                    divide(dividend[i + divisor.length - 1], divisor[divisor.length - 1]);
             for (int j = 0; j < divisor.length; j++) {
                 int k = j + i;
-                dividend[k] = dividend[k] ^ mulTable[ratio][divisor[j]];
+                dividend[k] = dividend[k] ^ multiply(ratio, divisor[j]);
             }
         }
     }
@@ -304,14 +612,23 @@ public class GaloisField {
      * Warning: This function will modify the "dividend" inputs.
      */
     public void remainder(byte[][] dividend, int[] divisor) {
+        remainder(dividend, divisor, 0, dividend[0].length);
+    }
+
+    /**
+     * The "bulk" version of the remainder, restricted to the region [ offset, offset + length ) of the dividend.
+     * Warning: This function will modify the "dividend" inputs.
+     */
+    public void remainder(byte[][] dividend, int[] divisor, int offset, int length) {
+        final int lead = divisor[divisor.length - 1];
         for (int i = dividend.length - divisor.length; i >= 0; i--) {
-            for (int j = 0; j < divisor.length; j++) {
-                for (int k = 0; k < dividend[i].length; k++) {
-                    int ratio =
-                            divTable[dividend[i + divisor.length - 1][k] & 0x00FF][divisor[divisor.length - 1]];
-                    dividend[j + i][k] = (byte) ((dividend[j + i][k] & 0x00FF) ^ mulTable[ratio][divisor[j]]);
-                }
+            final byte[] top = dividend[i + divisor.length - 1];
+            // top now holds the ratio, which cancels the leading term
+            multiplyRegion(divide(1, lead), top, offset, top, offset, length);
+            for (int j = 0; j < divisor.length - 1; j++) {
+                multiplyAccumulateRegion(divisor[j], top, offset, dividend[j + i], offset, length);
             }
+            Arrays.fill(top, offset, offset + length, (byte) 0);
         }
     }
 
@@ -350,15 +667,15 @@ public class GaloisField {
         int result = 0;
         int y = 1;
         for (int i = 0; i < p.length; i++) {
-            result = result ^ mulTable[p[i]][y];
-            y = mulTable[x][y];
+            result = result ^ multiply(p[i], y);
+            y = multiply(x, y);
         }
         return result;
     }
 
     /**
      * A "bulk" version of the substitute.
-     * Tends to be 2X faster than the "int" substitute in a loop.
+     * Null entries in p are considered as zero regions.
      *
      * @param p input polynomial
      * @param q store the return result
@@ -367,13 +684,64 @@ public class GaloisField {
     public void substitute(byte[][] p, byte[] q, int x) {
         int y = 1;
         for (int i = 0; i < p.length; i++) {
-            byte[] pi = p[i];
-            for (int j = 0; j < pi.length; j++) {
-                int pij = pi[j] & 0x000000FF;
-                q[j] = (byte) (q[j] ^ mulTable[pij][y]);
+            if (p[i] != null) {
+                multiplyAccumulateRegion(y, p[i], 0, q, 0, q.length);
+            }
+            y = multiply(x, y);
+        }
+    }
+
+    /**
+     * Compute the inverse of a square matrix using Gauss-Jordan elimination.
+     * The input matrix is left untouched.
+     *
+     * @param matrix the square matrix to invert
+     * @return the inverse of the matrix
+     * @throws IllegalArgumentException if the matrix is singular
+     */
+    public int[][] invertMatrix(int[][] matrix) {
+        final int n = matrix.length;
+        final int[][] work = new int[n][];
+        final int[][] inverse = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            assert (matrix[i].length == n);
+            work[i] = matrix[i].clone();
+            inverse[i][i] = 1;
+        }
+        for (int i = 0; i < n; i++) {
+            // scan the column for a nonzero pivot and swap it to the diagonal
+            int pivotRow = i;
+            while (pivotRow < n && work[pivotRow][i] == 0) {
+                pivotRow++;
+            }
+            if (pivotRow == n) {
+                throw new IllegalArgumentException("Singular matrix");
+            }
+            if (pivotRow != i) {
+                int[] tmp = work[i];
+                work[i] = work[pivotRow];
+                work[pivotRow] = tmp;
+                tmp = inverse[i];
+                inverse[i] = inverse[pivotRow];
+                inverse[pivotRow] = tmp;
+            }
+            final int pivotInverse = divide(1, work[i][i]);
+            for (int j = 0; j < n; j++) {
+                work[i][j] = multiply(work[i][j], pivotInverse);
+                inverse[i][j] = multiply(inverse[i][j], pivotInverse);
+            }
+            for (int j = 0; j < n; j++) {
+                final int lead = work[j][i];
+                if (j == i || lead == 0) {
+                    continue;
+                }
+                for (int k = 0; k < n; k++) {
+                    work[j][k] = add(work[j][k], multiply(lead, work[i][k]));
+                    inverse[j][k] = add(inverse[j][k], multiply(lead, inverse[i][k]));
+                }
             }
-            y = mulTable[x][y];
         }
+        return inverse;
     }
 
     /**
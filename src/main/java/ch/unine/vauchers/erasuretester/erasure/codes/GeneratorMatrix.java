@@ -0,0 +1,189 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Function;
+
+/**
+ * Generator matrix of a systematic linear code, decoding from any set of locations by elimination. Used by the codes
+ * whose repairs read fewer than stripeSize() locations, or locations which are not all independent.
+ */
+final class GeneratorMatrix {
+    private final GaloisField GF;
+    private final int stripeSize;
+    // rows[location][i]: coefficient of the message symbol i in the symbol at location
+    private final int[][] rows;
+    // Recovery plans, keyed by the locations read
+    private final DecodePlanCache<DecodePlan> decodePlans = new DecodePlanCache<>(DecodePlanCache.DEFAULT_CAPACITY);
+    private final Function<int[], DecodePlan> decodePlanner = this::computeDecodePlan;
+
+    /**
+     * @param parityMatrix parityMatrix[j][i] is the coefficient of the message symbol i in the parity symbol j
+     */
+    GeneratorMatrix(GaloisField GF, int stripeSize, int[][] parityMatrix) {
+        this.GF = GF;
+        this.stripeSize = stripeSize;
+        this.rows = new int[parityMatrix.length + stripeSize][];
+        System.arraycopy(parityMatrix, 0, rows, 0, parityMatrix.length);
+        for (int i = 0; i < stripeSize; i++) {
+            rows[parityMatrix.length + i] = new int[stripeSize];
+            rows[parityMatrix.length + i][i] = 1;
+        }
+    }
+
+    DecodePlanCache<DecodePlan> getDecodePlanCache() {
+        return decodePlans;
+    }
+
+    /**
+     * Return the plan giving every location recoverable from all the locations read, cached per set of locations read.
+     */
+    DecodePlan decodePlan(int[] locationsToRead) {
+        return decodePlans.get(locationsToRead, decodePlanner);
+    }
+
+    /**
+     * @return Whether all the erased locations can be recovered from the first count locations read
+     */
+    boolean canRecover(int[] locationsToRead, int count, BitSet erased) {
+        final DecodePlan plan = decodePlan(Arrays.copyOf(locationsToRead, count));
+        for (int loc = erased.nextSetBit(0); loc >= 0; loc = erased.nextSetBit(loc + 1)) {
+            if (!plan.canRecover(loc)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Choose stripeSize independent locations which are not erased, starting with the message symbols.
+     *
+     * @param locationsToRead (out) The locations chosen, in increasing order
+     * @return The number of locations chosen, stripeSize
+     */
+    int spanningLocationsToRead(BitSet erased, int[] locationsToRead) throws TooManyErasedLocations {
+        final int[][] basis = new int[stripeSize][];
+        final int[] pivots = new int[stripeSize];
+        int count = 0;
+        for (int loc = rows.length - 1; loc >= 0 && count < stripeSize; loc--) {
+            if (!erased.get(loc) && reduce(rows[loc].clone(), null, basis, null, pivots, count)) {
+                locationsToRead[count++] = loc;
+            }
+        }
+        if (count != stripeSize) {
+            throw new TooManyErasedLocations("Locations " + erased);
+        }
+        Arrays.sort(locationsToRead, 0, count);
+        return count;
+    }
+
+    /**
+     * Decode the erased locations which can be recovered from all the other ones.
+     */
+    void decode(int[] data, int[] erasedLocations, int[] erasedValues) {
+        final boolean[] erased = new boolean[rows.length];
+        for (int location : erasedLocations) {
+            erased[location] = true;
+        }
+        final IntList available = new IntArrayList(rows.length);
+        for (int loc = 0; loc < erased.length; loc++) {
+            if (!erased[loc]) {
+                available.add(loc);
+            }
+        }
+        final DecodePlan plan = decodePlan(available.toIntArray());
+        for (int e = 0; e < erasedLocations.length; e++) {
+            if (plan.canRecover(erasedLocations[e])) {
+                erasedValues[e] = plan.decode(GF, data, erasedLocations[e]);
+            }
+        }
+    }
+
+    /**
+     * Express every location recoverable from the sources as a combination of the sources: the generator rows of the
+     * sources are reduced to echelon form, keeping the combination of sources giving each reduced row.
+     */
+    private DecodePlan computeDecodePlan(int[] sources) {
+        final int[][] basis = new int[stripeSize][];
+        final int[][] combinations = new int[stripeSize][];
+        final int[] pivots = new int[stripeSize];
+        int rank = 0;
+        for (int s = 0; s < sources.length && rank < stripeSize; s++) {
+            final int[] combination = new int[sources.length];
+            combination[s] = 1;
+            if (reduce(rows[sources[s]].clone(), combination, basis, combinations, pivots, rank)) {
+                rank++;
+            }
+        }
+
+        final int[][] planRows = new int[rows.length][];
+        for (int loc = 0; loc < rows.length; loc++) {
+            final int[] target = rows[loc].clone();
+            final int[] combination = new int[sources.length];
+            eliminate(target, combination, basis, combinations, pivots, rank);
+            if (pivot(target) < 0) {
+                planRows[loc] = combination;
+            }
+        }
+        return new DecodePlan(sources, planRows);
+    }
+
+    /**
+     * Reduce a row by the basis, and add it to the basis at the index rank if it is independent.
+     *
+     * @return Whether the row was added
+     */
+    private boolean reduce(int[] row, int[] combination, int[][] basis, int[][] combinations, int[] pivots, int rank) {
+        eliminate(row, combination, basis, combinations, pivots, rank);
+        final int pivot = pivot(row);
+        if (pivot < 0) {
+            return false;
+        }
+        final int inverse = GF.divide(1, row[pivot]);
+        scale(row, inverse);
+        if (combination != null) {
+            scale(combination, inverse);
+            combinations[rank] = combination;
+        }
+        basis[rank] = row;
+        pivots[rank] = pivot;
+        return true;
+    }
+
+    // Each basis row is reduced by the previous ones, so eliminating them in order clears all the pivots
+    private void eliminate(int[] row, int[] combination, int[][] basis, int[][] combinations, int[] pivots, int rank) {
+        for (int b = 0; b < rank; b++) {
+            final int coefficient = row[pivots[b]];
+            if (coefficient != 0) {
+                multiplyAccumulate(coefficient, basis[b], row);
+                if (combination != null) {
+                    multiplyAccumulate(coefficient, combinations[b], combination);
+                }
+            }
+        }
+    }
+
+    private void multiplyAccumulate(int coefficient, int[] src, int[] dst) {
+        for (int i = 0; i < dst.length; i++) {
+            dst[i] ^= GF.multiply(coefficient, src[i]);
+        }
+    }
+
+    private void scale(int[] row, int coefficient) {
+        for (int i = 0; i < row.length; i++) {
+            row[i] = GF.multiply(coefficient, row[i]);
+        }
+    }
+
+    private static int pivot(int[] row) {
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
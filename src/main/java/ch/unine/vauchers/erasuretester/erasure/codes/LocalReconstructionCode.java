@@ -0,0 +1,152 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.BitSet;
+
+/**
+ * Local Reconstruction Code LRC(k, l, r) (Huang et al., Erasure Coding in Windows Azure Storage, 2012).
+ * <br/>
+ * The k message symbols are split into l local groups of consecutive symbols, each one protected by the XOR of its
+ * symbols, and r global parities are computed over the whole message on a Cauchy matrix. The locations are the local
+ * parities, then the global parities, then the message.
+ * <br/>
+ * A single erasure in a local group is repaired from the other symbols of the group, i.e. about k / l reads instead
+ * of k. Other erasure patterns read k independent locations, and are decoded by elimination over the generator
+ * matrix, which tolerates any r + 1 erasures.
+ */
+public class LocalReconstructionCode extends MatrixReedSolomonCode {
+    private final int stripeSize;
+    private final int localGroups;
+    private final int globalParities;
+    private final int groupSize;
+    private final GeneratorMatrix generator;
+
+    public LocalReconstructionCode(int stripeSize, int localGroups, int globalParities) {
+        this(stripeSize, localGroups, globalParities, GaloisField.getInstance());
+    }
+
+    /**
+     * @param localGroups    The number of local groups l, each one with its XOR parity
+     * @param globalParities The number of global parities r
+     * @param GF             The field of the symbols
+     */
+    public LocalReconstructionCode(int stripeSize, int localGroups, int globalParities, GaloisField GF) {
+        this(stripeSize, localGroups, globalParities, GF, lrcParityMatrix(stripeSize, localGroups, globalParities, GF));
+    }
+
+    private LocalReconstructionCode(int stripeSize, int localGroups, int globalParities, GaloisField GF,
+                                    int[][] parityMatrix) {
+        super(stripeSize, localGroups + globalParities, GF, parityMatrix);
+        this.stripeSize = stripeSize;
+        this.localGroups = localGroups;
+        this.globalParities = globalParities;
+        this.groupSize = groupSize(stripeSize, localGroups);
+        this.generator = new GeneratorMatrix(GF, stripeSize, parityMatrix);
+    }
+
+    private static int groupSize(int stripeSize, int localGroups) {
+        return (stripeSize + localGroups - 1) / localGroups;
+    }
+
+    private static int[][] lrcParityMatrix(int stripeSize, int localGroups, int globalParities, GaloisField GF) {
+        if (localGroups < 1 || localGroups > stripeSize || globalParities < 0) {
+            throw new IllegalArgumentException("Invalid LRC(" + stripeSize + ", " + localGroups + ", " +
+                    globalParities + ")");
+        }
+        if (stripeSize + globalParities > GF.getFieldSize()) {
+            throw new IllegalArgumentException("A stripe of " + (stripeSize + globalParities) +
+                    " locations needs a field larger than GF(" + GF.getFieldSize() + ")");
+        }
+        final int groupSize = groupSize(stripeSize, localGroups);
+        final int[][] matrix = new int[localGroups + globalParities][stripeSize];
+        for (int i = 0; i < stripeSize; i++) {
+            matrix[i / groupSize][i] = 1;
+        }
+        // Cauchy rows 1 / (j + (globalParities + i)): every square submatrix is invertible
+        for (int j = 0; j < globalParities; j++) {
+            for (int i = 0; i < stripeSize; i++) {
+                matrix[localGroups + j][i] = GF.divide(1, j ^ (globalParities + i));
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Return the local group of a location, or -1 for a global parity.
+     */
+    int localGroup(int location) {
+        if (location < localGroups) {
+            return location;
+        } else if (location < localGroups + globalParities) {
+            return -1;
+        }
+        return (location - localGroups - globalParities) / groupSize;
+    }
+
+    /**
+     * Read the other locations of the local group of each erased location if every group has at most one erasure and
+     * no global parity is erased. Otherwise read k locations spanning the message, the message symbols first.
+     */
+    @Override
+    public int locationsToReadForDecode(BitSet erased, int[] locationsToRead) throws TooManyErasedLocations {
+        if (!erased.isEmpty()) {
+            final int count = localLocationsToRead(erased, locationsToRead);
+            if (count >= 0) {
+                return count;
+            }
+        }
+        return generator.spanningLocationsToRead(erased, locationsToRead);
+    }
+
+    /**
+     * @return The number of locations to read, or -1 if the erasures are not all in distinct local groups
+     */
+    private int localLocationsToRead(BitSet erased, int[] locationsToRead) {
+        for (int loc = erased.nextSetBit(0); loc >= 0; loc = erased.nextSetBit(loc + 1)) {
+            final int group = localGroup(loc);
+            if (group < 0 || erasedInGroup(erased, group, loc + 1)) {
+                return -1;
+            }
+        }
+        int count = 0;
+        for (int loc = 0; loc < stripeSize + localGroups + globalParities; loc++) {
+            final int group = localGroup(loc);
+            if (!erased.get(loc) && group >= 0 && erasedInGroup(erased, group, 0)) {
+                locationsToRead[count++] = loc;
+            }
+        }
+        return count;
+    }
+
+    // Whether a location of a local group from the location from onwards is erased
+    private boolean erasedInGroup(BitSet erased, int group, int from) {
+        if (from <= group && erased.get(group)) {
+            return true;
+        }
+        final int first = localGroups + globalParities + group * groupSize;
+        final int end = Math.min(first + groupSize, stripeSize + localGroups + globalParities);
+        final int next = erased.nextSetBit(Math.max(first, from));
+        return next >= 0 && next < end;
+    }
+
+    /**
+     * Unlike {@link MatrixReedSolomonCode}, the plan is built from all the locations read, which may be fewer than
+     * stripeSize() for local repairs.
+     */
+    @Override
+    DecodePlan decodePlan(int[] locationsToRead) {
+        return generator.decodePlan(locationsToRead);
+    }
+
+    @Override
+    public DecodePlanCache<?> getDecodePlanCache() {
+        return generator.getDecodePlanCache();
+    }
+
+    @Override
+    public void decode(int[] data, int[] erasedLocations, int[] erasedValues) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        generator.decode(data, erasedLocations, erasedValues);
+    }
+}
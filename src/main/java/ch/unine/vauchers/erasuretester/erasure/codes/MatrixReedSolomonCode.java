@@ -0,0 +1,268 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.logging.Logger;
+
+/**
+ * Systematic Reed-Solomon code using a generator matrix instead of polynomial arithmetics.
+ * <br/>
+ * The generator matrix is derived from a Vandermonde matrix, turned systematic by multiplying it with the inverse of
+ * its data rows. Every square submatrix is invertible, so any stripeSize() locations are enough to decode. Encoding
+ * is a paritySize() x stripeSize() multiply-accumulate, and decoding inverts the matrix of the locations that are
+ * read once per erasure pattern, then applies it to every symbol.
+ */
+public class MatrixReedSolomonCode extends ErasureCode {
+    public static final Logger LOG = Logger.getLogger(MatrixReedSolomonCode.class.getName());
+
+    private final int stripeSize;
+    private final int paritySize;
+    private final GaloisField GF;
+    // parityMatrix[j][i]: coefficient of the message symbol i in the parity symbol j
+    private final int[][] parityMatrix;
+    // Recovery matrices, keyed by the locations read
+    private final DecodePlanCache<DecodePlan> decodePlans = new DecodePlanCache<>(DecodePlanCache.DEFAULT_CAPACITY);
+    private final Function<int[], DecodePlan> decodePlanner = this::computeDecodePlan;
+    private final LongFunction<DecodePlan> maskDecodePlanner = mask -> computeDecodePlan(DecodePlanCache.locations(mask));
+
+    public MatrixReedSolomonCode(int stripeSize, int paritySize) {
+        this(stripeSize, paritySize, GaloisField.getInstance());
+    }
+
+    /**
+     * @param GF The field of the symbols, {@link GaloisField#forSymbolSize(int)} with 16 bits allows stripes wider
+     *           than 256 locations
+     */
+    public MatrixReedSolomonCode(int stripeSize, int paritySize, GaloisField GF) {
+        this(stripeSize, paritySize, GF, vandermondeParityMatrix(stripeSize, paritySize, GF));
+    }
+
+    /**
+     * Constructor for codes built on another generator matrix
+     *
+     * @param parityMatrix parityMatrix[j][i] is the coefficient of the message symbol i in the parity symbol j. Every
+     *                     square submatrix must be invertible for the code to tolerate any paritySize erasures.
+     */
+    protected MatrixReedSolomonCode(int stripeSize, int paritySize, GaloisField GF, int[][] parityMatrix) {
+        checkStripeFits(stripeSize, paritySize, GF);
+        this.GF = GF;
+        this.stripeSize = stripeSize;
+        this.paritySize = paritySize;
+        this.parityMatrix = parityMatrix;
+
+        LOG.info("Initialized " + getClass() +
+                " stripeSize:" + stripeSize +
+                " paritySize:" + paritySize);
+    }
+
+    static int[][] vandermondeParityMatrix(int stripeSize, int paritySize, GaloisField GF) {
+        checkStripeFits(stripeSize, paritySize, GF);
+        // Vandermonde matrix V[r][c] = r^c, the first stripeSize rows correspond to the message
+        final int[][] dataRows = new int[stripeSize][stripeSize];
+        final int[][] parityRows = new int[paritySize][stripeSize];
+        for (int r = 0; r < stripeSize + paritySize; r++) {
+            final int[] row = r < stripeSize ? dataRows[r] : parityRows[r - stripeSize];
+            for (int c = 0; c < stripeSize; c++) {
+                row[c] = GF.power(r, c);
+            }
+        }
+        // Make it systematic: G = V * inverse(data rows of V)
+        final int[][] dataRowsInverse = GF.invertMatrix(dataRows);
+        return multiply(GF, parityRows, dataRowsInverse);
+    }
+
+    private static void checkStripeFits(int stripeSize, int paritySize, GaloisField GF) {
+        if (stripeSize + paritySize > GF.getFieldSize()) {
+            throw new IllegalArgumentException("A stripe of " + (stripeSize + paritySize) +
+                    " locations needs a field larger than GF(" + GF.getFieldSize() + ")");
+        }
+    }
+
+    @Override
+    public void encode(int[] message, int[] parity) {
+        assert (message.length == stripeSize && parity.length == paritySize);
+        for (int j = 0; j < paritySize; j++) {
+            final int[] coefficients = parityMatrix[j];
+            int value = 0;
+            for (int i = 0; i < stripeSize; i++) {
+                value ^= GF.multiply(coefficients[i], message[i]);
+            }
+            parity[j] = value;
+        }
+    }
+
+    /**
+     * Unlike {@link ReedSolomonCode}, the inputs are left untouched.
+     */
+    @Override
+    protected void encodeBulkColumns(byte[][] inputs, byte[][] outputs, int from, int to) {
+        assert (stripeSize == inputs.length);
+        assert (paritySize == outputs.length);
+        for (int j = 0; j < paritySize; j++) {
+            final int[] coefficients = parityMatrix[j];
+            Arrays.fill(outputs[j], from, to, (byte) 0);
+            for (int i = 0; i < stripeSize; i++) {
+                GF.multiplyAccumulateRegion(coefficients[i], inputs[i], from, outputs[j], from, to - from);
+            }
+        }
+    }
+
+    @Override
+    public void updateParity(int position, int oldValue, int newValue, int[] parity) {
+        assert (parity.length == paritySize);
+        final int delta = GF.add(oldValue, newValue);
+        for (int j = 0; j < paritySize; j++) {
+            parity[j] ^= GF.multiply(parityMatrix[j][position], delta);
+        }
+    }
+
+    @Override
+    public void decode(int[] data, int[] erasedLocations, int[] erasedValues) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        // The locations read as a mask are keyed like the array of decodePlan(), without allocating it
+        final DecodePlan plan = DecodePlanCache.canMask(stripeSize + paritySize)
+                ? decodePlans.get(readMask(erasedLocations), maskDecodePlanner)
+                : decodePlan(chooseLocationsToRead(erasedLocations));
+        for (int e = 0; e < erasedLocations.length; e++) {
+            erasedValues[e] = plan.decode(GF, data, erasedLocations[e]);
+        }
+    }
+
+    @Override
+    public void decode(int[] data, int[] erasedLocations, int[] erasedValues,
+                       int[] locationsToRead, int[] locationsNotToRead) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        assert (erasedLocations.length == erasedValues.length);
+        final DecodePlan plan = decodePlan(locationsToRead);
+        for (int e = 0; e < erasedLocations.length; e++) {
+            erasedValues[e] = plan.decode(GF, data, erasedLocations[e]);
+        }
+    }
+
+    @Override
+    protected void decodeBulkColumns(byte[][] readBufs, byte[][] writeBufs, int[] erasedLocations,
+                                     int[] locationsToRead, int[] locationsNotToRead, int from, int to) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        final DecodePlan plan = decodePlan(locationsToRead);
+        for (int e = 0; e < erasedLocations.length; e++) {
+            plan.decodeBulk(GF, readBufs, erasedLocations[e], writeBufs[e], from, to);
+        }
+    }
+
+    @Override
+    public int stripeSize() {
+        return this.stripeSize;
+    }
+
+    @Override
+    public int paritySize() {
+        return this.paritySize;
+    }
+
+    @Override
+    public int symbolSize() {
+        return GF.getSymbolSize();
+    }
+
+    @Override
+    public DecodePlanCache<?> getDecodePlanCache() {
+        return decodePlans;
+    }
+
+    /**
+     * Return the plan giving every other location from the first stripeSize() symbols of locationsToRead, cached per
+     * set of locations read. The sources of the plan are in increasing order.
+     */
+    DecodePlan decodePlan(int[] locationsToRead) {
+        assert (locationsToRead.length >= stripeSize);
+        return decodePlans.get(locationsToRead, stripeSize, decodePlanner);
+    }
+
+    private DecodePlan computeDecodePlan(int[] sources) {
+        // The symbols read are readMatrix * message, so message = inverse(readMatrix) * read symbols
+        final int[][] readMatrix = new int[stripeSize][];
+        for (int r = 0; r < stripeSize; r++) {
+            readMatrix[r] = generatorRow(sources[r]);
+        }
+        final int[][] readMatrixInverse = GF.invertMatrix(readMatrix);
+
+        final int[][] rows = new int[stripeSize + paritySize][];
+        for (int loc = 0; loc < rows.length; loc++) {
+            rows[loc] = multiply(GF, new int[][]{generatorRow(loc)}, readMatrixInverse)[0];
+        }
+        return new DecodePlan(sources, rows);
+    }
+
+    /**
+     * Return the coefficients of the message symbols giving the symbol at a location.
+     */
+    private int[] generatorRow(int location) {
+        if (location < paritySize) {
+            return parityMatrix[location];
+        }
+        final int[] row = new int[stripeSize];
+        row[location - paritySize] = 1;
+        return row;
+    }
+
+    /**
+     * Choose the first stripeSize() available locations, starting with the message symbols.
+     */
+    private int[] chooseLocationsToRead(int[] erasedLocations) {
+        final int[] locationsToRead = new int[stripeSize];
+        int count = 0;
+        for (int loc = stripeSize + paritySize - 1; loc >= 0 && count < stripeSize; loc--) {
+            boolean erased = false;
+            for (int erasedLocation : erasedLocations) {
+                if (erasedLocation == loc) {
+                    erased = true;
+                    break;
+                }
+            }
+            if (!erased) {
+                locationsToRead[count++] = loc;
+            }
+        }
+        assert (count == stripeSize);
+        return locationsToRead;
+    }
+
+    /**
+     * Mask version of {@link #chooseLocationsToRead(int[])}, when the locations fit in a mask.
+     */
+    private long readMask(int[] erasedLocations) {
+        final long erased = DecodePlanCache.mask(erasedLocations);
+        long mask = 0;
+        int count = 0;
+        for (int loc = stripeSize + paritySize - 1; loc >= 0 && count < stripeSize; loc--) {
+            if ((erased & 1L << loc) == 0) {
+                mask |= 1L << loc;
+                count++;
+            }
+        }
+        assert (count == stripeSize);
+        return mask;
+    }
+
+    private static int[][] multiply(GaloisField GF, int[][] a, int[][] b) {
+        final int[][] result = new int[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++) {
+            for (int k = 0; k < b.length; k++) {
+                if (a[i][k] == 0) {
+                    continue;
+                }
+                for (int j = 0; j < b[0].length; j++) {
+                    result[i][j] ^= GF.multiply(a[i][k], b[k][j]);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -1,20 +1,12 @@
 package ch.unine.vauchers.erasuretester.erasure.codes;
 
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
-
-import java.util.List;
+import java.util.BitSet;
 
 public class NullErasureCode extends ErasureCode {
     private final int stripeSize;
-    private final IntList locationsToRead;
 
     public NullErasureCode(int stripeSize) {
         this.stripeSize = stripeSize;
-        this.locationsToRead = new IntArrayList(stripeSize);
-        for (int i = 0; i < stripeSize; i++) {
-            locationsToRead.add(i);
-        }
     }
 
     @Override
@@ -33,12 +25,14 @@ public class NullErasureCode extends ErasureCode {
     }
 
     @Override
-    public IntList locationsToReadForDecode(List<Integer> erasedLocations) throws TooManyErasedLocations {
-        if (erasedLocations.size() > 0) {
+    public int locationsToReadForDecode(BitSet erased, int[] locationsToRead) throws TooManyErasedLocations {
+        if (!erased.isEmpty()) {
             throw new TooManyErasedLocations("No parity with NullErasureCode");
-        } else {
-            return locationsToRead;
         }
+        for (int i = 0; i < stripeSize; i++) {
+            locationsToRead[i] = i;
+        }
+        return stripeSize;
     }
 
     @Override
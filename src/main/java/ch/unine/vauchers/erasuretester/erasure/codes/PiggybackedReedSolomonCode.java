@@ -0,0 +1,176 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Piggybacked Reed-Solomon code, following Hitchhiker-XOR (Rashmi et al., A "Hitchhiker's" Guide to Fast and
+ * Efficient Data Reconstruction in Erasure-coded Data Centers, 2014).
+ * <br/>
+ * Each of the k data nodes and r parity nodes holds two symbols, one per substripe a and b, both coded with RS(k, r).
+ * The data nodes are split into r - 1 groups, and the XOR of the a symbols of group g is added to the parity g + 1 of
+ * substripe b. A lost data node is repaired from the b symbols of k other nodes, then from the piggybacked parity and
+ * the a symbols of its group: k + k / (r - 1) symbols instead of 2k for RS, with the same storage overhead and any r
+ * lost nodes tolerated.
+ * <br/>
+ * The two symbols of a node are separate locations, so that a repair reading only one symbol of a node is expressed
+ * by {@link #locationsToReadForDecode(BitSet, int[])}: stripeSize() and paritySize() count symbols, twice the nodes. The
+ * locations are the a parities, the b parities, the a message symbols, then the b message symbols.
+ */
+public class PiggybackedReedSolomonCode extends MatrixReedSolomonCode {
+    private final int dataNodes;
+    private final int parityNodes;
+    private final GeneratorMatrix generator;
+
+    public PiggybackedReedSolomonCode(int dataNodes, int parityNodes) {
+        this(dataNodes, parityNodes, GaloisField.getInstance());
+    }
+
+    /**
+     * @param dataNodes   The number of data nodes k, each one with a symbol of both substripes
+     * @param parityNodes The number of parity nodes r
+     * @param GF          The field of the symbols
+     */
+    public PiggybackedReedSolomonCode(int dataNodes, int parityNodes, GaloisField GF) {
+        this(dataNodes, parityNodes, GF, piggybackedParityMatrix(dataNodes, parityNodes, GF));
+    }
+
+    private PiggybackedReedSolomonCode(int dataNodes, int parityNodes, GaloisField GF, int[][] parityMatrix) {
+        super(2 * dataNodes, 2 * parityNodes, GF, parityMatrix);
+        this.dataNodes = dataNodes;
+        this.parityNodes = parityNodes;
+        this.generator = new GeneratorMatrix(GF, 2 * dataNodes, parityMatrix);
+    }
+
+    private static int[][] piggybackedParityMatrix(int dataNodes, int parityNodes, GaloisField GF) {
+        if (dataNodes + parityNodes > GF.getFieldSize()) {
+            throw new IllegalArgumentException("A stripe of " + (dataNodes + parityNodes) +
+                    " nodes needs a field larger than GF(" + GF.getFieldSize() + ")");
+        }
+        final int[][] substripe = vandermondeParityMatrix(dataNodes, parityNodes, GF);
+        final int[][] matrix = new int[2 * parityNodes][2 * dataNodes];
+        for (int j = 0; j < parityNodes; j++) {
+            System.arraycopy(substripe[j], 0, matrix[j], 0, dataNodes);
+            System.arraycopy(substripe[j], 0, matrix[parityNodes + j], dataNodes, dataNodes);
+        }
+        for (int i = 0; i < dataNodes && parityNodes > 1; i++) {
+            matrix[parityNodes + 1 + group(i, dataNodes, parityNodes)][i] = 1;
+        }
+        return matrix;
+    }
+
+    // Groups of consecutive data nodes, whose sizes differ by at most one
+    private static int group(int dataNode, int dataNodes, int parityNodes) {
+        return dataNode * (parityNodes - 1) / dataNodes;
+    }
+
+    /**
+     * Return the node holding a location: the parity nodes, then the data nodes.
+     */
+    int node(int location) {
+        if (location < 2 * parityNodes) {
+            return location % parityNodes;
+        }
+        return parityNodes + (location - 2 * parityNodes) % dataNodes;
+    }
+
+    private int aLocation(int node) {
+        return node < parityNodes ? node : parityNodes + node;
+    }
+
+    private int bLocation(int node) {
+        return node < parityNodes ? parityNodes + node : parityNodes + dataNodes + node;
+    }
+
+    /**
+     * Try the cheapest repairs first: a single substripe from k of its symbols, or a data node from the piggybacks of
+     * its group. Otherwise read 2k independent locations, the message symbols first.
+     */
+    @Override
+    public int locationsToReadForDecode(BitSet erased, int[] locationsToRead) throws TooManyErasedLocations {
+        if (!erased.isEmpty()) {
+            for (int candidate = 0; candidate < 3; candidate++) {
+                final int count = candidate < 2 ? substripeLocationsToRead(erased, candidate == 0, locationsToRead)
+                        : nodeLocationsToRead(erased, locationsToRead);
+                if (count >= 0 && generator.canRecover(locationsToRead, count, erased)) {
+                    Arrays.sort(locationsToRead, 0, count);
+                    return count;
+                }
+            }
+        }
+        return generator.spanningLocationsToRead(erased, locationsToRead);
+    }
+
+    /**
+     * The first k available symbols of a substripe, data nodes first. The b parities but the first one also hold
+     * piggybacks, which are only usable when decoding the whole stripe.
+     *
+     * @return The number of locations to read, or -1 if fewer than k symbols are available
+     */
+    private int substripeLocationsToRead(BitSet erased, boolean substripeA, int[] locationsToRead) {
+        int count = 0;
+        for (int node = parityNodes + dataNodes - 1; node >= 0 && count < dataNodes; node--) {
+            final int location = substripeA ? aLocation(node) : bLocation(node);
+            if (!substripeA && node > 0 && node < parityNodes) {
+                continue;
+            }
+            if (!erased.get(location)) {
+                locationsToRead[count++] = location;
+            }
+        }
+        return count == dataNodes ? count : -1;
+    }
+
+    /**
+     * Repair of a data node: substripe b from k other nodes, then the a symbol from the parity piggybacking its group
+     * and the a symbols of the other nodes of the group.
+     *
+     * @return The number of locations to read, or -1 if the erasures are not all on a single data node
+     */
+    private int nodeLocationsToRead(BitSet erased, int[] locationsToRead) {
+        int lostNode = -1;
+        for (int loc = erased.nextSetBit(0); loc >= 0; loc = erased.nextSetBit(loc + 1)) {
+            if (lostNode >= 0 && node(loc) != lostNode) {
+                return -1;
+            }
+            lostNode = node(loc);
+        }
+        if (lostNode < parityNodes || parityNodes < 2) {
+            return -1;
+        }
+        int count = substripeLocationsToRead(erased, false, locationsToRead);
+        if (count < 0) {
+            return -1;
+        }
+        final int group = group(lostNode - parityNodes, dataNodes, parityNodes);
+        locationsToRead[count++] = bLocation(group + 1);
+        for (int node = parityNodes; node < parityNodes + dataNodes; node++) {
+            if (node != lostNode && group(node - parityNodes, dataNodes, parityNodes) == group) {
+                locationsToRead[count++] = aLocation(node);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Unlike {@link MatrixReedSolomonCode}, the plan is built from all the locations read, which may be fewer than
+     * stripeSize() or not independent for node repairs.
+     */
+    @Override
+    DecodePlan decodePlan(int[] locationsToRead) {
+        return generator.decodePlan(locationsToRead);
+    }
+
+    @Override
+    public DecodePlanCache<?> getDecodePlanCache() {
+        return generator.getDecodePlanCache();
+    }
+
+    @Override
+    public void decode(int[] data, int[] erasedLocations, int[] erasedValues) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        generator.decode(data, erasedLocations, erasedValues);
+    }
+}
@@ -19,10 +19,12 @@
 package ch.unine.vauchers.erasuretester.erasure.codes;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
-public class ReedSolomonCode extends ErasureCode {
+public class ReedSolomonCode extends ErasureCode implements ErrorCorrectingCode {
     public static final Logger LOG = Logger.getLogger(ReedSolomonCode.class.getName());
 
     private int stripeSize;
@@ -30,18 +32,36 @@ public class ReedSolomonCode extends ErasureCode {
     private int[] generatingPolynomial;
     private int PRIMITIVE_ROOT = 2;
     private int[] primitivePower;
-    private GaloisField GF = GaloisField.getInstance();
-    private int[] errSignature;
+    private final GaloisField GF;
     private int[] paritySymbolLocations;
-    private int[] dataBuff;
+    // parityColumns[i][j]: coefficient of the message symbol i in the parity symbol j
+    private final int[][] parityColumns;
+    // The generated encoder of this configuration, null if there is none
+    private final SpecializedEncoders.Encoder specializedEncoder;
+    // The buffers of encode and of the error corrections, per thread so that the codes of several threads or tiles
+    // run concurrently
+    private final ThreadLocal<Scratch> scratches;
+    private final DecodePlanCache<DecodePlan> decodePlans = new DecodePlanCache<>(DecodePlanCache.DEFAULT_CAPACITY);
+    // Bound once: evaluating the method reference on each decode would allocate
+    private final Function<int[], DecodePlan> decodePlanner = this::computeDecodePlan;
 
     public ReedSolomonCode(int stripeSize, int paritySize) {
-        assert (stripeSize + paritySize < GF.getFieldSize());
+        this(stripeSize, paritySize, GaloisField.getInstance());
+    }
+
+    /**
+     * @param GF The field of the symbols, {@link GaloisField#forSymbolSize(int)} with 16 bits allows stripes wider
+     *           than 255 locations
+     */
+    public ReedSolomonCode(int stripeSize, int paritySize, GaloisField GF) {
+        if (stripeSize + paritySize >= GF.getFieldSize()) {
+            throw new IllegalArgumentException("A stripe of " + (stripeSize + paritySize) +
+                    " locations needs a field larger than GF(" + GF.getFieldSize() + ")");
+        }
+        this.GF = GF;
         this.stripeSize = stripeSize;
         this.paritySize = paritySize;
-        this.errSignature = new int[paritySize];
         this.paritySymbolLocations = new int[paritySize];
-        this.dataBuff = new int[paritySize + stripeSize];
         for (int i = 0; i < paritySize; i++) {
             paritySymbolLocations[i] = i;
         }
@@ -61,6 +81,10 @@ public class ReedSolomonCode extends ErasureCode {
         }
         // generating polynomial has all generating roots
         generatingPolynomial = gen;
+        scratches = ThreadLocal.withInitial(() -> new Scratch(GF, primitivePower, paritySize));
+        parityColumns = parityColumns();
+        specializedEncoder = SpecializedEncoders.find("ReedSolomon", new int[]{stripeSize, paritySize}, GF,
+                parityColumns);
 
         LOG.info("Initialized " + ReedSolomonCode.class +
                 " stripeSize:" + stripeSize +
@@ -70,9 +94,13 @@ public class ReedSolomonCode extends ErasureCode {
     @Override
     public void encode(int[] message, int[] parity) {
         assert (message.length == stripeSize && parity.length == paritySize);
-        for (int i = 0; i < paritySize; i++) {
-            dataBuff[i] = 0;
+        if (specializedEncoder != null) {
+            specializedEncoder.encode(message, parity);
+            return;
         }
+        final int[] dataBuff = scratches.get().message;
+        // The remainder is computed in place, from zeros in the parity locations
+        Arrays.fill(dataBuff, 0, paritySize, 0);
         for (int i = 0; i < stripeSize; i++) {
             dataBuff[i + paritySize] = message[i];
         }
@@ -82,19 +110,32 @@ public class ReedSolomonCode extends ErasureCode {
         }
     }
 
+    @Override
+    public void updateParity(int position, int oldValue, int newValue, int[] parity) {
+        assert (parity.length == paritySize);
+        final int delta = GF.add(oldValue, newValue);
+        for (int j = 0; j < paritySize; j++) {
+            parity[j] ^= GF.multiply(parityColumns[position][j], delta);
+        }
+    }
+
     /**
      * This function (actually, the GF.remainder() function) will modify
-     * the "inputs" parameter.
+     * the "inputs" parameter. The generated encoder of the configuration, if any, leaves it untouched.
      */
     @Override
-    public void encodeBulk(byte[][] inputs, byte[][] outputs) {
+    protected void encodeBulkColumns(byte[][] inputs, byte[][] outputs, int from, int to) {
         final int stripeSize = stripeSize();
         final int paritySize = paritySize();
         assert (stripeSize == inputs.length);
         assert (paritySize == outputs.length);
+        if (specializedEncoder != null) {
+            specializedEncoder.encodeBulk(inputs, outputs, from, to);
+            return;
+        }
 
         for (int i = 0; i < outputs.length; i++) {
-            Arrays.fill(outputs[i], (byte) 0);
+            Arrays.fill(outputs[i], from, to, (byte) 0);
         }
 
         byte[][] data = new byte[stripeSize + paritySize][];
@@ -107,7 +148,7 @@ public class ReedSolomonCode extends ErasureCode {
         }
 
         // Compute the remainder
-        GF.remainder(data, generatingPolynomial);
+        GF.remainder(data, generatingPolynomial, from, to - from);
     }
 
     @Override
@@ -116,84 +157,106 @@ public class ReedSolomonCode extends ErasureCode {
             return;
         }
         assert (erasedLocations.length == erasedValues.length);
+        final DecodePlan plan = decodePlan(erasedLocations);
         for (int i = 0; i < erasedLocations.length; i++) {
-            data[erasedLocations[i]] = 0;
+            erasedValues[i] = plan.decode(GF, data, erasedLocations[i]);
         }
-        for (int i = 0; i < erasedLocations.length; i++) {
-            errSignature[i] = primitivePower[erasedLocations[i]];
-            erasedValues[i] = GF.substitute(data, primitivePower[i]);
-        }
-        GF.solveVandermondeSystem(errSignature, erasedValues,
-                erasedLocations.length);
     }
 
     @Override
     public void decode(int[] data, int[] erasedLocations, int[] erasedValues,
                        int[] locationsToRead, int[] locationsNotToRead) {
-    /*
-     * Pretend that all locations in locationsNotToRead are
-     * erased and try to repair them.
-     */
-        int[] recovValue = new int[locationsNotToRead.length];
-        decode(data, locationsNotToRead, recovValue);
-
-    /*
-     * Among the recovered values corresponding to locationsNotToRead
-     * copy those corresponding to erasedLocation into erasedValue.
-     */
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        /*
+         * Pretend that all locations in locationsNotToRead are
+         * erased and only recover those corresponding to erasedLocations.
+         */
+        final DecodePlan plan = decodePlan(locationsNotToRead);
         for (int i = 0; i < erasedLocations.length; i++) {
-            for (int j = 0; j < locationsNotToRead.length; j++) {
-                if (erasedLocations[i] == locationsNotToRead[j]) {
-                    erasedValues[i] = recovValue[j];
-                    break;
-                }
+            if (plan.canRecover(erasedLocations[i])) {
+                erasedValues[i] = plan.decode(GF, data, erasedLocations[i]);
             }
         }
     }
 
+    /**
+     * A "bulk" version of the decode. The readBufs at erased locations
+     * are not read and may be null.
+     */
     public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
                            int[] erasedLocation) {
         if (erasedLocation.length == 0) {
             return;
         }
-
-        // cleanup the write buffer
-        for (int i = 0; i < writeBufs.length; i++) {
-            Arrays.fill(writeBufs[i], (byte) 0);
+        final DecodePlan plan = decodePlan(erasedLocation);
+        for (int i = 0; i < erasedLocation.length; i++) {
+            plan.decodeBulk(GF, readBufs, erasedLocation[i], writeBufs[i]);
         }
+    }
 
-        for (int i = 0; i < erasedLocation.length; i++) {
-            errSignature[i] = primitivePower[erasedLocation[i]];
-            GF.substitute(readBufs, writeBufs[i], primitivePower[i]);
+    @Override
+    protected void decodeBulkColumns(byte[][] readBufs, byte[][] writeBufs, int[] erasedLocations,
+                                     int[] locationsToRead, int[] locationsNotToRead, int from, int to) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        /*
+         * Pretend that all locations in locationsNotToRead are
+         * erased and only recover those corresponding to erasedLocations.
+         */
+        final DecodePlan plan = decodePlan(locationsNotToRead);
+        for (int i = 0; i < erasedLocations.length; i++) {
+            if (plan.canRecover(erasedLocations[i])) {
+                plan.decodeBulk(GF, readBufs, erasedLocations[i], writeBufs[i], from, to);
+            }
         }
-        GF.solveVandermondeSystem(errSignature, writeBufs, erasedLocation.length,
-                readBufs[0].length);
+    }
+
+    @Override
+    public DecodePlanCache<?> getDecodePlanCache() {
+        return decodePlans;
     }
 
     /**
-     * This method would be overridden in the subclass,
-     * so that the subclass will have its own decodeBulk behavior.
+     * Return the plan recovering the erased locations from all the other ones, cached per erasure pattern.
      */
-    @Override
-    public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
-                           int[] erasedLocations, int[] locationsToRead, int[] locationsNotToRead) {
-        int[] tmpInput = new int[readBufs.length];
-        int[] tmpOutput = new int[erasedLocations.length];
-
-        int numBytes = readBufs[0].length;
-        for (int idx = 0; idx < numBytes; idx++) {
-            for (int i = 0; i < tmpOutput.length; i++) {
-                tmpOutput[i] = 0;
-            }
-            for (int i = 0; i < tmpInput.length; i++) {
-                tmpInput[i] = readBufs[i][idx] & 0x000000FF;
+    private DecodePlan decodePlan(int[] erasedLocations) {
+        return decodePlans.get(erasedLocations, decodePlanner);
+    }
+
+    private DecodePlan computeDecodePlan(int[] erasedLocations) {
+        final int[] sources = new int[stripeSize + paritySize - erasedLocations.length];
+        int s = 0;
+        for (int loc = 0; loc < stripeSize + paritySize; loc++) {
+            boolean erased = false;
+            for (int erasedLocation : erasedLocations) {
+                if (erasedLocation == loc) {
+                    erased = true;
+                    break;
+                }
             }
-            decode(tmpInput, erasedLocations, tmpOutput, locationsToRead,
-                    locationsNotToRead);
-            for (int i = 0; i < tmpOutput.length; i++) {
-                writeBufs[i][idx] = (byte) tmpOutput[i];
+            if (!erased) {
+                sources[s++] = loc;
             }
         }
+        return DecodePlan.fromLinearDecoder(stripeSize + paritySize, sources, erasedLocations,
+                (data, erasedValues) -> solve(data, erasedLocations, erasedValues));
+    }
+
+    /**
+     * Recover the erased locations by solving the Vandermonde system of the syndromes.
+     * The symbols of data at the erased locations must be zero.
+     */
+    private void solve(int[] data, int[] erasedLocations, int[] erasedValues) {
+        final int[] errSignature = new int[erasedLocations.length];
+        for (int i = 0; i < erasedLocations.length; i++) {
+            errSignature[i] = primitivePower[erasedLocations[i]];
+            erasedValues[i] = GF.substitute(data, primitivePower[i]);
+        }
+        GF.solveVandermondeSystem(errSignature, erasedValues,
+                erasedLocations.length);
     }
 
     @Override
@@ -208,7 +271,7 @@ public class ReedSolomonCode extends ErasureCode {
 
     @Override
     public int symbolSize() {
-        return (int) Math.round(Math.log(GF.getFieldSize()) / Math.log(2));
+        return GF.getSymbolSize();
     }
 
     /**
@@ -228,63 +291,252 @@ public class ReedSolomonCode extends ErasureCode {
                                          Set<Integer> errorLocations) {
         assert (data.length == paritySize + stripeSize && errorLocations != null);
         errorLocations.clear();
-        int maxError = paritySize / 2;
-        int[][] syndromeMatrix = new int[maxError][];
-        for (int i = 0; i < syndromeMatrix.length; ++i) {
-            syndromeMatrix[i] = new int[maxError + 1];
+        final int[] locations = new int[paritySize];
+        final int count = correctErrors(data, new BitSet(), locations);
+        for (int i = 0; i < count; i++) {
+            errorLocations.add(locations[i]);
+        }
+        return count >= 0;
+    }
+
+    /**
+     * Berlekamp-Massey decoding, see {@link ErrataDecoder}: corrects e errors and f erasures when
+     * 2e + f <= paritySize().
+     */
+    @Override
+    public int correctErrors(int[] data, BitSet erased, int[] errorLocations) {
+        assert (data.length == paritySize + stripeSize);
+        final ErrataDecoder decoder = scratches.get().decoder;
+        if (decoder.computeSyndromes(data) && erased.isEmpty()) {
+            return 0;
         }
-        int[] syndrome = new int[paritySize];
+        final int count = decoder.decode(erased);
+        if (count < 0) {
+            return -1;
+        }
+        int errors = 0;
+        for (int e = 0; e < count; e++) {
+            final int location = decoder.errataLocations[e];
+            data[location] ^= decoder.errataValues[e];
+            if (!erased.get(location)) {
+                errorLocations[errors++] = location;
+            }
+        }
+        return errors;
+    }
 
-        if (computeSyndrome(data, syndrome)) {
-            // Parity check OK. No error location added.
+    /**
+     * A "bulk" version of {@link #correctErrors(int[], BitSet, int[])}, whose throughput is close to the one of a
+     * decoding when the stripes are intact.
+     * <br/>
+     * The syndromes are computed on whole regions after the erased blocks are decoded, and only the columns with
+     * non-zero syndromes are decoded. A corrupted block, e.g. a stale one, usually corrupts all its columns: the
+     * errors found in the first corrupted column are first decoded as erasures, for the whole blocks and together
+     * with the erased blocks, and kept if they explain all the syndromes. Otherwise, the corrupted columns are
+     * decoded one at a time.
+     *
+     * @param blocks    (in/out) The blocks of all the locations, parity first. The blocks at the erased locations
+     *                  are written, not read. The erased and corrupted blocks are corrected in place.
+     * @param erased    The erased locations
+     * @param corrupted (out) The locations of the blocks found corrupted
+     * @return false if some column has more errors than the code can correct. blocks is then left with unspecified
+     * values.
+     */
+    @Override
+    public boolean correctErrorsBulk(byte[][] blocks, BitSet erased, BitSet corrupted) {
+        assert (blocks.length == paritySize + stripeSize);
+        corrupted.clear();
+        if (erased.cardinality() > paritySize) {
+            return false;
+        }
+        final int bytesPerSymbol = GF.getSymbolSize() / 8;
+        final int length = blocks[0].length;
+        final Scratch scratch = scratches.get();
+        decodeBulk(blocks, blocks, erased);
+        final byte[][] syndromes = scratch.syndromes(length);
+        computeSyndromesBulk(blocks, syndromes);
+        int column = nextCorruptedColumn(syndromes, 0, bytesPerSymbol);
+        if (column < 0) {
             return true;
         }
-        for (int i = 0; i < maxError; ++i) {
-            for (int j = 0; j < maxError + 1; ++j) {
-                syndromeMatrix[i][j] = syndrome[i + j];
+
+        final ErrataDecoder decoder = scratch.decoder;
+        int count = decodeColumn(decoder, syndromes, column, bytesPerSymbol, erased);
+        if (count < 0) {
+            return false;
+        }
+        final BitSet suspects = scratch.suspects;
+        suspects.clear();
+        for (int e = 0; e < count; e++) {
+            if (!erased.get(decoder.errataLocations[e])) {
+                suspects.set(decoder.errataLocations[e]);
             }
         }
-        GF.gaussianElimination(syndromeMatrix);
-        int[] polynomial = new int[maxError + 1];
-        polynomial[0] = 1;
-        for (int i = 0; i < maxError; ++i) {
-            polynomial[i + 1] = syndromeMatrix[maxError - 1 - i][maxError];
+        // One parity at least must be left to check the hypothesis of whole corrupted blocks. The erased blocks were
+        // decoded from the corrupted ones, so they are decoded again with the suspects.
+        final BitSet errata = scratch.errata;
+        errata.clear();
+        errata.or(suspects);
+        errata.or(erased);
+        if (!suspects.isEmpty() && errata.cardinality() < paritySize) {
+            final byte[][] candidate = scratch.candidate(blocks, errata);
+            decodeBulk(candidate, candidate, errata);
+            final byte[][] candidateSyndromes = scratch.candidateSyndromes(length);
+            computeSyndromesBulk(candidate, candidateSyndromes);
+            final boolean explained = nextCorruptedColumn(candidateSyndromes, 0, bytesPerSymbol) < 0;
+            if (explained) {
+                for (int location = errata.nextSetBit(0); location >= 0; location = errata.nextSetBit(location + 1)) {
+                    System.arraycopy(candidate[location], 0, blocks[location], 0, length);
+                }
+            }
+            // The scratch does not keep the blocks of the caller
+            Arrays.fill(candidate, null);
+            if (explained) {
+                corrupted.or(suspects);
+                return true;
+            }
         }
-        for (int i = 0; i < paritySize + stripeSize; ++i) {
-            int possibleRoot = GF.divide(1, primitivePower[i]);
-            if (GF.substitute(polynomial, possibleRoot) == 0) {
-                errorLocations.add(i);
+
+        // Scattered errors
+        for (; column >= 0; column = nextCorruptedColumn(syndromes, column + bytesPerSymbol, bytesPerSymbol)) {
+            count = decodeColumn(decoder, syndromes, column, bytesPerSymbol, erased);
+            if (count < 0) {
+                return false;
+            }
+            for (int e = 0; e < count; e++) {
+                final int location = decoder.errataLocations[e];
+                setSymbol(blocks[location], column, bytesPerSymbol,
+                        getSymbol(blocks[location], column, bytesPerSymbol) ^ decoder.errataValues[e]);
+                if (!erased.get(location)) {
+                    corrupted.set(location);
+                }
             }
         }
-        // Now recover with error locations and check the syndrome again
-        int[] locations = new int[errorLocations.size()];
-        int k = 0;
-        for (int loc : errorLocations) {
-            locations[k++] = loc;
+        return true;
+    }
+
+    /**
+     * Decode the blocks at the erased locations from the blocks at all the other ones.
+     */
+    private void decodeBulk(byte[][] readBufs, byte[][] writeBufs, BitSet erased) {
+        if (erased.isEmpty()) {
+            return;
         }
-        int[] erasedValue = new int[locations.length];
-        decode(data, locations, erasedValue);
-        for (int i = 0; i < locations.length; ++i) {
-            data[locations[i]] = erasedValue[i];
+        final DecodePlan plan = decodePlans.get(erased, decodePlanner);
+        for (int location = erased.nextSetBit(0); location >= 0; location = erased.nextSetBit(location + 1)) {
+            plan.decodeBulk(GF, readBufs, location, writeBufs[location]);
         }
-        return computeSyndrome(data, syndrome);
     }
 
     /**
-     * Compute the syndrome of the input [parity, message]
-     *
-     * @param data     [parity, message]
-     * @param syndrome The syndromes (checksums) of the data
-     * @return true If syndromes are all zeros
+     * syndromes[j] = the blocks evaluated at 2^j, column by column: the sum of 2^(j * l) * blocks[l].
      */
-    private boolean computeSyndrome(int[] data, int[] syndrome) {
-        boolean corruptionFound = false;
-        for (int i = 0; i < paritySize; i++) {
-            syndrome[i] = GF.substitute(data, primitivePower[i]);
-            if (syndrome[i] != 0) {
-                corruptionFound = true;
+    private void computeSyndromesBulk(byte[][] blocks, byte[][] syndromes) {
+        for (int j = 0; j < paritySize; j++) {
+            GF.multiplyRegion(1, blocks[0], syndromes[j]);
+            int coef = 1;
+            for (int l = 1; l < blocks.length; l++) {
+                coef = GF.multiply(coef, primitivePower[j]);
+                GF.multiplyAccumulateRegion(coef, blocks[l], syndromes[j]);
+            }
+        }
+    }
+
+    /**
+     * @return The first column from the column from onwards with a non-zero syndrome, or -1
+     */
+    private static int nextCorruptedColumn(byte[][] syndromes, int from, int bytesPerSymbol) {
+        int column = syndromes[0].length;
+        for (byte[] syndrome : syndromes) {
+            for (int i = from; i < column; i++) {
+                if (syndrome[i] != 0) {
+                    column = i;
+                    break;
+                }
+            }
+        }
+        return column == syndromes[0].length ? -1 : column - column % bytesPerSymbol;
+    }
+
+    private static int decodeColumn(ErrataDecoder decoder, byte[][] syndromes, int column, int bytesPerSymbol,
+                                    BitSet erased) {
+        for (int j = 0; j < syndromes.length; j++) {
+            decoder.syndromes[j] = getSymbol(syndromes[j], column, bytesPerSymbol);
+        }
+        return decoder.decode(erased);
+    }
+
+    private static int getSymbol(byte[] block, int offset, int bytesPerSymbol) {
+        int symbol = 0;
+        for (int b = 0; b < bytesPerSymbol; b++) {
+            symbol = symbol << 8 | block[offset + b] & 0xFF;
+        }
+        return symbol;
+    }
+
+    private static void setSymbol(byte[] block, int offset, int bytesPerSymbol, int symbol) {
+        for (int b = bytesPerSymbol - 1; b >= 0; b--) {
+            block[offset + b] = (byte) symbol;
+            symbol >>>= 8;
+        }
+    }
+
+    /**
+     * The buffers of the codings of a thread. The buffers of the bulk error corrections are sized on the length of
+     * the last blocks corrected.
+     */
+    private static final class Scratch {
+        // The message and remainder of encode
+        final int[] message;
+        final ErrataDecoder decoder;
+        // The locations of the corrupted blocks supposed from the first corrupted column, and with the erased ones
+        final BitSet suspects = new BitSet();
+        final BitSet errata = new BitSet();
+        private final int paritySize;
+        private byte[][] syndromes;
+        private byte[][] candidateSyndromes;
+        // The blocks of the candidate correction: the ones read, and the decoded ones in candidateBlocks
+        private final byte[][] candidate;
+        private final byte[][] candidateBlocks;
+
+        Scratch(GaloisField GF, int[] primitivePower, int paritySize) {
+            this.paritySize = paritySize;
+            message = new int[primitivePower.length];
+            decoder = new ErrataDecoder(GF, primitivePower, paritySize);
+            candidate = new byte[primitivePower.length][];
+            candidateBlocks = new byte[primitivePower.length][];
+        }
+
+        byte[][] syndromes(int length) {
+            if (syndromes == null || syndromes[0].length != length) {
+                syndromes = new byte[paritySize][length];
+            }
+            return syndromes;
+        }
+
+        byte[][] candidateSyndromes(int length) {
+            if (candidateSyndromes == null || candidateSyndromes[0].length != length) {
+                candidateSyndromes = new byte[paritySize][length];
+            }
+            return candidateSyndromes;
+        }
+
+        /**
+         * @return The blocks, except at the decoded locations, where the blocks are owned by the scratch
+         */
+        byte[][] candidate(byte[][] blocks, BitSet decoded) {
+            final int length = blocks[0].length;
+            for (int location = 0; location < blocks.length; location++) {
+                if (decoded.get(location)) {
+                    if (candidateBlocks[location] == null || candidateBlocks[location].length != length) {
+                        candidateBlocks[location] = new byte[length];
+                    }
+                    candidate[location] = candidateBlocks[location];
+                } else {
+                    candidate[location] = blocks[location];
+                }
             }
+            return candidate;
         }
-        return !corruptionFound;
     }
 }
@@ -0,0 +1,144 @@
+// Generated by EncoderGenerator for ReedSolomonCode(10, 4), do not edit.
+// Regenerate it with ./gradlew generateEncoders.
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+final class ReedSolomonEncoder10x4 implements SpecializedEncoders.Encoder {
+    private static final int[][] PARITY_COLUMNS = {
+            {64, 120, 54, 15},
+            {231, 210, 87, 99},
+            {229, 191, 7, 92},
+            {158, 71, 140, 84},
+            {164, 219, 217, 167},
+            {178, 188, 213, 218},
+            {132, 203, 57, 119},
+            {140, 242, 129, 254},
+            {113, 179, 33, 226},
+            {34, 135, 82, 246},
+    };
+    private static final GaloisField GF = GaloisField.getInstance();
+    private static final byte[] M7 = GF.productRow(7);
+    private static final byte[] M15 = GF.productRow(15);
+    private static final byte[] M33 = GF.productRow(33);
+    private static final byte[] M34 = GF.productRow(34);
+    private static final byte[] M54 = GF.productRow(54);
+    private static final byte[] M57 = GF.productRow(57);
+    private static final byte[] M64 = GF.productRow(64);
+    private static final byte[] M71 = GF.productRow(71);
+    private static final byte[] M82 = GF.productRow(82);
+    private static final byte[] M84 = GF.productRow(84);
+    private static final byte[] M87 = GF.productRow(87);
+    private static final byte[] M92 = GF.productRow(92);
+    private static final byte[] M99 = GF.productRow(99);
+    private static final byte[] M113 = GF.productRow(113);
+    private static final byte[] M119 = GF.productRow(119);
+    private static final byte[] M120 = GF.productRow(120);
+    private static final byte[] M129 = GF.productRow(129);
+    private static final byte[] M132 = GF.productRow(132);
+    private static final byte[] M135 = GF.productRow(135);
+    private static final byte[] M140 = GF.productRow(140);
+    private static final byte[] M158 = GF.productRow(158);
+    private static final byte[] M164 = GF.productRow(164);
+    private static final byte[] M167 = GF.productRow(167);
+    private static final byte[] M178 = GF.productRow(178);
+    private static final byte[] M179 = GF.productRow(179);
+    private static final byte[] M188 = GF.productRow(188);
+    private static final byte[] M191 = GF.productRow(191);
+    private static final byte[] M203 = GF.productRow(203);
+    private static final byte[] M210 = GF.productRow(210);
+    private static final byte[] M213 = GF.productRow(213);
+    private static final byte[] M217 = GF.productRow(217);
+    private static final byte[] M218 = GF.productRow(218);
+    private static final byte[] M219 = GF.productRow(219);
+    private static final byte[] M226 = GF.productRow(226);
+    private static final byte[] M229 = GF.productRow(229);
+    private static final byte[] M231 = GF.productRow(231);
+    private static final byte[] M242 = GF.productRow(242);
+    private static final byte[] M246 = GF.productRow(246);
+    private static final byte[] M254 = GF.productRow(254);
+
+    @Override
+    public int[][] parityColumns() {
+        final int[][] columns = new int[PARITY_COLUMNS.length][];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = PARITY_COLUMNS[i].clone();
+        }
+        return columns;
+    }
+
+    @Override
+    public void encode(int[] message, int[] parity) {
+        final int x0 = message[0];
+        final int x1 = message[1];
+        final int x2 = message[2];
+        final int x3 = message[3];
+        final int x4 = message[4];
+        final int x5 = message[5];
+        final int x6 = message[6];
+        final int x7 = message[7];
+        final int x8 = message[8];
+        final int x9 = message[9];
+        parity[0] = (M64[x0] ^ M231[x1] ^ M229[x2] ^ M158[x3] ^ M164[x4] ^ M178[x5] ^ M132[x6] ^ M140[x7] ^ M113[x8] ^ M34[x9]) & 0xFF;
+        parity[1] = (M120[x0] ^ M210[x1] ^ M191[x2] ^ M71[x3] ^ M219[x4] ^ M188[x5] ^ M203[x6] ^ M242[x7] ^ M179[x8] ^ M135[x9]) & 0xFF;
+        parity[2] = (M54[x0] ^ M87[x1] ^ M7[x2] ^ M140[x3] ^ M217[x4] ^ M213[x5] ^ M57[x6] ^ M129[x7] ^ M33[x8] ^ M82[x9]) & 0xFF;
+        parity[3] = (M15[x0] ^ M99[x1] ^ M92[x2] ^ M84[x3] ^ M167[x4] ^ M218[x5] ^ M119[x6] ^ M254[x7] ^ M226[x8] ^ M246[x9]) & 0xFF;
+    }
+
+    @Override
+    public void encodeBulk(byte[][] inputs, byte[][] outputs, int from, int to) {
+        final byte[] in0 = inputs[0];
+        final byte[] in1 = inputs[1];
+        final byte[] in2 = inputs[2];
+        final byte[] in3 = inputs[3];
+        final byte[] in4 = inputs[4];
+        final byte[] in5 = inputs[5];
+        final byte[] in6 = inputs[6];
+        final byte[] in7 = inputs[7];
+        final byte[] in8 = inputs[8];
+        final byte[] in9 = inputs[9];
+        final int length = to - from;
+        final byte[] out0 = outputs[0];
+        final byte[] out1 = outputs[1];
+        final byte[] out2 = outputs[2];
+        final byte[] out3 = outputs[3];
+        GF.multiplyRegion(64, in0, from, out0, from, length);
+        GF.multiplyAccumulateRegion(231, in1, from, out0, from, length);
+        GF.multiplyAccumulateRegion(229, in2, from, out0, from, length);
+        GF.multiplyAccumulateRegion(158, in3, from, out0, from, length);
+        GF.multiplyAccumulateRegion(164, in4, from, out0, from, length);
+        GF.multiplyAccumulateRegion(178, in5, from, out0, from, length);
+        GF.multiplyAccumulateRegion(132, in6, from, out0, from, length);
+        GF.multiplyAccumulateRegion(140, in7, from, out0, from, length);
+        GF.multiplyAccumulateRegion(113, in8, from, out0, from, length);
+        GF.multiplyAccumulateRegion(34, in9, from, out0, from, length);
+        GF.multiplyRegion(120, in0, from, out1, from, length);
+        GF.multiplyAccumulateRegion(210, in1, from, out1, from, length);
+        GF.multiplyAccumulateRegion(191, in2, from, out1, from, length);
+        GF.multiplyAccumulateRegion(71, in3, from, out1, from, length);
+        GF.multiplyAccumulateRegion(219, in4, from, out1, from, length);
+        GF.multiplyAccumulateRegion(188, in5, from, out1, from, length);
+        GF.multiplyAccumulateRegion(203, in6, from, out1, from, length);
+        GF.multiplyAccumulateRegion(242, in7, from, out1, from, length);
+        GF.multiplyAccumulateRegion(179, in8, from, out1, from, length);
+        GF.multiplyAccumulateRegion(135, in9, from, out1, from, length);
+        GF.multiplyRegion(54, in0, from, out2, from, length);
+        GF.multiplyAccumulateRegion(87, in1, from, out2, from, length);
+        GF.multiplyAccumulateRegion(7, in2, from, out2, from, length);
+        GF.multiplyAccumulateRegion(140, in3, from, out2, from, length);
+        GF.multiplyAccumulateRegion(217, in4, from, out2, from, length);
+        GF.multiplyAccumulateRegion(213, in5, from, out2, from, length);
+        GF.multiplyAccumulateRegion(57, in6, from, out2, from, length);
+        GF.multiplyAccumulateRegion(129, in7, from, out2, from, length);
+        GF.multiplyAccumulateRegion(33, in8, from, out2, from, length);
+        GF.multiplyAccumulateRegion(82, in9, from, out2, from, length);
+        GF.multiplyRegion(15, in0, from, out3, from, length);
+        GF.multiplyAccumulateRegion(99, in1, from, out3, from, length);
+        GF.multiplyAccumulateRegion(92, in2, from, out3, from, length);
+        GF.multiplyAccumulateRegion(84, in3, from, out3, from, length);
+        GF.multiplyAccumulateRegion(167, in4, from, out3, from, length);
+        GF.multiplyAccumulateRegion(218, in5, from, out3, from, length);
+        GF.multiplyAccumulateRegion(119, in6, from, out3, from, length);
+        GF.multiplyAccumulateRegion(254, in7, from, out3, from, length);
+        GF.multiplyAccumulateRegion(226, in8, from, out3, from, length);
+        GF.multiplyAccumulateRegion(246, in9, from, out3, from, length);
+    }
+}
@@ -0,0 +1,388 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+
+/**
+ * The kernels computing the region operations of a {@link GaloisField} on byte arrays, and the calibration choosing
+ * among them.
+ * <br/>
+ * Which kernel is the fastest depends on the CPU: a full product table is the fewest operations while it stays in the
+ * L1 cache, split-nibble tables are smaller, and long words save loads and stores when the JIT does not vectorize the
+ * byte loop. Each field times its kernels in a background thread once it is created, and then switches to the fastest
+ * one per operation; until then it uses the first ones, the product table and the byte loop. The choice can be forced
+ * with the system properties {@link GaloisField#MULTIPLY_KERNEL_PROPERTY} and {@link GaloisField#ADD_KERNEL_PROPERTY}.
+ * <br/>
+ * The "vector" kernels come from the optional source set src/vector, built on the Vector API of JDK 16+ with
+ * -PvectorApi. They are only candidates when that source set is on the classpath and the JVM runs with
+ * --add-modules jdk.incubator.vector, so the same jar still runs on Java 8 with the other kernels.
+ */
+final class RegionKernels {
+    private static final Logger LOG = Logger.getLogger(RegionKernels.class.getName());
+    static final String AUTO = "auto";
+    // Each kernel first runs WARMUP_RUNS times on WARMUP_SIZE bytes, enough calls for the JIT to compile it fully.
+    // Then it runs RUNS_PER_ROUND times per round on regions of REGION_SIZE bytes, and keeps its best round.
+    private static final int WARMUP_RUNS = 10000;
+    private static final int WARMUP_SIZE = 256;
+    private static final int REGION_SIZE = 4096;
+    private static final int RUNS_PER_ROUND = 16;
+    private static final int ROUNDS = 20;
+    private static final String VECTOR_KERNELS_CLASS = RegionKernels.class.getPackage().getName() +
+            ".VectorRegionKernels";
+    // Null when the vector kernels are not available
+    private static final Class<?> VECTOR_KERNELS = vectorKernels();
+
+    private RegionKernels() {
+    }
+
+    // Calibrates the fields one after the other, off the threads using them
+    private static final class Calibration {
+        static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "gf-kernel-calibration");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * dst = coef * src, or dst = dst + coef * src when accumulating. The coefficient is neither 0 nor 1.
+     */
+    interface MultiplyKernel {
+        void multiply(int coef, byte[] src, int srcOffset, byte[] dst, int dstOffset, int length, boolean accumulate);
+    }
+
+    /**
+     * dst = dst + src
+     */
+    interface AddKernel {
+        void add(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length);
+    }
+
+    /**
+     * @param productRows The product rows of a field whose symbols fit in a byte, null for GF(2^16)
+     * @return The multiply kernels of a field, by name
+     */
+    static Map<String, MultiplyKernel> multiplyKernels(GaloisField gf, byte[][] productRows) {
+        final Map<String, MultiplyKernel> kernels = new LinkedHashMap<>();
+        if (productRows != null) {
+            final byte[][] nibbleProducts = nibbleProducts(gf);
+            kernels.put("table", (coef, src, srcOffset, dst, dstOffset, length, accumulate) ->
+                    tableMultiply(productRows[coef], src, srcOffset, dst, dstOffset, length, accumulate));
+            kernels.put("nibble", (coef, src, srcOffset, dst, dstOffset, length, accumulate) ->
+                    nibbleMultiply(nibbleProducts[coef], src, srcOffset, dst, dstOffset, length, accumulate));
+            kernels.put("long", (coef, src, srcOffset, dst, dstOffset, length, accumulate) ->
+                    longMultiply(productRows[coef], src, srcOffset, dst, dstOffset, length, accumulate));
+            final MultiplyKernel vector = invokeVectorKernels("multiplyKernel", gf);
+            if (vector != null) {
+                kernels.put("vector", vector);
+            }
+        } else {
+            // The nibble tables of all the coefficients would take 8 MiB: each one is built on its first use, like
+            // the product rows of the field
+            final AtomicReferenceArray<char[]> nibbleProducts = new AtomicReferenceArray<>(gf.getFieldSize());
+            final IntFunction<char[]> buildNibbleProducts = coef -> wideNibbleProducts(gf, coef);
+            kernels.put("table", (coef, src, srcOffset, dst, dstOffset, length, accumulate) ->
+                    wideTableMultiply(gf.wideProductRow(coef), src, srcOffset, dst, dstOffset, length, accumulate));
+            kernels.put("nibble", (coef, src, srcOffset, dst, dstOffset, length, accumulate) ->
+                    wideNibbleMultiply(products(nibbleProducts, coef, buildNibbleProducts), src, srcOffset, dst,
+                            dstOffset, length, accumulate));
+        }
+        return kernels;
+    }
+
+    /**
+     * @return The add kernels, by name
+     */
+    static Map<String, AddKernel> addKernels() {
+        final Map<String, AddKernel> kernels = new LinkedHashMap<>();
+        kernels.put("byte", RegionKernels::byteAdd);
+        kernels.put("long", RegionKernels::longAdd);
+        final AddKernel vector = invokeVectorKernels("addKernel");
+        if (vector != null) {
+            kernels.put("vector", vector);
+        }
+        return kernels;
+    }
+
+    private static Class<?> vectorKernels() {
+        try {
+            // Initializing the class links it to the jdk.incubator.vector module
+            return Class.forName(VECTOR_KERNELS_CLASS, true, RegionKernels.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (LinkageError e) {
+            // Built, but the JVM is older than the class or lacks the module
+            LOG.info("Vector API kernels unavailable: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Call a static factory of the vector kernels.
+     *
+     * @return The kernel built, or null if the vector kernels are not available
+     */
+    @SuppressWarnings("unchecked")
+    private static <K> K invokeVectorKernels(String factory, Object... args) {
+        if (VECTOR_KERNELS == null) {
+            return null;
+        }
+        try {
+            final Class<?>[] types = new Class<?>[args.length];
+            for (int i = 0; i < args.length; i++) {
+                types[i] = args[i].getClass();
+            }
+            final Method method = VECTOR_KERNELS.getDeclaredMethod(factory, types);
+            method.setAccessible(true);
+            return (K) method.invoke(null, args);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Choose the kernel of an operation: the one named by a system property, or else the fastest one. Until the
+     * calibration finds the fastest kernel in the background, the first one is used.
+     *
+     * @param operation The name of the operation, for the logs
+     * @param property  The system property naming the kernel to use, "auto" or unset to calibrate
+     * @param kernels   The kernels of the operation, by name
+     * @param run       Run a kernel once on the given length of the calibration regions
+     * @param use       Called with the kernel to use and its name, at once and again after the calibration
+     */
+    static <K> void select(GaloisField gf, String operation, String property, Map<String, K> kernels,
+                           Function<K, IntConsumer> run, BiConsumer<String, K> use) {
+        final String forced = System.getProperty(property, AUTO);
+        if (kernels.containsKey(forced)) {
+            LOG.info("GF(" + gf.getFieldSize() + ") " + operation + " kernel: " + forced + ", set by " + property);
+            use.accept(forced, kernels.get(forced));
+            return;
+        }
+        if (!forced.equals(AUTO)) {
+            LOG.warning("Unknown " + operation + " kernel " + forced + " in " + property + ", expected one of " +
+                    kernels.keySet() + " or " + AUTO);
+        }
+        final String[] names = kernels.keySet().toArray(new String[0]);
+        use.accept(names[0], kernels.get(names[0]));
+        if (names.length == 1) {
+            return;
+        }
+        Calibration.EXECUTOR.execute(() -> {
+            final IntConsumer[] runs = new IntConsumer[names.length];
+            for (int k = 0; k < names.length; k++) {
+                runs[k] = run.apply(kernels.get(names[k]));
+            }
+            final long[] best;
+            try {
+                best = calibrate(runs);
+            } catch (RuntimeException e) {
+                LOG.warning("GF(" + gf.getFieldSize() + ") " + operation + " kernel calibration failed, keeping " +
+                        names[0] + ": " + e);
+                return;
+            }
+            int fastest = 0;
+            final StringBuilder timings = new StringBuilder();
+            for (int k = 0; k < names.length; k++) {
+                if (best[k] < best[fastest]) {
+                    fastest = k;
+                }
+                final double megabytesPerSecond = (double) REGION_SIZE * RUNS_PER_ROUND * 1000 / Math.max(best[k], 1);
+                timings.append(k == 0 ? "" : ", ").append(names[k])
+                        .append(String.format(" %.0f MB/s", megabytesPerSecond));
+            }
+            LOG.info("GF(" + gf.getFieldSize() + ") " + operation + " kernel: " + names[fastest] + " (" + timings +
+                    ")");
+            use.accept(names[fastest], kernels.get(names[fastest]));
+        });
+    }
+
+    /**
+     * Warm the runs up, then time them in turns so that a background compilation does not favour the last ones.
+     *
+     * @return The best time of each run over the rounds, in nanoseconds
+     */
+    private static long[] calibrate(IntConsumer[] runs) {
+        for (IntConsumer run : runs) {
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                run.accept(WARMUP_SIZE);
+            }
+        }
+        final long[] best = new long[runs.length];
+        Arrays.fill(best, Long.MAX_VALUE);
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int k = 0; k < runs.length; k++) {
+                final long start = System.nanoTime();
+                for (int i = 0; i < RUNS_PER_ROUND; i++) {
+                    runs[k].accept(REGION_SIZE);
+                }
+                best[k] = Math.min(best[k], System.nanoTime() - start);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return Random source and destination regions for the calibration
+     */
+    static byte[][] calibrationRegions() {
+        final byte[][] regions = new byte[2][REGION_SIZE];
+        new Random(REGION_SIZE).nextBytes(regions[0]);
+        return regions;
+    }
+
+    private static void tableMultiply(byte[] row, byte[] src, int srcOffset, byte[] dst, int dstOffset, int length,
+                                      boolean accumulate) {
+        if (accumulate) {
+            for (int i = 0; i < length; i++) {
+                dst[dstOffset + i] ^= row[src[srcOffset + i] & 0xFF];
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                dst[dstOffset + i] = row[src[srcOffset + i] & 0xFF];
+            }
+        }
+    }
+
+    /**
+     * @return The products of the nibbles of a field whose symbols fit in a byte: row c holds c * n, then c * (n << 4)
+     * for the 16 nibbles n
+     */
+    private static byte[][] nibbleProducts(GaloisField gf) {
+        final int fieldSize = gf.getFieldSize();
+        final byte[][] products = new byte[fieldSize][32];
+        for (int c = 0; c < fieldSize; c++) {
+            for (int n = 0; n < 16; n++) {
+                products[c][n] = n < fieldSize ? (byte) gf.multiply(c, n) : 0;
+                products[c][16 + n] = n << 4 < fieldSize ? (byte) gf.multiply(c, n << 4) : 0;
+            }
+        }
+        return products;
+    }
+
+    // coef * x = low[x & 0xF] + high[x >>> 4]: two tables of 16 products instead of a row of 256
+    private static void nibbleMultiply(byte[] products, byte[] src, int srcOffset, byte[] dst, int dstOffset,
+                                       int length, boolean accumulate) {
+        for (int i = 0; i < length; i++) {
+            final int x = src[srcOffset + i];
+            byte product = (byte) (products[x & 0xF] ^ products[16 + ((x >>> 4) & 0xF)]);
+            if (accumulate) {
+                product ^= dst[dstOffset + i];
+            }
+            dst[dstOffset + i] = product;
+        }
+    }
+
+    // A long word is read and written at a time. Each byte is mapped on its own, so the byte order does not matter.
+    private static void longMultiply(byte[] row, byte[] src, int srcOffset, byte[] dst, int dstOffset, int length,
+                                     boolean accumulate) {
+        final ByteBuffer srcWords = ByteBuffer.wrap(src).order(ByteOrder.nativeOrder());
+        final ByteBuffer dstWords = ByteBuffer.wrap(dst).order(ByteOrder.nativeOrder());
+        final int words = length & ~7;
+        for (int i = 0; i < words; i += 8) {
+            final long s = srcWords.getLong(srcOffset + i);
+            long product = 0;
+            for (int shift = 0; shift < 64; shift += 8) {
+                product |= (row[(int) (s >>> shift) & 0xFF] & 0xFFL) << shift;
+            }
+            if (accumulate) {
+                product ^= dstWords.getLong(dstOffset + i);
+            }
+            dstWords.putLong(dstOffset + i, product);
+        }
+        tableMultiply(row, src, srcOffset + words, dst, dstOffset + words, length - words, accumulate);
+    }
+
+    /**
+     * @return The products of a coefficient of GF(2^16), built by the given function on the first call
+     */
+    private static char[] products(AtomicReferenceArray<char[]> products, int coef, IntFunction<char[]> build) {
+        char[] coefProducts = products.get(coef);
+        if (coefProducts == null) {
+            // Threads racing here build the same products
+            coefProducts = build.apply(coef);
+            products.set(coef, coefProducts);
+        }
+        return coefProducts;
+    }
+
+    /**
+     * GF(2^16), on symbols of two bytes: coef * x = high[x >>> 8] + low[x & 0xFF].
+     */
+    private static void wideTableMultiply(char[] products, byte[] src, int srcOffset, byte[] dst, int dstOffset,
+                                          int length, boolean accumulate) {
+        assert (length % 2 == 0);
+        for (int i = 0; i < length; i += 2) {
+            int product = products[src[srcOffset + i] & 0xFF] ^ products[256 + (src[srcOffset + i + 1] & 0xFF)];
+            if (accumulate) {
+                product ^= ((dst[dstOffset + i] & 0xFF) << 8) | (dst[dstOffset + i + 1] & 0xFF);
+            }
+            dst[dstOffset + i] = (byte) (product >>> 8);
+            dst[dstOffset + i + 1] = (byte) product;
+        }
+    }
+
+    /**
+     * @return coef * (n << 4 * position) at 16 * position + n, for the 16 nibbles n at the 4 positions of a symbol
+     */
+    private static char[] wideNibbleProducts(GaloisField gf, int coef) {
+        final char[] products = new char[64];
+        for (int position = 0; position < 4; position++) {
+            for (int n = 0; n < 16; n++) {
+                products[16 * position + n] = (char) gf.multiply(coef, n << 4 * position);
+            }
+        }
+        return products;
+    }
+
+    /**
+     * GF(2^16) with one table of 16 products per nibble of the symbol, which fit in fewer cache lines than the byte
+     * tables.
+     */
+    private static void wideNibbleMultiply(char[] products, byte[] src, int srcOffset, byte[] dst, int dstOffset,
+                                           int length, boolean accumulate) {
+        assert (length % 2 == 0);
+        for (int i = 0; i < length; i += 2) {
+            final int highByte = src[srcOffset + i];
+            final int lowByte = src[srcOffset + i + 1];
+            int product = products[48 + ((highByte >>> 4) & 0xF)] ^ products[32 + (highByte & 0xF)] ^
+                    products[16 + ((lowByte >>> 4) & 0xF)] ^ products[lowByte & 0xF];
+            if (accumulate) {
+                product ^= ((dst[dstOffset + i] & 0xFF) << 8) | (dst[dstOffset + i + 1] & 0xFF);
+            }
+            dst[dstOffset + i] = (byte) (product >>> 8);
+            dst[dstOffset + i + 1] = (byte) product;
+        }
+    }
+
+    private static void byteAdd(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] ^= src[srcOffset + i];
+        }
+    }
+
+    private static void longAdd(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        final ByteBuffer srcWords = ByteBuffer.wrap(src).order(ByteOrder.nativeOrder());
+        final ByteBuffer dstWords = ByteBuffer.wrap(dst).order(ByteOrder.nativeOrder());
+        final int words = length & ~7;
+        for (int i = 0; i < words; i += 8) {
+            dstWords.putLong(dstOffset + i, dstWords.getLong(dstOffset + i) ^ srcWords.getLong(srcOffset + i));
+        }
+        byteAdd(src, srcOffset + words, dst, dstOffset + words, length - words);
+    }
+}
@@ -0,0 +1,133 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.logging.Logger;
+
+/**
+ * N-way replication expressed as a code, the baseline of the erasure codes: a stripe is a single symbol, stored in
+ * copies identical blocks. The "parity" locations are the copies - 1 replicas, followed by the original.
+ * <br/>
+ * Any available location gives the stripe without arithmetic, and decoding copies it to the erased locations. The
+ * default {@link #locationsToReadForDecode(java.util.BitSet, int[])} reads the highest available location: the
+ * original, then the last replica. {@link ch.unine.vauchers.erasuretester.erasure.FileEncoderDecoder} reads the
+ * stripes of this code without decoding, see its fast path.
+ */
+public class ReplicationCode extends ErasureCode {
+    public static final Logger LOG = Logger.getLogger(ReplicationCode.class.getName());
+
+    private final int copies;
+
+    /**
+     * @param copies The number of blocks holding each symbol, at least 1
+     */
+    public ReplicationCode(int copies) {
+        if (copies < 1) {
+            throw new IllegalArgumentException("Invalid number of copies " + copies);
+        }
+        this.copies = copies;
+
+        LOG.info("Initialized " + ReplicationCode.class +
+                " copies:" + copies);
+    }
+
+    @Override
+    public void encode(int[] message, int[] parity) {
+        assert (message.length == 1 && parity.length == copies - 1);
+        for (int j = 0; j < parity.length; j++) {
+            parity[j] = message[0];
+        }
+    }
+
+    @Override
+    public void updateParity(int position, int oldValue, int newValue, int[] parity) {
+        assert (position == 0);
+        for (int j = 0; j < parity.length; j++) {
+            parity[j] = newValue;
+        }
+    }
+
+    @Override
+    public void decode(int[] data, int[] erasedLocations, int[] erasedValues) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        final int source = firstAvailable(erasedLocations);
+        if (source >= 0) {
+            for (int e = 0; e < erasedLocations.length; e++) {
+                erasedValues[e] = data[source];
+            }
+        }
+    }
+
+    @Override
+    public void decode(int[] data, int[] erasedLocations, int[] erasedValues, int[] locationsToRead,
+                       int[] locationsNotToRead) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        if (locationsToRead.length == 0) {
+            decode(data, erasedLocations, erasedValues);
+            return;
+        }
+        for (int e = 0; e < erasedLocations.length; e++) {
+            erasedValues[e] = data[locationsToRead[0]];
+        }
+    }
+
+    /**
+     * @return The highest location which is not erased, or -1 if all the copies are
+     */
+    private int firstAvailable(int[] erasedLocations) {
+        for (int location = copies - 1; location >= 0; location--) {
+            boolean erased = false;
+            for (int erasedLocation : erasedLocations) {
+                erased |= erasedLocation == location;
+            }
+            if (!erased) {
+                return location;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    protected void encodeBulkColumns(byte[][] inputs, byte[][] outputs, int from, int to) {
+        assert (inputs.length == 1 && outputs.length == copies - 1);
+        for (byte[] output : outputs) {
+            System.arraycopy(inputs[0], from, output, from, to - from);
+        }
+    }
+
+    @Override
+    protected void decodeBulkColumns(byte[][] readBufs, byte[][] writeBufs, int[] erasedLocations,
+                                     int[] locationsToRead, int[] locationsNotToRead, int from, int to) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        final int source = locationsToRead.length > 0 ? locationsToRead[0] : firstAvailable(erasedLocations);
+        if (source < 0) {
+            return;
+        }
+        for (byte[] output : writeBufs) {
+            System.arraycopy(readBufs[source], from, output, from, to - from);
+        }
+    }
+
+    public int getCopies() {
+        return copies;
+    }
+
+    @Override
+    public int stripeSize() {
+        return 1;
+    }
+
+    @Override
+    public int paritySize() {
+        return copies - 1;
+    }
+
+    @Override
+    public int symbolSize() {
+        return 8;
+    }
+}
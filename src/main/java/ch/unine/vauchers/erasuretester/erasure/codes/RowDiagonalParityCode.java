@@ -0,0 +1,588 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.LongFunction;
+import java.util.logging.Logger;
+
+/**
+ * Row-Diagonal Parity code (Corbett et al., Row-Diagonal Parity for Double Disk Failure Correction, 2004), which
+ * tolerates any two erasures with XORs only.
+ * <br/>
+ * Each block is a column of P - 1 = 16 rows, for the prime P = 17. The row parity is the XOR of the message blocks,
+ * row by row. The cell of row r in column c lies on the diagonal (r + c) mod P, where the message blocks are the
+ * columns 0 ... k - 1 and the row parity is the column P - 1; the diagonal parity holds the XOR of each diagonal but
+ * the last one. Codes of fewer than P - 1 message blocks are shortened: the missing columns are zero.
+ * <br/>
+ * A symbol is 16 bits, one per row. The bulk operations use their own layout: each block is split into 16 packets,
+ * one per row, and a packet is coded with a single XOR kernel call. Buffers lengths not multiple of 16 have their
+ * last length % 16 bytes coded symbol by symbol.
+ * <br/>
+ * Both the encoding and the decodings solve the row and diagonal equations by peeling: an equation with a single
+ * unknown cell gives it by XOR, which may leave another equation with a single unknown cell. For two erased columns,
+ * this is the chain reconstruction of RDP. The XORs of each erasure pattern are listed once and cached, and each thread
+ * keeps the reconstruction of its last pattern along with its buffers. The locations are the row parity, the diagonal
+ * parity, then the message.
+ */
+public class RowDiagonalParityCode extends ErasureCode {
+    public static final Logger LOG = Logger.getLogger(RowDiagonalParityCode.class.getName());
+    private static final int P = 17;
+    private static final int ROWS = P - 1;
+    private static final int ROW_PARITY = 0;
+    private static final int DIAGONAL_PARITY = 1;
+    private static final int PARITY_SIZE = 2;
+    // Packets are processed in slices of this size, so that the packets of a step stay in the cache
+    private static final int SLICE_SIZE = 1024;
+
+    private final int stripeSize;
+    // equations[e]: the cells whose XOR is zero, a cell being location * ROWS + row
+    private final int[][] equations;
+    // cellEquations[cell]: the equations containing the cell
+    private final int[][] cellEquations;
+    private final Reconstruction encoding;
+    // XOR is the addition of GF(2^8), the region kernels are shared
+    private final GaloisField GF = GaloisField.getInstance();
+    private final DecodePlanCache<Reconstruction> reconstructions =
+            new DecodePlanCache<>(DecodePlanCache.DEFAULT_CAPACITY);
+    private final LongFunction<Reconstruction> reconstructionPlanner =
+            pattern -> reconstruction(DecodePlanCache.locations(pattern));
+    private final ThreadLocal<Scratch> scratches;
+
+    /**
+     * @param stripeSize The number of message blocks, at most 16. The parity is always 2 blocks.
+     */
+    public RowDiagonalParityCode(int stripeSize) {
+        if (stripeSize < 1 || stripeSize > ROWS) {
+            throw new IllegalArgumentException("RDP codes have 1 to " + ROWS + " message blocks, not " + stripeSize);
+        }
+        this.stripeSize = stripeSize;
+        this.equations = equations(stripeSize);
+        this.cellEquations = cellEquations(equations, (stripeSize + PARITY_SIZE) * ROWS);
+        final int totalSize = stripeSize + PARITY_SIZE;
+        this.scratches = ThreadLocal.withInitial(() -> new Scratch(totalSize));
+        this.encoding = reconstruction(new int[]{ROW_PARITY, DIAGONAL_PARITY,
+                totalSize + ROW_PARITY, totalSize + DIAGONAL_PARITY});
+
+        LOG.info("Initialized " + RowDiagonalParityCode.class +
+                " stripeSize:" + stripeSize +
+                " paritySize:" + PARITY_SIZE);
+    }
+
+    /**
+     * The ROWS row equations, then the ROWS diagonal equations.
+     */
+    private static int[][] equations(int stripeSize) {
+        final int[][] equations = new int[2 * ROWS][];
+        for (int r = 0; r < ROWS; r++) {
+            final int[] equation = new int[stripeSize + 1];
+            equation[0] = cell(ROW_PARITY, r);
+            for (int i = 0; i < stripeSize; i++) {
+                equation[1 + i] = cell(PARITY_SIZE + i, r);
+            }
+            equations[r] = equation;
+        }
+        for (int d = 0; d < ROWS; d++) {
+            final List<Integer> equation = new ArrayList<>();
+            equation.add(cell(DIAGONAL_PARITY, d));
+            for (int column = 0; column < P; column++) {
+                // The row P - 1 is not stored, and the columns stripeSize ... P - 2 are zero
+                final int row = Math.floorMod(d - column, P);
+                if (row == ROWS || column >= stripeSize && column < ROWS) {
+                    continue;
+                }
+                equation.add(cell(column == ROWS ? ROW_PARITY : PARITY_SIZE + column, row));
+            }
+            equations[ROWS + d] = equation.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return equations;
+    }
+
+    private static int[][] cellEquations(int[][] equations, int cells) {
+        final List<List<Integer>> lists = new ArrayList<>(cells);
+        for (int c = 0; c < cells; c++) {
+            lists.add(new ArrayList<>());
+        }
+        for (int e = 0; e < equations.length; e++) {
+            for (int cell : equations[e]) {
+                lists.get(cell).add(e);
+            }
+        }
+        return lists.stream().map(list -> list.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+    }
+
+    private static int cell(int location, int row) {
+        return location * ROWS + row;
+    }
+
+    /**
+     * Solve the cells of the unknown locations by peeling, preferring the row equations, then keep the steps the
+     * erased locations depend on.
+     *
+     * @param pattern The locations not read, then the erased locations shifted by stripeSize() + paritySize(), in
+     *                increasing order
+     * @return The XORs computing the erased locations from the locations read, or an undecodable reconstruction
+     */
+    private Reconstruction reconstruction(int[] pattern) {
+        final int totalSize = stripeSize + PARITY_SIZE;
+        final BitSet unknown = new BitSet();
+        final BitSet needed = new BitSet();
+        for (int location : pattern) {
+            if (location < totalSize) {
+                unknown.set(cell(location, 0), cell(location + 1, 0));
+            } else {
+                needed.set(cell(location - totalSize, 0), cell(location - totalSize + 1, 0));
+            }
+        }
+        final int[] unknownCounts = new int[equations.length];
+        for (int e = 0; e < equations.length; e++) {
+            for (int cell : equations[e]) {
+                if (unknown.get(cell)) {
+                    unknownCounts[e]++;
+                }
+            }
+        }
+
+        final int[] targets = new int[unknown.cardinality()];
+        final int[][] sources = new int[targets.length][];
+        int solved = 0;
+        boolean progress = true;
+        while (solved < targets.length && progress) {
+            progress = false;
+            for (int e = 0; e < equations.length; e++) {
+                if (unknownCounts[e] != 1) {
+                    continue;
+                }
+                final int[] equation = equations[e];
+                int target = -1;
+                for (int cell : equation) {
+                    if (unknown.get(cell)) {
+                        target = cell;
+                    }
+                }
+                final int[] terms = new int[equation.length - 1];
+                int t = 0;
+                for (int cell : equation) {
+                    if (cell != target) {
+                        terms[t++] = cell;
+                    }
+                }
+                targets[solved] = target;
+                sources[solved++] = terms;
+                unknown.clear(target);
+                for (int other : cellEquations[target]) {
+                    unknownCounts[other]--;
+                }
+                progress = true;
+            }
+        }
+        if (solved < targets.length) {
+            return Reconstruction.UNDECODABLE;
+        }
+
+        // Walk the steps backwards, from the erased cells to the unknown cells they are computed from
+        final boolean[] kept = new boolean[solved];
+        int keptCount = 0;
+        for (int s = solved - 1; s >= 0; s--) {
+            if (needed.get(targets[s])) {
+                kept[s] = true;
+                keptCount++;
+                for (int cell : sources[s]) {
+                    needed.set(cell);
+                }
+            }
+        }
+        final int[] keptTargets = new int[keptCount];
+        final int[][] keptSources = new int[keptCount][];
+        for (int s = 0, k = 0; s < solved; s++) {
+            if (kept[s]) {
+                keptTargets[k] = targets[s];
+                keptSources[k++] = sources[s];
+            }
+        }
+        return new Reconstruction(keptTargets, keptSources);
+    }
+
+    /**
+     * @param erasedLocations    The locations to output
+     * @param locationsNotToRead The other locations which are not read, or null
+     * @return The mask of the pattern: the locations not read, then the erased locations shifted by
+     * stripeSize() + paritySize()
+     */
+    private long pattern(int[] erasedLocations, int[] locationsNotToRead) {
+        final long erased = DecodePlanCache.mask(erasedLocations);
+        final long unknown = locationsNotToRead == null ? erased : erased | DecodePlanCache.mask(locationsNotToRead);
+        return unknown | erased << stripeSize + PARITY_SIZE;
+    }
+
+    /**
+     * @param pattern A mask returned by {@link #pattern(int[], int[])}
+     * @param scratch The scratch of the current thread, which keeps the reconstruction of its last pattern
+     */
+    private Reconstruction reconstruction(long pattern, Scratch scratch) {
+        if (scratch.pattern != pattern) {
+            scratch.reconstruction = reconstructions.get(pattern, reconstructionPlanner);
+            scratch.pattern = pattern;
+        }
+        return scratch.reconstruction;
+    }
+
+    /**
+     * The buffers of the codings of a thread, and the reconstruction of its last erasure pattern, which spares the
+     * lookups in the cache while a pattern repeats.
+     */
+    private static final class Scratch {
+        // The symbols of all the locations
+        final int[] symbols;
+        // The blocks of all the locations
+        final byte[][] blocks;
+        // The outputs of the locations solved but not erased in the bulk decodings, grown on demand
+        final byte[][] spares;
+        // No pattern has all its bits set
+        long pattern = -1;
+        Reconstruction reconstruction;
+
+        Scratch(int totalSize) {
+            symbols = new int[totalSize];
+            blocks = new byte[totalSize][];
+            spares = new byte[totalSize][];
+        }
+
+        byte[] spare(int location, int length) {
+            if (spares[location] == null || spares[location].length < length) {
+                spares[location] = new byte[length];
+            }
+            return spares[location];
+        }
+    }
+
+    /**
+     * XORs solving the cells of an erasure pattern, in order: each one may read the cells solved before it.
+     */
+    private static final class Reconstruction {
+        static final Reconstruction UNDECODABLE = new Reconstruction(null, null);
+
+        // targets[s]: the cell solved by the step s, the XOR of the cells sources[s]
+        final int[] targets;
+        final int[][] sources;
+        // The locations of the targets
+        final int[] locations;
+        // The scalar program: opSteps[o] is the first step of the operation o. The ROWS steps solving a whole location
+        // row by row from the same locations, e.g. a message block from the row parity, are a single operation XORing
+        // whole symbols, whose locations are opColumns[o]. The other operations are a single step, opColumns[o] null.
+        final int[] opSteps;
+        final int[][] opColumns;
+
+        Reconstruction(int[] targets, int[][] sources) {
+            this.targets = targets;
+            this.sources = sources;
+            this.locations = targets == null ? null
+                    : Arrays.stream(targets).map(cell -> cell / ROWS).distinct().toArray();
+            if (targets == null) {
+                opSteps = null;
+                opColumns = null;
+                return;
+            }
+            final List<Integer> steps = new ArrayList<>();
+            final List<int[]> columns = new ArrayList<>();
+            for (int s = 0; s < targets.length; ) {
+                final int[] run = columnRun(s);
+                steps.add(s);
+                columns.add(run);
+                s += run == null ? 1 : ROWS;
+            }
+            opSteps = steps.stream().mapToInt(Integer::intValue).toArray();
+            opColumns = columns.toArray(new int[0][]);
+        }
+
+        /**
+         * @return The source locations of the ROWS steps from s if they solve a whole location, each row from the
+         * same row of the same locations, null otherwise
+         */
+        private int[] columnRun(int s) {
+            if (s + ROWS > targets.length) {
+                return null;
+            }
+            final int location = targets[s] / ROWS;
+            final int[] columns = Arrays.stream(sources[s]).map(cell -> cell / ROWS).sorted().toArray();
+            int rows = 0;
+            for (int step = s; step < s + ROWS; step++) {
+                final int row = targets[step] % ROWS;
+                if (targets[step] / ROWS != location) {
+                    return null;
+                }
+                for (int cell : sources[step]) {
+                    if (cell % ROWS != row) {
+                        return null;
+                    }
+                }
+                if (!Arrays.equals(columns, Arrays.stream(sources[step]).map(cell -> cell / ROWS).sorted().toArray())) {
+                    return null;
+                }
+                rows |= 1 << row;
+            }
+            return rows == (1 << ROWS) - 1 ? columns : null;
+        }
+
+        boolean isDecodable() {
+            return targets != null;
+        }
+
+        int xorCount() {
+            int count = 0;
+            for (int[] terms : sources) {
+                count += Math.max(terms.length - 1, 0);
+            }
+            return count;
+        }
+
+        /**
+         * Run the steps on symbols, whose bit r is the row r.
+         *
+         * @param symbols (in/out) The symbols of all the locations, the unknown ones are written
+         */
+        void execute(int[] symbols) {
+            for (int o = 0; o < opSteps.length; o++) {
+                final int[] columns = opColumns[o];
+                if (columns != null) {
+                    int symbol = 0;
+                    for (int column : columns) {
+                        symbol ^= symbols[column];
+                    }
+                    symbols[targets[opSteps[o]] / ROWS] = symbol;
+                    continue;
+                }
+                final int s = opSteps[o];
+                int bit = 0;
+                for (int cell : sources[s]) {
+                    bit ^= symbols[cell / ROWS] >>> cell % ROWS;
+                }
+                final int location = targets[s] / ROWS;
+                final int mask = 1 << targets[s] % ROWS;
+                symbols[location] = (bit & 1) != 0 ? symbols[location] | mask : symbols[location] & ~mask;
+            }
+        }
+
+        /**
+         * Run the steps on the bytes [ from, to ) of the packets.
+         *
+         * @param blocks The blocks of all the locations, the packets of the unknown ones are written
+         */
+        void execute(GaloisField gf, byte[][] blocks, int packetSize, int from, int to) {
+            for (int start = from; start < to; start += SLICE_SIZE) {
+                final int length = Math.min(SLICE_SIZE, to - start);
+                for (int s = 0; s < targets.length; s++) {
+                    final int[] terms = sources[s];
+                    final byte[] target = blocks[targets[s] / ROWS];
+                    final int targetOffset = targets[s] % ROWS * packetSize + start;
+                    if (terms.length == 0) {
+                        Arrays.fill(target, targetOffset, targetOffset + length, (byte) 0);
+                        continue;
+                    }
+                    System.arraycopy(blocks[terms[0] / ROWS], terms[0] % ROWS * packetSize + start,
+                            target, targetOffset, length);
+                    for (int t = 1; t < terms.length; t++) {
+                        gf.addRegion(blocks[terms[t] / ROWS], terms[t] % ROWS * packetSize + start,
+                                target, targetOffset, length);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of packet XORs of the bulk encoding
+     */
+    public int encodeXorCount() {
+        return encoding.xorCount();
+    }
+
+    /**
+     * @param erasedLocations The erased locations
+     * @return The number of packet XORs of the bulk decoding, reading the locations returned by
+     * {@link #locationsToReadForDecode(BitSet, int[])}
+     */
+    public int decodeXorCount(int[] erasedLocations) throws TooManyErasedLocations {
+        final BitSet erased = new BitSet();
+        for (int location : erasedLocations) {
+            erased.set(location);
+        }
+        final int[] locationsToRead = new int[stripeSize + PARITY_SIZE];
+        final int count = locationsToReadForDecode(erased, locationsToRead);
+        final long read = DecodePlanCache.mask(Arrays.copyOf(locationsToRead, count));
+        final int[] locationsNotToRead = DecodePlanCache.locations((1L << stripeSize + PARITY_SIZE) - 1 & ~read);
+        return reconstructions.get(pattern(erasedLocations, locationsNotToRead), reconstructionPlanner).xorCount();
+    }
+
+    @Override
+    public void encode(int[] message, int[] parity) {
+        assert (message.length == stripeSize && parity.length == PARITY_SIZE);
+        int rowParity = 0;
+        int diagonals = 0;
+        for (int i = 0; i < stripeSize; i++) {
+            rowParity ^= message[i];
+            diagonals ^= rotate(message[i], i);
+        }
+        diagonals ^= rotate(rowParity, ROWS);
+        parity[ROW_PARITY] = rowParity;
+        // The last diagonal is not stored
+        parity[DIAGONAL_PARITY] = diagonals & (1 << ROWS) - 1;
+    }
+
+    /**
+     * Move the cells of a column to the bits of their diagonals.
+     */
+    private static int rotate(int symbol, int column) {
+        return (symbol << column | symbol >>> P - column) & (1 << P) - 1;
+    }
+
+    @Override
+    public void updateParity(int position, int oldValue, int newValue, int[] parity) {
+        assert (parity.length == PARITY_SIZE);
+        final int delta = oldValue ^ newValue;
+        parity[ROW_PARITY] ^= delta;
+        parity[DIAGONAL_PARITY] ^= (rotate(delta, position) ^ rotate(delta, ROWS)) & (1 << ROWS) - 1;
+    }
+
+    /**
+     * Read k locations: the message and the row parity to repair one of them, the message to repair the diagonal
+     * parity, and all the other locations for two erasures.
+     */
+    @Override
+    public int locationsToReadForDecode(BitSet erased, int[] locationsToRead) throws TooManyErasedLocations {
+        final int erasedColumns = erased.cardinality() - (erased.get(DIAGONAL_PARITY) ? 1 : 0);
+        final boolean erasedMessage = erased.nextSetBit(PARITY_SIZE) >= 0;
+        if (erased.cardinality() > PARITY_SIZE) {
+            throw new TooManyErasedLocations("Locations " + erased);
+        }
+        int count = 0;
+        for (int location = 0; location < stripeSize + PARITY_SIZE; location++) {
+            if (erased.get(location) || location == DIAGONAL_PARITY && erasedColumns < PARITY_SIZE ||
+                    location == ROW_PARITY && !erasedMessage) {
+                continue;
+            }
+            locationsToRead[count++] = location;
+        }
+        return count;
+    }
+
+    @Override
+    public void decode(int[] data, int[] erasedLocations, int[] erasedValues) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        decode(data, erasedLocations, erasedValues, pattern(erasedLocations, null));
+    }
+
+    /**
+     * The locations not to read are solved along with the erased ones when needed, e.g. the row parity when the
+     * diagonal parity is repaired from the message.
+     */
+    @Override
+    public void decode(int[] data, int[] erasedLocations, int[] erasedValues, int[] locationsToRead,
+                       int[] locationsNotToRead) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        decode(data, erasedLocations, erasedValues, pattern(erasedLocations, locationsNotToRead));
+    }
+
+    private void decode(int[] data, int[] erasedLocations, int[] erasedValues, long pattern) {
+        final Scratch scratch = scratches.get();
+        final Reconstruction reconstruction = reconstruction(pattern, scratch);
+        if (!reconstruction.isDecodable()) {
+            return;
+        }
+        // The unknown locations are written to a copy of the data
+        final int[] symbols = scratch.symbols;
+        System.arraycopy(data, 0, symbols, 0, symbols.length);
+        reconstruction.execute(symbols);
+        for (int e = 0; e < erasedLocations.length; e++) {
+            erasedValues[e] = symbols[erasedLocations[e]];
+        }
+    }
+
+    /**
+     * A column of the bulk buffers is a byte offset within the packets, or one of the trailing symbols.
+     */
+    @Override
+    protected int bulkColumns(int length) {
+        return length / ROWS + length % ROWS / bytesPerSymbol();
+    }
+
+    @Override
+    protected void encodeBulkColumns(byte[][] inputs, byte[][] outputs, int from, int to) {
+        assert (stripeSize == inputs.length);
+        assert (PARITY_SIZE == outputs.length);
+        final Scratch scratch = scratches.get();
+        final byte[][] blocks = scratch.blocks;
+        System.arraycopy(outputs, 0, blocks, 0, PARITY_SIZE);
+        System.arraycopy(inputs, 0, blocks, PARITY_SIZE, stripeSize);
+        codeBulkColumns(encoding, blocks, outputs[0].length, from, to, scratch.symbols);
+    }
+
+    @Override
+    protected void decodeBulkColumns(byte[][] readBufs, byte[][] writeBufs, int[] erasedLocations,
+                                     int[] locationsToRead, int[] locationsNotToRead, int from, int to) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        final Scratch scratch = scratches.get();
+        final Reconstruction reconstruction = reconstruction(pattern(erasedLocations, locationsNotToRead), scratch);
+        if (!reconstruction.isDecodable()) {
+            return;
+        }
+        final byte[][] blocks = scratch.blocks;
+        System.arraycopy(readBufs, 0, blocks, 0, blocks.length);
+        for (int e = 0; e < erasedLocations.length; e++) {
+            blocks[erasedLocations[e]] = writeBufs[e];
+        }
+        // The locations solved but not erased, e.g. the row parity when the diagonal parity is repaired from the
+        // message, must not overwrite the read buffers. Each tile only uses the columns it solves of the spares.
+        final int length = writeBufs[0].length;
+        for (int location : reconstruction.locations) {
+            if (blocks[location] == readBufs[location]) {
+                blocks[location] = scratch.spare(location, length);
+            }
+        }
+        codeBulkColumns(reconstruction, blocks, length, from, to, scratch.symbols);
+    }
+
+    private void codeBulkColumns(Reconstruction reconstruction, byte[][] blocks, int length, int from, int to,
+                                 int[] symbols) {
+        final int packetSize = length / ROWS;
+        if (from < packetSize) {
+            reconstruction.execute(GF, blocks, packetSize, from, Math.min(to, packetSize));
+        }
+
+        final int bytesPerSymbol = bytesPerSymbol();
+        for (int column = Math.max(from, packetSize); column < to; column++) {
+            final int offset = ROWS * packetSize + (column - packetSize) * bytesPerSymbol;
+            for (int location = 0; location < blocks.length; location++) {
+                final byte[] block = blocks[location];
+                symbols[location] = block == null ? 0 : (block[offset] & 0xFF) << 8 | block[offset + 1] & 0xFF;
+            }
+            reconstruction.execute(symbols);
+            for (int location : reconstruction.locations) {
+                blocks[location][offset] = (byte) (symbols[location] >>> 8);
+                blocks[location][offset + 1] = (byte) symbols[location];
+            }
+        }
+    }
+
+    @Override
+    public int stripeSize() {
+        return stripeSize;
+    }
+
+    @Override
+    public int paritySize() {
+        return PARITY_SIZE;
+    }
+
+    @Override
+    public int symbolSize() {
+        return ROWS;
+    }
+}
@@ -22,7 +22,10 @@ import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 public class SimpleRegeneratingCode extends ErasureCode {
@@ -35,13 +38,25 @@ public class SimpleRegeneratingCode extends ErasureCode {
     private int[] generatingPolynomial;
     private int PRIMITIVE_ROOT = 2;
     private int[] primitivePower;
-    private GaloisField GF = GaloisField.getInstance();
-    private int[] errSignature;
-    private int[] dataBuff;
+    private final GaloisField GF;
     private int[][] groupsTable;
-    private final IntList locationsToReadZeroFailure;
+    // parityColumns[i][j]: coefficient of the message symbol i in the parity symbol j, SRC parities included
+    private final int[][] parityColumns;
+    // The generated encoder of this configuration, null if there is none
+    private final SpecializedEncoders.Encoder specializedEncoder;
+    private final DecodePlanCache<DecodePlan> decodePlans = new DecodePlanCache<>(DecodePlanCache.DEFAULT_CAPACITY);
+    private final Function<int[], DecodePlan> decodePlanner = this::computeDecodePlan;
 
     public SimpleRegeneratingCode(int stripeSize, int paritySize, int paritySizeSRC) {
+        this(stripeSize, paritySize, paritySizeSRC, GaloisField.getInstance());
+    }
+
+    /**
+     * @param GF The field of the symbols, {@link GaloisField#forSymbolSize(int)} with 16 bits allows stripes wider
+     *           than 255 locations
+     */
+    public SimpleRegeneratingCode(int stripeSize, int paritySize, int paritySizeSRC, GaloisField GF) {
+        this.GF = GF;
         this.paritySizeSRC = paritySizeSRC;
         this.stripeSize = stripeSize;
         this.paritySize = paritySize;
@@ -50,11 +65,6 @@ public class SimpleRegeneratingCode extends ErasureCode {
         assert (stripeSize + paritySizeRS < GF.getFieldSize());
         assert (paritySize >= paritySizeSRC);
 
-        locationsToReadZeroFailure = new IntArrayList(stripeSize);
-        for (int i = paritySize; i < paritySize + stripeSize; i++) {
-            locationsToReadZeroFailure.add(i);
-        }
-
         // The degree of a simple parity is the number of locations
         // combined into the single parity. The degree is a function
         // of the RS-stripe (stripe + RS parity) length.
@@ -73,8 +83,6 @@ public class SimpleRegeneratingCode extends ErasureCode {
                     (double) (stripeSize + paritySizeRS) / (double) (paritySizeSRC + 1));
         }
 
-        this.errSignature = new int[paritySizeRS];
-        this.dataBuff = new int[paritySizeRS + stripeSize];
 
         this.primitivePower = new int[stripeSize + paritySizeRS];
         // compute powers of the primitive root
@@ -104,6 +112,9 @@ public class SimpleRegeneratingCode extends ErasureCode {
             for (int loc : locationsInGroup)
                 groupsTable[i][k++] = loc;
         }
+        parityColumns = parityColumns();
+        specializedEncoder = SpecializedEncoders.find("SimpleRegenerating",
+                new int[]{stripeSize, paritySize, paritySizeSRC}, GF, parityColumns);
 
         LOG.info(" Initialized " + SimpleRegeneratingCode.class +
                 " stripeSize:" + stripeSize +
@@ -114,10 +125,12 @@ public class SimpleRegeneratingCode extends ErasureCode {
     @Override
     public void encode(int[] message, int[] parity) {
         assert (message.length == stripeSize && parity.length == paritySize);
-        // initialize data buffer
-        for (int i = 0; i < paritySizeRS; i++) {
-            dataBuff[i] = 0;
+        if (specializedEncoder != null) {
+            specializedEncoder.encode(message, parity);
+            return;
         }
+        // initialize data buffer, local so that tiles of a bulk encoding can run concurrently
+        final int[] dataBuff = new int[paritySizeRS + stripeSize];
 
         // put message in the data buffer
         for (int i = 0; i < stripeSize; i++) {
@@ -144,6 +157,76 @@ public class SimpleRegeneratingCode extends ErasureCode {
         }
     }
 
+    /**
+     * A message symbol changes its RS parities, and the SRC parities of the groups of the message symbol and of
+     * these RS parities: all of them are in its column.
+     */
+    @Override
+    public void updateParity(int position, int oldValue, int newValue, int[] parity) {
+        assert (parity.length == paritySize);
+        final int delta = GF.add(oldValue, newValue);
+        for (int j = 0; j < paritySize; j++) {
+            parity[j] ^= GF.multiply(parityColumns[position][j], delta);
+        }
+    }
+
+    /**
+     * Region version of encode(): the RS parities are multiply-accumulates of the message blocks, then each SRC
+     * parity is the XOR of the blocks of its group. The inputs are left untouched.
+     */
+    @Override
+    protected void encodeBulkColumns(byte[][] inputs, byte[][] outputs, int from, int to) {
+        assert (stripeSize == inputs.length);
+        assert (paritySize == outputs.length);
+        if (specializedEncoder != null) {
+            specializedEncoder.encodeBulk(inputs, outputs, from, to);
+            return;
+        }
+        for (int j = paritySizeSRC; j < paritySize; j++) {
+            Arrays.fill(outputs[j], from, to, (byte) 0);
+            for (int i = 0; i < stripeSize; i++) {
+                GF.multiplyAccumulateRegion(parityColumns[i][j], inputs[i], from, outputs[j], from, to - from);
+            }
+        }
+        for (int i = 0; i < paritySizeSRC; i++) {
+            Arrays.fill(outputs[i], from, to, (byte) 0);
+            for (int j = simpleParityDegree * i; j < simpleParityDegree * (i + 1); j++) {
+                final byte[] block = j < paritySizeRS ? outputs[paritySizeSRC + j] : inputs[j - paritySizeRS];
+                GF.addRegion(block, from, outputs[i], from, to - from);
+            }
+        }
+    }
+
+    /**
+     * Region version of decode(): erasures in distinct SRC groups are the XOR of the blocks of their group, other
+     * patterns apply their cached plan to whole regions.
+     */
+    @Override
+    protected void decodeBulkColumns(byte[][] readBufs, byte[][] writeBufs, int[] erasedLocations,
+                                     int[] locationsToRead, int[] locationsNotToRead, int from, int to) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        if (erasedLocations.length == 1 || !groupConflict(erasedLocations)) {
+            for (int i = 0; i < erasedLocations.length; i++) {
+                final int[] group = erasedLocations.length == 1 ? locationsToRead : groupsTable[erasedLocations[i]];
+                Arrays.fill(writeBufs[i], from, to, (byte) 0);
+                for (int location : group) {
+                    GF.addRegion(readBufs[location], from, writeBufs[i], from, to - from);
+                }
+            }
+            return;
+        }
+        final DecodePlan plan = decodePlan(erasedLocations);
+        if (plan.isDecodable() && DecodePlanCache.sameLocations(plan.sources, locationsToRead)) {
+            for (int i = 0; i < erasedLocations.length; i++) {
+                plan.decodeBulk(GF, readBufs, erasedLocations[i], writeBufs[i], from, to);
+            }
+            return;
+        }
+        super.decodeBulkColumns(readBufs, writeBufs, erasedLocations, locationsToRead, locationsNotToRead, from, to);
+    }
+
     /*
      * Perform Reed Solomon decoding.
      */
@@ -160,6 +243,7 @@ public class SimpleRegeneratingCode extends ErasureCode {
             data[erasedLocations[i]] = 0;
         }
 
+        final int[] errSignature = new int[erasedLocations.length];
         for (int i = 0; i < erasedLocations.length; i++) {
             errSignature[i] = primitivePower[erasedLocations[i]];
             erasedValues[i] = GF.substitute(data, primitivePower[i]);
@@ -178,9 +262,27 @@ public class SimpleRegeneratingCode extends ErasureCode {
         decodeReedSolomon(data, erasedLocations, erasedValues);
     }
 
+    /**
+     * Uses the cached plan of the erasure pattern when locationsToRead are the ones returned by
+     * locationsToReadForDecode().
+     */
     @Override
     public void decode(int[] data, int[] erasedLocations, int[] erasedValues,
                        int[] locationsToRead, int[] locationsNotToRead) {
+        if (erasedLocations.length > 0) {
+            final DecodePlan plan = decodePlan(erasedLocations);
+            if (plan.isDecodable() && DecodePlanCache.sameLocations(plan.sources, locationsToRead)) {
+                for (int i = 0; i < erasedLocations.length; i++) {
+                    erasedValues[i] = plan.decode(GF, data, erasedLocations[i]);
+                }
+                return;
+            }
+        }
+        decodeWithoutPlan(data, erasedLocations, erasedValues, locationsToRead, locationsNotToRead);
+    }
+
+    private void decodeWithoutPlan(int[] data, int[] erasedLocations, int[] erasedValues,
+                                   int[] locationsToRead, int[] locationsNotToRead) {
 
         assert (erasedLocations.length == erasedValues.length);
 
@@ -205,7 +307,7 @@ public class SimpleRegeneratingCode extends ErasureCode {
                 int[] singleErasedValue = new int[1];
                 singleErasedValue[0] = 0;
 
-                decode(data, singleErasedLocation, singleErasedValue,
+                decodeWithoutPlan(data, singleErasedLocation, singleErasedValue,
                         groupsTable[erasedLocations[i]], null);
 
                 erasedValues[i] = singleErasedValue[0];
@@ -286,7 +388,12 @@ public class SimpleRegeneratingCode extends ErasureCode {
 
     @Override
     public int symbolSize() {
-        return (int) Math.round(Math.log(GF.getFieldSize()) / Math.log(2));
+        return GF.getSymbolSize();
+    }
+
+    @Override
+    public DecodePlanCache<?> getDecodePlanCache() {
+        return decodePlans;
     }
 
     /**
@@ -296,21 +403,62 @@ public class SimpleRegeneratingCode extends ErasureCode {
      * data. Values in the range [ paritySize(), paritySize() + stripeSize() )
      * represent message data.
      *
-     * @param erasedLocations The erased locations.
-     * @return The locations to read.
+     * @param erased          The erased locations.
+     * @param locationsToRead (out) The locations to read, in increasing order.
+     * @return The number of locations to read.
      */
     @Override
-    public IntList locationsToReadForDecode(List<Integer> erasedLocations)
+    public int locationsToReadForDecode(BitSet erased, int[] locationsToRead) throws TooManyErasedLocations {
+        if (erased.isEmpty()) {
+            for (int i = 0; i < stripeSize; i++) {
+                locationsToRead[i] = paritySize + i;
+            }
+            return stripeSize;
+        }
+        final DecodePlan plan = decodePlans.get(erased, decodePlanner);
+        if (!plan.isDecodable()) {
+            throw new TooManyErasedLocations("Locations " + erased);
+        }
+        System.arraycopy(plan.sources, 0, locationsToRead, 0, plan.sources.length);
+        Arrays.sort(locationsToRead, 0, plan.sources.length);
+        return plan.sources.length;
+    }
+
+    /*
+     * Return the plan of an erasure pattern, reading the locations chosen by
+     * computeLocationsToRead(). Cached per erasure pattern.
+     */
+    private DecodePlan decodePlan(int[] erasedLocations) {
+        return decodePlans.get(erasedLocations, decodePlanner);
+    }
+
+    private DecodePlan computeDecodePlan(int[] erased) {
+        final IntList locationsToRead;
+        try {
+            locationsToRead = computeLocationsToRead(IntArrayList.wrap(erased));
+        } catch (TooManyErasedLocations e) {
+            return DecodePlan.undecodable();
+        }
+        final int[] sources = locationsToRead.toIntArray();
+        final int[] locationsNotToRead = new int[stripeSize + paritySize - sources.length];
+        int k = 0;
+        for (int loc = 0; loc < stripeSize + paritySize; loc++) {
+            if (!locationsToRead.contains(loc)) {
+                locationsNotToRead[k++] = loc;
+            }
+        }
+        return DecodePlan.fromLinearDecoder(stripeSize + paritySize, sources, erased,
+                (data, erasedValues) -> decodeWithoutPlan(data, erased, erasedValues, sources, locationsNotToRead));
+    }
+
+    private IntList computeLocationsToRead(List<Integer> erasedLocations)
             throws TooManyErasedLocations {
 
         //LOG.info("Erased locations: "+erasedLocations.toString());
 
         IntList locationsToRead;
 
-        if (erasedLocations.size() == 0) {
-            return locationsToReadZeroFailure;
-        }
-        else if (erasedLocations.size() == 1) {
+        if (erasedLocations.size() == 1) {
             // If only one location is erased, return its local (src) group
             //locationsToRead = computeSRCGroupLocations(erasedLocations.get(0));
             int loc = erasedLocations.get(0);
@@ -364,15 +512,19 @@ public class SimpleRegeneratingCode extends ErasureCode {
         // If we are are not able to fill up the locationsToRead list,
         // we did not find enough good locations. Throw TooManyErasedLocations.
         if (locationsToRead.size() != stripeSize()) {
-            String locationsStr = "";
-            for (Integer erasedLocation : erasedLocations) {
-                locationsStr += " " + erasedLocation;
-            }
-            throw new TooManyErasedLocations("Locations " + locationsStr);
+            throw tooManyErasedLocations(erasedLocations);
         }
         return locationsToRead;
     }
 
+    private static TooManyErasedLocations tooManyErasedLocations(List<Integer> erasedLocations) {
+        String locationsStr = "";
+        for (Integer erasedLocation : erasedLocations) {
+            locationsStr += " " + erasedLocation;
+        }
+        return new TooManyErasedLocations("Locations " + locationsStr);
+    }
+
     /*
      * Given a location loc, return a list with the other locations
      * belonging to the same SRC group as loc.
@@ -0,0 +1,89 @@
+// Generated by EncoderGenerator for SimpleRegeneratingCode(10, 6, 5), do not edit.
+// Regenerate it with ./gradlew generateEncoders.
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+final class SimpleRegeneratingEncoder10x6x5 implements SpecializedEncoders.Encoder {
+    private static final int[][] PARITY_COLUMNS = {
+            {0, 0, 0, 0, 0, 1},
+            {1, 1, 0, 0, 0, 1},
+            {1, 1, 0, 0, 0, 1},
+            {1, 0, 1, 0, 0, 1},
+            {1, 0, 1, 0, 0, 1},
+            {1, 0, 0, 1, 0, 1},
+            {1, 0, 0, 1, 0, 1},
+            {1, 0, 0, 0, 1, 1},
+            {1, 0, 0, 0, 1, 1},
+            {1, 0, 0, 0, 0, 1},
+    };
+    private static final GaloisField GF = GaloisField.getInstance();
+
+    @Override
+    public int[][] parityColumns() {
+        final int[][] columns = new int[PARITY_COLUMNS.length][];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = PARITY_COLUMNS[i].clone();
+        }
+        return columns;
+    }
+
+    @Override
+    public void encode(int[] message, int[] parity) {
+        final int x0 = message[0];
+        final int x1 = message[1];
+        final int x2 = message[2];
+        final int x3 = message[3];
+        final int x4 = message[4];
+        final int x5 = message[5];
+        final int x6 = message[6];
+        final int x7 = message[7];
+        final int x8 = message[8];
+        final int x9 = message[9];
+        parity[5] = (x0 ^ x1 ^ x2 ^ x3 ^ x4 ^ x5 ^ x6 ^ x7 ^ x8 ^ x9) & 0xFF;
+        parity[0] = (parity[5] ^ x0) & 0xFF;
+        parity[1] = (x1 ^ x2) & 0xFF;
+        parity[2] = (x3 ^ x4) & 0xFF;
+        parity[3] = (x5 ^ x6) & 0xFF;
+        parity[4] = (x7 ^ x8) & 0xFF;
+    }
+
+    @Override
+    public void encodeBulk(byte[][] inputs, byte[][] outputs, int from, int to) {
+        final byte[] in0 = inputs[0];
+        final byte[] in1 = inputs[1];
+        final byte[] in2 = inputs[2];
+        final byte[] in3 = inputs[3];
+        final byte[] in4 = inputs[4];
+        final byte[] in5 = inputs[5];
+        final byte[] in6 = inputs[6];
+        final byte[] in7 = inputs[7];
+        final byte[] in8 = inputs[8];
+        final byte[] in9 = inputs[9];
+        final int length = to - from;
+        final byte[] out0 = outputs[0];
+        final byte[] out1 = outputs[1];
+        final byte[] out2 = outputs[2];
+        final byte[] out3 = outputs[3];
+        final byte[] out4 = outputs[4];
+        final byte[] out5 = outputs[5];
+        System.arraycopy(in0, from, out5, from, length);
+        GF.addRegion(in1, from, out5, from, length);
+        GF.addRegion(in2, from, out5, from, length);
+        GF.addRegion(in3, from, out5, from, length);
+        GF.addRegion(in4, from, out5, from, length);
+        GF.addRegion(in5, from, out5, from, length);
+        GF.addRegion(in6, from, out5, from, length);
+        GF.addRegion(in7, from, out5, from, length);
+        GF.addRegion(in8, from, out5, from, length);
+        GF.addRegion(in9, from, out5, from, length);
+        System.arraycopy(out5, from, out0, from, length);
+        GF.addRegion(in0, from, out0, from, length);
+        System.arraycopy(in1, from, out1, from, length);
+        GF.addRegion(in2, from, out1, from, length);
+        System.arraycopy(in3, from, out2, from, length);
+        GF.addRegion(in4, from, out2, from, length);
+        System.arraycopy(in5, from, out3, from, length);
+        GF.addRegion(in6, from, out3, from, length);
+        System.arraycopy(in7, from, out4, from, length);
+        GF.addRegion(in8, from, out4, from, length);
+    }
+}
@@ -0,0 +1,78 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Lookup of the encoders generated by {@link EncoderGenerator} for fixed configurations of the codes.
+ * <br/>
+ * An encoder is found by its class name, e.g. ReedSolomonEncoder10x4 for ReedSolomonCode(10, 4), so that a code uses
+ * a specialization as soon as it is generated. It is only used if the coefficients it was generated with are those
+ * of the code. The system property {@link #PROPERTY} set to false disables the specializations.
+ */
+public final class SpecializedEncoders {
+    private static final Logger LOG = Logger.getLogger(SpecializedEncoders.class.getName());
+    public static final String PROPERTY = "erasuretester.specializedEncoders";
+
+    private SpecializedEncoders() {
+    }
+
+    /**
+     * An encoder with the coefficients of a configuration baked in. The encoders work on fields of at most 256
+     * elements, one byte per symbol.
+     */
+    interface Encoder {
+        /**
+         * @return The coefficients the encoder was generated with: [i][j] is the coefficient of the message symbol i
+         * in the parity symbol j
+         */
+        int[][] parityColumns();
+
+        void encode(int[] message, int[] parity);
+
+        /**
+         * Encode the columns [ from, to ) of the buffers. The inputs are left untouched.
+         */
+        void encodeBulk(byte[][] inputs, byte[][] outputs, int from, int to);
+    }
+
+    /**
+     * @return The name of the class of the encoder of a configuration, e.g. ReedSolomonEncoder10x4
+     */
+    static String className(String family, int... parameters) {
+        final StringBuilder name = new StringBuilder(family).append("Encoder");
+        for (int p = 0; p < parameters.length; p++) {
+            name.append(p == 0 ? "" : "x").append(parameters[p]);
+        }
+        return name.toString();
+    }
+
+    /**
+     * @param family        The name of the code, without the Code suffix
+     * @param parameters    The parameters of the code
+     * @param GF            The field of the code
+     * @param parityColumns The coefficients of the code
+     * @return The generated encoder of the configuration, or null if there is none
+     */
+    static Encoder find(String family, int[] parameters, GaloisField GF, int[][] parityColumns) {
+        if (GF != GaloisField.getInstance() || !Boolean.parseBoolean(System.getProperty(PROPERTY, "true"))) {
+            return null;
+        }
+        final String name = className(family, parameters);
+        final Encoder encoder;
+        try {
+            encoder = (Encoder) Class.forName(SpecializedEncoders.class.getPackage().getName() + "." + name)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+        if (!Arrays.deepEquals(encoder.parityColumns(), parityColumns)) {
+            LOG.warning(name + " was generated with other coefficients, regenerate it with EncoderGenerator");
+            return null;
+        }
+        LOG.info("Using the generated encoder " + name);
+        return encoder;
+    }
+}
@@ -18,6 +18,7 @@
 
 package ch.unine.vauchers.erasuretester.erasure.codes;
 
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 public class XORCode extends ErasureCode {
@@ -25,13 +26,13 @@ public class XORCode extends ErasureCode {
 
     private int stripeSize;
     private int paritySize;
-    private int[] dataBuff;
+    // XOR is the addition of GF(2^8), the region kernels are shared
+    private final GaloisField GF = GaloisField.getInstance();
 
     public XORCode(int stripeSize, int paritySize) {
         assert (paritySize == 1);
         this.stripeSize = stripeSize;
         this.paritySize = paritySize;
-        this.dataBuff = new int[paritySize + stripeSize];
 
         LOG.info("Initialized " + XORCode.class +
                 " stripeSize:" + stripeSize +
@@ -48,6 +49,12 @@ public class XORCode extends ErasureCode {
         }
     }
 
+    @Override
+    public void updateParity(int position, int oldValue, int newValue, int[] parity) {
+        assert (parity.length == 1);
+        parity[0] ^= oldValue ^ newValue;
+    }
+
     @Override
     public void decode(int[] data, int[] erasedLocation, int[] erasedValue) {
         if (erasedLocation.length != 1) {
@@ -86,48 +93,101 @@ public class XORCode extends ErasureCode {
         return 8;
     }
 
+    /**
+     * Unlike the symbol-by-symbol version, each input is XORed into the parity as a whole region,
+     * which the JIT vectorizes.
+     */
     @Override
-    public void encodeBulk(byte[][] inputs, byte[][] outputs) {
+    protected void encodeBulkColumns(byte[][] inputs, byte[][] outputs, int from, int to) {
         byte[] output = outputs[0];
-        int bufSize = output.length;
         // Get the first buffer's data.
-        for (int j = 0; j < bufSize; j++) {
-            output[j] = inputs[0][j];
-        }
+        System.arraycopy(inputs[0], from, output, from, to - from);
         // XOR with everything else.
         for (int i = 1; i < inputs.length; i++) {
-            for (int j = 0; j < bufSize; j++) {
-                output[j] ^= inputs[i][j];
-            }
+            GF.addRegion(inputs[i], from, output, from, to - from);
         }
     }
 
+    /**
+     * A "bulk" version of the encode working on heap or direct buffers. The bytes between the position and the
+     * limit of each input are read, and the parity is written starting at the position of the output. Direct
+     * buffers are processed a long-word at a time. The positions of the buffers are left untouched.
+     */
+    public void encodeBulk(ByteBuffer[] inputs, ByteBuffer[] outputs) {
+        assert (stripeSize == inputs.length);
+        assert (paritySize == outputs.length);
+        final ByteBuffer output = outputs[0];
+        output.duplicate().put(inputs[0].duplicate());
+        for (int i = 1; i < inputs.length; i++) {
+            GF.addRegion(inputs[i], output);
+        }
+    }
+
+    /**
+     * A "bulk" version of the decode. The readBufs at the erased location
+     * are not read and may be null.
+     */
     public void decodeBulk(
             byte[][] readBufs, byte[][] writeBufs, int[] erasedLocations) {
+        if (erasedLocations.length == 0) {
+            return;
+        }
+        decodeBulkColumns(readBufs, writeBufs, erasedLocations, 0, writeBufs[0].length);
+    }
+
+    private void decodeBulkColumns(byte[][] readBufs, byte[][] writeBufs, int[] erasedLocations, int from, int to) {
         assert (erasedLocations.length == writeBufs.length);
         assert (erasedLocations.length <= 1);
+        if (erasedLocations.length == 0) {
+            return;
+        }
         byte[] output = writeBufs[0];
         int erasedIdx = erasedLocations[0];
-        // Set the output to zeros.
-        for (int j = 0; j < output.length; j++) {
-            output[j] = 0;
+        boolean first = true;
+        // Process the inputs, skipping the erased location.
+        for (int i = 0; i < readBufs.length; i++) {
+            if (i == erasedIdx) {
+                continue;
+            }
+            if (first) {
+                System.arraycopy(readBufs[i], from, output, from, to - from);
+                first = false;
+            } else {
+                GF.addRegion(readBufs[i], from, output, from, to - from);
+            }
+        }
+    }
+
+    /**
+     * A "bulk" version of the decode working on heap or direct buffers, with the same conventions as
+     * {@link #encodeBulk(ByteBuffer[], ByteBuffer[])}. The readBufs at the erased location are not read and may be
+     * null.
+     */
+    public void decodeBulk(ByteBuffer[] readBufs, ByteBuffer[] writeBufs, int[] erasedLocations) {
+        assert (erasedLocations.length == writeBufs.length);
+        assert (erasedLocations.length <= 1);
+        if (erasedLocations.length == 0) {
+            return;
         }
-        // Process the inputs.
+        final ByteBuffer output = writeBufs[0];
+        final int erasedIdx = erasedLocations[0];
+        boolean first = true;
         for (int i = 0; i < readBufs.length; i++) {
-            // Skip the erased location.
             if (i == erasedIdx) {
                 continue;
             }
-            byte[] input = readBufs[i];
-            for (int j = 0; j < input.length; j++) {
-                output[j] ^= input[j];
+            if (first) {
+                output.duplicate().put(readBufs[i].duplicate());
+                first = false;
+            } else {
+                GF.addRegion(readBufs[i], output);
             }
         }
     }
 
     @Override
-    public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
-                           int[] erasedLocations, int[] locationsToRead, int[] locationsNotToRead) {
-        decodeBulk(readBufs, writeBufs, erasedLocations);
+    protected void decodeBulkColumns(byte[][] readBufs, byte[][] writeBufs, int[] erasedLocations,
+                                     int[] locationsToRead, int[] locationsNotToRead, int from, int to) {
+        decodeBulkColumns(readBufs, writeBufs, erasedLocations, from, to);
     }
 }
@@ -0,0 +1,171 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Sequence of XORs computing the product of a GF(2) bit matrix with packets of data, where the sums shared by
+ * several rows of the matrix are computed once.
+ * <br/>
+ * The packets of a list of blocks are numbered in order: packet p is the region
+ * [ (p % w) * packetSize, (p % w + 1) * packetSize ) of block p / w, for w packets per block.
+ * <br/>
+ * The shared sums are found with Paar's greedy heuristic: as long as a pair of operands appears in at least two
+ * rows, the most frequent pair is computed into an intermediate packet, which replaces the pair in those rows.
+ */
+final class XorSchedule {
+    // Above this number of operands, counting the pairs costs more than the XORs it saves
+    private static final int MAX_OPERANDS = 1024;
+    // Packets are processed in slices of this size, so that the intermediate packets stay in the cache
+    private static final int SLICE_SIZE = 1024;
+    // The operand slices of the executions of a thread, grown to the largest schedule executed
+    private static final ThreadLocal<byte[][]> operandSlices = ThreadLocal.withInitial(() -> new byte[0][]);
+
+    private final int numInputs;
+    // intermediates[t]: the two operands summed into the intermediate packet t
+    private final int[][] intermediates;
+    // outputs[o]: the operands summed into the output packet o, inputs below numInputs then intermediates
+    private final int[][] outputs;
+
+    private XorSchedule(int numInputs, int[][] intermediates, int[][] outputs) {
+        this.numInputs = numInputs;
+        this.intermediates = intermediates;
+        this.outputs = outputs;
+    }
+
+    /**
+     * @param matrix    matrix[o][i]: whether the input packet i is part of the output packet o
+     * @param numInputs The number of input packets
+     */
+    static XorSchedule fromBitMatrix(boolean[][] matrix, int numInputs) {
+        final List<BitSet> rows = new ArrayList<>(matrix.length);
+        for (boolean[] bits : matrix) {
+            final BitSet row = new BitSet(numInputs);
+            for (int i = 0; i < numInputs; i++) {
+                if (bits[i]) {
+                    row.set(i);
+                }
+            }
+            rows.add(row);
+        }
+
+        final List<int[]> intermediates = new ArrayList<>();
+        int numOperands = numInputs;
+        int[] pairCounts = new int[0];
+        while (numOperands < MAX_OPERANDS) {
+            if (pairCounts.length < numOperands * numOperands) {
+                pairCounts = new int[2 * numOperands * 2 * numOperands];
+            }
+            // Count the rows containing each pair of operands, and keep the most frequent one
+            int bestCount = 1;
+            int bestA = -1;
+            int bestB = -1;
+            for (BitSet row : rows) {
+                for (int a = row.nextSetBit(0); a >= 0; a = row.nextSetBit(a + 1)) {
+                    for (int b = row.nextSetBit(a + 1); b >= 0; b = row.nextSetBit(b + 1)) {
+                        final int count = ++pairCounts[a * numOperands + b];
+                        if (count > bestCount) {
+                            bestCount = count;
+                            bestA = a;
+                            bestB = b;
+                        }
+                    }
+                }
+            }
+            Arrays.fill(pairCounts, 0, numOperands * numOperands, 0);
+            if (bestA < 0) {
+                break;
+            }
+
+            final int intermediate = numOperands++;
+            intermediates.add(new int[]{bestA, bestB});
+            for (BitSet row : rows) {
+                if (row.get(bestA) && row.get(bestB)) {
+                    row.clear(bestA);
+                    row.clear(bestB);
+                    row.set(intermediate);
+                }
+            }
+        }
+
+        final int[][] outputs = new int[rows.size()][];
+        for (int o = 0; o < outputs.length; o++) {
+            outputs[o] = rows.get(o).stream().toArray();
+        }
+        return new XorSchedule(numInputs, intermediates.toArray(new int[0][]), outputs);
+    }
+
+    /**
+     * @return The number of packet XORs of one execution
+     */
+    int xorCount() {
+        int count = intermediates.length;
+        for (int[] operands : outputs) {
+            count += Math.max(operands.length - 1, 0);
+        }
+        return count;
+    }
+
+    /**
+     * Compute the output packets.
+     *
+     * @param gf           The field providing the XOR kernel
+     * @param inputBlocks  The blocks holding the input packets
+     * @param outputBlocks The blocks receiving the output packets
+     * @param w            The number of packets per block
+     * @param packetSize   The number of bytes of a packet
+     */
+    void execute(GaloisField gf, byte[][] inputBlocks, byte[][] outputBlocks, int w, int packetSize) {
+        execute(gf, inputBlocks, outputBlocks, w, packetSize, 0, packetSize);
+    }
+
+    /**
+     * Compute the bytes [ from, to ) of every output packet, which only read the same bytes of the input packets.
+     */
+    void execute(GaloisField gf, byte[][] inputBlocks, byte[][] outputBlocks, int w, int packetSize,
+                 int from, int to) {
+        // All the XORs are made between slices at the same offset: with different source and destination offsets,
+        // the JIT cannot rule out an overlap and falls back to a byte-wise loop
+        final byte[][] operands = operandSlices(numInputs + intermediates.length + 1);
+        final byte[] output = operands[numInputs + intermediates.length];
+        for (int start = from; start < to; start += SLICE_SIZE) {
+            final int length = Math.min(SLICE_SIZE, to - start);
+            for (int i = 0; i < numInputs; i++) {
+                System.arraycopy(inputBlocks[i / w], (i % w) * packetSize + start, operands[i], 0, length);
+            }
+            for (int t = 0; t < intermediates.length; t++) {
+                sum(gf, intermediates[t], operands, operands[numInputs + t], length);
+            }
+            for (int o = 0; o < outputs.length; o++) {
+                sum(gf, outputs[o], operands, output, length);
+                System.arraycopy(output, 0, outputBlocks[o / w], (o % w) * packetSize + start, length);
+            }
+        }
+    }
+
+    private static byte[][] operandSlices(int count) {
+        byte[][] slices = operandSlices.get();
+        if (slices.length < count) {
+            final int allocated = slices.length;
+            slices = Arrays.copyOf(slices, count);
+            for (int i = allocated; i < count; i++) {
+                slices[i] = new byte[SLICE_SIZE];
+            }
+            operandSlices.set(slices);
+        }
+        return slices;
+    }
+
+    private static void sum(GaloisField gf, int[] terms, byte[][] operands, byte[] dst, int length) {
+        if (terms.length == 0) {
+            Arrays.fill(dst, 0, length, (byte) 0);
+            return;
+        }
+        System.arraycopy(operands[terms[0]], 0, dst, 0, length);
+        for (int k = 1; k < terms.length; k++) {
+            gf.addRegion(operands[terms[k]], 0, dst, 0, length);
+        }
+    }
+}
@@ -137,6 +137,11 @@ public class FuseMemoryFrontend extends FuseFilesystemAdapterAssumeImplemented {
             encdec.writeFile(this.getFilepath(), (int) bufSize, (int) writeOffset, buffer);
             return (int) bufSize;
         }
+
+        private void flush() {
+            // Encodes the writes buffered in write-back mode
+            encdec.flushWrites(getFilepath());
+        }
     }
 
     private abstract class MemoryPath {
@@ -205,6 +210,27 @@ public class FuseMemoryFrontend extends FuseFilesystemAdapterAssumeImplemented {
         return -ErrorCodes.ENOENT();
     }
 
+    @Override
+    public int flush(final String path, final FileInfoWrapper info) {
+        return flushFile(path);
+    }
+
+    private int flushFile(final String path) {
+        final MemoryPath p = getPath(path);
+        if (p == null) {
+            return -ErrorCodes.ENOENT();
+        }
+        if (p instanceof MemoryFile) {
+            ((MemoryFile) p).flush();
+        }
+        return 0;
+    }
+
+    @Override
+    public int fsync(final String path, final int datasync, final FileInfoWrapper info) {
+        return flushFile(path);
+    }
+
     @Override
     public int getattr(final String path, final StatWrapper stat) {
         final MemoryPath p = getPath(path);
@@ -284,6 +310,11 @@ public class FuseMemoryFrontend extends FuseFilesystemAdapterAssumeImplemented {
         return 0;
     }
 
+    @Override
+    public int release(final String path, final FileInfoWrapper info) {
+        return flushFile(path);
+    }
+
     @Override
     public int rename(final String path, final String newName) {
         final MemoryPath p = getPath(path);
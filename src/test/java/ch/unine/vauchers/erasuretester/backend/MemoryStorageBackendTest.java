@@ -1,8 +1,52 @@
 package ch.unine.vauchers.erasuretester.backend;
 
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
 public class MemoryStorageBackendTest extends StorageBackendTest<MemoryStorageBackend> {
     @Override
     protected MemoryStorageBackend createInstance() {
         return new MemoryStorageBackend();
     }
+
+    @Test
+    public void testConcurrentStores() throws InterruptedException {
+        // Each store waits for the other one to start: both only get through if neither holds the lock of the backend
+        final CountDownLatch started = new CountDownLatch(2);
+        final AtomicInteger overlapped = new AtomicInteger();
+        final MemoryStorageBackend backend = new MemoryStorageBackend() {
+            @Override
+            protected void storeAggregatedBlocks(int key, String blockData) {
+                started.countDown();
+                try {
+                    if (started.await(10, TimeUnit.SECONDS)) {
+                        overlapped.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.storeAggregatedBlocks(key, blockData);
+            }
+        };
+        backend.defineTotalSize(2, 1);
+
+        final int[] keys = new int[2];
+        final Thread chunkWriter = new Thread(() -> keys[0] = backend.storeChunk(new byte[]{1, 2, 3}, 0));
+        // Full at once with a buffer size of 1, so stored by storeBlock()
+        final Thread blockWriter = new Thread(() -> keys[1] = backend.storeBlock(42, 1));
+        chunkWriter.start();
+        blockWriter.start();
+        chunkWriter.join();
+        blockWriter.join();
+
+        assertEquals(2, overlapped.get());
+        assertArrayEquals(new byte[]{1, 2, 3}, backend.retrieveChunk(keys[0]).get());
+        assertEquals(42, (int) backend.retrieveBlock(keys[1]).get());
+    }
 }
@@ -15,8 +15,10 @@ import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.IntStream;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public abstract class StorageBackendTest<T extends StorageBackend> {
     private T sut;
@@ -40,6 +42,60 @@ public abstract class StorageBackendTest<T extends StorageBackend> {
         testReadWrite(sut::storeBlock, (key) -> sut.retrieveBlock(key).get());
     }
 
+    @Test
+    public void testReadWriteToArray() {
+        final int[] blocks = new int[3];
+        testReadWrite(sut::storeBlock, (key) -> {
+            assertTrue(sut.retrieveBlock(key, blocks, 1));
+            return blocks[1];
+        });
+        blocks[1] = 7;
+        assertFalse(sut.retrieveBlock(439754395, blocks, 1));
+        assertEquals(7, blocks[1]);
+    }
+
+    @Test
+    public void testChunks() {
+        sut.defineTotalSize(2, 1);
+        final List<byte[]> chunks = new ArrayList<>();
+        final List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final byte[] chunk = new byte[random.nextInt(5000)];
+            random.nextBytes(chunk);
+            chunks.add(chunk);
+            keys.add(sut.storeChunk(chunk.clone(), i % 2));
+            assertEquals(i % 2, sut.computePositionWithBlockKey(keys.get(i)));
+        }
+        // Blocks and chunks share the keys of a position
+        final int blockKey = sut.storeBlock(42, 1);
+        sut.flushAll();
+
+        sut.clearReadCache();
+        for (int i = 0; i < chunks.size(); i++) {
+            assertArrayEquals(chunks.get(i), sut.retrieveChunk(keys.get(i)).get());
+        }
+        assertEquals(42, (int) sut.retrieveBlock(blockKey).get());
+        assertFalse(sut.retrieveChunk(439754395).isPresent());
+    }
+
+    @Test
+    public void testReadUnflushed() {
+        final int[] blocks = new int[1];
+        final int first = sut.storeBlock(42, 0);
+        // Not in the key-value store yet, and not cached as unavailable
+        assertTrue(sut.isBlockAvailable(first));
+        assertTrue(sut.retrieveBlock(first, blocks, 0));
+        assertEquals(42, blocks[0]);
+        final int second = sut.storeBlock(43, 0);
+        assertEquals(43, (int) sut.retrieveBlock(second).get());
+
+        sut.flushAll();
+        sut.clearReadCache();
+        assertTrue(sut.isBlockAvailable(first));
+        assertEquals(42, (int) sut.retrieveBlock(first).get());
+        assertEquals(43, (int) sut.retrieveBlock(second).get());
+    }
+
     @Test
     public void testAbsentKey() throws ExecutionException, InterruptedException {
         assertFalse(sut.isBlockAvailable(439754395));
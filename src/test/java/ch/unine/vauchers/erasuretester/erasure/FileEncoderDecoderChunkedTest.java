@@ -0,0 +1,105 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.backend.MemoryStorageBackend;
+import ch.unine.vauchers.erasuretester.erasure.codes.GaloisField;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReedSolomonCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.TooManyErasedLocations;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FileEncoderDecoderChunkedTest extends FileEncoderDecoderTest {
+    private static final int BLOCK_SIZE = 4096;
+
+    private CountingStorageBackend storageBackend;
+    private FileEncoderDecoder sut;
+
+    @Override
+    protected Iterable<FileEncoderDecoder> createEncoderDecoder() {
+        storageBackend = new CountingStorageBackend();
+        sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), storageBackend, BLOCK_SIZE);
+        return Collections.singleton(sut);
+    }
+
+    @Test
+    public void testOneKeyPerChunk() throws TooManyErasedLocations {
+        // 128 KB in stripes of 10 chunks of 4 KB: 4 stripes of 14 chunks
+        final byte[] contents = new byte[128 * 1024];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        sut.writeFile(path, contents.length, 0, ByteBuffer.wrap(contents));
+
+        assertEquals(4 * 14, storageBackend.getFileMetadata(path).get().getBlockKeys().get().size());
+        assertEquals(4 * 14, storageBackend.storedEntries());
+
+        storageBackend.clearReadCache();
+        storageBackend.retrievals = 0;
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        sut.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+        // The data chunks of the 4 stripes, one key each
+        assertEquals(4 * 10, storageBackend.retrievals);
+    }
+
+    @Test
+    public void testPartialOverwrite() throws TooManyErasedLocations {
+        final byte[] contents = new byte[100000];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        sut.writeFile(path, contents.length, 0, ByteBuffer.wrap(contents));
+
+        // 2 bytes in the second chunk of a stripe: its 10 data chunks are read, and the stripe is encoded again
+        final byte[] overwrite = {42, 43};
+        System.arraycopy(overwrite, 0, contents, 5000, overwrite.length);
+        storageBackend.clearReadCache();
+        storageBackend.retrievals = 0;
+        sut.writeFile(path, overwrite.length, 5000, ByteBuffer.wrap(overwrite));
+        assertEquals(10, storageBackend.retrievals);
+
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        sut.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+    }
+
+    @Test
+    public void testComputeDataSize() {
+        assertEquals(0, sut.nextBoundary(0));
+        assertEquals(14, sut.nextBoundary(1));
+        assertEquals(14, sut.nextBoundary(10 * BLOCK_SIZE));
+        assertEquals(28, sut.nextBoundary(10 * BLOCK_SIZE + 1));
+        assertEquals(14, sut.previousBoundary(10 * BLOCK_SIZE));
+        assertEquals(1, sut.lowerBytesToDrop(10 * BLOCK_SIZE + 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBlockSizeNotMultipleOfSymbol() {
+        new FileEncoderDecoder(new ReedSolomonCode(10, 4, GaloisField.forSymbolSize(16)), new MemoryStorageBackend(), 4095);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeBlockSize() {
+        new FileEncoderDecoder(new ReedSolomonCode(10, 4), new MemoryStorageBackend(), -1);
+    }
+
+    /**
+     * Counts the chunks retrieved from the key-value store.
+     */
+    private static class CountingStorageBackend extends MemoryStorageBackend {
+        int retrievals;
+
+        @Override
+        public Optional<String> retrieveAggregatedBlocks(int key) {
+            retrievals++;
+            return super.retrieveAggregatedBlocks(key);
+        }
+
+        int storedEntries() {
+            return blocksStorage.size();
+        }
+    }
+}
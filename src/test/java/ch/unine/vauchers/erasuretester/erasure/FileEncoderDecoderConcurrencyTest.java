@@ -0,0 +1,145 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.backend.MemoryStorageBackend;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReedSolomonCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.SimpleRegeneratingCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Reads and writes of a shared FileEncoderDecoder from several threads.
+ */
+public class FileEncoderDecoderConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int FILES = 32;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testDifferentFiles() throws Exception {
+        checkDifferentFiles(new FileEncoderDecoder(new ReedSolomonCode(10, 4), new MemoryStorageBackend()));
+    }
+
+    @Test
+    public void testDifferentFilesChunked() throws Exception {
+        checkDifferentFiles(new FileEncoderDecoder(new ReedSolomonCode(10, 4), new MemoryStorageBackend(), 64));
+    }
+
+    @Test
+    public void testDifferentFilesSimpleRegenerating() throws Exception {
+        checkDifferentFiles(new SimpleRegeneratingFileEncoderDecoder(new SimpleRegeneratingCode(10, 6, 5),
+                new MemoryStorageBackend()));
+    }
+
+    @Test
+    public void testSameFile() throws Exception {
+        final FileEncoderDecoder sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), new MemoryStorageBackend());
+        final byte[] contents = FileEncoderDecoderTestUtils.createRandomBigByteBuffer();
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        sut.writeFile(path, contents.length, 0, ByteBuffer.wrap(contents));
+
+        // Each thread reads its own range of the file, several times
+        final int rangeSize = contents.length / THREADS;
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t * rangeSize;
+            tasks.add(() -> {
+                for (int i = 0; i < 5; i++) {
+                    final ByteBuffer out = ByteBuffer.allocate(rangeSize);
+                    sut.readFile(path, rangeSize, offset, out);
+                    assertArrayEquals(Arrays.copyOfRange(contents, offset, offset + rangeSize), out.array());
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    @Test
+    public void testSameFileWrites() throws Exception {
+        checkSameFileWrites(new FileEncoderDecoder(new ReedSolomonCode(10, 4), new MemoryStorageBackend()));
+    }
+
+    @Test
+    public void testSameFileWritesWriteBack() throws Exception {
+        final FileEncoderDecoder sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), new MemoryStorageBackend(), 64);
+        sut.setWriteBack(true);
+        checkSameFileWrites(sut);
+    }
+
+    private void checkSameFileWrites(FileEncoderDecoder sut) throws Exception {
+        final byte[] contents = FileEncoderDecoderTestUtils.createRandomBigByteBuffer();
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+
+        // Each thread writes its own range of the file, the ranges sharing the stripes at their boundaries
+        final int rangeSize = contents.length / THREADS;
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t * rangeSize;
+            tasks.add(() -> {
+                for (int b = offset; b < offset + rangeSize; b += 1001) {
+                    final int size = Math.min(1001, offset + rangeSize - b);
+                    sut.writeFile(path, size, b, ByteBuffer.wrap(contents, b, size).slice());
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks);
+
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        sut.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+    }
+
+    private void checkDifferentFiles(FileEncoderDecoder sut) throws Exception {
+        final List<byte[]> contents = new ArrayList<>();
+        final List<String> paths = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            contents.add(FileEncoderDecoderTestUtils.createRandomBigByteBuffer());
+            paths.add(FileEncoderDecoderTestUtils.generateRandomPath());
+        }
+
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            final byte[] fileContents = contents.get(i);
+            final String path = paths.get(i);
+            tasks.add(() -> {
+                sut.writeFile(path, fileContents.length, 0, ByteBuffer.wrap(fileContents));
+                final ByteBuffer out = ByteBuffer.allocate(fileContents.length);
+                sut.readFile(path, fileContents.length, 0, out);
+                assertArrayEquals(fileContents, out.array());
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    private void invokeAll(List<Callable<Void>> tasks) throws Exception {
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            // Rethrows the failures of the tasks
+            future.get();
+        }
+    }
+}
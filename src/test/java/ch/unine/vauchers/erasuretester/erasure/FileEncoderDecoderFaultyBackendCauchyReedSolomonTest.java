@@ -0,0 +1,17 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.erasure.codes.ErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.CauchyReedSolomonCode;
+
+public class FileEncoderDecoderFaultyBackendCauchyReedSolomonTest extends FileEncoderDecoderFaultyBackendTest {
+
+    @Override
+    protected ErasureCode getErasureCode() {
+        return new CauchyReedSolomonCode(10, 4);
+    }
+
+    @Override
+    protected int getMaxFaults() {
+        return 4;
+    }
+}
@@ -0,0 +1,22 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.erasure.codes.ErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReplicationCode;
+
+public class FileEncoderDecoderFaultyBackendChunkedReplicationTest extends FileEncoderDecoderFaultyBackendTest {
+
+    @Override
+    protected ErasureCode getErasureCode() {
+        return new ReplicationCode(3);
+    }
+
+    @Override
+    protected int getMaxFaults() {
+        return 2;
+    }
+
+    @Override
+    protected int getBlockSize() {
+        return 100;
+    }
+}
@@ -0,0 +1,17 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.erasure.codes.ErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.FountainCode;
+
+public class FileEncoderDecoderFaultyBackendFountainTest extends FileEncoderDecoderFaultyBackendTest {
+
+    @Override
+    protected ErasureCode getErasureCode() {
+        return new FountainCode(10, 4);
+    }
+
+    @Override
+    protected int getMaxFaults() {
+        return 1;
+    }
+}
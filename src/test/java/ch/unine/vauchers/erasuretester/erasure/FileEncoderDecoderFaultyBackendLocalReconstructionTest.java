@@ -0,0 +1,17 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.erasure.codes.ErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.LocalReconstructionCode;
+
+public class FileEncoderDecoderFaultyBackendLocalReconstructionTest extends FileEncoderDecoderFaultyBackendTest {
+
+    @Override
+    protected ErasureCode getErasureCode() {
+        return new LocalReconstructionCode(12, 2, 2);
+    }
+
+    @Override
+    protected int getMaxFaults() {
+        return 3;
+    }
+}
@@ -0,0 +1,17 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.erasure.codes.ErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.MatrixReedSolomonCode;
+
+public class FileEncoderDecoderFaultyBackendMatrixReedSolomonTest extends FileEncoderDecoderFaultyBackendTest {
+
+    @Override
+    protected ErasureCode getErasureCode() {
+        return new MatrixReedSolomonCode(10, 4);
+    }
+
+    @Override
+    protected int getMaxFaults() {
+        return 4;
+    }
+}
@@ -0,0 +1,17 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.erasure.codes.ErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.PiggybackedReedSolomonCode;
+
+public class FileEncoderDecoderFaultyBackendPiggybackedReedSolomonTest extends FileEncoderDecoderFaultyBackendTest {
+
+    @Override
+    protected ErasureCode getErasureCode() {
+        return new PiggybackedReedSolomonCode(5, 3);
+    }
+
+    @Override
+    protected int getMaxFaults() {
+        return 3;
+    }
+}
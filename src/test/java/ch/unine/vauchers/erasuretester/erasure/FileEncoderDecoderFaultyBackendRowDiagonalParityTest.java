@@ -0,0 +1,17 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.erasure.codes.ErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.RowDiagonalParityCode;
+
+public class FileEncoderDecoderFaultyBackendRowDiagonalParityTest extends FileEncoderDecoderFaultyBackendTest {
+
+    @Override
+    protected ErasureCode getErasureCode() {
+        return new RowDiagonalParityCode(10);
+    }
+
+    @Override
+    protected int getMaxFaults() {
+        return 2;
+    }
+}
@@ -22,9 +22,9 @@ public abstract class FileEncoderDecoderFaultyBackendTest extends FileEncoderDec
                 .flatMap(this::instantiateFaultyBackends)
                 .map(faultyStorageBackend -> {
                     if (erasureCode instanceof SimpleRegeneratingCode) {
-                        return new SimpleRegeneratingFileEncoderDecoder((SimpleRegeneratingCode) erasureCode, faultyStorageBackend);
+                        return new SimpleRegeneratingFileEncoderDecoder((SimpleRegeneratingCode) erasureCode, faultyStorageBackend, getBlockSize());
                     } else {
-                        return new FileEncoderDecoder(erasureCode, faultyStorageBackend);
+                        return new FileEncoderDecoder(erasureCode, faultyStorageBackend, getBlockSize());
                     }
                 })
                 .collect(Collectors.toList());
@@ -34,6 +34,13 @@ public abstract class FileEncoderDecoderFaultyBackendTest extends FileEncoderDec
 
     protected abstract int getMaxFaults();
 
+    /**
+     * @return The number of bytes held by each block, 0 for one symbol per block
+     */
+    protected int getBlockSize() {
+        return 0;
+    }
+
     private Stream<FaultyStorageBackend> instantiateFaultyBackends(int numberOfFailures) {
         return IntStream.range(0, 10)
                 .boxed()
@@ -63,12 +70,13 @@ public abstract class FileEncoderDecoderFaultyBackendTest extends FileEncoderDec
         }
 
         @Override
-        public Optional<Integer> retrieveBlock(int key) {
-            if (isKeyAvailable(key)) {
-                return super.retrieveBlock(key);
-            } else {
-                return Optional.empty();
-            }
+        public boolean retrieveBlock(int key, int[] blocks, int index) {
+            return isKeyAvailable(key) && super.retrieveBlock(key, blocks, index);
+        }
+
+        @Override
+        public boolean retrieveChunk(int key, byte[] chunk) {
+            return isKeyAvailable(key) && super.retrieveChunk(key, chunk);
         }
 
         @Override
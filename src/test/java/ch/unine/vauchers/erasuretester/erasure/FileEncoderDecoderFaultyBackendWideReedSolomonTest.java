@@ -0,0 +1,18 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.erasure.codes.ErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.GaloisField;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReedSolomonCode;
+
+public class FileEncoderDecoderFaultyBackendWideReedSolomonTest extends FileEncoderDecoderFaultyBackendTest {
+
+    @Override
+    protected ErasureCode getErasureCode() {
+        return new ReedSolomonCode(10, 4, GaloisField.forSymbolSize(16));
+    }
+
+    @Override
+    protected int getMaxFaults() {
+        return 4;
+    }
+}
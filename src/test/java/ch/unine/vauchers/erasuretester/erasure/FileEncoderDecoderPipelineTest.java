@@ -0,0 +1,157 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.backend.MemoryStorageBackend;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReedSolomonCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReplicationCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.SimpleRegeneratingCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.TooManyErasedLocations;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads and writes in pipelined mode, the stripes being coded by the tasks of a pool.
+ */
+public class FileEncoderDecoderPipelineTest extends FileEncoderDecoderTest {
+    private static final int DEPTH = 4;
+
+    private ExecutorService pool;
+
+    @After
+    public void shutdownPool() {
+        pool.shutdownNow();
+    }
+
+    @Override
+    protected Iterable<FileEncoderDecoder> createEncoderDecoder() {
+        pool = Executors.newFixedThreadPool(DEPTH);
+        final List<FileEncoderDecoder> suts = new ArrayList<>();
+        suts.add(new FileEncoderDecoder(new ReedSolomonCode(10, 4), new MemoryStorageBackend()));
+        suts.add(new FileEncoderDecoder(new ReedSolomonCode(10, 4), new MemoryStorageBackend(), 64));
+        suts.add(new SimpleRegeneratingFileEncoderDecoder(new SimpleRegeneratingCode(10, 6, 5), new MemoryStorageBackend()));
+        suts.add(new FileEncoderDecoder(new ReplicationCode(3), new MemoryStorageBackend()));
+        for (FileEncoderDecoder sut : suts) {
+            sut.setPipeline(pool, DEPTH);
+        }
+        return suts;
+    }
+
+    @Test
+    public void testOverwriteAcrossStripes() throws TooManyErasedLocations {
+        for (FileEncoderDecoder sut : suts) {
+            final byte[] contents = FileEncoderDecoderTestUtils.createRandomBigByteBuffer();
+            final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+            sut.writeFile(path, contents.length, 0, ByteBuffer.wrap(contents));
+
+            final byte[] overwrite = new byte[5003];
+            FileEncoderDecoderTestUtils.random.nextBytes(overwrite);
+            System.arraycopy(overwrite, 0, contents, 7001, overwrite.length);
+            sut.writeFile(path, overwrite.length, 7001, ByteBuffer.wrap(overwrite));
+
+            final ByteBuffer out = ByteBuffer.allocate(contents.length);
+            sut.readFile(path, contents.length, 0, out);
+            assertArrayEquals(contents, out.array());
+        }
+    }
+
+    @Test
+    public void testBufferPositions() throws TooManyErasedLocations {
+        final FileEncoderDecoder sut = suts.iterator().next();
+        final byte[] contents = FileEncoderDecoderTestUtils.createRandomBigByteBuffer();
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        final ByteBuffer in = ByteBuffer.wrap(contents);
+        sut.writeFile(path, contents.length, 0, in);
+        assertEquals(contents.length, in.position());
+
+        // The range is written after the first bytes of the buffer, which is moved past it
+        final ByteBuffer out = ByteBuffer.allocate(contents.length + 7);
+        out.position(7);
+        sut.readFile(path, 10007, 3, out);
+        assertEquals(10014, out.position());
+        assertArrayEquals(Arrays.copyOfRange(contents, 3, 10010), Arrays.copyOfRange(out.array(), 7, 10014));
+    }
+
+    @Test(expected = TooManyErasedLocations.class)
+    public void testTooManyErasedLocations() throws TooManyErasedLocations {
+        final LosingStorageBackend storageBackend = new LosingStorageBackend();
+        final FileEncoderDecoder sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), storageBackend);
+        sut.setPipeline(pool, DEPTH);
+        final byte[] contents = FileEncoderDecoderTestUtils.createRandomBigByteBuffer();
+        sut.writeFile("path", contents.length, 0, ByteBuffer.wrap(contents));
+
+        storageBackend.lost = true;
+        sut.readFile("path", contents.length, 0, ByteBuffer.allocate(contents.length));
+    }
+
+    @Test
+    public void testOverlappedStores() throws TooManyErasedLocations {
+        final SlowStorageBackend storageBackend = new SlowStorageBackend();
+        final FileEncoderDecoder sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), storageBackend, 64);
+        sut.setPipeline(pool, DEPTH);
+        // 8 stripes of chunks, each chunk stored under its own key
+        final byte[] contents = new byte[8 * 640];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        sut.writeFile(path, contents.length, 0, ByteBuffer.wrap(contents));
+
+        // The stripes in flight store their chunks at the same time, rather than one after another
+        assertTrue("At most " + storageBackend.maxStores.get() + " store at once", storageBackend.maxStores.get() > 1);
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        sut.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidDepth() {
+        suts.iterator().next().setPipeline(pool, 0);
+    }
+
+    /**
+     * Takes a millisecond per store, like a remote key-value store, and records the max number of stores at once.
+     */
+    private static class SlowStorageBackend extends MemoryStorageBackend {
+        final AtomicInteger stores = new AtomicInteger();
+        final AtomicInteger maxStores = new AtomicInteger();
+
+        @Override
+        protected void storeAggregatedBlocks(int key, String blockData) {
+            final int concurrent = stores.incrementAndGet();
+            maxStores.accumulateAndGet(concurrent, Math::max);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.storeAggregatedBlocks(key, blockData);
+            stores.decrementAndGet();
+        }
+    }
+
+    /**
+     * Loses all its blocks on demand.
+     */
+    private static class LosingStorageBackend extends MemoryStorageBackend {
+        volatile boolean lost;
+
+        @Override
+        public boolean isBlockAvailable(int key) {
+            return !lost && super.isBlockAvailable(key);
+        }
+
+        @Override
+        public boolean retrieveBlock(int key, int[] blocks, int index) {
+            return !lost && super.retrieveBlock(key, blocks, index);
+        }
+    }
+}
@@ -2,11 +2,14 @@ package ch.unine.vauchers.erasuretester.erasure;
 
 import ch.unine.vauchers.erasuretester.backend.MemoryStorageBackend;
 import ch.unine.vauchers.erasuretester.erasure.codes.ReedSolomonCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.TooManyErasedLocations;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.stream.IntStream;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class FileEncoderDecoderReedSolomonErasureTest extends FileEncoderDecoderTest {
@@ -19,6 +22,33 @@ public class FileEncoderDecoderReedSolomonErasureTest extends FileEncoderDecoder
         return Collections.singleton(sut);
     }
 
+    @Test
+    public void testPartialOverwrite() throws TooManyErasedLocations {
+        final int[] retrievedBlocks = new int[1];
+        final FileEncoderDecoder countingSut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), new MemoryStorageBackend() {
+            @Override
+            public boolean retrieveBlock(int key, int[] blocks, int index) {
+                retrievedBlocks[0]++;
+                return super.retrieveBlock(key, blocks, index);
+            }
+        });
+        final byte[] contents = new byte[1000];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        countingSut.writeFile(path, contents.length, 0, ByteBuffer.wrap(contents));
+
+        // 2 bytes in the middle of a stripe: the 2 data blocks and the 4 parity blocks are read
+        final byte[] overwrite = {42, 43};
+        System.arraycopy(overwrite, 0, contents, 503, overwrite.length);
+        retrievedBlocks[0] = 0;
+        countingSut.writeFile(path, overwrite.length, 503, ByteBuffer.wrap(overwrite));
+        assertEquals(6, retrievedBlocks[0]);
+
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        countingSut.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+    }
+
     @Test
     public void testComputeDataSize() {
         assertEquals(0, sut.nextBoundary(0));
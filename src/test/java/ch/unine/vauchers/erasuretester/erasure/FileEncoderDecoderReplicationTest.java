@@ -0,0 +1,110 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.backend.MemoryStorageBackend;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReplicationCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.TooManyErasedLocations;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class FileEncoderDecoderReplicationTest extends FileEncoderDecoderTest {
+    private static final int COPIES = 3;
+    private static final int SIZE = 1000;
+
+    private CountingStorageBackend storageBackend;
+    private FileEncoderDecoder sut;
+
+    @Override
+    protected Iterable<FileEncoderDecoder> createEncoderDecoder() {
+        storageBackend = new CountingStorageBackend();
+        sut = new FileEncoderDecoder(new ReplicationCode(COPIES), storageBackend);
+        return Collections.singleton(sut);
+    }
+
+    @Test
+    public void testReadsOneReplica() throws TooManyErasedLocations {
+        final byte[] contents = writeRandomFile("path");
+        storageBackend.clearReadCache();
+        storageBackend.retrievals = 0;
+        final ByteBuffer results = ByteBuffer.allocate(SIZE);
+        sut.readFile("path", SIZE, 0, results);
+        Assert.assertArrayEquals(contents, results.array());
+        // Neither availability checks nor replicas are needed when the originals are available
+        Assert.assertEquals(0, storageBackend.availabilityChecks);
+        Assert.assertEquals(SIZE, storageBackend.retrievals);
+    }
+
+    @Test
+    public void testReadsAndRepairsFromReplicas() throws TooManyErasedLocations {
+        final byte[] contents = writeRandomFile("path");
+        final IntList blockKeys = storageBackend.getFileMetadata("path").get().getBlockKeys().get();
+        // Lose the original and one replica of each byte, alternating the replicas
+        for (int stripe = 0; stripe < SIZE; stripe++) {
+            storageBackend.erasedKeys.add(blockKeys.getInt(stripe * COPIES + COPIES - 1));
+            storageBackend.erasedKeys.add(blockKeys.getInt(stripe * COPIES + stripe % (COPIES - 1)));
+        }
+        storageBackend.clearReadCache();
+        final ByteBuffer results = ByteBuffer.allocate(SIZE);
+        sut.readFile("path", SIZE, 0, results);
+        Assert.assertArrayEquals(contents, results.array());
+
+        sut.repairFile("path");
+        final Set<Integer> erasedKeys = new HashSet<>(storageBackend.erasedKeys);
+        for (int key : storageBackend.getFileMetadata("path").get().getBlockKeys().get()) {
+            Assert.assertFalse(erasedKeys.contains(key));
+        }
+        storageBackend.clearReadCache();
+        storageBackend.retrievals = 0;
+        final ByteBuffer repaired = ByteBuffer.allocate(SIZE);
+        sut.readFile("path", SIZE, 0, repaired);
+        Assert.assertArrayEquals(contents, repaired.array());
+        Assert.assertEquals(SIZE, storageBackend.retrievals);
+    }
+
+    @Test(expected = TooManyErasedLocations.class)
+    public void testAllReplicasLost() throws TooManyErasedLocations {
+        writeRandomFile("path");
+        final IntList blockKeys = storageBackend.getFileMetadata("path").get().getBlockKeys().get();
+        for (int i = 0; i < COPIES; i++) {
+            storageBackend.erasedKeys.add(blockKeys.getInt(i));
+        }
+        storageBackend.clearReadCache();
+        sut.readFile("path", SIZE, 0, ByteBuffer.allocate(SIZE));
+    }
+
+    private byte[] writeRandomFile(String path) {
+        final byte[] contents = new byte[SIZE];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        sut.writeFile(path, SIZE, 0, ByteBuffer.wrap(contents));
+        return contents;
+    }
+
+    /**
+     * Counts the blocks retrieved and checked, and loses some blocks.
+     */
+    private static class CountingStorageBackend extends MemoryStorageBackend {
+        final Set<Integer> erasedKeys = new HashSet<>();
+        int retrievals;
+        int availabilityChecks;
+
+        @Override
+        public boolean isBlockAvailable(int key) {
+            availabilityChecks++;
+            return !erasedKeys.contains(key) && super.isBlockAvailable(key);
+        }
+
+        @Override
+        public boolean retrieveBlock(int key, int[] blocks, int index) {
+            if (erasedKeys.contains(key)) {
+                return false;
+            }
+            retrievals++;
+            return super.retrieveBlock(key, blocks, index);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.backend.MemoryStorageBackend;
+import ch.unine.vauchers.erasuretester.erasure.codes.ErasureCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.GaloisField;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReedSolomonCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.TooManyErasedLocations;
+import ch.unine.vauchers.erasuretester.erasure.codes.XORCode;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+public class FileEncoderDecoderVerifyReadsTest {
+    private static final int SIZE = 5003;
+
+    @Test
+    public void testCorruptedBlocks() throws TooManyErasedLocations {
+        // 2 corrupted blocks per stripe
+        checkVerifyReads(new ReedSolomonCode(10, 4), 2, 0);
+        checkVerifyReads(new ReedSolomonCode(10, 4, GaloisField.forSymbolSize(16)), 2, 0);
+    }
+
+    @Test
+    public void testCorruptedAndErasedBlocks() throws TooManyErasedLocations {
+        checkVerifyReads(new ReedSolomonCode(10, 4), 1, 2);
+        checkVerifyReads(new ReedSolomonCode(10, 4), 0, 4);
+    }
+
+    @Test
+    public void testCorruptedChunks() throws TooManyErasedLocations {
+        checkVerifyReads(new ReedSolomonCode(10, 4), 2, 0, 64);
+        checkVerifyReads(new ReedSolomonCode(10, 4, GaloisField.forSymbolSize(16)), 1, 2, 64);
+    }
+
+    @Test(expected = TooManyErasedLocations.class)
+    public void testTooManyCorruptedChunks() throws TooManyErasedLocations {
+        checkVerifyReads(new ReedSolomonCode(10, 4), 1, 3, 64);
+    }
+
+    @Test(expected = TooManyErasedLocations.class)
+    public void testTooManyCorruptedBlocks() throws TooManyErasedLocations {
+        checkVerifyReads(new ReedSolomonCode(10, 4), 1, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCodeWithoutErrorCorrection() {
+        new FileEncoderDecoder(new XORCode(10, 1), new MemoryStorageBackend()).setVerifyReads(true);
+    }
+
+    private static void checkVerifyReads(ErasureCode erasureCode, int corruptedPerStripe, int erasedPerStripe)
+            throws TooManyErasedLocations {
+        checkVerifyReads(erasureCode, corruptedPerStripe, erasedPerStripe, 0);
+    }
+
+    private static void checkVerifyReads(ErasureCode erasureCode, int corruptedPerStripe, int erasedPerStripe,
+                                         int blockSize) throws TooManyErasedLocations {
+        final int totalSize = erasureCode.stripeSize() + erasureCode.paritySize();
+        final StaleStorageBackend storageBackend = new StaleStorageBackend();
+        final FileEncoderDecoder sut = new FileEncoderDecoder(erasureCode, storageBackend, blockSize);
+        final byte[] contents = new byte[SIZE];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        sut.writeFile(path, SIZE, 0, ByteBuffer.wrap(contents));
+
+        // Different locations in each stripe
+        final IntList blockKeys = storageBackend.getFileMetadata(path).get().getBlockKeys().get();
+        for (int stripe = 0; stripe < blockKeys.size(); stripe += totalSize) {
+            final int first = FileEncoderDecoderTestUtils.random.nextInt(totalSize);
+            for (int i = 0; i < corruptedPerStripe + erasedPerStripe; i++) {
+                final int key = blockKeys.getInt(stripe + (first + i) % totalSize);
+                (i < corruptedPerStripe ? storageBackend.staleKeys : storageBackend.erasedKeys).add(key);
+            }
+        }
+
+        sut.setVerifyReads(true);
+        final ByteBuffer results = ByteBuffer.allocate(SIZE);
+        sut.readFile(path, SIZE, 0, results);
+        Assert.assertArrayEquals(contents, results.array());
+
+        // The corrected blocks were written back
+        if (corruptedPerStripe > 0) {
+            sut.setVerifyReads(false);
+            storageBackend.erasedKeys.clear();
+            final ByteBuffer unverified = ByteBuffer.allocate(SIZE);
+            sut.readFile(path, SIZE, 0, unverified);
+            Assert.assertArrayEquals(contents, unverified.array());
+        }
+    }
+
+    /**
+     * Returns wrong values for some blocks, and none for others.
+     */
+    private static class StaleStorageBackend extends MemoryStorageBackend {
+        final Set<Integer> staleKeys = new HashSet<>();
+        final Set<Integer> erasedKeys = new HashSet<>();
+
+        @Override
+        public boolean isBlockAvailable(int key) {
+            return !erasedKeys.contains(key) && super.isBlockAvailable(key);
+        }
+
+        @Override
+        public boolean retrieveBlock(int key, int[] blocks, int index) {
+            if (erasedKeys.contains(key) || !super.retrieveBlock(key, blocks, index)) {
+                return false;
+            }
+            if (staleKeys.contains(key)) {
+                blocks[index] ^= 0x5A;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean retrieveChunk(int key, byte[] chunk) {
+            if (erasedKeys.contains(key) || !super.retrieveChunk(key, chunk)) {
+                return false;
+            }
+            if (staleKeys.contains(key)) {
+                for (int i = 0; i < chunk.length; i++) {
+                    chunk[i] ^= 0x5A;
+                }
+            }
+            return true;
+        }
+    }
+}
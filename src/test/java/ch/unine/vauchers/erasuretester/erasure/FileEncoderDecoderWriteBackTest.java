@@ -0,0 +1,340 @@
+package ch.unine.vauchers.erasuretester.erasure;
+
+import ch.unine.vauchers.erasuretester.backend.FileMetadata;
+import ch.unine.vauchers.erasuretester.backend.MemoryStorageBackend;
+import ch.unine.vauchers.erasuretester.erasure.codes.PiggybackedReedSolomonCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReedSolomonCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.ReplicationCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.SimpleRegeneratingCode;
+import ch.unine.vauchers.erasuretester.erasure.codes.TooManyErasedLocations;
+import ch.unine.vauchers.erasuretester.erasure.codes.XORCode;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reads and writes in write-back mode, the writes covering part of a stripe being buffered.
+ */
+public class FileEncoderDecoderWriteBackTest extends FileEncoderDecoderTest {
+    @Override
+    protected Iterable<FileEncoderDecoder> createEncoderDecoder() {
+        final List<FileEncoderDecoder> suts = new ArrayList<>();
+        suts.add(new FileEncoderDecoder(new ReedSolomonCode(10, 4), new MemoryStorageBackend()));
+        suts.add(new FileEncoderDecoder(new ReedSolomonCode(10, 4), new MemoryStorageBackend(), 64));
+        suts.add(new SimpleRegeneratingFileEncoderDecoder(new SimpleRegeneratingCode(10, 6, 5), new MemoryStorageBackend()));
+        suts.add(new FileEncoderDecoder(new ReplicationCode(3), new MemoryStorageBackend(), 64));
+        for (FileEncoderDecoder sut : suts) {
+            sut.setWriteBack(true);
+        }
+        return suts;
+    }
+
+    @Test
+    public void testSmallSequentialWrites() throws TooManyErasedLocations {
+        final CountingStorageBackend storageBackend = new CountingStorageBackend();
+        final FileEncoderDecoder sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), storageBackend, 64);
+        sut.setWriteBack(true);
+
+        // 4 stripes of 640 bytes, written 10 bytes at a time
+        final byte[] contents = new byte[4 * 640];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        for (int b = 0; b < contents.length; b += 10) {
+            sut.writeFile(path, 10, b, ByteBuffer.wrap(contents, b, 10).slice());
+        }
+        // Each stripe is encoded once, when its last bytes are written
+        assertEquals(4 * 14, storageBackend.stores);
+
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        sut.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+    }
+
+    @Test
+    public void testSmallSequentialWritesSymbols() throws TooManyErasedLocations {
+        final CountingStorageBackend storageBackend = new CountingStorageBackend();
+        final FileEncoderDecoder sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), storageBackend);
+        sut.setWriteBack(true);
+
+        // 10 stripes of 10 bytes, written 1 byte at a time
+        final byte[] contents = new byte[100];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        for (int b = 0; b < contents.length; b++) {
+            sut.writeFile(path, 1, b, ByteBuffer.wrap(contents, b, 1).slice());
+        }
+        assertEquals(10 * 14, storageBackend.stores);
+
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        sut.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+    }
+
+    @Test
+    public void testReadBufferedWrites() throws TooManyErasedLocations {
+        for (FileEncoderDecoder sut : suts) {
+            final byte[] contents = FileEncoderDecoderTestUtils.createRandomBigByteBuffer();
+            final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+            sut.writeFile(path, contents.length, 0, ByteBuffer.wrap(contents));
+
+            // Two contiguous writes in the middle of a stripe, still buffered
+            final byte[] overwrite = new byte[30];
+            FileEncoderDecoderTestUtils.random.nextBytes(overwrite);
+            System.arraycopy(overwrite, 0, contents, 7001, overwrite.length);
+            sut.writeFile(path, 20, 7001, ByteBuffer.wrap(overwrite, 0, 20).slice());
+            sut.writeFile(path, 10, 7021, ByteBuffer.wrap(overwrite, 20, 10).slice());
+
+            final ByteBuffer out = ByteBuffer.allocate(contents.length);
+            sut.readFile(path, contents.length, 0, out);
+            assertArrayEquals(sut.toString(), contents, out.array());
+
+            // A range ending in the buffered bytes
+            final ByteBuffer part = ByteBuffer.allocate(20);
+            sut.readFile(path, 20, 6991, part);
+            assertArrayEquals(Arrays.copyOfRange(contents, 6991, 7011), part.array());
+        }
+    }
+
+    @Test
+    public void testReadNewFile() throws TooManyErasedLocations {
+        for (FileEncoderDecoder sut : suts) {
+            // None of the stripe is stored yet, the bytes before the write are zeros
+            final byte[] contents = new byte[15];
+            FileEncoderDecoderTestUtils.random.nextBytes(contents);
+            Arrays.fill(contents, 0, 5, (byte) 0);
+            final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+            sut.writeFile(path, 10, 5, ByteBuffer.wrap(contents, 5, 10).slice());
+
+            assertEquals(15, sut.sizeOfFile(path));
+            final ByteBuffer out = ByteBuffer.allocate(contents.length);
+            sut.readFile(path, contents.length, 0, out);
+            assertArrayEquals(sut.toString(), contents, out.array());
+        }
+    }
+
+    @Test
+    public void testNonContiguousWrites() throws TooManyErasedLocations {
+        final CountingStorageBackend storageBackend = new CountingStorageBackend();
+        final FileEncoderDecoder sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), storageBackend, 64);
+        sut.setWriteBack(true);
+        final byte[] contents = new byte[640];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+
+        sut.writeFile(path, 10, 0, ByteBuffer.wrap(contents, 0, 10).slice());
+        assertEquals(0, storageBackend.stores);
+        // Not contiguous with the buffered range, which is encoded first
+        sut.writeFile(path, 10, 100, ByteBuffer.wrap(contents, 100, 10).slice());
+        assertEquals(14, storageBackend.stores);
+        sut.writeFile(path, 90, 10, ByteBuffer.wrap(contents, 10, 90).slice());
+        assertEquals(14, storageBackend.stores);
+        // The first bytes are stored already, so the stripe is not entirely dirty
+        sut.writeFile(path, 530, 110, ByteBuffer.wrap(contents, 110, 530).slice());
+        assertEquals(14, storageBackend.stores);
+        sut.flushWrites(path);
+        assertEquals(28, storageBackend.stores);
+
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        sut.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+    }
+
+    @Test
+    public void testFlushWrites() throws TooManyErasedLocations {
+        final CountingStorageBackend storageBackend = new CountingStorageBackend();
+        final FileEncoderDecoder sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), storageBackend, 64);
+        sut.setWriteBack(true);
+        final byte[] contents = new byte[100];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        sut.writeFile(path, contents.length, 0, ByteBuffer.wrap(contents));
+
+        // Not idle for long enough
+        sut.flushIdleWrites(60000);
+        assertEquals(0, storageBackend.stores);
+        sut.flushWrites(path);
+        assertEquals(14, storageBackend.stores);
+        sut.flushWrites(path);
+        assertEquals(14, storageBackend.stores);
+
+        // The stored blocks hold the writes
+        final FileEncoderDecoder reader = new FileEncoderDecoder(new ReedSolomonCode(10, 4), storageBackend, 64);
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        reader.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+    }
+
+    @Test
+    public void testDisableWriteBack() throws TooManyErasedLocations {
+        final CountingStorageBackend storageBackend = new CountingStorageBackend();
+        final FileEncoderDecoder sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), storageBackend, 64);
+        sut.setWriteBack(true);
+        final byte[] contents = new byte[100];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        sut.writeFile(path, 50, 0, ByteBuffer.wrap(contents, 0, 50).slice());
+
+        sut.setWriteBack(false);
+        assertEquals(14, storageBackend.stores);
+        // Encoded at once
+        sut.writeFile(path, 50, 50, ByteBuffer.wrap(contents, 50, 50).slice());
+        assertEquals(28, storageBackend.stores);
+
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        sut.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+    }
+
+    @Test
+    public void testShortBuffer() throws TooManyErasedLocations {
+        final CountingStorageBackend storageBackend = new CountingStorageBackend();
+        final FileEncoderDecoder sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), storageBackend, 64);
+        sut.setWriteBack(true);
+        final byte[] contents = new byte[640];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        sut.writeFile(path, contents.length, 0, ByteBuffer.wrap(contents));
+        sut.writeFile(path, 10, 100, ByteBuffer.wrap(contents, 100, 10).slice());
+
+        // 100 bytes asked, but only 10 in the buffer: not contiguous with the buffered range
+        sut.writeFile(path, 100, 0, ByteBuffer.wrap(contents, 0, 10).slice());
+        assertEquals(28, storageBackend.stores);
+        sut.flushWrites(path);
+
+        // The bytes between the two writes are the stored ones
+        final FileEncoderDecoder reader = new FileEncoderDecoder(new ReedSolomonCode(10, 4), storageBackend, 64);
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        reader.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+    }
+
+    @Test
+    public void testNonContiguousWriteIntoNextStripe() throws TooManyErasedLocations {
+        final List<FileEncoderDecoder> codecs = new ArrayList<>();
+        for (FileEncoderDecoder sut : suts) {
+            codecs.add(sut);
+        }
+        codecs.add(new FileEncoderDecoder(new XORCode(10, 1), new MemoryStorageBackend()));
+        codecs.add(new FileEncoderDecoder(new PiggybackedReedSolomonCode(10, 4), new MemoryStorageBackend()));
+        for (FileEncoderDecoder sut : codecs) {
+            sut.setWriteBack(true);
+            final byte[] contents = {1, 2, 3, 4, 5, 0, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+            final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+            sut.writeFile(path, 3, 0, ByteBuffer.wrap(contents, 0, 3).slice());
+            sut.writeFile(path, 2, 3, ByteBuffer.wrap(contents, 3, 2).slice());
+            // Encodes the buffered bytes, then the rest of the first stripe, which reads them back before they are
+            // flushed to the key-value store
+            sut.writeFile(path, 10, 6, ByteBuffer.wrap(contents, 6, 10).slice());
+
+            final ByteBuffer out = ByteBuffer.allocate(contents.length);
+            sut.readFile(path, contents.length, 0, out);
+            assertArrayEquals(sut.toString(), contents, out.array());
+            sut.flushWrites(path);
+            out.clear();
+            sut.readFile(path, contents.length, 0, out);
+            assertArrayEquals(sut.toString(), contents, out.array());
+        }
+    }
+
+    @Test
+    public void testBufferedWritesDeferMetadata() throws TooManyErasedLocations {
+        final CountingStorageBackend storageBackend = new CountingStorageBackend();
+        final FileEncoderDecoder sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), storageBackend, 64);
+        sut.setWriteBack(true);
+        final byte[] contents = new byte[100];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+
+        for (int b = 0; b < contents.length; b += 10) {
+            sut.writeFile(path, 10, b, ByteBuffer.wrap(contents, b, 10).slice());
+        }
+        assertEquals(0, storageBackend.metadataStores);
+        assertEquals(0, storageBackend.flushes);
+        // The size and the bytes of the buffered writes are seen all the same
+        assertEquals(contents.length, sut.sizeOfFile(path));
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        sut.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+
+        sut.flushWrites(path);
+        assertEquals(1, storageBackend.metadataStores);
+        assertEquals(1, storageBackend.flushes);
+        assertEquals(contents.length, storageBackend.getFileMetadata(path).get().getContentsSize());
+    }
+
+    @Test
+    public void testReadPartlyStoredStripe() throws TooManyErasedLocations {
+        final FileEncoderDecoder sut = new FileEncoderDecoder(new ReedSolomonCode(10, 4), new MemoryStorageBackend());
+        final byte[] contents = new byte[10];
+        FileEncoderDecoderTestUtils.random.nextBytes(contents);
+        final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+        sut.writeFile(path, contents.length, 0, ByteBuffer.wrap(contents));
+        // The first block of the stripe is lost: the stripe is still stored
+        final FileMetadata metadata = sut.storageBackend.getFileMetadata(path).get();
+        metadata.getBlockKeys().get().set(0, -1);
+        sut.storageBackend.setFileMetadata(path, metadata);
+
+        sut.setWriteBack(true);
+        contents[4] = 42;
+        sut.writeFile(path, 1, 4, ByteBuffer.wrap(contents, 4, 1).slice());
+        final ByteBuffer out = ByteBuffer.allocate(contents.length);
+        sut.readFile(path, contents.length, 0, out);
+        assertArrayEquals(contents, out.array());
+    }
+
+    @Test
+    public void testTruncateBufferedWrites() throws TooManyErasedLocations {
+        for (FileEncoderDecoder sut : suts) {
+            final byte[] contents = new byte[1000];
+            FileEncoderDecoderTestUtils.random.nextBytes(contents);
+            final String path = FileEncoderDecoderTestUtils.generateRandomPath();
+            sut.writeFile(path, 30, 0, ByteBuffer.wrap(contents, 0, 30).slice());
+
+            sut.truncate(path, 20);
+            assertEquals(20, sut.sizeOfFile(path));
+            final ByteBuffer out = ByteBuffer.allocate(20);
+            sut.readFile(path, 20, 0, out);
+            assertArrayEquals(sut.toString(), Arrays.copyOf(contents, 20), out.array());
+        }
+    }
+
+    /**
+     * Counts the blocks, chunks and metadata stored to the key-value store, and the flushes.
+     */
+    private static class CountingStorageBackend extends MemoryStorageBackend {
+        int stores;
+        int metadataStores;
+        int flushes;
+
+        @Override
+        public synchronized int storeBlock(int blockData, int position) {
+            stores++;
+            return super.storeBlock(blockData, position);
+        }
+
+        @Override
+        public synchronized int storeChunk(byte[] chunk, int position) {
+            stores++;
+            return super.storeChunk(chunk, position);
+        }
+
+        @Override
+        public synchronized void setFileMetadata(@NotNull String path, @NotNull FileMetadata metadata) {
+            metadataStores++;
+            super.setFileMetadata(path, metadata);
+        }
+
+        @Override
+        public synchronized void flushAll() {
+            flushes++;
+            super.flushAll();
+        }
+    }
+}
@@ -11,7 +11,6 @@ import org.junit.runners.Parameterized;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Optional;
 
 /**
  *
@@ -24,25 +23,38 @@ public class FileRepairTest {
     private final int paritySize;
     private final StorageBackend backend;
 
-    public FileRepairTest(ErasureCode code) {
+    public FileRepairTest(ErasureCode code, int blockSize) {
         this.mode = Mode.FAULTY;
         this.stripeSize = code.stripeSize();
         this.paritySize = code.paritySize();
 
         backend = new SpecialBackend();
         if (code instanceof SimpleRegeneratingCode) {
-            this.fed = new SimpleRegeneratingFileEncoderDecoder((SimpleRegeneratingCode) code, backend);
+            this.fed = new SimpleRegeneratingFileEncoderDecoder((SimpleRegeneratingCode) code, backend, blockSize);
         } else {
-            this.fed = new FileEncoderDecoder(code, backend);
+            this.fed = new FileEncoderDecoder(code, backend, blockSize);
         }
     }
 
-    @Parameterized.Parameters(name = "{0}")
+    @Parameterized.Parameters(name = "{0}, block size {1}")
     public static Collection<Object[]> parameters() {
         return new ArrayList<Object[]>() {{
-            add(new Object[] {new XORCode(2, 1)});
-            add(new Object[] {new ReedSolomonCode(10, 4)});
-            add(new Object[] {new SimpleRegeneratingCode(10, 6, 5)});
+            add(new Object[] {new XORCode(2, 1), 0});
+            add(new Object[] {new ReedSolomonCode(10, 4), 0});
+            add(new Object[] {new MatrixReedSolomonCode(10, 4), 0});
+            add(new Object[] {new MatrixReedSolomonCode(300, 20, GaloisField.forSymbolSize(16)), 0});
+            add(new Object[] {new CauchyReedSolomonCode(10, 4), 0});
+            add(new Object[] {new LocalReconstructionCode(12, 2, 2), 0});
+            add(new Object[] {new PiggybackedReedSolomonCode(10, 4), 0});
+            add(new Object[] {new SimpleRegeneratingCode(10, 6, 5), 0});
+            add(new Object[] {new FountainCode(10, 4), 0});
+            add(new Object[] {new RowDiagonalParityCode(10), 0});
+            add(new Object[] {new ReplicationCode(3), 0});
+            add(new Object[] {new ReedSolomonCode(10, 4), 100});
+            add(new Object[] {new LocalReconstructionCode(12, 2, 2), 64});
+            add(new Object[] {new SimpleRegeneratingCode(10, 6, 5), 64});
+            add(new Object[] {new RowDiagonalParityCode(10), 50});
+            add(new Object[] {new ReplicationCode(3), 100});
         }};
     }
 
@@ -127,16 +139,40 @@ public class FileRepairTest {
         }
 
         @Override
-        public Optional<Integer> retrieveBlock(int key) {
+        public int storeChunk(byte[] chunk, int position) {
+            if (mode == Mode.FAULTY) {
+                if (isPositionFaulty(position)) {
+                    // There should not be any value at that key
+                    return Integer.MAX_VALUE;
+                }
+            }
+            return super.storeChunk(chunk, position);
+        }
+
+        @Override
+        public boolean retrieveBlock(int key, int[] blocks, int index) {
             if (mode == Mode.REPAIRED) {
                 final int position = computePositionWithBlockKey(key);
                 // After repair, reading the parity is forbidden
                 if (position < paritySize) {
                     Assert.fail("A parity block has been read after repair");
-                    return Optional.empty();
+                    return false;
+                }
+            }
+            return super.retrieveBlock(key, blocks, index);
+        }
+
+        @Override
+        public boolean retrieveChunk(int key, byte[] chunk) {
+            if (mode == Mode.REPAIRED) {
+                final int position = computePositionWithBlockKey(key);
+                // After repair, reading the parity is forbidden
+                if (position < paritySize) {
+                    Assert.fail("A parity chunk has been read after repair");
+                    return false;
                 }
             }
-            return super.retrieveBlock(key);
+            return super.retrieveChunk(key, chunk);
         }
 
         private boolean isPositionFaulty(int position) {
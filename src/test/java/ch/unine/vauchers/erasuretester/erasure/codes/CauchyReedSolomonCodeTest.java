@@ -0,0 +1,51 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ *
+ */
+public class CauchyReedSolomonCodeTest {
+    private static final Random random = new Random(6509812347L);
+    private static final int STRIPE_SIZE = 10;
+    private static final int PARITY_SIZE = 4;
+    private final CauchyReedSolomonCode sut = new CauchyReedSolomonCode(STRIPE_SIZE, PARITY_SIZE);
+
+    @Test
+    public void testScheduleSharesXors() {
+        // Without sharing, each of the 32 parity packets sums about half of the 80 data packets
+        Assert.assertTrue(sut.encodeXorCount() < PARITY_SIZE * 8 * (STRIPE_SIZE * 8 / 2 - 1));
+    }
+
+    @Test
+    public void testBulkLengths() {
+        for (int length : new int[]{0, 5, 8, 1003, 4096}) {
+            final byte[][] blocks = new byte[STRIPE_SIZE + PARITY_SIZE][length];
+            final byte[][] inputs = new byte[STRIPE_SIZE][];
+            for (int i = 0; i < STRIPE_SIZE; i++) {
+                random.nextBytes(blocks[PARITY_SIZE + i]);
+                inputs[i] = blocks[PARITY_SIZE + i];
+            }
+            final byte[][] outputs = new byte[PARITY_SIZE][];
+            System.arraycopy(blocks, 0, outputs, 0, PARITY_SIZE);
+            sut.encodeBulk(inputs, outputs);
+
+            // Lose two data blocks and two parity blocks
+            final int[] erasedLocations = {12, 0, 5, 2};
+            final int[] locationsToRead = {1, 3, 4, 6, 7, 8, 9, 10, 11, 13};
+            final int[] locationsNotToRead = {0, 2, 5, 12};
+            final byte[][] readBufs = blocks.clone();
+            for (int erased : erasedLocations) {
+                readBufs[erased] = null;
+            }
+            final byte[][] writeBufs = new byte[erasedLocations.length][length];
+            sut.decodeBulk(readBufs, writeBufs, erasedLocations, locationsToRead, locationsNotToRead);
+            for (int e = 0; e < erasedLocations.length; e++) {
+                Assert.assertArrayEquals(blocks[erasedLocations[e]], writeBufs[e]);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+/**
+ *
+ */
+public class CauchyReedSolomonErasureCodeInstance extends ErasureCodeInstance {
+
+    @Override
+    public int getStripeSize() {
+        return 10;
+    }
+
+    @Override
+    public int getParitySize() {
+        return 4;
+    }
+
+    @Override
+    public int getMaxErasures() {
+        return getParitySize();
+    }
+
+    @Override
+    protected CauchyReedSolomonCode newSut() {
+        return new CauchyReedSolomonCode(getStripeSize(), getParitySize());
+    }
+
+    @Override
+    public String toString() {
+        return "CauchyReedSolomon";
+    }
+}
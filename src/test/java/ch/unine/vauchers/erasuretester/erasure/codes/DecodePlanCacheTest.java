@@ -0,0 +1,144 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ *
+ */
+public class DecodePlanCacheTest {
+
+    @Test
+    public void testMaskLocations() {
+        final int[] locations = {0, 3, 13, 63};
+        final long mask = DecodePlanCache.mask(new int[]{13, 0, 63, 3, 13});
+        Assert.assertArrayEquals(locations, DecodePlanCache.locations(mask));
+        Assert.assertEquals(0, DecodePlanCache.locations(0).length);
+    }
+
+    @Test
+    public void testHitsMisses() {
+        final DecodePlanCache<String> sut = new DecodePlanCache<>(2);
+        Assert.assertEquals("1", sut.get(1, Long::toString));
+        Assert.assertEquals("1", sut.get(1, mask -> "other"));
+        Assert.assertEquals(1, sut.getHits());
+        Assert.assertEquals(1, sut.getMisses());
+    }
+
+    @Test
+    public void testConcurrentMisses() {
+        final DecodePlanCache<String> sut = new DecodePlanCache<>(2);
+        // The pattern is stored by another miss while the first plan is computed
+        final String plan = sut.get(1, mask -> {
+            sut.get(1, Long::toString);
+            return "other";
+        });
+        Assert.assertEquals("1", plan);
+        Assert.assertEquals("1", sut.get(1, mask -> "other"));
+        Assert.assertEquals(1, sut.getMisses());
+        Assert.assertEquals(2, sut.getHits());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        final DecodePlanCache<String> sut = new DecodePlanCache<>(2);
+        sut.get(1, Long::toString);
+        sut.get(2, Long::toString);
+        sut.get(1, Long::toString);
+        sut.get(3, Long::toString);
+        Assert.assertEquals(2, sut.size());
+        Assert.assertEquals("1", sut.get(1, mask -> "evicted"));
+        Assert.assertEquals("evicted", sut.get(2, mask -> "evicted"));
+    }
+
+    @Test
+    public void testReedSolomonReusesPlan() {
+        final ReedSolomonCode code = new ReedSolomonCode(10, 4);
+        final int[] message = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        final int[] parity = new int[4];
+        code.encode(message, parity);
+        final int[] data = new int[14];
+        System.arraycopy(parity, 0, data, 0, 4);
+        System.arraycopy(message, 0, data, 4, 10);
+
+        for (int i = 0; i < 3; i++) {
+            final int[] erasedValues = new int[2];
+            code.decode(data, new int[]{5, 1}, erasedValues);
+            Assert.assertArrayEquals(new int[]{data[5], data[1]}, erasedValues);
+        }
+        Assert.assertEquals(1, code.getDecodePlanCache().getMisses());
+        Assert.assertEquals(2, code.getDecodePlanCache().getHits());
+    }
+
+    @Test
+    public void testWidePatterns() {
+        final DecodePlanCache<String> sut = new DecodePlanCache<>(2);
+        Assert.assertEquals("[3, 70, 200]", sut.get(new int[]{200, 3, 70}, Arrays::toString));
+        Assert.assertEquals("[3, 70, 200]", sut.get(new int[]{70, 200, 3}, locations -> "other"));
+        Assert.assertEquals("[3, 5]", sut.get(new int[]{5, 3}, Arrays::toString));
+        Assert.assertEquals(1, sut.getHits());
+        Assert.assertTrue(DecodePlanCache.sameLocations(new int[]{200, 3}, new int[]{3, 200}));
+        Assert.assertFalse(DecodePlanCache.sameLocations(new int[]{200, 3}, new int[]{3, 201}));
+    }
+
+    @Test
+    public void testLocationsPrefix() {
+        final DecodePlanCache<String> sut = new DecodePlanCache<>(2);
+        Assert.assertEquals("[3, 5]", sut.get(new int[]{5, 3, 9, 1}, 2, Arrays::toString));
+        Assert.assertEquals("[3, 5]", sut.get(new int[]{3, 5}, locations -> "other"));
+        Assert.assertEquals("[3, 200]", sut.get(new int[]{200, 3, 70}, 2, Arrays::toString));
+        Assert.assertEquals("[3, 200]", sut.get(new int[]{3, 200}, locations -> "other"));
+        Assert.assertEquals(2, sut.getHits());
+        Assert.assertEquals(2, sut.getMisses());
+    }
+
+    @Test
+    public void testMatrixDecodesShareLocationsRead() {
+        final MatrixReedSolomonCode code = new MatrixReedSolomonCode(10, 4);
+        final int[] message = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        final int[] parity = new int[4];
+        code.encode(message, parity);
+        final int[] data = new int[14];
+        System.arraycopy(parity, 0, data, 0, 4);
+        System.arraycopy(message, 0, data, 4, 10);
+
+        // Both read the 10 highest locations which are not erased
+        final int[] erased = {11, 3};
+        final int[] erasedValues = new int[2];
+        code.decode(data, erased, erasedValues);
+        Assert.assertArrayEquals(new int[]{data[11], data[3]}, erasedValues);
+        Arrays.fill(erasedValues, 0);
+        code.decode(data, erased, erasedValues, new int[]{13, 12, 10, 9, 8, 7, 6, 5, 4, 2, 1}, erased);
+        Assert.assertArrayEquals(new int[]{data[11], data[3]}, erasedValues);
+        Assert.assertEquals(1, code.getDecodePlanCache().getMisses());
+        Assert.assertEquals(1, code.getDecodePlanCache().getHits());
+    }
+
+    @Test
+    public void testWideStripeReusesPlan() {
+        final int stripeSize = 240;
+        final int paritySize = 16;
+        final ReedSolomonCode code = new ReedSolomonCode(stripeSize, paritySize, GaloisField.forSymbolSize(16));
+        final Random random = new Random(1290834576L);
+        final int[] message = random.ints(stripeSize, 0, 1 << 16).toArray();
+        final int[] parity = new int[paritySize];
+        code.encode(message, parity);
+        final int[] data = new int[stripeSize + paritySize];
+        System.arraycopy(parity, 0, data, 0, paritySize);
+        System.arraycopy(message, 0, data, paritySize, stripeSize);
+
+        final int[] erased = {250, 3, 100, 70};
+        for (int i = 0; i < 3; i++) {
+            final int[] erasedValues = new int[erased.length];
+            code.decode(data, erased, erasedValues);
+            for (int e = 0; e < erased.length; e++) {
+                Assert.assertEquals(data[erased[e]], erasedValues[e]);
+            }
+        }
+        Assert.assertEquals(1, code.getDecodePlanCache().getMisses());
+        Assert.assertEquals(2, code.getDecodePlanCache().getHits());
+    }
+}
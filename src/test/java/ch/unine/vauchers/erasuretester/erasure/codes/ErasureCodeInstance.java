@@ -10,6 +10,10 @@ public abstract class ErasureCodeInstance {
 
     public abstract int getMaxErasures();
 
+    public int getSymbolSize() {
+        return 8;
+    }
+
     protected abstract ErasureCode newSut();
 
     @Override
@@ -1,5 +1,6 @@
 package ch.unine.vauchers.erasuretester.erasure.codes;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 import org.junit.Assert;
 import org.junit.Before;
@@ -8,8 +9,10 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -42,7 +45,15 @@ public class ErasureCodeTest {
         return Arrays.stream(new ErasureCodeInstance[]{
                 new XORErasureCodeInstance(),
                 new ReedSolomonErasureCodeInstance(),
-                new SimpleRegeneratingErasureCodeInstance()
+                new WideReedSolomonErasureCodeInstance(),
+                new MatrixReedSolomonErasureCodeInstance(),
+                new CauchyReedSolomonErasureCodeInstance(),
+                new LocalReconstructionErasureCodeInstance(),
+                new PiggybackedReedSolomonErasureCodeInstance(),
+                new SimpleRegeneratingErasureCodeInstance(),
+                new FountainErasureCodeInstance(),
+                new RowDiagonalParityErasureCodeInstance(),
+                new ReplicationErasureCodeInstance()
         }).flatMap(erasureCodeInstance ->
                 IntStream.rangeClosed(0, erasureCodeInstance.getStripeSize() + erasureCodeInstance.getParitySize())
                         .boxed()
@@ -54,17 +65,15 @@ public class ErasureCodeTest {
     public void setup() {
         data = new int[sutWrapper.getStripeSize()];
         data2 = new int[sutWrapper.getStripeSize()];
-        byte[] bytesData = new byte[sutWrapper.getStripeSize()];
-        random.nextBytes(bytesData);
         for (int i = 0; i < sutWrapper.getStripeSize(); i++) {
-            data[i] = data2[i] = Byte.toUnsignedInt(bytesData[i]);
+            data[i] = data2[i] = random.nextInt(1 << sutWrapper.getSymbolSize());
         }
         parity = new int[sutWrapper.getParitySize()];
     }
 
     @Test
     public void testSymbolSize() {
-        Assert.assertEquals(8, sut.symbolSize());
+        Assert.assertEquals(sutWrapper.getSymbolSize(), sut.symbolSize());
     }
 
     @Test
@@ -75,6 +84,24 @@ public class ErasureCodeTest {
         checkData();
     }
 
+    @Test
+    public void testUpdateParity() {
+        if (numberOfErasures != 0) {
+            return;
+        }
+        sut.encode(data, parity);
+        for (int iteration = 0; iteration < 1000; iteration++) {
+            final int position = random.nextInt(data.length);
+            final int newValue = random.nextInt(1 << sutWrapper.getSymbolSize());
+            sut.updateParity(position, data[position], newValue, parity);
+            data[position] = newValue;
+
+            final int[] expectedParity = new int[parity.length];
+            sut.encode(data, expectedParity);
+            Assert.assertArrayEquals(expectedParity, parity);
+        }
+    }
+
     @Test
     public void testWithErasures() {
         sut.encode(data, parity);
@@ -118,6 +145,137 @@ public class ErasureCodeTest {
         }
     }
 
+    @Test
+    public void testLocationsToReadMask() {
+        sut.encode(data, parity);
+        final int[] codeword = mergeArrays(parity, data);
+        // Reused by all the iterations, as by FileEncoderDecoder
+        final BitSet erased = new BitSet();
+        final int[] locationsToRead = new int[codeword.length];
+        for (int iteration = 0; iteration < 1000; iteration++) {
+            final int[] erasures = generateErasures(numberOfErasures);
+            erased.clear();
+            for (int erasure : erasures) {
+                erased.set(erasure);
+            }
+            final int count;
+            try {
+                count = sut.locationsToReadForDecode(erased, locationsToRead);
+            } catch (TooManyErasedLocations e) {
+                Assert.assertFalse(erasures.length <= sutWrapper.getMaxErasures() &&
+                        !(sutWrapper instanceof SimpleRegeneratingErasureCodeInstance));
+                continue;
+            }
+            final int[] toRead = Arrays.copyOf(locationsToRead, count);
+            final int[] readData = new int[codeword.length];
+            for (int i = 0; i < count; i++) {
+                Assert.assertFalse(erased.get(toRead[i]));
+                Assert.assertTrue(i == 0 || toRead[i - 1] < toRead[i]);
+                readData[toRead[i]] = codeword[toRead[i]];
+            }
+
+            final int[] recoveredValues = new int[erasures.length];
+            sut.decode(readData, erasures, recoveredValues, toRead, fillNotToRead(IntArrayList.wrap(toRead)));
+            for (int e = 0; e < erasures.length; e++) {
+                Assert.assertEquals(codeword[erasures[e]], recoveredValues[e]);
+            }
+        }
+    }
+
+    @Test
+    public void testBulkWithErasures() {
+        if (numberOfErasures == 0) {
+            return;
+        }
+        final int bulkSize = 1000;
+        final int stripeSize = sutWrapper.getStripeSize();
+        final int paritySize = sutWrapper.getParitySize();
+        final byte[][] inputs = new byte[stripeSize][bulkSize];
+        final byte[][] outputs = new byte[paritySize][bulkSize];
+        final byte[][] original = new byte[stripeSize + paritySize][];
+        for (int i = 0; i < stripeSize; i++) {
+            random.nextBytes(inputs[i]);
+            original[paritySize + i] = inputs[i].clone();
+        }
+        sut.encodeBulk(inputs, outputs);
+        for (int i = 0; i < paritySize; i++) {
+            original[i] = outputs[i].clone();
+        }
+
+        for (int iteration = 0; iteration < 100; iteration++) {
+            int[] erasures = generateErasures(numberOfErasures);
+            final IntList locationsToReadForDecode;
+            try {
+                locationsToReadForDecode = sut.locationsToReadForDecode(Arrays.stream(erasures).boxed().collect(Collectors.toList()));
+                locationsToReadForDecode.sort(null);
+            } catch (TooManyErasedLocations e) {
+                continue;
+            }
+            final int[] locationsNotToRead = fillNotToRead(locationsToReadForDecode);
+            final byte[][] readBufs = new byte[stripeSize + paritySize][];
+            for (int i = 0; i < readBufs.length; i++) {
+                readBufs[i] = original[i].clone();
+            }
+            for (int ntr : locationsNotToRead) {
+                Arrays.fill(readBufs[ntr], (byte) 0);
+            }
+            final byte[][] writeBufs = new byte[erasures.length][bulkSize];
+
+            sut.decodeBulk(readBufs, writeBufs, erasures, locationsToReadForDecode.toIntArray(), locationsNotToRead);
+            for (int i = 0; i < erasures.length; i++) {
+                Assert.assertArrayEquals(original[erasures[i]], writeBufs[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelBulk() throws TooManyErasedLocations {
+        if (numberOfErasures != 1) {
+            return;
+        }
+        // Several tiles of a cache-sized working set, and a length not multiple of 8
+        final int bulkSize = 100002;
+        final int stripeSize = sutWrapper.getStripeSize();
+        final int paritySize = sutWrapper.getParitySize();
+        final byte[][] inputs = new byte[stripeSize][bulkSize];
+        for (byte[] input : inputs) {
+            random.nextBytes(input);
+        }
+        final byte[][] outputs = new byte[paritySize][bulkSize];
+        final byte[][] parallelOutputs = new byte[paritySize][bulkSize];
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            sut.encodeBulk(cloneBufs(inputs), outputs);
+            sut.encodeBulk(cloneBufs(inputs), parallelOutputs, pool);
+            for (int i = 0; i < paritySize; i++) {
+                Assert.assertArrayEquals(outputs[i], parallelOutputs[i]);
+            }
+
+            final byte[][] readBufs = new byte[stripeSize + paritySize][];
+            System.arraycopy(outputs, 0, readBufs, 0, paritySize);
+            System.arraycopy(inputs, 0, readBufs, paritySize, stripeSize);
+            final int[] erasures = generateErasures(numberOfErasures);
+            final IntList locationsToReadForDecode =
+                    sut.locationsToReadForDecode(Arrays.stream(erasures).boxed().collect(Collectors.toList()));
+            locationsToReadForDecode.sort(null);
+            final int[] locationsNotToRead = fillNotToRead(locationsToReadForDecode);
+            for (int ntr : locationsNotToRead) {
+                readBufs[ntr] = new byte[bulkSize];
+            }
+            final byte[][] writeBufs = new byte[erasures.length][bulkSize];
+            sut.decodeBulk(readBufs, writeBufs, erasures, locationsToReadForDecode.toIntArray(), locationsNotToRead,
+                    pool);
+            Assert.assertArrayEquals(erasures[0] < paritySize ? outputs[erasures[0]] : inputs[erasures[0] - paritySize],
+                    writeBufs[0]);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static byte[][] cloneBufs(byte[][] bufs) {
+        return Arrays.stream(bufs).map(byte[]::clone).toArray(byte[][]::new);
+    }
+
     private int[] fillNotToRead(IntList toReadForDecode) {
         final int totalSize = sutWrapper.getStripeSize() + sutWrapper.getParitySize();
 
@@ -160,7 +318,7 @@ public class ErasureCodeTest {
     }
 
     private int[] generateErasures(int amount) {
-        final int[] erasures = random.ints(250, 0, sutWrapper.getParitySize() + sutWrapper.getStripeSize())
+        final int[] erasures = random.ints(0, sutWrapper.getParitySize() + sutWrapper.getStripeSize())
                 .distinct().limit(amount)
                 .toArray();
         Assert.assertEquals(amount, erasures.length);
@@ -0,0 +1,147 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ *
+ */
+public class FountainCodeTest {
+    private static final Random random = new Random(161803398L);
+    private static final int STRIPE_SIZE = 10;
+    private static final int PARITY_SIZE = 4;
+    private final FountainCode sut = new FountainCode(STRIPE_SIZE, PARITY_SIZE);
+
+    @Test
+    public void testRepairSymbolsOnDemand() {
+        final int[] message = new int[STRIPE_SIZE];
+        for (int i = 0; i < STRIPE_SIZE; i++) {
+            message[i] = random.nextInt(256);
+        }
+        final int[] parity = new int[PARITY_SIZE];
+        sut.encode(message, parity);
+        for (int j = 0; j < PARITY_SIZE; j++) {
+            Assert.assertEquals(parity[j], sut.repairSymbol(message, j));
+        }
+
+        // Another instance with the same seed generates the same extra symbols
+        final FountainCode other = new FountainCode(STRIPE_SIZE, PARITY_SIZE, sut.getSeed());
+        for (int index = PARITY_SIZE; index < 100; index++) {
+            final int[] neighbors = sut.neighbors(index);
+            Assert.assertArrayEquals(neighbors, other.neighbors(index));
+            Assert.assertTrue(neighbors.length >= 1 && neighbors.length <= STRIPE_SIZE);
+            for (int n = 1; n < neighbors.length; n++) {
+                Assert.assertTrue(neighbors[n - 1] < neighbors[n]);
+            }
+            Assert.assertEquals(sut.repairSymbol(message, index), other.repairSymbol(message, index));
+        }
+    }
+
+    @Test
+    public void testRepairSymbolBulk() {
+        final byte[][] inputs = new byte[STRIPE_SIZE][1000];
+        for (byte[] input : inputs) {
+            random.nextBytes(input);
+        }
+        final int index = PARITY_SIZE + 7;
+        final byte[] output = new byte[1000];
+        sut.repairSymbolBulk(inputs, index, output);
+        final int[] message = new int[STRIPE_SIZE];
+        for (int column = 0; column < output.length; column++) {
+            for (int i = 0; i < STRIPE_SIZE; i++) {
+                message[i] = inputs[i][column] & 0xFF;
+            }
+            Assert.assertEquals(sut.repairSymbol(message, index), output[column] & 0xFF);
+        }
+    }
+
+    @Test
+    public void testSingleRepairReads() throws TooManyErasedLocations {
+        // A message block is peeled from the other neighbors of a repair symbol, a repair symbol from its neighbors
+        final int[] locationsToRead = new int[STRIPE_SIZE + PARITY_SIZE];
+        int totalReads = 0;
+        for (int location = 0; location < STRIPE_SIZE + PARITY_SIZE; location++) {
+            final BitSet erased = new BitSet();
+            erased.set(location);
+            final int count = sut.locationsToReadForDecode(erased, locationsToRead);
+            Assert.assertTrue(count <= STRIPE_SIZE);
+            if (location < PARITY_SIZE) {
+                Assert.assertEquals(sut.neighbors(location).length, count);
+            }
+            totalReads += count;
+        }
+        Assert.assertTrue(totalReads < STRIPE_SIZE * (STRIPE_SIZE + PARITY_SIZE));
+    }
+
+    @Test
+    public void testDecodeBeyondPeeling() {
+        // Every decodable pattern of 3 erasures, peeled or eliminated, against a full re-encoding
+        final int[] message = new int[STRIPE_SIZE];
+        for (int i = 0; i < STRIPE_SIZE; i++) {
+            message[i] = random.nextInt(256);
+        }
+        final int[] parity = new int[PARITY_SIZE];
+        sut.encode(message, parity);
+        final int[] codeword = new int[STRIPE_SIZE + PARITY_SIZE];
+        System.arraycopy(parity, 0, codeword, 0, PARITY_SIZE);
+        System.arraycopy(message, 0, codeword, PARITY_SIZE, STRIPE_SIZE);
+
+        int decodable = 0;
+        final int[] locationsToRead = new int[codeword.length];
+        for (int a = 0; a < codeword.length; a++) {
+            for (int b = a + 1; b < codeword.length; b++) {
+                for (int c = b + 1; c < codeword.length; c++) {
+                    final int[] erasedLocations = {a, b, c};
+                    final BitSet erased = new BitSet();
+                    erased.set(a);
+                    erased.set(b);
+                    erased.set(c);
+                    final int count;
+                    try {
+                        count = sut.locationsToReadForDecode(erased, locationsToRead);
+                    } catch (TooManyErasedLocations e) {
+                        continue;
+                    }
+                    decodable++;
+                    final int[] data = new int[codeword.length];
+                    for (int i = 0; i < count; i++) {
+                        data[locationsToRead[i]] = codeword[locationsToRead[i]];
+                    }
+                    final int[] erasedValues = new int[3];
+                    sut.decode(data, erasedLocations, erasedValues);
+                    for (int e = 0; e < 3; e++) {
+                        Assert.assertEquals(codeword[erasedLocations[e]], erasedValues[e]);
+                    }
+                }
+            }
+        }
+        Assert.assertTrue(decodable > 0);
+    }
+
+    @Test
+    public void testSeedIsDeterministic() {
+        Assert.assertEquals(sut.getSeed(), new FountainCode(STRIPE_SIZE, PARITY_SIZE).getSeed());
+        Assert.assertTrue(sut.getSeed() >= 0 && sut.getSeed() < FountainCode.SEED_CANDIDATES);
+        for (int j = 0; j < PARITY_SIZE; j++) {
+            Assert.assertArrayEquals(sut.neighbors(j), new FountainCode(STRIPE_SIZE, PARITY_SIZE).neighbors(j));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeIndex() {
+        sut.neighbors(-1);
+    }
+
+    @Test
+    public void testUpdateParityTouchesNeighborsOnly() {
+        final int[] parity = new int[PARITY_SIZE];
+        sut.updateParity(3, 0, 0xFF, parity);
+        for (int j = 0; j < PARITY_SIZE; j++) {
+            Assert.assertEquals(Arrays.binarySearch(sut.neighbors(j), 3) >= 0 ? 0xFF : 0, parity[j]);
+        }
+    }
+}
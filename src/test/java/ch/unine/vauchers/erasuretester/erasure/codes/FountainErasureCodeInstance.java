@@ -0,0 +1,33 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+/**
+ *
+ */
+public class FountainErasureCodeInstance extends ErasureCodeInstance {
+
+    @Override
+    public int getStripeSize() {
+        return 10;
+    }
+
+    @Override
+    public int getParitySize() {
+        return 4;
+    }
+
+    @Override
+    public int getMaxErasures() {
+        // Not MDS: some double erasures cannot be decoded
+        return 1;
+    }
+
+    @Override
+    protected FountainCode newSut() {
+        return new FountainCode(getStripeSize(), getParitySize());
+    }
+
+    @Override
+    public String toString() {
+        return "Fountain";
+    }
+}
@@ -0,0 +1,341 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ *
+ */
+public class GaloisFieldTest {
+    private static final Random random = new Random(5437809123L);
+    private final GaloisField gf = GaloisField.getInstance();
+
+    @Test
+    public void testMultiplyDivide() {
+        for (int x = 0; x < gf.getFieldSize(); x++) {
+            for (int y = 0; y < gf.getFieldSize(); y++) {
+                final int product = gf.multiply(x, y);
+                Assert.assertEquals(carrylessMultiply(gf, x, y), product);
+                if (y != 0) {
+                    Assert.assertEquals(x, gf.divide(product, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWideMultiplyDivide() {
+        final GaloisField wide = GaloisField.forSymbolSize(16);
+        Assert.assertEquals(16, wide.getSymbolSize());
+        for (int i = 0; i < 100000; i++) {
+            final int x = random.nextInt(wide.getFieldSize());
+            final int y = random.nextInt(wide.getFieldSize());
+            final int product = wide.multiply(x, y);
+            Assert.assertEquals(carrylessMultiply(wide, x, y), product);
+            if (y != 0) {
+                Assert.assertEquals(x, wide.divide(product, y));
+            }
+        }
+    }
+
+    @Test
+    public void testGetInstanceShared() {
+        Assert.assertSame(gf, GaloisField.getInstance());
+        Assert.assertSame(gf, GaloisField.getInstance(gf.getFieldSize(), gf.getPrimitivePolynomial()));
+        Assert.assertSame(gf, GaloisField.forSymbolSize(8));
+        Assert.assertSame(GaloisField.forSymbolSize(16), GaloisField.forSymbolSize(16));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedSymbolSize() {
+        GaloisField.forSymbolSize(12);
+    }
+
+    @Test
+    public void testWideRegions() {
+        final GaloisField wide = GaloisField.forSymbolSize(16);
+        final byte[] src = randomBytes(1002);
+        final byte[] initial = randomBytes(src.length);
+        for (boolean direct : new boolean[]{false, true}) {
+            for (int coef : new int[]{0, 1, 2, 0x8E, 0x1234, 0xFFFF}) {
+                final byte[] mul = new byte[src.length];
+                final byte[] acc = initial.clone();
+                wide.multiplyRegion(coef, src, mul);
+                wide.multiplyAccumulateRegion(coef, src, 0, acc, 0, src.length);
+
+                final ByteBuffer srcBuffer = allocate(direct, src.length);
+                srcBuffer.put(src).flip();
+                final ByteBuffer accBuffer = allocate(direct, src.length);
+                accBuffer.put(initial).flip();
+                wide.multiplyAccumulateRegion(coef, srcBuffer, accBuffer);
+
+                for (int i = 0; i < src.length; i += 2) {
+                    final int product = wide.multiply(coef, symbol(src, i));
+                    Assert.assertEquals(product, symbol(mul, i));
+                    Assert.assertEquals(product ^ symbol(initial, i), symbol(acc, i));
+                    Assert.assertEquals(product ^ symbol(initial, i), accBuffer.getShort(i) & 0xFFFF);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMultiplyRegion() {
+        final byte[] src = randomBytes(1003);
+        for (int coef = 0; coef < gf.getFieldSize(); coef++) {
+            final byte[] dst = new byte[src.length];
+            gf.multiplyRegion(coef, src, dst);
+            for (int i = 0; i < src.length; i++) {
+                Assert.assertEquals(gf.multiply(coef, Byte.toUnsignedInt(src[i])), Byte.toUnsignedInt(dst[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testMultiplyAccumulateRegionWithOffsets() {
+        final byte[] src = randomBytes(1003);
+        for (int coef = 0; coef < gf.getFieldSize(); coef++) {
+            final byte[] dst = randomBytes(src.length);
+            final byte[] expected = dst.clone();
+            for (int i = 3; i < 3 + 997; i++) {
+                expected[i + 2] ^= gf.multiply(coef, Byte.toUnsignedInt(src[i]));
+            }
+            gf.multiplyAccumulateRegion(coef, src, 3, dst, 5, 997);
+            Assert.assertArrayEquals(expected, dst);
+        }
+    }
+
+    @Test
+    public void testMultiplyKernels() {
+        for (GaloisField field : new GaloisField[]{gf, GaloisField.forSymbolSize(16)}) {
+            final int bytesPerSymbol = field.getSymbolSize() / 8;
+            final Map<String, RegionKernels.MultiplyKernel> kernels =
+                    RegionKernels.multiplyKernels(field, field.getSymbolSize() == 8 ? productRows(field) : null);
+            Assert.assertTrue(kernels.containsKey(field.getMultiplyKernelName()));
+            final byte[] src = randomBytes(1006);
+            // Odd offsets and a length that is not a multiple of a long word
+            final int length = 998;
+            for (int n = 0; n < 20; n++) {
+                final int coef = 2 + random.nextInt(field.getFieldSize() - 2);
+                final byte[] dst = randomBytes(src.length);
+                final byte[] expected = dst.clone();
+                for (int i = 0; i < length; i += bytesPerSymbol) {
+                    final int product = field.multiply(coef, symbolAt(src, 3 + i, bytesPerSymbol));
+                    setSymbolAt(expected, 5 + i, bytesPerSymbol, product ^ symbolAt(dst, 5 + i, bytesPerSymbol));
+                }
+                for (Map.Entry<String, RegionKernels.MultiplyKernel> kernel : kernels.entrySet()) {
+                    final byte[] accumulated = dst.clone();
+                    kernel.getValue().multiply(coef, src, 3, accumulated, 5, length, true);
+                    Assert.assertArrayEquals(kernel.getKey(), expected, accumulated);
+
+                    final byte[] multiplied = dst.clone();
+                    kernel.getValue().multiply(coef, src, 3, multiplied, 5, length, false);
+                    for (int i = 0; i < length; i += bytesPerSymbol) {
+                        Assert.assertEquals(kernel.getKey(), field.multiply(coef, symbolAt(src, 3 + i, bytesPerSymbol)),
+                                symbolAt(multiplied, 5 + i, bytesPerSymbol));
+                    }
+                    Assert.assertEquals(dst[4], multiplied[4]);
+                    Assert.assertEquals(dst[5 + length], multiplied[5 + length]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAddKernels() {
+        final byte[] src = randomBytes(1003);
+        final byte[] dst = randomBytes(src.length);
+        final byte[] expected = dst.clone();
+        for (int i = 0; i < 995; i++) {
+            expected[5 + i] ^= src[3 + i];
+        }
+        for (Map.Entry<String, RegionKernels.AddKernel> kernel : RegionKernels.addKernels().entrySet()) {
+            final byte[] sum = dst.clone();
+            kernel.getValue().add(src, 3, sum, 5, 995);
+            Assert.assertArrayEquals(kernel.getKey(), expected, sum);
+        }
+        Assert.assertTrue(RegionKernels.addKernels().containsKey(gf.getAddKernelName()));
+    }
+
+    @Test
+    public void testKernelProperties() {
+        // Fields that no other test creates, since the kernels are chosen when a field is created
+        System.setProperty(GaloisField.MULTIPLY_KERNEL_PROPERTY, "nibble");
+        System.setProperty(GaloisField.ADD_KERNEL_PROPERTY, "long");
+        final GaloisField forced;
+        final GaloisField unknown;
+        try {
+            // primitive polynomial 1 + X + X^3 + X^5 + X^8
+            forced = GaloisField.getInstance(256, 299);
+            System.setProperty(GaloisField.MULTIPLY_KERNEL_PROPERTY, "unknown");
+            // primitive polynomial 1 + X^3 + X^5 + X^6 + X^8
+            unknown = GaloisField.getInstance(256, 361);
+        } finally {
+            System.clearProperty(GaloisField.MULTIPLY_KERNEL_PROPERTY);
+            System.clearProperty(GaloisField.ADD_KERNEL_PROPERTY);
+        }
+        Assert.assertEquals("nibble", forced.getMultiplyKernelName());
+        Assert.assertEquals("long", forced.getAddKernelName());
+        Assert.assertTrue(RegionKernels.multiplyKernels(unknown, productRows(unknown))
+                .containsKey(unknown.getMultiplyKernelName()));
+
+        final byte[] src = randomBytes(1003);
+        for (GaloisField field : new GaloisField[]{forced, unknown}) {
+            final byte[] dst = new byte[src.length];
+            field.multiplyRegion(0x53, src, dst);
+            for (int i = 0; i < src.length; i++) {
+                Assert.assertEquals(carrylessMultiply(field, 0x53, Byte.toUnsignedInt(src[i])),
+                        Byte.toUnsignedInt(dst[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testByteBufferRegions() {
+        final byte[] src = randomBytes(1003);
+        final byte[] initial = randomBytes(src.length);
+        for (boolean direct : new boolean[]{false, true}) {
+            for (int coef = 0; coef < gf.getFieldSize(); coef++) {
+                final ByteBuffer srcBuffer = allocate(direct, src.length);
+                srcBuffer.put(src).flip();
+                final ByteBuffer mulBuffer = allocate(direct, src.length);
+                final ByteBuffer accBuffer = allocate(direct, src.length);
+                accBuffer.put(initial).flip();
+
+                gf.multiplyRegion(coef, srcBuffer, mulBuffer);
+                gf.multiplyAccumulateRegion(coef, srcBuffer, accBuffer);
+
+                Assert.assertEquals(0, srcBuffer.position());
+                for (int i = 0; i < src.length; i++) {
+                    final int product = gf.multiply(coef, Byte.toUnsignedInt(src[i]));
+                    Assert.assertEquals(product, Byte.toUnsignedInt(mulBuffer.get(i)));
+                    Assert.assertEquals(product ^ Byte.toUnsignedInt(initial[i]), Byte.toUnsignedInt(accBuffer.get(i)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testByteBufferRegionsMixedByteOrder() {
+        final byte[] src = randomBytes(1003);
+        final byte[] initial = randomBytes(src.length);
+        final ByteBuffer srcBuffer = ByteBuffer.allocateDirect(src.length).order(ByteOrder.LITTLE_ENDIAN);
+        srcBuffer.put(src).flip();
+        final ByteBuffer addBuffer = ByteBuffer.allocateDirect(src.length);
+        addBuffer.put(initial).flip();
+        final ByteBuffer mulBuffer = ByteBuffer.allocateDirect(src.length);
+
+        gf.addRegion(srcBuffer, addBuffer);
+        gf.multiplyRegion(0x8E, srcBuffer, mulBuffer);
+        for (int i = 0; i < src.length; i++) {
+            Assert.assertEquals(src[i] ^ initial[i], addBuffer.get(i));
+            Assert.assertEquals(gf.multiply(0x8E, Byte.toUnsignedInt(src[i])), Byte.toUnsignedInt(mulBuffer.get(i)));
+        }
+    }
+
+    @Test
+    public void testBulkSubstitute() {
+        final int length = 100;
+        final byte[][] p = new byte[14][];
+        for (int i = 0; i < p.length; i++) {
+            p[i] = randomBytes(length);
+        }
+        final int x = 29;
+        final byte[] q = new byte[length];
+        gf.substitute(p, q, x);
+
+        final int[] column = new int[p.length];
+        for (int j = 0; j < length; j++) {
+            for (int i = 0; i < p.length; i++) {
+                column[i] = Byte.toUnsignedInt(p[i][j]);
+            }
+            Assert.assertEquals(gf.substitute(column, x), Byte.toUnsignedInt(q[j]));
+        }
+    }
+
+    @Test
+    public void testInvertMatrix() {
+        final int n = 10;
+        final int[][] matrix = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                // Cauchy matrix, always invertible
+                matrix[i][j] = gf.divide(1, i ^ (n + j));
+            }
+        }
+        final int[][] inverse = gf.invertMatrix(matrix);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                int value = 0;
+                for (int k = 0; k < n; k++) {
+                    value ^= gf.multiply(matrix[i][k], inverse[k][j]);
+                }
+                Assert.assertEquals(i == j ? 1 : 0, value);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvertSingularMatrix() {
+        gf.invertMatrix(new int[][]{{1, 2}, {2, 4}});
+    }
+
+    // Reference multiplication: polynomial product over GF(2), reduced by the primitive polynomial
+    private static int carrylessMultiply(GaloisField field, int x, int y) {
+        final int symbolBits = field.getSymbolSize();
+        long product = 0;
+        for (int bit = 0; y >>> bit != 0; bit++) {
+            if ((y >>> bit & 1) != 0) {
+                product ^= (long) x << bit;
+            }
+        }
+        for (int bit = 63; bit >= symbolBits; bit--) {
+            if ((product >>> bit & 1) != 0) {
+                product ^= (long) field.getPrimitivePolynomial() << (bit - symbolBits);
+            }
+        }
+        return (int) product;
+    }
+
+    // The product rows of a field whose symbols fit in a byte: row c holds c * x for all x
+    private static byte[][] productRows(GaloisField field) {
+        final byte[][] rows = new byte[field.getFieldSize()][256];
+        for (int c = 0; c < field.getFieldSize(); c++) {
+            for (int x = 0; x < field.getFieldSize(); x++) {
+                rows[c][x] = (byte) field.multiply(c, x);
+            }
+        }
+        return rows;
+    }
+
+    private static int symbolAt(byte[] bytes, int offset, int bytesPerSymbol) {
+        return bytesPerSymbol == 1 ? bytes[offset] & 0xFF : symbol(bytes, offset);
+    }
+
+    private static void setSymbolAt(byte[] bytes, int offset, int bytesPerSymbol, int symbol) {
+        if (bytesPerSymbol == 2) {
+            bytes[offset++] = (byte) (symbol >>> 8);
+        }
+        bytes[offset] = (byte) symbol;
+    }
+
+    // 16-bit symbol stored most significant byte first
+    private static int symbol(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 8 | bytes[offset + 1] & 0xFF;
+    }
+
+    private static ByteBuffer allocate(boolean direct, int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static byte[] randomBytes(int length) {
+        final byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
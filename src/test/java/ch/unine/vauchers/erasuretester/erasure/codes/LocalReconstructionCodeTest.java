@@ -0,0 +1,85 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ *
+ */
+public class LocalReconstructionCodeTest {
+    private static final Random random = new Random(618033988L);
+    // LRC(12, 2, 2): local parities 0 and 1, global parities 2 and 3, groups of 6 message symbols
+    private final LocalReconstructionCode sut = new LocalReconstructionCode(12, 2, 2);
+
+    @Test
+    public void testSingleFailureReadsLocalGroup() throws TooManyErasedLocations {
+        for (int location = 0; location < 16; location++) {
+            final IntList locationsToRead = sut.locationsToReadForDecode(Collections.singletonList(location));
+            if (location == 2 || location == 3) {
+                Assert.assertEquals(12, locationsToRead.size());
+                continue;
+            }
+            // The local parity and the message symbols of the group, but the erased one
+            Assert.assertEquals(6, locationsToRead.size());
+            for (int read : locationsToRead) {
+                Assert.assertEquals(sut.localGroup(location), sut.localGroup(read));
+            }
+        }
+    }
+
+    @Test
+    public void testErasuresInBothGroupsStayLocal() throws TooManyErasedLocations {
+        Assert.assertEquals(12, sut.locationsToReadForDecode(Arrays.asList(4, 15)).size());
+        // Two erasures in one group need the global parities
+        final IntList locationsToRead = sut.locationsToReadForDecode(Arrays.asList(4, 5));
+        Assert.assertEquals(12, locationsToRead.size());
+        Assert.assertTrue(locationsToRead.contains(2) || locationsToRead.contains(3));
+    }
+
+    @Test
+    public void testLocalRepair() throws TooManyErasedLocations {
+        final int[] message = new int[12];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = random.nextInt(256);
+        }
+        final int[] parity = new int[4];
+        sut.encode(message, parity);
+        final int[] data = new int[16];
+        System.arraycopy(parity, 0, data, 0, 4);
+        System.arraycopy(message, 0, data, 4, 12);
+
+        final int[] erased = {7, 13};
+        final IntList locationsToRead = sut.locationsToReadForDecode(Arrays.asList(7, 13));
+        final int[] readData = new int[16];
+        for (int read : locationsToRead) {
+            readData[read] = data[read];
+        }
+        final int[] erasedValues = new int[erased.length];
+        sut.decode(readData, erased, erasedValues, locationsToRead.toIntArray(), null);
+        Assert.assertArrayEquals(new int[]{data[7], data[13]}, erasedValues);
+    }
+
+    @Test
+    public void testRepairReadsBelowReedSolomon() throws TooManyErasedLocations {
+        final ReedSolomonCode reedSolomon = new ReedSolomonCode(12, 4);
+        int lrcReads = 0;
+        int reedSolomonReads = 0;
+        for (int location = 0; location < 16; location++) {
+            lrcReads += sut.locationsToReadForDecode(Collections.singletonList(location)).size();
+            reedSolomonReads += reedSolomon.locationsToReadForDecode(Collections.singletonList(location)).size();
+        }
+        Assert.assertEquals(16 * 12, reedSolomonReads);
+        Assert.assertEquals(14 * 6 + 2 * 12, lrcReads);
+    }
+
+    @Test(expected = TooManyErasedLocations.class)
+    public void testTooManyErasures() throws TooManyErasedLocations {
+        // A whole local group with its parity: 7 erasures for 4 parities
+        sut.locationsToReadForDecode(Arrays.asList(0, 4, 5, 6, 7, 8, 9));
+    }
+}
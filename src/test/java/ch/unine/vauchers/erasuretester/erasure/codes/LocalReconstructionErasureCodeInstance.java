@@ -0,0 +1,33 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+/**
+ *
+ */
+public class LocalReconstructionErasureCodeInstance extends ErasureCodeInstance {
+
+    @Override
+    public int getStripeSize() {
+        return 12;
+    }
+
+    @Override
+    public int getParitySize() {
+        return 4;
+    }
+
+    @Override
+    public int getMaxErasures() {
+        // Any r + 1 erasures of LRC(12, 2, 2)
+        return 3;
+    }
+
+    @Override
+    protected LocalReconstructionCode newSut() {
+        return new LocalReconstructionCode(getStripeSize(), 2, 2);
+    }
+
+    @Override
+    public String toString() {
+        return "LocalReconstruction";
+    }
+}
@@ -0,0 +1,32 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+/**
+ *
+ */
+public class MatrixReedSolomonErasureCodeInstance extends ErasureCodeInstance {
+
+    @Override
+    public int getStripeSize() {
+        return 10;
+    }
+
+    @Override
+    public int getParitySize() {
+        return 4;
+    }
+
+    @Override
+    public int getMaxErasures() {
+        return getParitySize();
+    }
+
+    @Override
+    protected MatrixReedSolomonCode newSut() {
+        return new MatrixReedSolomonCode(getStripeSize(), getParitySize());
+    }
+
+    @Override
+    public String toString() {
+        return "MatrixReedSolomon";
+    }
+}
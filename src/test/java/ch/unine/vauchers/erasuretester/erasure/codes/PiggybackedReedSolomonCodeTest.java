@@ -0,0 +1,72 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ *
+ */
+public class PiggybackedReedSolomonCodeTest {
+    private static final Random random = new Random(141421356L);
+    // 10 data nodes and 4 parity nodes: locations 0-3 and 4-7 are the a and b parities, 8-17 and 18-27 the a and b
+    // message symbols. The data nodes are in groups of 4, 3 and 3.
+    private final PiggybackedReedSolomonCode sut = new PiggybackedReedSolomonCode(10, 4);
+
+    @Test
+    public void testNodes() {
+        Assert.assertEquals(20, sut.stripeSize());
+        Assert.assertEquals(8, sut.paritySize());
+        Assert.assertEquals(1, sut.node(1));
+        Assert.assertEquals(1, sut.node(5));
+        Assert.assertEquals(4, sut.node(8));
+        Assert.assertEquals(4, sut.node(18));
+    }
+
+    @Test
+    public void testDataNodeRepairReads() throws TooManyErasedLocations {
+        // k symbols of substripe b, the piggybacked parity and the other a symbols of the group
+        Assert.assertEquals(10 + 4, sut.locationsToReadForDecode(Arrays.asList(8, 18)).size());
+        Assert.assertEquals(10 + 3, sut.locationsToReadForDecode(Arrays.asList(17, 27)).size());
+        // A parity node is repaired like RS
+        Assert.assertEquals(20, sut.locationsToReadForDecode(Arrays.asList(2, 6)).size());
+        // A single symbol from its substripe
+        Assert.assertEquals(10, sut.locationsToReadForDecode(Collections.singletonList(12)).size());
+        Assert.assertEquals(10, sut.locationsToReadForDecode(Collections.singletonList(22)).size());
+    }
+
+    @Test
+    public void testDataNodeRepair() throws TooManyErasedLocations {
+        final int[] message = new int[20];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = random.nextInt(256);
+        }
+        final int[] parity = new int[8];
+        sut.encode(message, parity);
+        final int[] data = new int[28];
+        System.arraycopy(parity, 0, data, 0, 8);
+        System.arraycopy(message, 0, data, 8, 20);
+
+        for (int node = 4; node < 14; node++) {
+            final int[] erased = {node + 4, node + 14};
+            final IntList locationsToRead = sut.locationsToReadForDecode(Arrays.asList(node + 4, node + 14));
+            final int[] readData = new int[28];
+            for (int read : locationsToRead) {
+                readData[read] = data[read];
+            }
+            final int[] erasedValues = new int[erased.length];
+            sut.decode(readData, erased, erasedValues, locationsToRead.toIntArray(), null);
+            Assert.assertArrayEquals(new int[]{data[node + 4], data[node + 14]}, erasedValues);
+        }
+    }
+
+    @Test(expected = TooManyErasedLocations.class)
+    public void testTooManyLostNodes() throws TooManyErasedLocations {
+        // 5 nodes for 4 parity nodes
+        sut.locationsToReadForDecode(Arrays.asList(0, 4, 8, 18, 9, 19, 10, 20, 11, 21));
+    }
+}
@@ -0,0 +1,33 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+/**
+ *
+ */
+public class PiggybackedReedSolomonErasureCodeInstance extends ErasureCodeInstance {
+
+    @Override
+    public int getStripeSize() {
+        return 10;
+    }
+
+    @Override
+    public int getParitySize() {
+        return 6;
+    }
+
+    @Override
+    public int getMaxErasures() {
+        // Any 3 lost nodes, each one holding 2 locations
+        return 3;
+    }
+
+    @Override
+    protected PiggybackedReedSolomonCode newSut() {
+        return new PiggybackedReedSolomonCode(5, 3);
+    }
+
+    @Override
+    public String toString() {
+        return "PiggybackedReedSolomon";
+    }
+}
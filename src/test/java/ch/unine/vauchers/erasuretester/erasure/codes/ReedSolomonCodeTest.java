@@ -0,0 +1,218 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ *
+ */
+public class ReedSolomonCodeTest {
+    private static final Random random = new Random(577215664L);
+    private static final int STRIPE_SIZE = 10;
+    private static final int PARITY_SIZE = 4;
+    private static final int LENGTH = STRIPE_SIZE + PARITY_SIZE;
+    private final ReedSolomonCode sut = new ReedSolomonCode(STRIPE_SIZE, PARITY_SIZE);
+    private final ReedSolomonCode wide = new ReedSolomonCode(STRIPE_SIZE, PARITY_SIZE, GaloisField.forSymbolSize(16));
+
+    @Test
+    public void testCorrectErrors() {
+        // errors, erasures: 2e + f <= 4
+        for (int[] counts : new int[][]{{0, 0}, {1, 0}, {2, 0}, {0, 4}, {1, 2}, {1, 1}, {0, 3}}) {
+            for (int round = 0; round < 50; round++) {
+                checkCorrectErrors(sut, counts[0], counts[1]);
+                checkCorrectErrors(wide, counts[0], counts[1]);
+            }
+        }
+    }
+
+    private static void checkCorrectErrors(ReedSolomonCode code, int errorCount, int erasureCount) {
+        final int[] codeword = randomCodeword(code);
+        final int[] data = codeword.clone();
+        final int[] shuffled = shuffledLocations();
+        final BitSet errors = new BitSet();
+        final BitSet erased = new BitSet();
+        for (int i = 0; i < errorCount; i++) {
+            errors.set(shuffled[i]);
+            data[shuffled[i]] ^= 1 + random.nextInt(fieldSize(code) - 1);
+        }
+        for (int i = errorCount; i < errorCount + erasureCount; i++) {
+            erased.set(shuffled[i]);
+            data[shuffled[i]] = random.nextInt(fieldSize(code));
+        }
+
+        final int[] errorLocations = new int[PARITY_SIZE];
+        final int count = code.correctErrors(data, erased, errorLocations);
+        Assert.assertEquals(errorCount, count);
+        Assert.assertArrayEquals(errors.stream().toArray(), Arrays.copyOf(errorLocations, count));
+        Assert.assertArrayEquals(codeword, data);
+    }
+
+    @Test
+    public void testDetectErrorsBeyondCapacity() {
+        for (int round = 0; round < 200; round++) {
+            final int[] codeword = randomCodeword(sut);
+            final int[] data = codeword.clone();
+            final int[] shuffled = shuffledLocations();
+            for (int i = 0; i < 3; i++) {
+                data[shuffled[i]] ^= 1 + random.nextInt(fieldSize(sut) - 1);
+            }
+            // 3 errors are either detected, or mistaken for another codeword, but never corrected
+            final int count = sut.correctErrors(data, new BitSet(), new int[PARITY_SIZE]);
+            if (count >= 0) {
+                Assert.assertFalse(Arrays.equals(codeword, data));
+            }
+        }
+    }
+
+    @Test
+    public void testComputeErrorLocations() {
+        final int[] codeword = randomCodeword(sut);
+        final int[] data = codeword.clone();
+        data[3] ^= 0x5A;
+        data[12] ^= 0x01;
+        final Set<Integer> errorLocations = new HashSet<>();
+        Assert.assertTrue(sut.computeErrorLocations(data, errorLocations));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(3, 12)), errorLocations);
+        Assert.assertArrayEquals(codeword, data);
+    }
+
+    @Test
+    public void testBulkStaleBlock() {
+        // A block that is entirely stale, and an erased one
+        for (ReedSolomonCode code : Arrays.asList(sut, wide)) {
+            final byte[][] blocks = randomBlocks(code, 4096);
+            final byte[][] original = copy(blocks);
+            random.nextBytes(blocks[6]);
+            Arrays.fill(blocks[11], (byte) 0);
+            final BitSet erased = new BitSet();
+            erased.set(11);
+            final BitSet corrupted = new BitSet();
+
+            Assert.assertTrue(code.correctErrorsBulk(blocks, erased, corrupted));
+            Assert.assertEquals(Collections.singletonList(6), corrupted.stream().boxed().collect(Collectors.toList()));
+            assertBlocksEqual(original, blocks);
+        }
+    }
+
+    @Test
+    public void testBulkStaleBlockOfEachLength() {
+        // The buffers of a thread follow the length of the blocks, and do not leak the previous stripes
+        for (int length : new int[]{4096, 1000, 4096, 2}) {
+            final byte[][] blocks = randomBlocks(sut, length);
+            final byte[][] original = copy(blocks);
+            random.nextBytes(blocks[2]);
+            blocks[2][0] = (byte) ~original[2][0];
+            final BitSet erased = new BitSet();
+            erased.set(5);
+            erased.set(13);
+            random.nextBytes(blocks[5]);
+            final BitSet corrupted = new BitSet();
+
+            Assert.assertTrue(sut.correctErrorsBulk(blocks, erased, corrupted));
+            Assert.assertEquals(Collections.singletonList(2), corrupted.stream().boxed().collect(Collectors.toList()));
+            assertBlocksEqual(original, blocks);
+        }
+    }
+
+    @Test
+    public void testBulkScatteredErrors() {
+        // Two corrupted symbols per column at most, in different blocks
+        for (ReedSolomonCode code : Arrays.asList(sut, wide)) {
+            final int bytesPerSymbol = code.symbolSize() / 8;
+            final byte[][] blocks = randomBlocks(code, 4096);
+            final byte[][] original = copy(blocks);
+            final BitSet expected = new BitSet();
+            for (int column = 0; column < 4096; column += 37 * bytesPerSymbol) {
+                final int[] shuffled = shuffledLocations();
+                for (int i = 0; i < 2; i++) {
+                    blocks[shuffled[i]][column] ^= 1 + random.nextInt(255);
+                    expected.set(shuffled[i]);
+                }
+            }
+            final BitSet corrupted = new BitSet();
+
+            Assert.assertTrue(code.correctErrorsBulk(blocks, new BitSet(), corrupted));
+            Assert.assertEquals(expected, corrupted);
+            assertBlocksEqual(original, blocks);
+        }
+    }
+
+    @Test
+    public void testBulkIntactStripe() {
+        final byte[][] blocks = randomBlocks(sut, 1000);
+        final byte[][] original = copy(blocks);
+        final BitSet corrupted = new BitSet();
+        Assert.assertTrue(sut.correctErrorsBulk(blocks, new BitSet(), corrupted));
+        Assert.assertTrue(corrupted.isEmpty());
+        assertBlocksEqual(original, blocks);
+    }
+
+    @Test
+    public void testBulkTooManyErrors() {
+        final byte[][] blocks = randomBlocks(sut, 1000);
+        final BitSet erased = new BitSet();
+        erased.set(0, 3);
+        random.nextBytes(blocks[8]);
+        random.nextBytes(blocks[9]);
+        Assert.assertFalse(sut.correctErrorsBulk(blocks, erased, new BitSet()));
+    }
+
+    private static int fieldSize(ReedSolomonCode code) {
+        return 1 << code.symbolSize();
+    }
+
+    private static int[] randomCodeword(ReedSolomonCode code) {
+        final int[] message = new int[STRIPE_SIZE];
+        for (int i = 0; i < STRIPE_SIZE; i++) {
+            message[i] = random.nextInt(fieldSize(code));
+        }
+        final int[] parity = new int[PARITY_SIZE];
+        code.encode(message, parity);
+        final int[] codeword = new int[LENGTH];
+        System.arraycopy(parity, 0, codeword, 0, PARITY_SIZE);
+        System.arraycopy(message, 0, codeword, PARITY_SIZE, STRIPE_SIZE);
+        return codeword;
+    }
+
+    private static byte[][] randomBlocks(ReedSolomonCode code, int length) {
+        final byte[][] blocks = new byte[LENGTH][length];
+        for (int i = PARITY_SIZE; i < LENGTH; i++) {
+            random.nextBytes(blocks[i]);
+        }
+        // The bulk encoding may modify its inputs
+        code.encodeBulk(copy(Arrays.copyOfRange(blocks, PARITY_SIZE, LENGTH)), Arrays.copyOf(blocks, PARITY_SIZE));
+        return blocks;
+    }
+
+    private static int[] shuffledLocations() {
+        final int[] locations = new int[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            final int j = random.nextInt(i + 1);
+            locations[i] = locations[j];
+            locations[j] = i;
+        }
+        return locations;
+    }
+
+    private static byte[][] copy(byte[][] blocks) {
+        final byte[][] copy = new byte[blocks.length][];
+        for (int i = 0; i < blocks.length; i++) {
+            copy[i] = blocks[i].clone();
+        }
+        return copy;
+    }
+
+    private static void assertBlocksEqual(byte[][] expected, byte[][] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertArrayEquals("Block " + i, expected[i], actual[i]);
+        }
+    }
+}
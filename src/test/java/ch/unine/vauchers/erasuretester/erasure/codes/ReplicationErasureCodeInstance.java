@@ -0,0 +1,32 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+/**
+ *
+ */
+public class ReplicationErasureCodeInstance extends ErasureCodeInstance {
+
+    @Override
+    public int getStripeSize() {
+        return 1;
+    }
+
+    @Override
+    public int getParitySize() {
+        return 2;
+    }
+
+    @Override
+    public int getMaxErasures() {
+        return getParitySize();
+    }
+
+    @Override
+    protected ReplicationCode newSut() {
+        return new ReplicationCode(getStripeSize() + getParitySize());
+    }
+
+    @Override
+    public String toString() {
+        return "Replication";
+    }
+}
@@ -0,0 +1,136 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ *
+ */
+public class RowDiagonalParityCodeTest {
+    private static final Random random = new Random(141421356L);
+    private static final int ROWS = 16;
+    private static final int PARITY_SIZE = 2;
+
+    @Test
+    public void testOptimalXorCounts() throws TooManyErasedLocations {
+        // With 16 message blocks, each parity or repaired packet is the XOR of 16 packets
+        final RowDiagonalParityCode sut = new RowDiagonalParityCode(ROWS);
+        final int xorsPerBlock = ROWS * (ROWS - 1);
+        Assert.assertEquals(PARITY_SIZE * xorsPerBlock, sut.encodeXorCount());
+        for (int a = PARITY_SIZE; a < ROWS + PARITY_SIZE; a++) {
+            Assert.assertEquals(xorsPerBlock, sut.decodeXorCount(new int[]{a}));
+            for (int b = a + 1; b < ROWS + PARITY_SIZE; b++) {
+                Assert.assertEquals(PARITY_SIZE * xorsPerBlock, sut.decodeXorCount(new int[]{a, b}));
+            }
+        }
+    }
+
+    @Test
+    public void testAllDoubleErasures() throws TooManyErasedLocations {
+        for (int stripeSize : new int[]{1, 3, 10, ROWS}) {
+            final RowDiagonalParityCode sut = new RowDiagonalParityCode(stripeSize);
+            final int totalSize = stripeSize + PARITY_SIZE;
+            final int[] codeword = randomCodeword(sut);
+            // A length not multiple of 16, whose last bytes are coded symbol by symbol
+            final byte[][] blocks = randomBlocks(sut, 16 * 63 + 6);
+            for (int a = 0; a < totalSize; a++) {
+                for (int b = a; b < totalSize; b++) {
+                    final int[] erasedLocations = a == b ? new int[]{a} : new int[]{b, a};
+                    checkDecode(sut, codeword, blocks, erasedLocations);
+                }
+            }
+        }
+    }
+
+    private static void checkDecode(RowDiagonalParityCode sut, int[] codeword, byte[][] blocks, int[] erasedLocations)
+            throws TooManyErasedLocations {
+        final BitSet erased = new BitSet();
+        for (int location : erasedLocations) {
+            erased.set(location);
+        }
+        final int[] locationsToRead = new int[codeword.length];
+        final int count = sut.locationsToReadForDecode(erased, locationsToRead);
+        Assert.assertEquals(sut.stripeSize(), count);
+        final int[] toRead = Arrays.copyOf(locationsToRead, count);
+        final BitSet notRead = new BitSet();
+        notRead.set(0, codeword.length);
+        for (int location : toRead) {
+            notRead.clear(location);
+        }
+        final int[] notToRead = notRead.stream().toArray();
+
+        final int[] data = new int[codeword.length];
+        for (int location : toRead) {
+            data[location] = codeword[location];
+        }
+        final int[] erasedValues = new int[erasedLocations.length];
+        sut.decode(data, erasedLocations, erasedValues, toRead, notToRead);
+        final byte[][] readBufs = new byte[codeword.length][];
+        for (int location : toRead) {
+            readBufs[location] = blocks[location];
+        }
+        final byte[][] writeBufs = new byte[erasedLocations.length][blocks[0].length];
+        sut.decodeBulk(readBufs, writeBufs, erasedLocations, toRead, notToRead);
+        for (int e = 0; e < erasedLocations.length; e++) {
+            Assert.assertEquals(codeword[erasedLocations[e]], erasedValues[e]);
+            Assert.assertArrayEquals(blocks[erasedLocations[e]], writeBufs[e]);
+        }
+    }
+
+    @Test
+    public void testReusedScratch() throws TooManyErasedLocations {
+        // The patterns alternate, and the buffers grow: the diagonal parity solves the row parity in a spare buffer
+        final RowDiagonalParityCode sut = new RowDiagonalParityCode(10);
+        final int[] codeword = randomCodeword(sut);
+        for (int length : new int[]{16 * 4, 16 * 63 + 6, 16 * 4, 16 * 200}) {
+            final byte[][] blocks = randomBlocks(sut, length);
+            checkDecode(sut, codeword, blocks, new int[]{1});
+            checkDecode(sut, codeword, blocks, new int[]{5});
+            checkDecode(sut, codeword, blocks, new int[]{1});
+        }
+    }
+
+    @Test
+    public void testTooManyErasures() {
+        final RowDiagonalParityCode sut = new RowDiagonalParityCode(10);
+        final BitSet erased = new BitSet();
+        erased.set(3, 6);
+        try {
+            sut.locationsToReadForDecode(erased, new int[12]);
+            Assert.fail();
+        } catch (TooManyErasedLocations e) {
+            // Expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStripeTooLarge() {
+        new RowDiagonalParityCode(ROWS + 1);
+    }
+
+    private static int[] randomCodeword(RowDiagonalParityCode code) {
+        final int[] message = new int[code.stripeSize()];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = random.nextInt(1 << code.symbolSize());
+        }
+        final int[] parity = new int[PARITY_SIZE];
+        code.encode(message, parity);
+        final int[] codeword = new int[PARITY_SIZE + message.length];
+        System.arraycopy(parity, 0, codeword, 0, PARITY_SIZE);
+        System.arraycopy(message, 0, codeword, PARITY_SIZE, message.length);
+        return codeword;
+    }
+
+    private static byte[][] randomBlocks(RowDiagonalParityCode code, int length) {
+        final byte[][] blocks = new byte[PARITY_SIZE + code.stripeSize()][length];
+        for (int i = PARITY_SIZE; i < blocks.length; i++) {
+            random.nextBytes(blocks[i]);
+        }
+        code.encodeBulk(Arrays.copyOfRange(blocks, PARITY_SIZE, blocks.length), Arrays.copyOf(blocks, PARITY_SIZE));
+        return blocks;
+    }
+}
@@ -0,0 +1,37 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+/**
+ *
+ */
+public class RowDiagonalParityErasureCodeInstance extends ErasureCodeInstance {
+
+    @Override
+    public int getStripeSize() {
+        return 10;
+    }
+
+    @Override
+    public int getParitySize() {
+        return 2;
+    }
+
+    @Override
+    public int getMaxErasures() {
+        return getParitySize();
+    }
+
+    @Override
+    public int getSymbolSize() {
+        return 16;
+    }
+
+    @Override
+    protected RowDiagonalParityCode newSut() {
+        return new RowDiagonalParityCode(getStripeSize());
+    }
+
+    @Override
+    public String toString() {
+        return "RowDiagonalParity";
+    }
+}
@@ -0,0 +1,96 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ *
+ */
+public class SimpleRegeneratingCodeTest {
+    private static final Random random = new Random(271828182L);
+    private static final int STRIPE_SIZE = 10;
+    private static final int PARITY_SIZE = 6;
+    private final SimpleRegeneratingCode sut = new SimpleRegeneratingCode(STRIPE_SIZE, PARITY_SIZE, 5);
+
+    @Test
+    public void testBulkMatchesEncode() {
+        checkBulkMatchesEncode(sut, 1);
+        checkBulkMatchesEncode(new SimpleRegeneratingCode(STRIPE_SIZE, PARITY_SIZE, 5, GaloisField.forSymbolSize(16)), 2);
+    }
+
+    private static void checkBulkMatchesEncode(SimpleRegeneratingCode code, int bytesPerSymbol) {
+        final int length = 1000 * bytesPerSymbol;
+        final byte[][] inputs = new byte[STRIPE_SIZE][length];
+        for (byte[] input : inputs) {
+            random.nextBytes(input);
+        }
+        final byte[][] inputsBefore = new byte[STRIPE_SIZE][];
+        for (int i = 0; i < STRIPE_SIZE; i++) {
+            inputsBefore[i] = inputs[i].clone();
+        }
+        final byte[][] outputs = new byte[PARITY_SIZE][length];
+        code.encodeBulk(inputs, outputs);
+        for (int i = 0; i < STRIPE_SIZE; i++) {
+            Assert.assertArrayEquals(inputsBefore[i], inputs[i]);
+        }
+
+        final int[] message = new int[STRIPE_SIZE];
+        final int[] parity = new int[PARITY_SIZE];
+        for (int column = 0; column < length; column += bytesPerSymbol) {
+            for (int i = 0; i < STRIPE_SIZE; i++) {
+                message[i] = symbolAt(inputs[i], column, bytesPerSymbol);
+            }
+            code.encode(message, parity);
+            for (int j = 0; j < PARITY_SIZE; j++) {
+                Assert.assertEquals(parity[j], symbolAt(outputs[j], column, bytesPerSymbol));
+            }
+        }
+    }
+
+    private static int symbolAt(byte[] buffer, int offset, int bytesPerSymbol) {
+        int symbol = 0;
+        for (int b = 0; b < bytesPerSymbol; b++) {
+            symbol = symbol << 8 | buffer[offset + b] & 0xFF;
+        }
+        return symbol;
+    }
+
+    @Test
+    public void testBulkRepairFromGroups() throws TooManyErasedLocations {
+        final byte[][] blocks = new byte[STRIPE_SIZE + PARITY_SIZE][4096];
+        final byte[][] inputs = Arrays.copyOfRange(blocks, PARITY_SIZE, STRIPE_SIZE + PARITY_SIZE);
+        for (byte[] input : inputs) {
+            random.nextBytes(input);
+        }
+        sut.encodeBulk(inputs, Arrays.copyOf(blocks, PARITY_SIZE));
+
+        // The groups are the SRC parity i with the locations 5 + 2i and 6 + 2i.
+        // A single erasure, then erasures in distinct groups, then a group parity with a location of its group.
+        for (int[] erasedLocations : new int[][]{{7}, {0, 8, 14}, {1, 7}}) {
+            final BitSet erased = new BitSet();
+            for (int location : erasedLocations) {
+                erased.set(location);
+            }
+            final int[] locations = new int[blocks.length];
+            final int[] locationsToRead = Arrays.copyOf(locations, sut.locationsToReadForDecode(erased, locations));
+            final BitSet notRead = new BitSet();
+            notRead.set(0, blocks.length);
+            for (int location : locationsToRead) {
+                notRead.clear(location);
+            }
+            final byte[][] readBufs = new byte[blocks.length][];
+            for (int location : locationsToRead) {
+                readBufs[location] = blocks[location];
+            }
+            final byte[][] writeBufs = new byte[erasedLocations.length][4096];
+            sut.decodeBulk(readBufs, writeBufs, erasedLocations, locationsToRead, notRead.stream().toArray());
+            for (int e = 0; e < erasedLocations.length; e++) {
+                Assert.assertArrayEquals(blocks[erasedLocations[e]], writeBufs[e]);
+            }
+        }
+    }
+}
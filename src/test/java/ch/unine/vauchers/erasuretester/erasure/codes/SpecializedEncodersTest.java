@@ -0,0 +1,91 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ *
+ */
+public class SpecializedEncodersTest {
+    private static final Random random = new Random(161803398L);
+
+    @Test
+    public void testGeneratedEncodersMatchCodes() {
+        checkMatchesGeneric("ReedSolomon", 10, 4);
+        checkMatchesGeneric("SimpleRegenerating", 10, 6, 5);
+    }
+
+    private static void checkMatchesGeneric(String family, int... parameters) {
+        final ErasureCode generic;
+        System.setProperty(SpecializedEncoders.PROPERTY, "false");
+        try {
+            generic = EncoderGenerator.code(family, parameters);
+        } finally {
+            System.clearProperty(SpecializedEncoders.PROPERTY);
+        }
+        final ErasureCode code = EncoderGenerator.code(family, parameters);
+        final SpecializedEncoders.Encoder encoder = SpecializedEncoders.find(family, parameters,
+                GaloisField.getInstance(), generic.parityColumns());
+        // Null when the generated source is missing or out of date: run ./gradlew generateEncoders
+        Assert.assertNotNull(encoder);
+
+        final int[] message = new int[code.stripeSize()];
+        final int[] expected = new int[code.paritySize()];
+        final int[] parity = new int[code.paritySize()];
+        for (int n = 0; n < 1000; n++) {
+            for (int i = 0; i < message.length; i++) {
+                message[i] = random.nextInt(256);
+            }
+            generic.encode(message, expected);
+            code.encode(message, parity);
+            Assert.assertArrayEquals(expected, parity);
+        }
+
+        final byte[][] inputs = new byte[code.stripeSize()][1003];
+        for (byte[] input : inputs) {
+            random.nextBytes(input);
+        }
+        final byte[][] inputsBefore = new byte[inputs.length][];
+        for (int i = 0; i < inputs.length; i++) {
+            inputsBefore[i] = inputs[i].clone();
+        }
+        final byte[][] outputs = new byte[code.paritySize()][1003];
+        code.encodeBulk(inputs, outputs);
+        for (int i = 0; i < inputs.length; i++) {
+            Assert.assertArrayEquals(inputsBefore[i], inputs[i]);
+        }
+        final byte[][] expectedOutputs = new byte[code.paritySize()][1003];
+        generic.encodeBulk(inputs, expectedOutputs);
+        for (int j = 0; j < outputs.length; j++) {
+            Assert.assertArrayEquals(expectedOutputs[j], outputs[j]);
+        }
+    }
+
+    @Test
+    public void testNoEncoderForOtherConfigurations() {
+        final int[][] parityColumns = new ReedSolomonCode(12, 4).parityColumns();
+        Assert.assertNull(SpecializedEncoders.find("ReedSolomon", new int[]{12, 4}, GaloisField.getInstance(),
+                parityColumns));
+        // Other coefficients than those the encoder was generated with
+        Assert.assertNull(SpecializedEncoders.find("ReedSolomon", new int[]{10, 4}, GaloisField.getInstance(),
+                new int[10][4]));
+        Assert.assertNull(SpecializedEncoders.find("ReedSolomon", new int[]{10, 4}, GaloisField.forSymbolSize(16),
+                new ReedSolomonCode(10, 4, GaloisField.forSymbolSize(16)).parityColumns()));
+    }
+
+    @Test
+    public void testPlanStartsFromSimilarParity() {
+        // Parity 0 is parity 1 plus the message symbol 0, parity 2 shares nothing with the others
+        final int[][] parityColumns = {{0, 1, 0}, {1, 1, 0}, {1, 1, 0}, {1, 1, 7}};
+        final int[] order = new int[3];
+        final int[] bases = new int[3];
+        final int[][] terms = EncoderGenerator.plan(parityColumns, order, bases);
+        Assert.assertArrayEquals(new int[]{1, 0, 2}, order);
+        Assert.assertArrayEquals(new int[]{1, -1, -1}, bases);
+        Assert.assertArrayEquals(new int[]{1, 0, 0, 0}, terms[0]);
+        Assert.assertArrayEquals(new int[]{1, 1, 1, 1}, terms[1]);
+        Assert.assertArrayEquals(new int[]{0, 0, 0, 7}, terms[2]);
+    }
+}
@@ -0,0 +1,27 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+/**
+ *
+ */
+public class WideReedSolomonErasureCodeInstance extends ReedSolomonErasureCodeInstance {
+
+    @Override
+    public int getStripeSize() {
+        return 20;
+    }
+
+    @Override
+    public int getSymbolSize() {
+        return 16;
+    }
+
+    @Override
+    protected ReedSolomonCode newSut() {
+        return new ReedSolomonCode(getStripeSize(), getParitySize(), GaloisField.forSymbolSize(getSymbolSize()));
+    }
+
+    @Override
+    public String toString() {
+        return "ReedSolomon GF(2^16)";
+    }
+}
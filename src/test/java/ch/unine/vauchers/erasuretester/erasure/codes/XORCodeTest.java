@@ -0,0 +1,77 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ *
+ */
+public class XORCodeTest {
+    private static final Random random = new Random(2309854712L);
+    private static final int STRIPE_SIZE = 5;
+    private static final int BULK_SIZE = 1003;
+    private final XORCode sut = new XORCode(STRIPE_SIZE, 1);
+
+    @Test
+    public void testByteBufferBulk() {
+        final byte[][] inputs = new byte[STRIPE_SIZE][BULK_SIZE];
+        for (byte[] input : inputs) {
+            random.nextBytes(input);
+        }
+        final byte[][] outputs = new byte[1][BULK_SIZE];
+        sut.encodeBulk(inputs, outputs);
+
+        for (boolean direct : new boolean[]{false, true}) {
+            final ByteBuffer[] inputBuffers = new ByteBuffer[STRIPE_SIZE];
+            for (int i = 0; i < STRIPE_SIZE; i++) {
+                inputBuffers[i] = allocate(direct, BULK_SIZE);
+                inputBuffers[i].put(inputs[i]).flip();
+            }
+            final ByteBuffer[] outputBuffers = {allocate(direct, BULK_SIZE)};
+            sut.encodeBulk(inputBuffers, outputBuffers);
+            Assert.assertEquals(0, outputBuffers[0].position());
+            assertBufferEquals(outputs[0], outputBuffers[0]);
+
+            // Lose a data location, and recover it from the others
+            final int erased = 3;
+            final ByteBuffer[] readBufs = new ByteBuffer[STRIPE_SIZE + 1];
+            readBufs[0] = outputBuffers[0];
+            System.arraycopy(inputBuffers, 0, readBufs, 1, STRIPE_SIZE);
+            readBufs[erased] = null;
+            final ByteBuffer[] writeBufs = {allocate(direct, BULK_SIZE)};
+            sut.decodeBulk(readBufs, writeBufs, new int[]{erased});
+            assertBufferEquals(inputs[erased - 1], writeBufs[0]);
+        }
+    }
+
+    @Test
+    public void testBulkWithNullErasedBuffer() {
+        final byte[][] inputs = new byte[STRIPE_SIZE][BULK_SIZE];
+        for (byte[] input : inputs) {
+            random.nextBytes(input);
+        }
+        final byte[][] readBufs = new byte[STRIPE_SIZE + 1][];
+        readBufs[0] = new byte[BULK_SIZE];
+        sut.encodeBulk(inputs, new byte[][]{readBufs[0]});
+        System.arraycopy(inputs, 0, readBufs, 1, STRIPE_SIZE);
+
+        final byte[] parity = readBufs[0];
+        readBufs[0] = null;
+        final byte[][] writeBufs = new byte[1][BULK_SIZE];
+        sut.decodeBulk(readBufs, writeBufs, new int[]{0});
+        Assert.assertArrayEquals(parity, writeBufs[0]);
+    }
+
+    private static void assertBufferEquals(byte[] expected, ByteBuffer actual) {
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i], actual.get(i));
+        }
+    }
+
+    private static ByteBuffer allocate(boolean direct, int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
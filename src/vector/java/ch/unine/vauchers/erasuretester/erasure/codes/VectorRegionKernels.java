@@ -0,0 +1,84 @@
+package ch.unine.vauchers.erasuretester.erasure.codes;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Region kernels on the incubating Vector API of JDK 16+, loaded by {@link RegionKernels} when the JVM has the
+ * jdk.incubator.vector module.
+ * <br/>
+ * The multiplication looks up the two nibbles of each byte in tables of 16 products, one shuffle of a 128-bit vector
+ * each: PSHUFB on x86, TBL on ARM. Wider vectors would need shuffles across lanes, which most CPUs lack for bytes.
+ */
+final class VectorRegionKernels {
+    private static final VectorSpecies<Byte> LOOKUP = ByteVector.SPECIES_128;
+    private static final VectorSpecies<Byte> XOR = ByteVector.SPECIES_PREFERRED;
+
+    private VectorRegionKernels() {
+    }
+
+    /**
+     * @return The multiply kernel of a field whose symbols fit in a byte, or null for GF(2^16)
+     */
+    static RegionKernels.MultiplyKernel multiplyKernel(GaloisField gf) {
+        final int fieldSize = gf.getFieldSize();
+        if (fieldSize > 256) {
+            return null;
+        }
+        // Row c holds c * n, then c * (n << 4) for the 16 nibbles n
+        final byte[][] nibbleProducts = new byte[fieldSize][32];
+        for (int c = 0; c < fieldSize; c++) {
+            for (int n = 0; n < 16; n++) {
+                nibbleProducts[c][n] = n < fieldSize ? (byte) gf.multiply(c, n) : 0;
+                nibbleProducts[c][16 + n] = n << 4 < fieldSize ? (byte) gf.multiply(c, n << 4) : 0;
+            }
+        }
+        return (coef, src, srcOffset, dst, dstOffset, length, accumulate) ->
+                multiply(nibbleProducts[coef], src, srcOffset, dst, dstOffset, length, accumulate);
+    }
+
+    private static void multiply(byte[] products, byte[] src, int srcOffset, byte[] dst, int dstOffset, int length,
+                                 boolean accumulate) {
+        final ByteVector low = ByteVector.fromArray(LOOKUP, products, 0);
+        final ByteVector high = ByteVector.fromArray(LOOKUP, products, 16);
+        final int bound = LOOKUP.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LOOKUP.length()) {
+            final ByteVector x = ByteVector.fromArray(LOOKUP, src, srcOffset + i);
+            final VectorShuffle<Byte> lowNibbles = x.and((byte) 0x0F).toShuffle();
+            final VectorShuffle<Byte> highNibbles = x.lanewise(VectorOperators.LSHR, 4).toShuffle();
+            ByteVector product = low.rearrange(lowNibbles).lanewise(VectorOperators.XOR, high.rearrange(highNibbles));
+            if (accumulate) {
+                product = product.lanewise(VectorOperators.XOR, ByteVector.fromArray(LOOKUP, dst, dstOffset + i));
+            }
+            product.intoArray(dst, dstOffset + i);
+        }
+        for (; i < length; i++) {
+            final int x = src[srcOffset + i];
+            byte product = (byte) (products[x & 0xF] ^ products[16 + ((x >>> 4) & 0xF)]);
+            if (accumulate) {
+                product ^= dst[dstOffset + i];
+            }
+            dst[dstOffset + i] = product;
+        }
+    }
+
+    static RegionKernels.AddKernel addKernel() {
+        return VectorRegionKernels::add;
+    }
+
+    private static void add(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        final int bound = XOR.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += XOR.length()) {
+            ByteVector.fromArray(XOR, dst, dstOffset + i)
+                    .lanewise(VectorOperators.XOR, ByteVector.fromArray(XOR, src, srcOffset + i))
+                    .intoArray(dst, dstOffset + i);
+        }
+        for (; i < length; i++) {
+            dst[dstOffset + i] ^= src[srcOffset + i];
+        }
+    }
+}